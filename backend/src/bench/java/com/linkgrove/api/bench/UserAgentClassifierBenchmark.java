@@ -0,0 +1,85 @@
+package com.linkgrove.api.bench;
+
+import com.linkgrove.api.service.UserAgentClassifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The original per-click device check (lowercase the UA, then a chain of {@code contains}) against
+ * {@link UserAgentClassifier}, with and without its cache. The classifier also derives browser, OS and
+ * bot family in the same pass, so it does more work per UA than the baseline.
+ *
+ * Each invocation classifies the next UA of a small mixed corpus, so branch prediction can't lock onto one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserAgentClassifierBenchmark {
+
+    private static final String[] USER_AGENTS = {
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 17_4 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.4 Mobile/15E148 Safari/604.1",
+            "Mozilla/5.0 (Linux; Android 14; Pixel 8) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.6367.82 Mobile Safari/537.36",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.0.0 Safari/537.36",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.0.0 Safari/537.36 Edg/124.0.2478.51",
+            "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.4 Safari/605.1.15",
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 17_4 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Mobile/15E148 Instagram 329.0.3.29.120",
+            "Mozilla/5.0 (Linux; Android 13; SM-X710) AppleWebKit/537.36 (KHTML, like Gecko) SamsungBrowser/24.0 Chrome/117.0.0.0 Safari/537.36",
+            "Mozilla/5.0 (X11; Ubuntu; Linux x86_64; rv:125.0) Gecko/20100101 Firefox/125.0",
+            "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)",
+            "facebookexternalhit/1.1 (+http://www.facebook.com/externalhit_uatext.php)",
+            "curl/8.5.0",
+            "Mozilla/5.0 (iPad; CPU OS 17_4 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) CriOS/124.0.6367.88 Mobile/15E148 Safari/604.1",
+    };
+
+    private UserAgentClassifier classifier;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        classifier = new UserAgentClassifier(10_000);
+        next = 0;
+    }
+
+    @Benchmark
+    public String legacyContains() {
+        return legacyDevice(nextUserAgent());
+    }
+
+    @Benchmark
+    public UserAgentClassifier.Classification ahoCorasickScan() {
+        return classifier.classifyUncached(nextUserAgent());
+    }
+
+    @Benchmark
+    public UserAgentClassifier.Classification ahoCorasickCached() {
+        return classifier.classify(nextUserAgent());
+    }
+
+    private String nextUserAgent() {
+        String ua = USER_AGENTS[next];
+        next = next + 1 == USER_AGENTS.length ? 0 : next + 1;
+        return ua;
+    }
+
+    private static String legacyDevice(String ua) {
+        if (ua == null) return "other";
+        String s = ua.toLowerCase();
+        if (s.contains("tablet") || s.contains("ipad")) return "tablet";
+        if (s.contains("mobi") || s.contains("iphone") || s.contains("android")) return "mobile";
+        if (s.contains("windows") || s.contains("macintosh") || s.contains("linux")) return "desktop";
+        return "other";
+    }
+}
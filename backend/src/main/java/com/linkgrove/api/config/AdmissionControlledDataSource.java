@@ -0,0 +1,116 @@
+package com.linkgrove.api.config;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caps how many callers may hold or wait for a pooled connection at once.
+ *
+ * With virtual threads thousands of requests can reach the 20-connection Hikari pool together and each
+ * one would sit out the full connection timeout. Here at most {@code permits} callers hold a connection,
+ * at most {@code maxWaiting} queue for one (fairly), and anyone beyond that fails fast with
+ * {@link SQLTransientConnectionException}. The permit is released when the returned connection is closed.
+ */
+public class AdmissionControlledDataSource extends DelegatingDataSource {
+
+    private final Semaphore permits;
+    private final int maxWaiting;
+    private final long timeoutMs;
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    public AdmissionControlledDataSource(DataSource target, int permits, int maxWaiting, long timeoutMs) {
+        super(target);
+        this.permits = new Semaphore(permits, true);
+        this.maxWaiting = maxWaiting;
+        this.timeoutMs = timeoutMs;
+        io.micrometer.core.instrument.Gauge.builder("db.admission.waiting", waiting, AtomicInteger::get)
+                .register(io.micrometer.core.instrument.Metrics.globalRegistry);
+        io.micrometer.core.instrument.Gauge.builder("db.admission.available", this.permits, Semaphore::availablePermits)
+                .register(io.micrometer.core.instrument.Metrics.globalRegistry);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        acquire();
+        try {
+            return guard(super.getConnection());
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        acquire();
+        try {
+            return guard(super.getConnection(username, password));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    int waiting() {
+        return waiting.get();
+    }
+
+    int availablePermits() {
+        return permits.availablePermits();
+    }
+
+    private void acquire() throws SQLException {
+        if (permits.tryAcquire()) return;
+        if (waiting.incrementAndGet() > maxWaiting) {
+            waiting.decrementAndGet();
+            io.micrometer.core.instrument.Metrics.counter("db.admission.rejected", "reason", "queue_full").increment();
+            throw new SQLTransientConnectionException("Database admission queue is full");
+        }
+        long started = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+                io.micrometer.core.instrument.Metrics.counter("db.admission.rejected", "reason", "timeout").increment();
+                throw new SQLTransientConnectionException("Timed out after " + timeoutMs + "ms waiting for database admission");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for database admission", e);
+        } finally {
+            waiting.decrementAndGet();
+            io.micrometer.core.instrument.Metrics.timer("db.admission.wait")
+                    .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Connection guard(Connection connection) {
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(
+                AdmissionControlledDataSource.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if ("close".equals(method.getName()) && method.getParameterCount() == 0) {
+                        try {
+                            connection.close();
+                        } finally {
+                            if (released.compareAndSet(false, true)) permits.release();
+                        }
+                        return null;
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+}
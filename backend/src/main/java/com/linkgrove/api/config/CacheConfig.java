@@ -19,20 +19,23 @@ import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 import java.time.Duration;
+import java.util.List;
 
 @Configuration
 @EnableCaching
 public class CacheConfig {
 
+    /**
+     * Cached analytics breakdowns. Their keys are per user and range, so writers clear them whole when the
+     * underlying aggregates change.
+     */
+    public static final List<String> ANALYTICS_BREAKDOWN_CACHES = List.of(
+            "analytics-referrers-v1", "analytics-devices-v1", "analytics-user-agents-v1", "analytics-countries-v1",
+            "analytics-sources-v1", "analytics-sources-by-link-v1", "analytics-variants-v1", "analytics-variants-by-link-v1");
+
     @Bean
     public CacheManager cacheManager(RedisConnectionFactory connectionFactory) {
-        // Configure Jackson ObjectMapper for Redis serialization
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
-        objectMapper.activateDefaultTyping(LaissezFaireSubTypeValidator.instance, ObjectMapper.DefaultTyping.NON_FINAL);
-        objectMapper.registerModule(new JavaTimeModule());
-
-        GenericJackson2JsonRedisSerializer jsonSerializer = new GenericJackson2JsonRedisSerializer(objectMapper);
+        GenericJackson2JsonRedisSerializer jsonSerializer = cacheValueSerializer();
 
         // Default cache configuration
         RedisCacheConfiguration defaultConfig = RedisCacheConfiguration.defaultCacheConfig()
@@ -67,12 +70,15 @@ public class CacheConfig {
                     defaultConfig.entryTtl(Duration.ofMinutes(5)))
                 .withCacheConfiguration("analytics-devices-v1",
                     defaultConfig.entryTtl(Duration.ofMinutes(5)))
+                .withCacheConfiguration("analytics-user-agents-v1",
+                    defaultConfig.entryTtl(Duration.ofMinutes(5)))
                 .withCacheConfiguration("userLinks", 
                     defaultConfig.entryTtl(Duration.ofMinutes(5)))
+                // Schedule boundaries and edits evict these explicitly (LinkScheduleService)
                 .withCacheConfiguration("linkRedirects", 
-                    defaultConfig.entryTtl(Duration.ofMinutes(15)))
+                    defaultConfig.entryTtl(Duration.ofHours(1)))
                 .withCacheConfiguration("linkAliasResolveV1",
-                    defaultConfig.entryTtl(Duration.ofMinutes(15)))
+                    defaultConfig.entryTtl(Duration.ofHours(1)))
                 .withCacheConfiguration("linkPreviews", 
                     defaultConfig.entryTtl(Duration.ofMinutes(30)))
                 .withCacheConfiguration("linkOwners", 
@@ -80,6 +86,19 @@ public class CacheConfig {
                 .build();
     }
 
+    /**
+     * Value serializer used by the Redis cache manager. Exposed so non-Spring-cache readers
+     * (e.g. the reactive redirect edge) decode entries exactly as {@code @Cacheable} wrote them.
+     */
+    public static GenericJackson2JsonRedisSerializer cacheValueSerializer() {
+        // Configure Jackson ObjectMapper for Redis serialization
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        objectMapper.activateDefaultTyping(LaissezFaireSubTypeValidator.instance, ObjectMapper.DefaultTyping.NON_FINAL);
+        objectMapper.registerModule(new JavaTimeModule());
+        return new GenericJackson2JsonRedisSerializer(objectMapper);
+    }
+
     @Bean
     public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory) {
         RedisTemplate<String, Object> template = new RedisTemplate<>();
@@ -0,0 +1,237 @@
+package com.linkgrove.api.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.linkgrove.api.event.LinkClickEvent;
+import com.linkgrove.api.worker.AnalyticsWorker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BatchMessageListener;
+import org.springframework.amqp.core.CustomExchange;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.rabbit.config.RetryInterceptorBuilder;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistrar;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.retry.MessageBatchRecoverer;
+import org.springframework.amqp.rabbit.retry.MessageRecoverer;
+import org.springframework.amqp.rabbit.retry.RepublishMessageRecovererWithConfirms;
+import org.springframework.amqp.rabbit.annotation.RabbitListenerConfigurer;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Click queue split into {@code count} partitions behind a consistent-hash exchange.
+ *
+ * The redirect path publishes with the link id as routing key, so every click on a link lands in the same
+ * partition. Each partition has a single active consumer that takes batches of up to {@code batchSize} and
+ * hands them to {@link AnalyticsWorker#processLinkClickBatch}, so writes to one link's rows never contend
+ * across consumers. A failed batch is retried; if it still fails, its clicks are processed one by one, each in
+ * its own transaction, and only those that fail alone are dead-lettered to the usual click DLQ. Messages that
+ * aren't a readable click are dead-lettered there too.
+ *
+ * Changing {@code count} remaps roughly {@code 1/count} of the links. To shrink, set {@code previousCount}
+ * to the old count: the surplus queues stay declared and consumed but lose their bindings, so they drain
+ * and can be deleted afterwards.
+ */
+@Configuration
+@ConditionalOnProperty(name = "analytics.partitions.enabled", havingValue = "true")
+@Slf4j
+public class ClickPartitionConfig implements RabbitListenerConfigurer {
+
+    @Value("${analytics.partitions.count:8}")
+    private int count;
+
+    @Value("${analytics.partitions.previousCount:0}")
+    private int previousCount;
+
+    @Value("${analytics.partitions.batchSize:100}")
+    private int batchSize;
+
+    @Value("${analytics.partitions.receiveTimeoutMs:500}")
+    private long receiveTimeoutMs;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private final AnalyticsWorker analyticsWorker;
+    private final ConnectionFactory connectionFactory;
+    private final MessageRecoverer deadLetters;
+    private final ObjectMapper objectMapper;
+
+    public ClickPartitionConfig(AnalyticsWorker analyticsWorker, ConnectionFactory connectionFactory,
+                                @Qualifier("confirmingRabbitTemplate") RabbitTemplate confirmingRabbitTemplate) {
+        this.analyticsWorker = analyticsWorker;
+        this.connectionFactory = connectionFactory;
+        this.deadLetters = new RepublishMessageRecovererWithConfirms(confirmingRabbitTemplate,
+                RabbitMQConfig.LINK_CLICK_DLX, "failed.click", CachingConnectionFactory.ConfirmType.CORRELATED);
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.findAndRegisterModules();
+    }
+
+    public static String queueName(int partition) {
+        return RabbitMQConfig.LINK_CLICK_PARTITION_QUEUE_PREFIX + partition;
+    }
+
+    /**
+     * Exchange, partition queues and the bindings for the current partitions. Requires the
+     * {@code rabbitmq_consistent_hash_exchange} plugin.
+     */
+    @Bean
+    public Declarables clickPartitionTopology() {
+        List<Declarable> declarables = new ArrayList<>();
+        CustomExchange exchange = new CustomExchange(RabbitMQConfig.LINK_CLICK_PARTITION_EXCHANGE, "x-consistent-hash", true, false);
+        declarables.add(exchange);
+        for (int i = 0; i < queueCount(); i++) {
+            declarables.add(QueueBuilder.durable(queueName(i))
+                    .withArgument("x-dead-letter-exchange", RabbitMQConfig.LINK_CLICK_DLX)
+                    .withArgument("x-dead-letter-routing-key", "failed.click")
+                    .withArgument("x-single-active-consumer", true)
+                    .build());
+            if (i < count) declarables.add(binding(i));
+        }
+        return new Declarables(declarables);
+    }
+
+    /**
+     * One consumer per partition receiving batches, retried like the shared queue before falling back to
+     * one click at a time.
+     */
+    private SimpleRabbitListenerContainerFactory partitionListenerFactory() {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setConcurrentConsumers(1);
+        factory.setMaxConcurrentConsumers(1);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setPrefetchCount(Math.max(batchSize, 10));
+        factory.setReceiveTimeout(receiveTimeoutMs);
+        factory.setAdviceChain(RetryInterceptorBuilder.stateless()
+                .maxAttempts(3)
+                .backOffOptions(2000, 2.0, 10000)
+                .recoverer((MessageBatchRecoverer) this::recover)
+                .build());
+        if (virtualThreads) {
+            factory.setTaskExecutor(new VirtualThreadTaskExecutor("click-partition-"));
+        }
+        return factory;
+    }
+
+    @Override
+    public void configureRabbitListeners(RabbitListenerEndpointRegistrar registrar) {
+        SimpleRabbitListenerContainerFactory factory = partitionListenerFactory();
+        for (int i = 0; i < queueCount(); i++) {
+            SimpleRabbitListenerEndpoint endpoint = new SimpleRabbitListenerEndpoint();
+            endpoint.setId("click-partition-" + i);
+            endpoint.setQueueNames(queueName(i));
+            endpoint.setMessageListener((BatchMessageListener) this::onBatch);
+            registrar.registerEndpoint(endpoint, factory);
+        }
+    }
+
+    /**
+     * Unbind partitions past the current count so their queues drain without taking new clicks.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void unbindRetiredPartitions(ApplicationReadyEvent event) {
+        if (previousCount <= count) return;
+        AmqpAdmin admin = event.getApplicationContext().getBean(AmqpAdmin.class);
+        for (int i = count; i < previousCount; i++) {
+            try {
+                admin.removeBinding(binding(i));
+                log.info("Unbound click partition {}; it will drain and can then be deleted", queueName(i));
+            } catch (Exception e) {
+                log.warn("Could not unbind click partition {}: {}", queueName(i), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Process a batch, then dead-letter its malformed messages. They are dead-lettered only once the clicks
+     * have committed, so a retried batch doesn't copy them to the DLQ again.
+     */
+    void onBatch(List<Message> messages) {
+        List<LinkClickEvent> events = new ArrayList<>(messages.size());
+        List<Map.Entry<Message, Exception>> malformed = new ArrayList<>();
+        for (Message message : messages) {
+            try {
+                events.add(parse(message));
+            } catch (Exception e) {
+                malformed.add(Map.entry(message, e));
+            }
+        }
+        if (!events.isEmpty()) analyticsWorker.processLinkClickBatch(events);
+        for (Map.Entry<Message, Exception> entry : malformed) {
+            log.error("Dead-lettering malformed click message: {}", entry.getValue().getMessage());
+            deadLetter(entry.getKey(), entry.getValue(), "malformed");
+        }
+    }
+
+    /**
+     * Retries are exhausted, so some click in the batch fails every time. Process the clicks one by one so the
+     * rest still count, and dead-letter the malformed ones and those that fail on their own. The batch is
+     * acked afterwards.
+     */
+    void recover(List<Message> messages, Throwable cause) {
+        log.warn("Click batch of {} failed after retries, processing its clicks one at a time: {}", messages.size(), cause.getMessage());
+        for (Message message : messages) {
+            LinkClickEvent event;
+            try {
+                event = parse(message);
+            } catch (Exception e) {
+                log.error("Dead-lettering malformed click message: {}", e.getMessage());
+                deadLetter(message, e, "malformed");
+                continue;
+            }
+            try {
+                analyticsWorker.processLinkClickBatch(List.of(event));
+            } catch (Exception e) {
+                log.error("Dead-lettering click for link {}: {}", event.getLinkId(), e.getMessage());
+                deadLetter(message, e, "failed");
+            }
+        }
+    }
+
+    private void deadLetter(Message message, Throwable cause, String reason) {
+        io.micrometer.core.instrument.Metrics.counter("analytics.partition.dead_lettered", "reason", reason).increment();
+        try {
+            deadLetters.recover(message, cause);
+        } catch (Exception publishFailure) {
+            // Failing here would redeliver the clicks that already committed, so this one is lost instead
+            io.micrometer.core.instrument.Metrics.counter("analytics.partition.lost").increment();
+            log.error("Could not dead-letter click {}: {}", new String(message.getBody(), java.nio.charset.StandardCharsets.UTF_8),
+                    publishFailure.getMessage());
+        }
+    }
+
+    private LinkClickEvent parse(Message message) throws java.io.IOException {
+        return objectMapper.readValue(message.getBody(), LinkClickEvent.class);
+    }
+
+    private int queueCount() {
+        return Math.max(count, previousCount);
+    }
+
+    private static Binding binding(int partition) {
+        // For a consistent-hash exchange the routing key is the partition's weight on the hash ring
+        return new Binding(queueName(partition), Binding.DestinationType.QUEUE,
+                RabbitMQConfig.LINK_CLICK_PARTITION_EXCHANGE, "1", Map.of());
+    }
+}
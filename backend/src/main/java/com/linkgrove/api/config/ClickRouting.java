@@ -0,0 +1,35 @@
+package com.linkgrove.api.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Where a click is published, following the click transport settings: the click stream
+ * ({@code analytics.transport.mode=stream}), the link's partition ({@code analytics.partitions.enabled}),
+ * or the shared click queue. Redirects and DLQ re-injects both route through here, so a re-injected click
+ * reaches the same consumers a fresh one would.
+ */
+@Component
+public class ClickRouting {
+
+    public record Route(String exchange, String routingKey) {}
+
+    private static final Route STREAM = new Route(RabbitMQConfig.LINK_CLICK_EXCHANGE, RabbitMQConfig.LINK_CLICK_STREAM_ROUTING_KEY);
+    private static final Route SHARED_QUEUE = new Route(RabbitMQConfig.LINK_CLICK_EXCHANGE, RabbitMQConfig.LINK_CLICK_ROUTING_KEY);
+
+    private final boolean stream;
+    private final boolean partitioned;
+
+    public ClickRouting(@Value("${analytics.transport.mode:classic}") String transport,
+                        @Value("${analytics.partitions.enabled:false}") boolean partitioned) {
+        this.stream = "stream".equalsIgnoreCase(transport);
+        this.partitioned = partitioned;
+    }
+
+    public Route forLink(Long linkId) {
+        if (stream) return STREAM;
+        // The consistent-hash exchange hashes the routing key, so every click on a link lands in one partition
+        if (partitioned) return new Route(RabbitMQConfig.LINK_CLICK_PARTITION_EXCHANGE, String.valueOf(linkId));
+        return SHARED_QUEUE;
+    }
+}
@@ -0,0 +1,117 @@
+package com.linkgrove.api.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.linkgrove.api.exception.ErrorResponse;
+import com.linkgrove.api.util.AdaptiveConcurrencyLimiter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Adaptive concurrency limit in front of {@code /r/**} and {@code /api/public/**}.
+ *
+ * Runs ahead of the redirect fast path and the security chain, so a shed request costs almost nothing.
+ * Redirects may use the whole limit, QR rendering a smaller share and public profile / click tracking
+ * traffic the smallest, so the cheaper and more important work keeps flowing as the limit tightens.
+ * Shed requests get 503 with {@code Retry-After}.
+ */
+@Component
+@ConditionalOnProperty(name = "loadshed.enabled", havingValue = "true")
+@Order(Ordered.HIGHEST_PRECEDENCE + 5)
+public class LoadSheddingFilter extends OncePerRequestFilter {
+
+    enum Priority { REDIRECT, QR, PUBLIC }
+
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final ObjectMapper objectMapper;
+    private final double[] shares;
+    private final int retryAfterSeconds;
+
+    public LoadSheddingFilter(ObjectMapper objectMapper,
+                              @Value("${loadshed.initialLimit:100}") int initialLimit,
+                              @Value("${loadshed.minLimit:20}") int minLimit,
+                              @Value("${loadshed.maxLimit:2000}") int maxLimit,
+                              @Value("${loadshed.share.redirect:1.0}") double redirectShare,
+                              @Value("${loadshed.share.qr:0.8}") double qrShare,
+                              @Value("${loadshed.share.public:0.6}") double publicShare,
+                              @Value("${loadshed.retryAfterSeconds:1}") int retryAfterSeconds) {
+        this.objectMapper = objectMapper;
+        this.limiter = new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit);
+        this.shares = new double[]{redirectShare, qrShare, publicShare};
+        this.retryAfterSeconds = retryAfterSeconds;
+        io.micrometer.core.instrument.Gauge.builder("loadshed.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .register(io.micrometer.core.instrument.Metrics.globalRegistry);
+        io.micrometer.core.instrument.Gauge.builder("loadshed.inflight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                .register(io.micrometer.core.instrument.Metrics.globalRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        return classify(request.getRequestURI()) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response, @NonNull FilterChain filterChain)
+            throws ServletException, IOException {
+        Priority priority = classify(request.getRequestURI());
+        if (priority == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        AdaptiveConcurrencyLimiter.Token token = limiter.tryAcquire(shares[priority.ordinal()]);
+        if (token == null) {
+            io.micrometer.core.instrument.Metrics.counter("loadshed.rejected", "priority", priority.name().toLowerCase()).increment();
+            reject(request, response);
+            return;
+        }
+        boolean failed = true;
+        try {
+            filterChain.doFilter(request, response);
+            failed = false;
+        } finally {
+            if (failed || response.getStatus() >= 500) {
+                token.onDropped();
+            } else {
+                token.onSuccess();
+            }
+        }
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ErrorResponse body = ErrorResponse.builder()
+                .timestamp(Instant.now())
+                .status(HttpServletResponse.SC_SERVICE_UNAVAILABLE)
+                .error("Service Unavailable")
+                .message("Server is overloaded, please retry shortly")
+                .path(request.getRequestURI())
+                .retryAfter(retryAfterSeconds)
+                .build();
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        if (!"HEAD".equals(request.getMethod())) {
+            objectMapper.writeValue(response.getOutputStream(), body);
+        }
+    }
+
+    static Priority classify(String uri) {
+        if (uri == null) return null;
+        if (uri.startsWith("/r/")) {
+            return uri.contains("/qr") ? Priority.QR : Priority.REDIRECT;
+        }
+        if (uri.startsWith("/api/public/")) return Priority.PUBLIC;
+        return null;
+    }
+}
@@ -4,12 +4,17 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.amqp.core.*;
 import org.springframework.amqp.rabbit.annotation.EnableRabbit;
 import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
 
 /**
  * RabbitMQ configuration for asynchronous link click event processing.
@@ -27,6 +32,19 @@ public class RabbitMQConfig {
     // Dead Letter Queue for failed processing
     public static final String LINK_CLICK_DLQ = "linkgrove.clicks.dlq";
     public static final String LINK_CLICK_DLX = "linkgrove.clicks.dlx";
+    // Poison clicks set aside by ClickDlqReprocessor
+    public static final String LINK_CLICK_PARKING = "linkgrove.clicks.parked";
+
+    // Partitioned click queues (see ClickPartitionConfig)
+    public static final String LINK_CLICK_PARTITION_EXCHANGE = "linkgrove.clicks.partitioned";
+    public static final String LINK_CLICK_PARTITION_QUEUE_PREFIX = "linkgrove.clicks.p.";
+
+    // Click stream (analytics.transport.mode=stream, see ClickStreamConsumer)
+    public static final String LINK_CLICK_STREAM = "linkgrove.clicks.stream";
+    public static final String LINK_CLICK_STREAM_ROUTING_KEY = "click.stream";
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
 
     /**
      * Main queue for processing link click events
@@ -47,6 +65,14 @@ public class RabbitMQConfig {
         return QueueBuilder.durable(LINK_CLICK_DLQ).build();
     }
 
+    /**
+     * Parking queue for dead-lettered clicks that reprocessing can't repair
+     */
+    @Bean
+    public Queue linkClickParkingQueue() {
+        return QueueBuilder.durable(LINK_CLICK_PARKING).build();
+    }
+
     /**
      * Exchange for routing click events
      */
@@ -85,6 +111,25 @@ public class RabbitMQConfig {
                 .with("failed.click");
     }
 
+    /**
+     * Stream for click events in stream mode, bound to the click exchange under its own routing key.
+     * Clicks stay in it until {@code maxAge} or {@code maxBytes}, so consumers can replay from an offset.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "analytics.transport.mode", havingValue = "stream")
+    public Declarables linkClickStreamTopology(@Value("${analytics.stream.maxAge:7D}") String maxAge,
+                                               @Value("${analytics.stream.maxBytes:21474836480}") long maxBytes,
+                                               @Value("${analytics.stream.maxSegmentBytes:104857600}") long maxSegmentBytes) {
+        Queue stream = QueueBuilder.durable(LINK_CLICK_STREAM)
+                .withArgument("x-queue-type", "stream")
+                .withArgument("x-max-age", maxAge)
+                .withArgument("x-max-length-bytes", maxBytes)
+                .withArgument("x-stream-max-segment-size-bytes", maxSegmentBytes)
+                .build();
+        return new Declarables(stream,
+                BindingBuilder.bind(stream).to(linkClickExchange()).with(LINK_CLICK_STREAM_ROUTING_KEY));
+    }
+
     /**
      * JSON message converter for event serialization
      */
@@ -99,12 +144,37 @@ public class RabbitMQConfig {
      * RabbitTemplate with JSON serialization
      */
     @Bean
+    @Primary
     public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
         RabbitTemplate template = new RabbitTemplate(connectionFactory);
         template.setMessageConverter(messageConverter());
         return template;
     }
 
+    /**
+     * Connection with correlated publisher confirms, kept apart so the redirect path's publishes stay unconfirmed
+     */
+    @Bean(autowireCandidate = false)
+    public CachingConnectionFactory confirmingConnectionFactory(ConnectionFactory connectionFactory) {
+        if (!(connectionFactory instanceof CachingConnectionFactory caching)) {
+            throw new IllegalStateException("Publisher confirms need a CachingConnectionFactory, got " + connectionFactory.getClass().getName());
+        }
+        CachingConnectionFactory confirming = new CachingConnectionFactory(caching.getRabbitConnectionFactory());
+        confirming.setPublisherConfirmType(CachingConnectionFactory.ConfirmType.CORRELATED);
+        confirming.setConnectionNameStrategy(cf -> "linkgrove-confirms");
+        return confirming;
+    }
+
+    /**
+     * RabbitTemplate whose sends can be confirmed, for moving a message that is acked only once the copy is safe
+     */
+    @Bean
+    public RabbitTemplate confirmingRabbitTemplate(ConnectionFactory connectionFactory) {
+        RabbitTemplate template = new RabbitTemplate(confirmingConnectionFactory(connectionFactory));
+        template.setMessageConverter(messageConverter());
+        return template;
+    }
+
     /**
      * Container factory for message listeners
      */
@@ -117,6 +187,10 @@ public class RabbitMQConfig {
         factory.setConcurrentConsumers(3); // Process 3 messages concurrently
         factory.setMaxConcurrentConsumers(10); // Scale up to 10 consumers under load
         factory.setPrefetchCount(10); // Prefetch 10 messages per consumer
+        if (virtualThreads) {
+            // Built by hand, so Boot's configurer doesn't apply the virtual-thread executor for us
+            factory.setTaskExecutor(new VirtualThreadTaskExecutor("rabbit-listener-"));
+        }
         return factory;
     }
 }
@@ -31,19 +31,33 @@ public class RateLimitingConfig extends OncePerRequestFilter {
     @Value("${ratelimit.qr.maxRequests:60}")
     private int qrMaxRequests;
 
+    /** Redirect budget, shared with the reactive redirect edge so both tiers spend the same window. */
+    public static final int REDIRECT_WINDOW_SECONDS = 10;
+    public static final int REDIRECT_MAX_REQUESTS = 30;
+
     private static final Map<String, Rule> RULES = new LinkedHashMap<>() {{
         put("/api/public/click/", new Rule(10, 30)); // 30 requests / 10s
-        put("/r/", new Rule(10, 30));                // 30 requests / 10s
+        put("/r/", new Rule(REDIRECT_WINDOW_SECONDS, REDIRECT_MAX_REQUESTS)); // 30 requests / 10s
         put("/api/public/", new Rule(60, 120));      // 120 requests / 60s
     }};
 
     @Override
     protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response, @NonNull FilterChain filterChain)
             throws ServletException, IOException {
+        enforce(request, response);
+        filterChain.doFilter(request, response);
+    }
+
+    /**
+     * Apply the per-IP sliding window matching the request path, if any.
+     * Shared with filters that short-circuit the regular chain.
+     *
+     * @throws RateLimitExceededException when the window is exhausted
+     */
+    public void enforce(HttpServletRequest request, HttpServletResponse response) {
         String path = request.getRequestURI();
         Rule rule = isQrPath(path) ? new Rule(qrWindowSeconds, qrMaxRequests, "/r/qr") : matchRule(path);
         if (rule == null) {
-            filterChain.doFilter(request, response);
             return;
         }
 
@@ -69,8 +83,6 @@ public class RateLimitingConfig extends OncePerRequestFilter {
             long remaining = Math.max(0, rule.maxRequests - used);
             response.setHeader("X-RateLimit-Remaining", String.valueOf(remaining));
         }
-
-        filterChain.doFilter(request, response);
     }
 
     private Rule matchRule(String path) {
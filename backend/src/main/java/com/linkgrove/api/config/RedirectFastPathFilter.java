@@ -0,0 +1,165 @@
+package com.linkgrove.api.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.linkgrove.api.dto.LinkAliasResolve;
+import com.linkgrove.api.exception.ErrorResponse;
+import com.linkgrove.api.exception.LinkNotFoundException;
+import com.linkgrove.api.exception.RateLimitExceededException;
+import com.linkgrove.api.service.LinkExistenceFilter;
+import com.linkgrove.api.service.LinkRedirectService;
+import com.linkgrove.api.util.RequestContext;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Serves {@code GET|HEAD /r/{linkId}} and {@code /r/a/{alias}} before the security chain and
+ * DispatcherServlet. The per-IP redirect rate limit still applies; everything else a redirect
+ * needs (lookup, click publish, request id) is done inline and the 302 is written directly.
+ *
+ * Opt-in via {@code redirect.fast-path.enabled}. Unlike {@code RedirectController} it does not emit the
+ * advisory {@code X-RateLimit-Remaining} budget, which costs a second Redis window per redirect.
+ * QR, preview and any other {@code /r/**} path fall through to MVC unchanged.
+ */
+@Component
+@ConditionalOnProperty(name = "redirect.fast-path.enabled", havingValue = "true")
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+@RequiredArgsConstructor
+@Slf4j
+public class RedirectFastPathFilter extends OncePerRequestFilter {
+
+    private static final String CACHE_CONTROL = "public, max-age=300";
+    private static final String RATE_LIMIT_LIMIT = "300";
+    private static final String RATE_LIMIT_WINDOW = "60";
+
+    private final LinkRedirectService linkRedirectService;
+    private final RateLimitingConfig rateLimitingConfig;
+    private final ObjectMapper objectMapper;
+    private final LinkExistenceFilter linkExistenceFilter;
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) return true;
+        return parse(request.getRequestURI()) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response, @NonNull FilterChain filterChain)
+            throws ServletException, IOException {
+        Target target = parse(request.getRequestURI());
+        if (target == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        long started = System.nanoTime();
+        String outcome = "redirect";
+        String requestId = request.getHeader(RequestIdFilter.HEADER_REQUEST_ID);
+        if (requestId == null || requestId.isBlank()) requestId = UUID.randomUUID().toString();
+        MDC.put(RequestIdFilter.MDC_REQUEST_ID, requestId);
+        response.setHeader(RequestIdFilter.HEADER_REQUEST_ID, requestId);
+        // RedirectController is @CrossOrigin("*"). Sent on every response, not only to requests with an
+        // Origin, so a shared cache can't hand a copy without it to a cross-origin caller
+        response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+        try {
+            rateLimitingConfig.enforce(request, response);
+            long linkId;
+            String location;
+            if (target.alias() != null) {
+                linkExistenceFilter.checkAlias(target.alias());
+                LinkAliasResolve resolved = linkRedirectService.getLinkByAlias(target.alias());
+                linkId = resolved.getId();
+                location = resolved.getUrl();
+            } else {
+                linkId = target.linkId();
+                linkExistenceFilter.checkId(linkId);
+                location = linkRedirectService.getRedirectUrl(linkId);
+            }
+            linkRedirectService.publishClickEvent(linkId, request);
+
+            response.setStatus(HttpServletResponse.SC_FOUND);
+            response.setHeader("Location", location);
+            response.setHeader("Cache-Control", CACHE_CONTROL);
+            response.setHeader("X-Content-Type-Options", "nosniff");
+            response.setHeader("X-RateLimit-Limit", RATE_LIMIT_LIMIT);
+            response.setHeader("X-RateLimit-Window", RATE_LIMIT_WINDOW);
+        } catch (RateLimitExceededException e) {
+            outcome = "rate_limited";
+            response.setHeader("Retry-After", String.valueOf(e.getRetryAfterSeconds()));
+            writeError(request, response, 429, "Rate Limit Exceeded", e.getMessage(), e.getRetryAfterSeconds());
+        } catch (LinkNotFoundException e) {
+            outcome = "not_found";
+            log.warn("Link not found: {}", e.getMessage());
+            writeError(request, response, 404, "Link Not Found", e.getMessage(), null);
+        } finally {
+            RequestContext.clear();
+            MDC.remove(RequestIdFilter.MDC_REQUEST_ID);
+            io.micrometer.core.instrument.Timer.builder("redirect.fastpath.time")
+                    .tag("outcome", outcome)
+                    .register(io.micrometer.core.instrument.Metrics.globalRegistry)
+                    .record(System.nanoTime() - started, java.util.concurrent.TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void writeError(HttpServletRequest request, HttpServletResponse response, int status,
+                            String error, String message, Integer retryAfter) throws IOException {
+        ErrorResponse body = ErrorResponse.builder()
+                .timestamp(Instant.now())
+                .status(status)
+                .error(error)
+                .message(message)
+                .path(request.getRequestURI())
+                .retryAfter(retryAfter)
+                .build();
+        response.setStatus(status);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        if (!"HEAD".equals(request.getMethod())) {
+            objectMapper.writeValue(response.getOutputStream(), body);
+        }
+    }
+
+    /**
+     * Match {@code /r/{digits}} or {@code /r/a/{alias}} exactly; anything else is left to MVC.
+     */
+    static Target parse(String uri) {
+        if (uri == null || !uri.startsWith("/r/")) return null;
+        if (uri.startsWith("/r/a/")) {
+            int from = 5;
+            if (uri.length() == from) return null;
+            for (int i = from; i < uri.length(); i++) {
+                char c = uri.charAt(i);
+                boolean ok = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '_';
+                if (!ok) return null;
+            }
+            return new Target(0L, uri.substring(from));
+        }
+        int from = 3;
+        int len = uri.length() - from;
+        if (len == 0 || len > 18) return null;
+        long id = 0;
+        for (int i = from; i < uri.length(); i++) {
+            char c = uri.charAt(i);
+            if (c < '0' || c > '9') return null;
+            id = id * 10 + (c - '0');
+        }
+        return new Target(id, null);
+    }
+
+    record Target(long linkId, String alias) {}
+}
@@ -1,5 +1,6 @@
 package com.linkgrove.api.config;
 
+import org.springframework.boot.http.client.ClientHttpRequestFactoryBuilder;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -12,7 +13,9 @@ public class RestClientConfig {
 
     @Bean
     public RestTemplate restTemplate(RestTemplateBuilder builder) {
+        // Pin the JDK client so reactor-netty on the classpath (redirect edge) doesn't change webhook delivery
         return builder
+                .requestFactoryBuilder(ClientHttpRequestFactoryBuilder.jdk())
                 .connectTimeout(Duration.ofSeconds(5))
                 .readTimeout(Duration.ofSeconds(10))
                 .build();
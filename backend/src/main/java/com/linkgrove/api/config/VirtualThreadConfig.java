@@ -0,0 +1,121 @@
+package com.linkgrove.api.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import javax.sql.DataSource;
+import java.util.concurrent.Executor;
+
+/**
+ * Pieces of the virtual-thread mode that {@code spring.threads.virtual.enabled} does not cover by itself.
+ *
+ * Boot already moves Tomcat, {@code @Scheduled} and the application task executor onto virtual threads.
+ * The AMQP listener factory is built by hand in {@link RabbitMQConfig}, so it checks the flag there;
+ * webhook delivery gets its own executor here, and the JDBC pool is fronted by
+ * {@link AdmissionControlledDataSource} so unbounded virtual threads queue in front of Hikari, not inside it.
+ */
+@Configuration
+@Slf4j
+public class VirtualThreadConfig {
+
+    /**
+     * Webhook delivery threads: virtual when the flag is on, otherwise the common ForkJoin pool that
+     * {@code CompletableFuture.supplyAsync} used before, so deployments without the flag behave as they did.
+     */
+    @Bean
+    public Executor webhookExecutor(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        if (virtualThreads) {
+            return new VirtualThreadTaskExecutor("webhook-");
+        }
+        return java.util.concurrent.ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Runs the per-subscriber senders of the live click stream; a blocked client holds one of these threads.
+     */
+    @Bean
+    public Executor liveStreamExecutor(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                                       @Value("${analytics.live.threads:8}") int threads) {
+        if (virtualThreads) {
+            return new VirtualThreadTaskExecutor("live-");
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(10_000);
+        executor.setThreadNamePrefix("live-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Bounded pool for the consolidated dashboard's panel fan-out; its threads are virtual when the flag is on.
+     * The caller's MDC (request id etc.) is carried over to each panel task.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor dashboardExecutor(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                                                    @Value("${analytics.dashboard.threads:16}") int threads,
+                                                    @Value("${analytics.dashboard.queueCapacity:256}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("dashboard-");
+        executor.setVirtualThreads(virtualThreads);
+        executor.setTaskDecorator(task -> {
+            java.util.Map<String, String> mdc = org.slf4j.MDC.getCopyOfContextMap();
+            return () -> {
+                if (mdc != null) org.slf4j.MDC.setContextMap(mdc);
+                try {
+                    task.run();
+                } finally {
+                    org.slf4j.MDC.clear();
+                }
+            };
+        });
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Small bounded pool for background analytics exports. Platform threads: each job holds a JDBC cursor for
+     * minutes, so the pool size, not the thread type, is what protects the database.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor exportExecutor(@Value("${analytics.exports.threads:2}") int threads,
+                                                 @Value("${analytics.exports.queueCapacity:20}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("export-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean
+    @ConditionalOnExpression("${db.admission.enabled:${spring.threads.virtual.enabled:false}}")
+    public static BeanPostProcessor dataSourceAdmissionPostProcessor(
+            @Value("${db.admission.permits:${spring.datasource.hikari.maximum-pool-size:20}}") int permits,
+            @Value("${db.admission.maxWaiting:500}") int maxWaiting,
+            @Value("${db.admission.timeoutMs:${spring.datasource.hikari.connection-timeout:2000}}") long timeoutMs) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+                if (bean instanceof DataSource ds && !(bean instanceof AdmissionControlledDataSource)) {
+                    log.info("DB admission control on '{}': {} permits, {} waiting, {}ms timeout", beanName, permits, maxWaiting, timeoutMs);
+                    return new AdmissionControlledDataSource(ds, permits, maxWaiting, timeoutMs);
+                }
+                return bean;
+            }
+        };
+    }
+}
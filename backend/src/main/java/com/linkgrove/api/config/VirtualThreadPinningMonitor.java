@@ -0,0 +1,77 @@
+package com.linkgrove.api.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Streams {@code jdk.VirtualThreadPinned} JFR events while virtual threads are on. A pinned virtual
+ * thread holds its carrier for the whole blocking call (typically {@code synchronized} inside a driver),
+ * so pinning counts and durations are exported and each distinct pinning site is logged once.
+ */
+@Component
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+@Slf4j
+public class VirtualThreadPinningMonitor {
+
+    private static final String EVENT = "jdk.VirtualThreadPinned";
+    private static final int MAX_LOGGED_SITES = 256;
+
+    @Value("${virtual-threads.pinning.thresholdMs:20}")
+    private long thresholdMs;
+
+    private final Set<String> loggedSites = ConcurrentHashMap.newKeySet();
+    private RecordingStream stream;
+
+    @PostConstruct
+    public void start() {
+        try {
+            stream = new RecordingStream();
+            stream.enable(EVENT).withThreshold(Duration.ofMillis(thresholdMs)).withStackTrace();
+            stream.onEvent(EVENT, this::onPinned);
+            stream.startAsync();
+            log.info("Virtual thread pinning monitor started (threshold {}ms)", thresholdMs);
+        } catch (Exception e) {
+            log.warn("Virtual thread pinning monitor unavailable: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (stream != null) stream.close();
+    }
+
+    private void onPinned(RecordedEvent event) {
+        io.micrometer.core.instrument.Metrics.timer("jvm.threads.virtual.pinned").record(event.getDuration());
+        String site = pinningSite(event);
+        if (loggedSites.size() < MAX_LOGGED_SITES && loggedSites.add(site)) {
+            log.warn("Virtual thread pinned for {}ms at {}", event.getDuration().toMillis(), site);
+        }
+    }
+
+    /**
+     * First frame outside the JDK, which is usually the driver or library method holding the monitor.
+     */
+    private static String pinningSite(RecordedEvent event) {
+        if (event.getStackTrace() == null) return "unknown";
+        String fallback = "unknown";
+        for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+            if (!frame.isJavaFrame()) continue;
+            String type = frame.getMethod().getType().getName();
+            String site = type + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+            if ("unknown".equals(fallback)) fallback = site;
+            if (!type.startsWith("java.") && !type.startsWith("jdk.") && !type.startsWith("sun.")) return site;
+        }
+        return fallback;
+    }
+}
@@ -16,6 +16,21 @@ public class AdminController {
 
     private final org.springframework.data.redis.core.StringRedisTemplate redisTemplate;
     private final WebhookDeliveryRepository webhookDeliveryRepository;
+    private final com.linkgrove.api.service.AnalyticsRollupService analyticsRollupService;
+    private final com.linkgrove.api.service.AnalyticsBackfillService analyticsBackfillService;
+    private final org.springframework.amqp.core.AmqpAdmin amqpAdmin;
+    private final com.linkgrove.api.service.ClickConsumerAutoscaler clickConsumerAutoscaler;
+    private final org.springframework.beans.factory.ObjectProvider<com.linkgrove.api.worker.ClickStreamConsumer> clickStreamConsumer;
+    private final com.linkgrove.api.service.ClickDlqReprocessor clickDlqReprocessor;
+
+    @org.springframework.beans.factory.annotation.Value("${analytics.partitions.enabled:false}")
+    private boolean clickPartitionsEnabled;
+
+    @org.springframework.beans.factory.annotation.Value("${analytics.partitions.count:8}")
+    private int clickPartitionCount;
+
+    @org.springframework.beans.factory.annotation.Value("${analytics.partitions.previousCount:0}")
+    private int clickPartitionPreviousCount;
 
     @GetMapping("/health")
     @PreAuthorize("hasRole('ADMIN')")
@@ -103,4 +118,158 @@ public class AdminController {
         out.put("last24h", last24h);
         return ResponseEntity.ok(out);
     }
+
+    /**
+     * Recompute the per-user daily rollups from the per-link aggregates, e.g. after deploying them
+     * onto existing data or after deleting links. Defaults to the last 90 days for every user.
+     */
+    @PostMapping("/analytics/rollups/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> rebuildAnalyticsRollups(
+            @RequestParam(required = false) @org.springframework.format.annotation.DateTimeFormat(iso = org.springframework.format.annotation.DateTimeFormat.ISO.DATE) java.time.LocalDate from,
+            @RequestParam(required = false) @org.springframework.format.annotation.DateTimeFormat(iso = org.springframework.format.annotation.DateTimeFormat.ISO.DATE) java.time.LocalDate to,
+            @RequestParam(required = false) String username) {
+        java.time.LocalDate end = to != null ? to : java.time.LocalDate.now(java.time.ZoneOffset.UTC);
+        java.time.LocalDate start = from != null ? from : end.minusDays(89);
+        if (java.time.temporal.ChronoUnit.DAYS.between(start, end) > 730) {
+            throw new IllegalArgumentException("Range too large (max 731 days)");
+        }
+        return ResponseEntity.ok(analyticsRollupService.rebuild(start, end, username));
+    }
+
+    /**
+     * Rebuild the per-link daily aggregates for closed days from the raw click store, e.g. after changing
+     * how clicks are classified. Runs in the background; poll the returned id. {@code force} rewrites days
+     * even when the store holds fewer clicks than the current aggregates.
+     */
+    @PostMapping("/analytics/backfill")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> startAnalyticsBackfill(
+            @RequestParam @org.springframework.format.annotation.DateTimeFormat(iso = org.springframework.format.annotation.DateTimeFormat.ISO.DATE) java.time.LocalDate from,
+            @RequestParam @org.springframework.format.annotation.DateTimeFormat(iso = org.springframework.format.annotation.DateTimeFormat.ISO.DATE) java.time.LocalDate to,
+            @RequestParam(required = false) String username,
+            @RequestParam(defaultValue = "false") boolean force) {
+        return ResponseEntity.accepted().body(analyticsBackfillService.start(from, to, username, force));
+    }
+
+    @GetMapping("/analytics/backfill/{id}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getAnalyticsBackfill(@PathVariable String id) {
+        return ResponseEntity.ok(analyticsBackfillService.status(id));
+    }
+
+    @PostMapping("/analytics/backfill/{id}/resume")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> resumeAnalyticsBackfill(@PathVariable String id) {
+        return ResponseEntity.accepted().body(analyticsBackfillService.resume(id));
+    }
+
+    @DeleteMapping("/analytics/backfill/{id}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> cancelAnalyticsBackfill(@PathVariable String id) {
+        return ResponseEntity.ok(analyticsBackfillService.cancel(id));
+    }
+
+    /**
+     * Current click listener settings, the signals behind them and the last scaling decision.
+     */
+    @GetMapping("/clicks/autoscale")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getClickAutoscale() {
+        return ResponseEntity.ok(clickConsumerAutoscaler.status());
+    }
+
+    /**
+     * Depth and consumers of each click partition queue. Retired partitions (past the current count) are
+     * listed unbound until they drain.
+     */
+    @GetMapping("/clicks/partitions")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getClickPartitions() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", clickPartitionsEnabled);
+        out.put("count", clickPartitionCount);
+        List<Map<String, Object>> partitions = new ArrayList<>();
+        if (clickPartitionsEnabled) {
+            for (int i = 0; i < Math.max(clickPartitionCount, clickPartitionPreviousCount); i++) {
+                String queue = com.linkgrove.api.config.ClickPartitionConfig.queueName(i);
+                Map<String, Object> p = new LinkedHashMap<>();
+                p.put("queue", queue);
+                p.put("bound", i < clickPartitionCount);
+                org.springframework.amqp.core.QueueInformation info = amqpAdmin.getQueueInfo(queue);
+                p.put("messages", info == null ? null : info.getMessageCount());
+                p.put("consumers", info == null ? null : info.getConsumerCount());
+                partitions.add(p);
+            }
+        }
+        out.put("partitions", partitions);
+        return ResponseEntity.ok(out);
+    }
+
+    /**
+     * Depth of the click DLQ and parking queue, and the latest reprocessing run if any.
+     */
+    @GetMapping("/clicks/dlq")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getClickDlq() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        for (String queue : List.of(com.linkgrove.api.config.RabbitMQConfig.LINK_CLICK_DLQ, com.linkgrove.api.config.RabbitMQConfig.LINK_CLICK_PARKING)) {
+            org.springframework.amqp.core.QueueInformation info = amqpAdmin.getQueueInfo(queue);
+            out.put(queue, info == null ? null : info.getMessageCount());
+        }
+        try {
+            out.put("latestRun", clickDlqReprocessor.latest());
+        } catch (IllegalArgumentException ignored) {
+            out.put("latestRun", null);
+        }
+        return ResponseEntity.ok(out);
+    }
+
+    /**
+     * Reprocess up to {@code max} dead-lettered clicks, re-publishing at most {@code rate} per second.
+     * Defaults to a dry run that only classifies them.
+     */
+    @PostMapping("/clicks/dlq/reprocess")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> reprocessClickDlq(
+            @RequestParam(defaultValue = "1000") int max,
+            @RequestParam(defaultValue = "100") int batchSize,
+            @RequestParam(defaultValue = "200") int rate,
+            @RequestParam(defaultValue = "true") boolean dryRun) {
+        return ResponseEntity.accepted().body(clickDlqReprocessor.start(max, batchSize, rate, dryRun));
+    }
+
+    @GetMapping("/clicks/dlq/reprocess/{id}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getClickDlqReprocess(@PathVariable String id) {
+        return ResponseEntity.ok(clickDlqReprocessor.status(id));
+    }
+
+    @DeleteMapping("/clicks/dlq/reprocess/{id}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> cancelClickDlqReprocess(@PathVariable String id) {
+        return ResponseEntity.ok(clickDlqReprocessor.cancel(id));
+    }
+
+    @GetMapping("/clicks/stream")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getClickStream() {
+        return ResponseEntity.ok(requireClickStream().status());
+    }
+
+    /**
+     * Rewind the click stream consumer so it reprocesses from {@code offset}. Those clicks are counted
+     * again, so replay only over aggregates that are being rebuilt or were never written.
+     */
+    @PostMapping("/clicks/stream/replay")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> replayClickStream(@RequestParam long offset) {
+        return ResponseEntity.accepted().body(requireClickStream().replay(offset));
+    }
+
+    private com.linkgrove.api.worker.ClickStreamConsumer requireClickStream() {
+        com.linkgrove.api.worker.ClickStreamConsumer consumer = clickStreamConsumer.getIfAvailable();
+        if (consumer == null) throw new IllegalArgumentException("Click stream transport is not enabled");
+        return consumer;
+    }
 }
@@ -1,19 +1,28 @@
 package com.linkgrove.api.controller;
 
+import com.linkgrove.api.dto.ExportJobRequest;
+import com.linkgrove.api.dto.ExportJobResponse;
+import com.linkgrove.api.model.ExportJob;
 import com.linkgrove.api.service.AnalyticsService;
+import com.linkgrove.api.service.ExportJobService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.validation.annotation.Validated;
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 
 import java.util.Map;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/analytics")
@@ -23,6 +32,40 @@ import java.util.stream.Collectors;
 public class AnalyticsController {
 
     private final AnalyticsService analyticsService;
+    private final com.linkgrove.api.service.DashboardService dashboardService;
+    private final ExportJobService exportJobService;
+    private final com.linkgrove.api.service.RealtimeAnalyticsService realtimeAnalytics;
+    private final com.linkgrove.api.service.LiveClickService liveClicks;
+
+    /**
+     * Several dashboard panels in one call, loaded concurrently.
+     * {@code panels} is a comma-separated subset of summary, timeseries, referrers, devices, countries,
+     * sources, variants, top-links (all when omitted).
+     */
+    @GetMapping("/dashboard")
+    public ResponseEntity<?> getDashboard(Authentication authentication,
+                                          @RequestParam(required = false) List<String> panels,
+                                          @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days,
+                                          @RequestParam(required = false) @Min(1) @Max(100) Integer top) {
+        String username = authentication.getName();
+        var requested = com.linkgrove.api.service.DashboardService.parsePanels(panels);
+        return ResponseEntity.ok(dashboardService.load(username, requested, days, top));
+    }
+
+    /**
+     * Same as {@link #getDashboard} but streams each panel as a server-sent event as soon as it is ready.
+     */
+    @GetMapping(value = "/dashboard", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public org.springframework.web.servlet.mvc.method.annotation.SseEmitter streamDashboard(Authentication authentication,
+                                          @RequestParam(required = false) List<String> panels,
+                                          @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days,
+                                          @RequestParam(required = false) @Min(1) @Max(100) Integer top) {
+        String username = authentication.getName();
+        var requested = com.linkgrove.api.service.DashboardService.parsePanels(panels);
+        var emitter = new org.springframework.web.servlet.mvc.method.annotation.SseEmitter(dashboardService.getTimeoutMs() + 5_000);
+        dashboardService.stream(username, requested, days, top, emitter);
+        return emitter;
+    }
 
     @GetMapping("/overview")
     public ResponseEntity<?> getAnalyticsOverview(Authentication authentication) {
@@ -69,32 +112,71 @@ public class AnalyticsController {
         return ResponseEntity.ok(timeseries);
     }
 
+    /**
+     * Clicks per minute over the last {@code minutes} minutes (up to the realtime window, 48h by default).
+     */
+    @GetMapping("/realtime")
+    public ResponseEntity<?> getRealtimeSeries(Authentication authentication,
+                                               @RequestParam(defaultValue = "60") @Min(1) @Max(2880) int minutes,
+                                               @RequestParam(required = false) @Min(1) Long linkId) {
+        String username = authentication.getName();
+        return ResponseEntity.ok(realtimeAnalytics.minuteSeries(username, linkId, minutes));
+    }
+
+    /**
+     * Server-sent {@code clicks} events with per-link click deltas, about once a second while clicks arrive.
+     */
+    @GetMapping(value = "/live", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public org.springframework.web.servlet.mvc.method.annotation.SseEmitter streamLiveClicks(Authentication authentication) {
+        return liveClicks.subscribe(authentication.getName());
+    }
+
+    @GetMapping("/hourly")
+    public ResponseEntity<?> getHourlySeries(Authentication authentication,
+                                             @RequestParam(defaultValue = "48") @Min(1) @Max(720) int hours,
+                                             @RequestParam(required = false) @Min(1) Long linkId) {
+        String username = authentication.getName();
+        return ResponseEntity.ok(realtimeAnalytics.hourlySeries(username, linkId, hours));
+    }
+
     @GetMapping("/referrers")
     public ResponseEntity<?> getReferrerBreakdown(Authentication authentication,
-                                                  @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days) {
+                                                  @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days,
+                                                  @RequestParam(required = false) @Min(1) @Max(100) Integer top) {
         String username = authentication.getName();
-        return ResponseEntity.ok(analyticsService.getReferrerBreakdown(username, days));
+        return ResponseEntity.ok(analyticsService.getReferrerBreakdown(username, days, top));
     }
 
     @GetMapping("/devices")
     public ResponseEntity<?> getDeviceBreakdown(Authentication authentication,
-                                                @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days) {
+                                                @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days,
+                                                @RequestParam(required = false) @Min(1) @Max(100) Integer top) {
+        String username = authentication.getName();
+        return ResponseEntity.ok(analyticsService.getDeviceBreakdown(username, days, top));
+    }
+
+    @GetMapping("/user-agents")
+    public ResponseEntity<?> getUserAgentBreakdown(Authentication authentication,
+                                                   @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days,
+                                                   @RequestParam(required = false) @Min(1) @Max(100) Integer top) {
         String username = authentication.getName();
-        return ResponseEntity.ok(analyticsService.getDeviceBreakdown(username, days));
+        return ResponseEntity.ok(analyticsService.getUserAgentBreakdown(username, days, top));
     }
 
     @GetMapping("/countries")
     public ResponseEntity<?> getCountryBreakdown(Authentication authentication,
-                                                 @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days) {
+                                                 @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days,
+                                                 @RequestParam(required = false) @Min(1) @Max(100) Integer top) {
         String username = authentication.getName();
-        return ResponseEntity.ok(analyticsService.getCountryBreakdown(username, days));
+        return ResponseEntity.ok(analyticsService.getCountryBreakdown(username, days, top));
     }
 
     @GetMapping("/sources")
     public ResponseEntity<?> getSourceBreakdown(Authentication authentication,
-                                                @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days) {
+                                                @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days,
+                                                @RequestParam(required = false) @Min(1) @Max(100) Integer top) {
         String username = authentication.getName();
-        return ResponseEntity.ok(analyticsService.getSourceBreakdown(username, days));
+        return ResponseEntity.ok(analyticsService.getSourceBreakdown(username, days, top));
     }
 
     @GetMapping("/sources/by-link")
@@ -106,70 +188,52 @@ public class AnalyticsController {
     }
 
     @GetMapping(value = "/export/countries", produces = "text/csv")
-    public ResponseEntity<String> exportCountriesCsv(Authentication authentication,
-                                                     @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days) {
+    public ResponseEntity<StreamingResponseBody> exportCountriesCsv(Authentication authentication,
+                                                                    HttpServletRequest request,
+                                                                    @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days,
+                                                                    @RequestParam(defaultValue = "false") boolean gzip) {
         String username = authentication.getName();
-        var data = analyticsService.getCountryBreakdown(username, days);
-        var rows = data.getCountries();
-        StringBuilder sb = new StringBuilder();
-        sb.append("country,clicks,uniqueVisitors\n");
-        if (rows != null) {
+        var rows = analyticsService.getCountryBreakdown(username, days).getCountries();
+        return CsvResponses.csv(request, gzip, "analytics_countries_" + days + "d_" + username + ".csv", csv -> {
+            csv.header("country", "clicks", "uniqueVisitors");
+            if (rows == null) return;
             for (var row : rows) {
-                String c = String.valueOf(row.getCountry());
-                String clicks = String.valueOf(row.getClicks());
-                String uniques = String.valueOf(row.getUniqueVisitors());
-                sb.append(escapeCsv(c)).append(',').append(clicks).append(',').append(uniques).append('\n');
+                csv.field(row.getCountry()).field(row.getClicks()).field(row.getUniqueVisitors()).endRow();
             }
-        }
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.valueOf("text/csv"));
-        headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=analytics_countries_" + days + "d_" + username + ".csv");
-        return ResponseEntity.ok().headers(headers).body(sb.toString());
+        });
     }
 
     @GetMapping(value = "/export/sources", produces = "text/csv")
-    public ResponseEntity<String> exportSourcesCsv(Authentication authentication,
-                                                   @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days) {
-        String username = authentication.getName();
-        var data = analyticsService.getSourceBreakdown(username, days);
-        var rows = data.getSources();
-        StringBuilder sb = new StringBuilder();
-        sb.append("source,clicks,uniqueVisitors\n");
-        if (rows != null) {
+    public ResponseEntity<StreamingResponseBody> exportSourcesCsv(Authentication authentication,
+                                                                  HttpServletRequest request,
+                                                                  @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days,
+                                                                  @RequestParam(defaultValue = "false") boolean gzip) {
+        String username = authentication.getName();
+        var rows = analyticsService.getSourceBreakdown(username, days).getSources();
+        return CsvResponses.csv(request, gzip, "analytics_sources_" + days + "d_" + username + ".csv", csv -> {
+            csv.header("source", "clicks", "uniqueVisitors");
+            if (rows == null) return;
             for (var row : rows) {
-                String s = String.valueOf(row.getSource());
-                String clicks = String.valueOf(row.getClicks());
-                String uniques = String.valueOf(row.getUniqueVisitors());
-                sb.append(escapeCsv(s)).append(',').append(clicks).append(',').append(uniques).append('\n');
+                csv.field(row.getSource()).field(row.getClicks()).field(row.getUniqueVisitors()).endRow();
             }
-        }
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.valueOf("text/csv"));
-        headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=analytics_sources_" + days + "d_" + username + ".csv");
-        return ResponseEntity.ok().headers(headers).body(sb.toString());
+        });
     }
 
     @GetMapping(value = "/export/sources/by-link", produces = "text/csv")
-    public ResponseEntity<String> exportSourcesByLinkCsv(Authentication authentication,
-                                                         @RequestParam @Min(1) Long linkId,
-                                                         @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days) {
-        String username = authentication.getName();
-        var data = analyticsService.getSourceBreakdownByLink(username, linkId, days);
-        var rows = data.getSources();
-        StringBuilder sb = new StringBuilder();
-        sb.append("source,clicks,uniqueVisitors\n");
-        if (rows != null) {
+    public ResponseEntity<StreamingResponseBody> exportSourcesByLinkCsv(Authentication authentication,
+                                                                        HttpServletRequest request,
+                                                                        @RequestParam @Min(1) Long linkId,
+                                                                        @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days,
+                                                                        @RequestParam(defaultValue = "false") boolean gzip) {
+        String username = authentication.getName();
+        var rows = analyticsService.getSourceBreakdownByLink(username, linkId, days).getSources();
+        return CsvResponses.csv(request, gzip, "analytics_sources_link_" + linkId + "_" + days + "d_" + username + ".csv", csv -> {
+            csv.header("source", "clicks", "uniqueVisitors");
+            if (rows == null) return;
             for (var row : rows) {
-                String s = String.valueOf(row.getSource());
-                String clicks = String.valueOf(row.getClicks());
-                String uniques = String.valueOf(row.getUniqueVisitors());
-                sb.append(escapeCsv(s)).append(',').append(clicks).append(',').append(uniques).append('\n');
+                csv.field(row.getSource()).field(row.getClicks()).field(row.getUniqueVisitors()).endRow();
             }
-        }
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.valueOf("text/csv"));
-        headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=analytics_sources_link_" + linkId + "_" + days + "d_" + username + ".csv");
-        return ResponseEntity.ok().headers(headers).body(sb.toString());
+        });
     }
 
     @GetMapping("/variants")
@@ -188,161 +252,169 @@ public class AnalyticsController {
     }
 
     @GetMapping(value = "/export/referrers", produces = "text/csv")
-    public ResponseEntity<String> exportReferrersCsv(Authentication authentication,
-                                                     @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days) {
+    public ResponseEntity<StreamingResponseBody> exportReferrersCsv(Authentication authentication,
+                                                                    HttpServletRequest request,
+                                                                    @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days,
+                                                                    @RequestParam(defaultValue = "false") boolean gzip) {
         String username = authentication.getName();
-        var data = analyticsService.getReferrerBreakdown(username, days);
-        var rows = data.getReferrers();
-        StringBuilder sb = new StringBuilder();
-        sb.append("referrerDomain,clicks,uniqueVisitors\n");
-        if (rows != null) {
+        var rows = analyticsService.getReferrerBreakdown(username, days).getReferrers();
+        return CsvResponses.csv(request, gzip, "analytics_referrers_" + days + "d_" + username + ".csv", csv -> {
+            csv.header("referrerDomain", "clicks", "uniqueVisitors");
+            if (rows == null) return;
             for (var row : rows) {
-                String ref = String.valueOf(row.getReferrerDomain());
-                String clicks = String.valueOf(row.getClicks());
-                String uniques = String.valueOf(row.getUniqueVisitors());
-                sb.append(escapeCsv(ref)).append(',').append(clicks).append(',').append(uniques).append('\n');
+                csv.field(row.getReferrerDomain()).field(row.getClicks()).field(row.getUniqueVisitors()).endRow();
             }
-        }
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.valueOf("text/csv"));
-        headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=analytics_referrers_" + days + "d_" + username + ".csv");
-        return ResponseEntity.ok().headers(headers).body(sb.toString());
+        });
     }
 
     @GetMapping(value = "/export/devices", produces = "text/csv")
-    public ResponseEntity<String> exportDevicesCsv(Authentication authentication,
-                                                   @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days) {
-        String username = authentication.getName();
-        var data = analyticsService.getDeviceBreakdown(username, days);
-        var rows = data.getDevices();
-        StringBuilder sb = new StringBuilder();
-        sb.append("deviceType,clicks,uniqueVisitors\n");
-        if (rows != null) {
+    public ResponseEntity<StreamingResponseBody> exportDevicesCsv(Authentication authentication,
+                                                                  HttpServletRequest request,
+                                                                  @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days,
+                                                                  @RequestParam(defaultValue = "false") boolean gzip) {
+        String username = authentication.getName();
+        var rows = analyticsService.getDeviceBreakdown(username, days).getDevices();
+        return CsvResponses.csv(request, gzip, "analytics_devices_" + days + "d_" + username + ".csv", csv -> {
+            csv.header("deviceType", "clicks", "uniqueVisitors");
+            if (rows == null) return;
             for (var row : rows) {
-                String dev = String.valueOf(row.getDeviceType());
-                String clicks = String.valueOf(row.getClicks());
-                String uniques = String.valueOf(row.getUniqueVisitors());
-                sb.append(escapeCsv(dev)).append(',').append(clicks).append(',').append(uniques).append('\n');
+                csv.field(row.getDeviceType()).field(row.getClicks()).field(row.getUniqueVisitors()).endRow();
             }
-        }
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.valueOf("text/csv"));
-        headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=analytics_devices_" + days + "d_" + username + ".csv");
-        return ResponseEntity.ok().headers(headers).body(sb.toString());
+        });
     }
 
     @GetMapping(value = "/export/timeseries", produces = "text/csv")
-    public ResponseEntity<String> exportTimeseriesCsv(Authentication authentication,
-                                                      @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days) {
+    public ResponseEntity<StreamingResponseBody> exportTimeseriesCsv(Authentication authentication,
+                                                                     HttpServletRequest request,
+                                                                     @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days,
+                                                                     @RequestParam(defaultValue = "false") boolean gzip) {
         String username = authentication.getName();
         Map<String, Object> data = analyticsService.getTimeseriesData(username, days);
         @SuppressWarnings("unchecked")
         List<Map<String, Object>> rows = (List<Map<String, Object>>) data.get("timeseriesData");
-        StringBuilder sb = new StringBuilder();
-        sb.append("date,clicks,uniqueVisitors\n");
-        if (rows != null) {
+        return CsvResponses.csv(request, gzip, "analytics_timeseries_" + days + "d_" + username + ".csv", csv -> {
+            csv.header("date", "clicks", "uniqueVisitors");
+            if (rows == null) return;
             for (Map<String, Object> row : rows) {
-                String date = String.valueOf(row.getOrDefault("date", ""));
-                String clicks = String.valueOf(row.getOrDefault("clicks", 0));
-                String uniques = String.valueOf(row.getOrDefault("uniqueVisitors", 0));
-                sb.append(escapeCsv(date)).append(',')
-                  .append(clicks).append(',')
-                  .append(uniques).append('\n');
+                csv.field(row.getOrDefault("date", ""))
+                   .field(row.getOrDefault("clicks", 0))
+                   .field(row.getOrDefault("uniqueVisitors", 0))
+                   .endRow();
             }
-        }
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.valueOf("text/csv"));
-        headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=analytics_timeseries_" + days + "d_" + username + ".csv");
-        return ResponseEntity.ok().headers(headers).body(sb.toString());
+        });
     }
 
     @GetMapping(value = "/export/top-links", produces = "text/csv")
-    public ResponseEntity<String> exportTopLinksCsv(Authentication authentication,
-                                                    @RequestParam(defaultValue = "5") @Min(1) @Max(1000) int limit) {
+    public ResponseEntity<StreamingResponseBody> exportTopLinksCsv(Authentication authentication,
+                                                                   HttpServletRequest request,
+                                                                   @RequestParam(defaultValue = "5") @Min(1) @Max(1000) int limit,
+                                                                   @RequestParam(defaultValue = "false") boolean gzip) {
         String username = authentication.getName();
         Map<String, Object> top = analyticsService.getTopPerformingLinks(username);
         @SuppressWarnings("unchecked")
         List<Map<String, Object>> links = (List<Map<String, Object>>) top.get("topLinks");
-
-        String header = "id,title,url,clickCount,displayOrder\n";
-        String body = (links == null ? List.<Map<String,Object>>of() : links).stream()
-                .limit(Math.max(0, limit))
-                .map(link -> String.join(",",
-                        String.valueOf(link.getOrDefault("id", "")),
-                        escapeCsv(String.valueOf(link.getOrDefault("title", ""))),
-                        escapeCsv(String.valueOf(link.getOrDefault("url", ""))),
-                        String.valueOf(link.getOrDefault("clickCount", 0)),
-                        String.valueOf(link.getOrDefault("displayOrder", ""))
-                ))
-                .collect(Collectors.joining("\n"));
-
-        String csv = header + body + (body.isEmpty() ? "" : "\n");
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.valueOf("text/csv"));
-        headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=analytics_top_links_" + username + ".csv");
-        return ResponseEntity.ok().headers(headers).body(csv);
+        return CsvResponses.csv(request, gzip, "analytics_top_links_" + username + ".csv", csv -> {
+            csv.header("id", "title", "url", "clickCount", "displayOrder");
+            if (links == null) return;
+            for (Map<String, Object> link : links.subList(0, Math.min(limit, links.size()))) {
+                csv.field(link.getOrDefault("id", ""))
+                   .field(link.getOrDefault("title", ""))
+                   .field(link.getOrDefault("url", ""))
+                   .field(link.getOrDefault("clickCount", 0))
+                   .field(link.getOrDefault("displayOrder", ""))
+                   .endRow();
+            }
+        });
     }
 
     @GetMapping(value = "/export/timeseries/by-link", produces = "text/csv")
-    public ResponseEntity<String> exportTimeseriesByLinkCsv(Authentication authentication,
-                                                            @RequestParam @Min(1) Long linkId,
-                                                            @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days) {
+    public ResponseEntity<StreamingResponseBody> exportTimeseriesByLinkCsv(Authentication authentication,
+                                                                           HttpServletRequest request,
+                                                                           @RequestParam @Min(1) Long linkId,
+                                                                           @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days,
+                                                                           @RequestParam(defaultValue = "false") boolean gzip) {
         String username = authentication.getName();
         Map<String, Object> data = analyticsService.getLinkTimeseriesData(username, linkId, days);
         @SuppressWarnings("unchecked")
         List<Map<String, Object>> rows = (List<Map<String, Object>>) data.get("timeseriesData");
-        StringBuilder sb = new StringBuilder();
-        sb.append("date,clicks,uniqueVisitors\n");
-        if (rows != null) {
+        return CsvResponses.csv(request, gzip, "analytics_link_" + linkId + "_timeseries_" + days + "d_" + username + ".csv", csv -> {
+            csv.header("date", "clicks", "uniqueVisitors");
+            if (rows == null) return;
             for (Map<String, Object> row : rows) {
-                String date = String.valueOf(row.getOrDefault("date", ""));
-                String clicks = String.valueOf(row.getOrDefault("clicks", 0));
-                String uniques = String.valueOf(row.getOrDefault("uniqueVisitors", 0));
-                sb.append(escapeCsv(date)).append(',')
-                  .append(clicks).append(',')
-                  .append(uniques).append('\n');
+                csv.field(row.getOrDefault("date", ""))
+                   .field(row.getOrDefault("clicks", 0))
+                   .field(row.getOrDefault("uniqueVisitors", 0))
+                   .endRow();
             }
-        }
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.valueOf("text/csv"));
-        headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=analytics_link_" + linkId + "_timeseries_" + days + "d_" + username + ".csv");
-        return ResponseEntity.ok().headers(headers).body(sb.toString());
+        });
     }
 
     @GetMapping(value = "/export/variants/by-link", produces = "text/csv")
-    public ResponseEntity<String> exportVariantsByLinkCsv(Authentication authentication,
-                                                          @RequestParam @Min(1) Long linkId,
-                                                          @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days) {
+    public ResponseEntity<StreamingResponseBody> exportVariantsByLinkCsv(Authentication authentication,
+                                                                         HttpServletRequest request,
+                                                                         @RequestParam @Min(1) Long linkId,
+                                                                         @RequestParam(defaultValue = "7") @Min(1) @Max(365) int days,
+                                                                         @RequestParam(defaultValue = "false") boolean gzip) {
         String username = authentication.getName();
         Map<String, Object> data = analyticsService.getVariantBreakdownByLink(username, linkId, days);
         @SuppressWarnings("unchecked")
         List<Map<String, Object>> rows = (List<Map<String, Object>>) data.get("variants");
-        StringBuilder sb = new StringBuilder();
-        sb.append("variantId,variantTitle,clicks,uniqueVisitors\n");
-        if (rows != null) {
+        return CsvResponses.csv(request, gzip, "analytics_link_" + linkId + "_variants_" + days + "d_" + username + ".csv", csv -> {
+            csv.header("variantId", "variantTitle", "clicks", "uniqueVisitors");
+            if (rows == null) return;
             for (Map<String, Object> row : rows) {
-                String id = String.valueOf(row.getOrDefault("variantId", ""));
-                String title = String.valueOf(row.getOrDefault("variantTitle", ""));
-                String clicks = String.valueOf(row.getOrDefault("clicks", 0));
-                String uniques = String.valueOf(row.getOrDefault("uniqueVisitors", 0));
-                sb.append(id).append(',')
-                  .append(escapeCsv(title)).append(',')
-                  .append(clicks).append(',')
-                  .append(uniques).append('\n');
+                csv.field(row.getOrDefault("variantId", ""))
+                   .field(row.getOrDefault("variantTitle", ""))
+                   .field(row.getOrDefault("clicks", 0))
+                   .field(row.getOrDefault("uniqueVisitors", 0))
+                   .endRow();
             }
-        }
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.valueOf("text/csv"));
-        headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=analytics_link_" + linkId + "_variants_" + days + "d_" + username + ".csv");
-        return ResponseEntity.ok().headers(headers).body(sb.toString());
-    }
-
-    private static String escapeCsv(String value) {
-        if (value == null) return "";
-        boolean needsQuotes = value.contains(",") || value.contains("\n") || value.contains("\"");
-        String escaped = value.replace("\"", "\"\"");
-        return needsQuotes ? '"' + escaped + '"' : escaped;
+        });
+    }
+
+    /**
+     * Queue a background export; poll {@code GET /exports/{id}} until it has succeeded, then download it.
+     */
+    @PostMapping("/exports")
+    public ResponseEntity<ExportJobResponse> submitExport(Authentication authentication,
+                                                          @Valid @RequestBody ExportJobRequest request) {
+        String username = authentication.getName();
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(exportJobService.submit(username, request));
+    }
+
+    @GetMapping("/exports")
+    public ResponseEntity<List<ExportJobResponse>> listExports(Authentication authentication) {
+        String username = authentication.getName();
+        return ResponseEntity.ok(exportJobService.list(username));
+    }
+
+    @GetMapping("/exports/{jobId}")
+    public ResponseEntity<ExportJobResponse> getExport(Authentication authentication, @PathVariable String jobId) {
+        String username = authentication.getName();
+        return exportJobService.get(username, jobId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/exports/{jobId}/download")
+    public ResponseEntity<Resource> downloadExport(Authentication authentication, @PathVariable String jobId) {
+        String username = authentication.getName();
+        ExportJob job = exportJobService.find(username, jobId).orElse(null);
+        if (job == null) return ResponseEntity.notFound().build();
+        if (job.getStatus() != ExportJob.Status.SUCCEEDED) return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        return exportJobService.artifact(job)
+                .map(path -> ResponseEntity.ok()
+                        .contentType(MediaType.valueOf("application/gzip"))
+                        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + exportJobService.downloadName(job))
+                        .<Resource>body(new FileSystemResource(path)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @DeleteMapping("/exports/{jobId}")
+    public ResponseEntity<Void> deleteExport(Authentication authentication, @PathVariable String jobId) {
+        String username = authentication.getName();
+        return exportJobService.cancelOrDelete(username, jobId)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
     }
 }
@@ -0,0 +1,47 @@
+package com.linkgrove.api.controller;
+
+import com.linkgrove.api.util.CsvWriter;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+
+/**
+ * Streaming CSV downloads shared by the export endpoints.
+ *
+ * {@code ?gzip=true} downloads a {@code .csv.gz} file; otherwise clients that send
+ * {@code Accept-Encoding: gzip} get the CSV gzip-encoded on the wire.
+ */
+final class CsvResponses {
+
+    @FunctionalInterface
+    interface Body {
+        void write(CsvWriter csv) throws IOException;
+    }
+
+    private CsvResponses() {}
+
+    static ResponseEntity<StreamingResponseBody> csv(HttpServletRequest request, boolean gzipFile, String filename, Body body) {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        boolean gzipEncoding = !gzipFile && acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+        HttpHeaders headers = new HttpHeaders();
+        if (gzipFile) {
+            headers.setContentType(MediaType.valueOf("application/gzip"));
+            headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename + ".gz");
+        } else {
+            headers.setContentType(MediaType.valueOf("text/csv"));
+            headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename);
+            if (gzipEncoding) headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        StreamingResponseBody stream = out -> {
+            try (CsvWriter csv = CsvWriter.open(out, gzipFile || gzipEncoding)) {
+                body.write(csv);
+            }
+        };
+        return ResponseEntity.ok().headers(headers).body(stream);
+    }
+}
@@ -1,7 +1,9 @@
 package com.linkgrove.api.controller;
 
 import com.linkgrove.api.dto.*;
+import com.linkgrove.api.service.LinkExportService;
 import com.linkgrove.api.service.LinkService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import com.linkgrove.api.dto.LinkVariantRequest;
@@ -13,6 +15,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -24,6 +27,7 @@ public class LinkController {
 
     private final LinkService linkService;
     private final com.linkgrove.api.service.LinkVariantService linkVariantService;
+    private final LinkExportService linkExportService;
 
     @PostMapping
     public ResponseEntity<LinkResponse> createLink(
@@ -61,43 +65,17 @@ public class LinkController {
     }
 
     @GetMapping(value = "/export", produces = "text/csv")
-    public ResponseEntity<String> exportLinksCsv(Authentication authentication,
-                                                 @RequestParam(required = false) String q,
-                                                 @RequestParam(required = false) List<String> tags,
-                                                 @RequestParam(required = false, defaultValue = "order") String sort,
-                                                 @RequestParam(required = false, defaultValue = "all") String status) {
-        String username = authentication.getName();
-        org.springframework.data.domain.Sort springSort = mapSort(sort);
+    public ResponseEntity<StreamingResponseBody> exportLinksCsv(Authentication authentication,
+                                                                HttpServletRequest request,
+                                                                @RequestParam(required = false) String q,
+                                                                @RequestParam(required = false) List<String> tags,
+                                                                @RequestParam(required = false, defaultValue = "order") String sort,
+                                                                @RequestParam(required = false, defaultValue = "all") String status,
+                                                                @RequestParam(defaultValue = "false") boolean gzip) {
+        Long userId = linkExportService.resolveUserId(authentication.getName());
         Boolean active = mapStatus(status);
-        Pageable pageable = PageRequest.of(0, 1000, springSort);
-        Page<LinkResponse> page;
-        if (q != null && !q.isBlank()) {
-            page = linkService.searchUserLinks(username, q.trim(), tags, active, pageable);
-        } else {
-            page = linkService.getUserLinksPage(username, tags, active, pageable);
-        }
-
-        StringBuilder sb = new StringBuilder();
-        sb.append("id,title,url,description,alias,tags,isActive,displayOrder,clickCount,createdAt,updatedAt\n");
-        for (LinkResponse l : page.getContent()) {
-            String tagStr = l.getTags() != null ? String.join("|", l.getTags()) : "";
-            sb.append(String.format("%d,%s,%s,%s,%s,%s,%s,%d,%d,%s,%s\n",
-                    l.getId(),
-                    escapeCsv(l.getTitle()),
-                    escapeCsv(l.getUrl()),
-                    escapeCsv(l.getDescription()),
-                    escapeCsv(l.getAlias()),
-                    escapeCsv(tagStr),
-                    String.valueOf(l.getIsActive()),
-                    l.getDisplayOrder(),
-                    l.getClickCount(),
-                    l.getCreatedAt() != null ? l.getCreatedAt().toString() : "",
-                    l.getUpdatedAt() != null ? l.getUpdatedAt().toString() : ""
-            ));
-        }
-        return ResponseEntity.ok()
-                .header("Content-Disposition", "attachment; filename=links.csv")
-                .body(sb.toString());
+        return CsvResponses.csv(request, gzip, "links.csv",
+                csv -> linkExportService.writeLinks(csv, userId, q, tags, active, sort));
     }
 
     private org.springframework.data.domain.Sort mapSort(String sort) {
@@ -121,15 +99,6 @@ public class LinkController {
         return null;
     }
 
-    private String escapeCsv(String val) {
-        if (val == null) return "";
-        String v = val.replace("\"", "\"\"");
-        if (v.contains(",") || v.contains("\n") || v.contains("\"")) {
-            return "\"" + v + "\"";
-        }
-        return v;
-    }
-
     @GetMapping("/{linkId}")
     public ResponseEntity<LinkResponse> getLinkById(
             Authentication authentication,
@@ -12,7 +12,8 @@ import jakarta.servlet.http.HttpServletRequest;
 import java.net.URI;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
+
+import static com.linkgrove.api.util.QrParams.*;
 
 /**
  * High-performance redirect controller for link clicks.
@@ -28,6 +29,7 @@ public class RedirectController {
     private final LinkRedirectService linkRedirectService;
     private final com.linkgrove.api.service.RateLimitService rateLimitService;
     private final com.linkgrove.api.service.QrCodeService qrCodeService;
+    private final com.linkgrove.api.service.LinkExistenceFilter linkExistenceFilter;
 
     /**
      * Redirect endpoint that handles link clicks with lightning-fast performance.
@@ -50,6 +52,7 @@ public class RedirectController {
         int limit = 300;
         java.time.Duration window = java.time.Duration.ofMinutes(1);
         var rl = rateLimitService.checkAndUpdate("redir:" + clientIp, limit, window);
+        linkExistenceFilter.checkId(linkId);
         String targetUrl = linkRedirectService.getRedirectUrl(linkId);
         
         // Publish click event asynchronously (fire-and-forget)
@@ -85,6 +88,7 @@ public class RedirectController {
         int limit = 300;
         java.time.Duration window = java.time.Duration.ofMinutes(1);
         var rl = rateLimitService.checkAndUpdate("redir:" + clientIp, limit, window);
+        linkExistenceFilter.checkAlias(alias);
         var resolved = linkRedirectService.getLinkByAlias(alias);
         String targetUrl = resolved.getUrl();
 
@@ -115,6 +119,7 @@ public class RedirectController {
      */
     @GetMapping("/{linkId}/preview")
     public ResponseEntity<?> previewLink(@PathVariable Long linkId) {
+        linkExistenceFilter.checkId(linkId);
         var preview = linkRedirectService.getLinkPreview(linkId);
         return ResponseEntity.ok(preview);
     }
@@ -465,63 +470,6 @@ public class RedirectController {
         return (a != null && !a.isBlank()) ? a : b;
     }
 
-    private int clamp(int v, int min, int max) {
-        return Math.max(min, Math.min(max, v));
-    }
-
-    private String maybeAppendUtm(String url, String utm) {
-        if (utm == null || utm.isBlank()) return url;
-        try {
-            java.net.URI uri = java.net.URI.create(url);
-            String q = uri.getQuery();
-            String extra = "utm_medium=qr&utm_source=linkgrove&src=qr";
-            String newQuery = (q == null || q.isBlank()) ? extra : (q + "&" + extra);
-            return new java.net.URI(uri.getScheme(), uri.getAuthority(), uri.getPath(), newQuery, uri.getFragment()).toString();
-        } catch (Exception e) {
-            return url;
-        }
-    }
-
-    private Integer parseHexColor(String hex) {
-        if (hex == null || hex.isBlank()) return null;
-        String s = hex.trim();
-        if (s.startsWith("#")) s = s.substring(1);
-        try {
-            int rgb = (int) Long.parseLong(s, 16);
-            return 0xFF000000 | rgb; // add opaque alpha
-        } catch (Exception e) {
-            return null;
-        }
-    }
-
-    private ErrorCorrectionLevel parseEcc(String ecc) {
-        if (ecc == null) return ErrorCorrectionLevel.M;
-        String v = ecc.trim().toUpperCase();
-        return switch (v) {
-            case "L" -> ErrorCorrectionLevel.L;
-            case "M" -> ErrorCorrectionLevel.M;
-            case "Q" -> ErrorCorrectionLevel.Q;
-            case "H" -> ErrorCorrectionLevel.H;
-            default -> ErrorCorrectionLevel.M;
-        };
-    }
-
-    private String computeEtag(byte[] data) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] digest = md.digest(data);
-            StringBuilder sb = new StringBuilder(2 + digest.length * 2);
-            for (byte b : digest) {
-                sb.append(String.format("%02x", b));
-            }
-            // Strong ETag with quotes
-            return '"' + sb.toString() + '"';
-        } catch (Exception e) {
-            // Fallback weak ETag
-            return '"' + Integer.toHexString(java.util.Arrays.hashCode(data)) + '"';
-        }
-    }
-
     @SuppressWarnings("unused")
     private boolean hasSufficientContrast(Integer fgArgb, Integer bgArgb) {
         if (fgArgb == null && bgArgb == null) return true; // no custom colors provided
@@ -530,51 +478,6 @@ public class RedirectController {
         return contrastRatio(fgEff, bgEff) >= 2.5; // align with service threshold
     }
 
-    private void validateContrastOrThrow(Integer fgArgb, Integer bgArgb) {
-        if (fgArgb == null && bgArgb == null) return; // nothing to validate
-        int fgEff = (fgArgb != null ? fgArgb : 0xFF000000);
-        int bgEff = (bgArgb != null ? bgArgb : 0xFFFFFFFF);
-        double c = contrastRatio(fgEff, bgEff);
-        if (c < 2.5) {
-            String msg = String.format("Insufficient contrast between fg and bg (ratio %.2f). Provide higher contrast (>= 2.5) using dark fg and light bg.", c);
-            throw new IllegalArgumentException(msg);
-        }
-    }
-
-    private double contrastRatio(int argb1, int argb2) {
-        double l1 = relativeLuminance(argb1);
-        double l2 = relativeLuminance(argb2);
-        double lighter = Math.max(l1, l2);
-        double darker = Math.min(l1, l2);
-        return (lighter + 0.05) / (darker + 0.05);
-    }
-
-    private double relativeLuminance(int argb) {
-        int r = (argb >> 16) & 0xFF;
-        int g = (argb >> 8) & 0xFF;
-        int b = argb & 0xFF;
-        double rs = srgbToLinear(r / 255.0);
-        double gs = srgbToLinear(g / 255.0);
-        double bs = srgbToLinear(b / 255.0);
-        return 0.2126 * rs + 0.7152 * gs + 0.0722 * bs;
-    }
-
-    private double srgbToLinear(double c) {
-        return (c <= 0.03928) ? (c / 12.92) : Math.pow((c + 0.055) / 1.055, 2.4);
-    }
-
-    private boolean isAllowedLogoUrl(String url) {
-        try {
-            java.net.URI uri = java.net.URI.create(url);
-            java.net.URL u = uri.toURL();
-            if (!"https".equalsIgnoreCase(u.getProtocol())) return false;
-            String p = u.getPath().toLowerCase();
-            return p.endsWith(".png") || p.endsWith(".jpg") || p.endsWith(".jpeg");
-        } catch (Exception e) {
-            return false;
-        }
-    }
-
     // Kept for potential future use (JSON body from within controller)
     @SuppressWarnings("unused")
     private ResponseEntity<byte[]> badRequestJson(String message) {
@@ -10,7 +10,7 @@ import lombok.Data;
 public class CountryStat {
     private String country;
     private long clicks;
-    private long uniqueVisitors;
+    private Long uniqueVisitors;
 }
 
 
@@ -10,7 +10,7 @@ import lombok.NoArgsConstructor;
 public class DeviceStat {
     private String deviceType;
     private long clicks;
-    private long uniqueVisitors;
+    private Long uniqueVisitors;
 }
 
 
@@ -0,0 +1,31 @@
+package com.linkgrove.api.dto;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Request DTO for a background analytics export.
+ * {@code dimensions} is a subset of clicks, referrer, device, country, source, variant (all when empty);
+ * {@code linkIds} narrows the export to some links (all of the user's links when empty).
+ */
+@Data
+public class ExportJobRequest {
+
+    @NotNull(message = "from is required")
+    private LocalDate from;
+
+    @NotNull(message = "to is required")
+    private LocalDate to;
+
+    @Size(max = 6, message = "At most 6 dimensions")
+    private List<String> dimensions;
+
+    @Size(max = 1000, message = "At most 1000 links per export")
+    private List<Long> linkIds;
+
+    private String format; // csv (default) or jsonl
+}
@@ -10,7 +10,7 @@ import lombok.NoArgsConstructor;
 public class ReferrerStat {
     private String referrerDomain;
     private long clicks;
-    private long uniqueVisitors;
+    private Long uniqueVisitors;
 }
 
 
@@ -10,7 +10,7 @@ import lombok.Data;
 public class SourceStat {
     private String source;
     private long clicks;
-    private long uniqueVisitors;
+    private Long uniqueVisitors;
 }
 
 
@@ -0,0 +1,14 @@
+package com.linkgrove.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserAgentStat {
+    private String name;
+    private long clicks;
+    private Long uniqueVisitors;
+}
@@ -0,0 +1,18 @@
+package com.linkgrove.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserAgentsResponse {
+    private String username;
+    private String period;
+    private List<UserAgentStat> browsers;
+    private List<UserAgentStat> operatingSystems;
+    private List<UserAgentStat> bots;
+}
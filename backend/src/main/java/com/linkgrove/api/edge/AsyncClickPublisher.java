@@ -0,0 +1,82 @@
+package com.linkgrove.api.edge;
+
+import com.linkgrove.api.event.LinkClickEvent;
+import com.linkgrove.api.service.LinkRedirectService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands click events off the event loop. Redirect handlers only {@link #submit} into a bounded
+ * queue; a few dedicated threads resolve the owner (cached) and publish to RabbitMQ.
+ * When the queue is full the click is dropped and counted rather than slowing the redirect.
+ */
+@Slf4j
+class AsyncClickPublisher {
+
+    private final LinkRedirectService linkRedirectService;
+    private final BlockingQueue<LinkClickEvent> queue;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+
+    AsyncClickPublisher(LinkRedirectService linkRedirectService, int capacity, int threads) {
+        this.linkRedirectService = linkRedirectService;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread(this::drain, "edge-click-publisher-" + i);
+            t.setDaemon(true);
+            workers.add(t);
+        }
+        io.micrometer.core.instrument.Gauge.builder("redirect.edge.publish.queue", queue, BlockingQueue::size)
+                .register(io.micrometer.core.instrument.Metrics.globalRegistry);
+    }
+
+    void start() {
+        running = true;
+        workers.forEach(Thread::start);
+    }
+
+    void stop() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+        // Flush whatever is left on the caller's thread
+        LinkClickEvent event;
+        while ((event = queue.poll()) != null) {
+            publish(event);
+        }
+    }
+
+    void submit(LinkClickEvent event) {
+        if (!queue.offer(event)) {
+            io.micrometer.core.instrument.Metrics.counter("redirect.edge.clicks.dropped").increment();
+        }
+    }
+
+    private void drain() {
+        while (running) {
+            try {
+                LinkClickEvent event = queue.poll(1, TimeUnit.SECONDS);
+                if (event != null) publish(event);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void publish(LinkClickEvent event) {
+        try {
+            if (event.getUsername() == null) {
+                event.setUsername(linkRedirectService.getLinkOwnerUsername(event.getLinkId()));
+            }
+            linkRedirectService.publishClickEvent(event);
+        } catch (Exception e) {
+            // Don't let analytics failures affect redirects
+            log.error("Failed to publish click event for link {}: {}", event.getLinkId(), e.getMessage());
+        }
+    }
+}
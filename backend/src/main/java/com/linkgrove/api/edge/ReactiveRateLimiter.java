@@ -0,0 +1,41 @@
+package com.linkgrove.api.edge;
+
+import com.linkgrove.api.exception.RateLimitExceededException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Non-blocking twin of the sliding window in {@code RateLimitingConfig}. Uses the same
+ * {@code rl:ip:<ip>:<prefix>} keys, so traffic split between Tomcat and the edge shares one budget.
+ */
+class ReactiveRateLimiter {
+
+    private final ReactiveStringRedisTemplate redis;
+
+    ReactiveRateLimiter(ReactiveStringRedisTemplate redis) {
+        this.redis = redis;
+    }
+
+    /**
+     * @return remaining budget after this request, or an error signal of {@link RateLimitExceededException}
+     */
+    Mono<Long> acquire(String clientIp, String prefix, int windowSeconds, int maxRequests) {
+        long nowMs = System.currentTimeMillis();
+        String key = "rl:ip:" + clientIp + ":" + prefix;
+        double cutoff = nowMs - windowSeconds * 1000L;
+        var ops = redis.opsForZSet();
+        return ops.removeRangeByScore(key, Range.closed(0d, cutoff))
+                .then(ops.size(key))
+                .flatMap(current -> {
+                    if (current >= maxRequests) {
+                        return Mono.error(new RateLimitExceededException("Too many requests", windowSeconds));
+                    }
+                    return ops.add(key, String.valueOf(nowMs), nowMs)
+                            .then(redis.expire(key, Duration.ofSeconds(windowSeconds + 5)))
+                            .thenReturn(Math.max(0, maxRequests - current - 1));
+                });
+    }
+}
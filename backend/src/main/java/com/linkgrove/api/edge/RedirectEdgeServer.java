@@ -0,0 +1,366 @@
+package com.linkgrove.api.edge;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.linkgrove.api.config.CacheConfig;
+import com.linkgrove.api.config.RateLimitingConfig;
+import com.linkgrove.api.config.RequestIdFilter;
+import com.linkgrove.api.dto.LinkAliasResolve;
+import com.linkgrove.api.event.LinkClickEvent;
+import com.linkgrove.api.exception.ErrorResponse;
+import com.linkgrove.api.exception.LinkNotFoundException;
+import com.linkgrove.api.exception.RateLimitExceededException;
+import com.linkgrove.api.service.LinkExistenceFilter;
+import com.linkgrove.api.service.LinkRedirectService;
+import com.linkgrove.api.service.QrCodeService;
+import com.linkgrove.api.util.RequestContext;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static com.linkgrove.api.util.QrParams.*;
+
+/**
+ * Optional Reactor Netty server for the redirect tier. Serves only {@code /r/{id}}, {@code /r/a/{alias}}
+ * and their QR images on a separate port, so an edge deployment can route {@code /r/**} here
+ * while Tomcat keeps the API.
+ *
+ * Lookups read the {@code linkRedirects} / {@code linkAliasResolveV1} cache entries with Lettuce reactive
+ * and only fall back to the blocking service (which also fills the cache) on a bounded elastic
+ * scheduler. Rate limiting uses the same Redis windows as the servlet tier, and click events go
+ * through {@link AsyncClickPublisher} so the event loop never waits on RabbitMQ.
+ */
+@Component
+@ConditionalOnProperty(name = "redirect.edge.enabled", havingValue = "true")
+@Slf4j
+public class RedirectEdgeServer implements SmartLifecycle {
+
+    private static final String REDIRECT_CACHE_PREFIX = "linkgrove:linkRedirects::";
+    private static final String ALIAS_CACHE_PREFIX = "linkgrove:linkAliasResolveV1::";
+    private static final String QR_CACHE_CONTROL = "public, max-age=86400, immutable";
+
+    private final LinkRedirectService linkRedirectService;
+    private final LinkExistenceFilter linkExistenceFilter;
+    private final QrCodeService qrCodeService;
+    private final ObjectMapper objectMapper;
+    private final ReactiveRedisTemplate<String, Object> cacheReader;
+    private final ReactiveRateLimiter rateLimiter;
+    private final AsyncClickPublisher clickPublisher;
+
+    @Value("${redirect.edge.host:0.0.0.0}")
+    private String host;
+
+    @Value("${redirect.edge.port:8081}")
+    private int port;
+
+    @Value("${redirect.edge.idleTimeoutSeconds:75}")
+    private long idleTimeoutSeconds;
+
+    @Value("${ratelimit.qr.windowSeconds:60}")
+    private int qrWindowSeconds;
+
+    @Value("${ratelimit.qr.maxRequests:60}")
+    private int qrMaxRequests;
+
+    private volatile DisposableServer server;
+
+    public RedirectEdgeServer(LinkRedirectService linkRedirectService,
+                              LinkExistenceFilter linkExistenceFilter,
+                              QrCodeService qrCodeService,
+                              ObjectMapper objectMapper,
+                              ReactiveRedisConnectionFactory connectionFactory,
+                              @Value("${redirect.edge.publisher.queueCapacity:100000}") int queueCapacity,
+                              @Value("${redirect.edge.publisher.threads:2}") int publisherThreads) {
+        this.linkRedirectService = linkRedirectService;
+        this.linkExistenceFilter = linkExistenceFilter;
+        this.qrCodeService = qrCodeService;
+        this.objectMapper = objectMapper;
+        this.cacheReader = new ReactiveRedisTemplate<>(connectionFactory,
+                RedisSerializationContext.<String, Object>newSerializationContext(new StringRedisSerializer())
+                        .value(CacheConfig.cacheValueSerializer())
+                        .build());
+        this.rateLimiter = new ReactiveRateLimiter(new ReactiveStringRedisTemplate(connectionFactory));
+        this.clickPublisher = new AsyncClickPublisher(linkRedirectService, queueCapacity, publisherThreads);
+    }
+
+    @Override
+    public void start() {
+        clickPublisher.start();
+        server = HttpServer.create()
+                .host(host)
+                .port(port)
+                .idleTimeout(Duration.ofSeconds(idleTimeoutSeconds))
+                .handle(this::handle)
+                .bindNow();
+        log.info("Redirect edge listening on {}:{}", host, server.port());
+    }
+
+    @Override
+    public void stop() {
+        DisposableServer s = server;
+        if (s != null) {
+            s.disposeNow(Duration.ofSeconds(10));
+            server = null;
+        }
+        clickPublisher.stop();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return server != null;
+    }
+
+    private Publisher<Void> handle(HttpServerRequest req, HttpServerResponse res) {
+        String method = req.method().name();
+        boolean head = "HEAD".equals(method);
+        if (!head && !"GET".equals(method)) {
+            return res.status(HttpResponseStatus.METHOD_NOT_ALLOWED).send();
+        }
+        long started = System.nanoTime();
+        QueryStringDecoder query = new QueryStringDecoder(req.uri());
+        String path = query.path();
+        String requestId = req.requestHeaders().get(RequestIdFilter.HEADER_REQUEST_ID);
+        if (requestId == null || requestId.isBlank()) requestId = UUID.randomUUID().toString();
+        res.header(RequestIdFilter.HEADER_REQUEST_ID, requestId);
+
+        Mono<Void> result;
+        if (path.startsWith("/r/a/")) {
+            String rest = path.substring(5);
+            if (rest.endsWith("/qr.png") || rest.endsWith("/qr.svg")) {
+                String alias = rest.substring(0, rest.length() - 7);
+                result = qr(req, res, query, "/r/a/" + alias, alias, rest.endsWith(".png"), head);
+            } else if (!rest.isEmpty() && rest.indexOf('/') < 0) {
+                result = redirectAlias(req, res, query, rest, requestId);
+            } else {
+                result = Mono.error(new LinkNotFoundException("Not found: " + path));
+            }
+        } else if (path.startsWith("/r/")) {
+            String rest = path.substring(3);
+            if (rest.endsWith("/qr.png") || rest.endsWith("/qr.svg")) {
+                Long linkId = parseId(rest.substring(0, rest.length() - 7));
+                result = linkId == null
+                        ? Mono.error(new LinkNotFoundException("Not found: " + path))
+                        : qr(req, res, query, "/r/" + linkId, String.valueOf(linkId), rest.endsWith(".png"), head);
+            } else {
+                Long linkId = parseId(rest);
+                result = linkId == null
+                        ? Mono.error(new LinkNotFoundException("Not found: " + path))
+                        : redirectId(req, res, query, linkId, requestId);
+            }
+        } else {
+            result = Mono.error(new LinkNotFoundException("Not found: " + path));
+        }
+
+        return result
+                .onErrorResume(e -> error(res, path, head, e))
+                .doFinally(signal -> io.micrometer.core.instrument.Timer.builder("redirect.edge.time")
+                        .tag("status", String.valueOf(res.status().code()))
+                        .register(io.micrometer.core.instrument.Metrics.globalRegistry)
+                        .record(System.nanoTime() - started, java.util.concurrent.TimeUnit.NANOSECONDS));
+    }
+
+    private Mono<Void> redirectId(HttpServerRequest req, HttpServerResponse res, QueryStringDecoder query,
+                                  long linkId, String requestId) {
+        return rateLimiter.acquire(clientIp(req), "/r/", RateLimitingConfig.REDIRECT_WINDOW_SECONDS, RateLimitingConfig.REDIRECT_MAX_REQUESTS)
+                .then(Mono.fromRunnable(() -> linkExistenceFilter.checkId(linkId)))
+                .then(cacheReader.opsForValue().get(REDIRECT_CACHE_PREFIX + linkId)
+                        .map(cached -> new Resolved(linkId, (String) cached, null))
+                        .switchIfEmpty(blocking(() -> {
+                            try {
+                                String url = linkRedirectService.getRedirectUrl(linkId);
+                                return new Resolved(linkId, url, RequestContext.getSelectedVariantId());
+                            } finally {
+                                RequestContext.clear();
+                            }
+                        })))
+                .flatMap(resolved -> sendRedirect(req, res, query, resolved, requestId));
+    }
+
+    private Mono<Void> redirectAlias(HttpServerRequest req, HttpServerResponse res, QueryStringDecoder query,
+                                     String alias, String requestId) {
+        return rateLimiter.acquire(clientIp(req), "/r/", RateLimitingConfig.REDIRECT_WINDOW_SECONDS, RateLimitingConfig.REDIRECT_MAX_REQUESTS)
+                .then(Mono.fromRunnable(() -> linkExistenceFilter.checkAlias(alias)))
+                .then(cacheReader.opsForValue().get(ALIAS_CACHE_PREFIX + alias)
+                        .cast(LinkAliasResolve.class)
+                        .switchIfEmpty(blocking(() -> linkRedirectService.getLinkByAlias(alias))))
+                .flatMap(r -> sendRedirect(req, res, query, new Resolved(r.getId(), r.getUrl(), null), requestId));
+    }
+
+    private Mono<Void> sendRedirect(HttpServerRequest req, HttpServerResponse res, QueryStringDecoder query,
+                                    Resolved resolved, String requestId) {
+        clickPublisher.submit(LinkClickEvent.builder()
+                .linkId(resolved.linkId())
+                .clickedAt(Instant.now())
+                .clientIp(clientIp(req))
+                .userAgent(req.requestHeaders().get("User-Agent"))
+                .referrer(req.requestHeaders().get("Referer"))
+                .targetUrl(resolved.url())
+                .variantId(resolved.variantId())
+                .utmSource(param(query, "utm_source"))
+                .utmMedium(param(query, "utm_medium"))
+                .utmCampaign(param(query, "utm_campaign"))
+                .utmTerm(param(query, "utm_term"))
+                .utmContent(param(query, "utm_content"))
+                .source(param(query, "src"))
+                .requestId(requestId)
+                .build());
+        return Mono.from(res.status(HttpResponseStatus.FOUND)
+                .header("Location", resolved.url())
+                .header("Cache-Control", "public, max-age=300")
+                .header("X-RateLimit-Limit", "300")
+                .header("X-RateLimit-Window", "60")
+                .header("Content-Length", "0")
+                .send());
+    }
+
+    private Mono<Void> qr(HttpServerRequest req, HttpServerResponse res, QueryStringDecoder query,
+                          String path, String fileStem, boolean png, boolean head) {
+        // Parameters are read inside the chain, so a bad one becomes an error signal (400) rather than a throw
+        return Mono.defer(() -> {
+            String logo = png ? param(query, "logo") : null;
+            if (logo != null && !logo.isBlank() && !isAllowedLogoUrl(logo)) {
+                throw new IllegalArgumentException("Invalid logo URL. Only https and png/jpg/jpeg are allowed.");
+            }
+            String url = maybeAppendUtm(shortUrl(req, path), param(query, "utm"));
+            Integer fg = parseHexColor(param(query, "fg"));
+            Integer bg = parseHexColor(param(query, "bg"));
+            validateContrastOrThrow(fg, bg);
+            ErrorCorrectionLevel ecc = parseEcc(param(query, "ecc"));
+            int size = clamp(intParam(query, "size", 256), 128, 1024);
+            int margin = clamp(intParam(query, "margin", 1), 0, 4);
+
+            return rateLimiter.acquire(clientIp(req), "/r/qr", qrWindowSeconds, qrMaxRequests)
+                    .flatMap(remaining -> blocking(() -> png
+                            ? qrCodeService.generatePng(url, size, margin, fg, bg, logo, ecc)
+                            : qrCodeService.generateSvg(url, size, margin, fg, bg, ecc).getBytes(StandardCharsets.UTF_8))
+                            .flatMap(body -> {
+                                String etag = computeEtag(body);
+                                res.header("ETag", etag)
+                                        .header("Cache-Control", QR_CACHE_CONTROL)
+                                        .header("X-RateLimit-Limit", String.valueOf(qrMaxRequests))
+                                        .header("X-RateLimit-Window", String.valueOf(qrWindowSeconds))
+                                        .header("X-RateLimit-Remaining", String.valueOf(remaining))
+                                        .header("Content-Disposition", "inline; filename=\"qr-" + fileStem + (png ? ".png\"" : ".svg\""));
+                                if (etag.equals(req.requestHeaders().get("If-None-Match"))) {
+                                    return Mono.from(res.status(HttpResponseStatus.NOT_MODIFIED).send());
+                                }
+                                res.header("Content-Type", png ? "image/png" : "image/svg+xml")
+                                        .header("Content-Length", String.valueOf(body.length));
+                                return head ? Mono.from(res.send()) : Mono.from(res.sendByteArray(Mono.just(body)));
+                            }));
+        });
+    }
+
+    private Mono<Void> error(HttpServerResponse res, String path, boolean head, Throwable e) {
+        HttpResponseStatus status;
+        String error;
+        Integer retryAfter = null;
+        if (e instanceof RateLimitExceededException rl) {
+            status = HttpResponseStatus.TOO_MANY_REQUESTS;
+            error = "Rate Limit Exceeded";
+            retryAfter = rl.getRetryAfterSeconds();
+            res.header("Retry-After", String.valueOf(retryAfter));
+        } else if (e instanceof LinkNotFoundException) {
+            status = HttpResponseStatus.NOT_FOUND;
+            error = "Link Not Found";
+        } else if (e instanceof IllegalArgumentException) {
+            status = HttpResponseStatus.BAD_REQUEST;
+            error = "Bad Request";
+        } else {
+            log.error("Redirect edge failure for {}: {}", path, e.getMessage(), e);
+            status = HttpResponseStatus.INTERNAL_SERVER_ERROR;
+            error = "Internal Server Error";
+        }
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(ErrorResponse.builder()
+                    .timestamp(Instant.now())
+                    .status(status.code())
+                    .error(error)
+                    .message(e.getMessage())
+                    .path(path)
+                    .retryAfter(retryAfter)
+                    .build());
+        } catch (Exception ex) {
+            body = new byte[0];
+        }
+        res.status(status)
+                .header("Content-Type", "application/json")
+                .header("Content-Length", String.valueOf(body.length));
+        return head ? Mono.from(res.send()) : Mono.from(res.sendByteArray(Mono.just(body)));
+    }
+
+    private static <T> Mono<T> blocking(java.util.concurrent.Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private static Long parseId(String s) {
+        if (s.isEmpty() || s.length() > 18) return null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return null;
+        }
+        return Long.parseLong(s);
+    }
+
+    private static String param(QueryStringDecoder query, String name) {
+        List<String> values = query.parameters().get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    private static int intParam(QueryStringDecoder query, String name, int def) {
+        String v = param(query, name);
+        if (v == null || v.isBlank()) return def;
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + name);
+        }
+    }
+
+    private static String clientIp(HttpServerRequest req) {
+        String xff = req.requestHeaders().get("X-Forwarded-For");
+        if (xff != null && !xff.isBlank()) {
+            int comma = xff.indexOf(',');
+            return comma > 0 ? xff.substring(0, comma).trim() : xff.trim();
+        }
+        InetSocketAddress remote = req.remoteAddress();
+        return remote != null && remote.getAddress() != null ? remote.getAddress().getHostAddress() : "unknown";
+    }
+
+    private static String shortUrl(HttpServerRequest req, String path) {
+        String scheme = coalesce(req.requestHeaders().get("X-Forwarded-Proto"), req.scheme());
+        String host = coalesce(req.requestHeaders().get("X-Forwarded-Host"), req.requestHeaders().get("Host"));
+        if (host == null || host.isBlank()) host = "localhost:8080";
+        return scheme + "://" + host + path;
+    }
+
+    private static String coalesce(String a, String b) {
+        return (a != null && !a.isBlank()) ? a : b;
+    }
+
+    private record Resolved(long linkId, String url, Long variantId) {}
+}
@@ -0,0 +1,119 @@
+package com.linkgrove.api.eventstore;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Binary form of a {@link StoredClick} inside an uncompressed block.
+ *
+ * A record is the click time as 8 bytes, then the link id and {@code variantId + 1} (0 for none) as
+ * unsigned LEB128 varints, then each string as a varint of {@code length + 1} (0 for null) followed by its
+ * UTF-8 bytes. A typical click is 150-250 bytes before compression.
+ */
+final class ClickCodec {
+
+    private byte[] buf = new byte[4096];
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    byte[] array() {
+        return buf;
+    }
+
+    void reset() {
+        size = 0;
+    }
+
+    void encode(StoredClick c) {
+        writeLong(c.clickedAtMillis());
+        writeVarLong(c.linkId());
+        writeVarLong(c.variantId() == null ? 0 : c.variantId() + 1);
+        writeString(c.username());
+        writeString(c.clientIp());
+        writeString(c.userAgent());
+        writeString(c.referrer());
+        writeString(c.visitor());
+        writeString(c.source());
+        writeString(c.utmSource());
+        writeString(c.utmMedium());
+        writeString(c.utmCampaign());
+        writeString(c.utmTerm());
+        writeString(c.utmContent());
+    }
+
+    static StoredClick decode(ByteBuffer in) {
+        long at = in.getLong();
+        long linkId = readVarLong(in);
+        long variant = readVarLong(in);
+        return new StoredClick(at, linkId, variant == 0 ? null : variant - 1,
+                readString(in), readString(in), readString(in), readString(in), readString(in), readString(in),
+                readString(in), readString(in), readString(in), readString(in), readString(in));
+    }
+
+    /**
+     * Read only the time and link id of the record at the buffer's position and skip the rest, for scans
+     * that filter before materializing.
+     */
+    static long skip(ByteBuffer in, long[] timeAndLink) {
+        timeAndLink[0] = in.getLong();
+        timeAndLink[1] = readVarLong(in);
+        readVarLong(in);
+        for (int i = 0; i < 11; i++) {
+            int len = (int) readVarLong(in);
+            if (len > 0) in.position(in.position() + len - 1);
+        }
+        return timeAndLink[0];
+    }
+
+    private void writeLong(long v) {
+        ensure(8);
+        for (int shift = 56; shift >= 0; shift -= 8) buf[size++] = (byte) (v >>> shift);
+    }
+
+    private void writeVarLong(long v) {
+        ensure(10);
+        while ((v & ~0x7FL) != 0) {
+            buf[size++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[size++] = (byte) v;
+    }
+
+    private void writeString(String s) {
+        if (s == null) {
+            writeVarLong(0);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length + 1L);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void ensure(int n) {
+        if (size + n > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + n));
+    }
+
+    static long readVarLong(ByteBuffer in) {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return v;
+            if (shift > 63) throw new IllegalStateException("Malformed varint");
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        int len = (int) readVarLong(in);
+        if (len == 0) return null;
+        String s = new String(in.array(), in.arrayOffset() + in.position(), len - 1, StandardCharsets.UTF_8);
+        in.position(in.position() + len - 1);
+        return s;
+    }
+}
@@ -0,0 +1,314 @@
+package com.linkgrove.api.eventstore;
+
+import com.linkgrove.api.event.LinkClickEvent;
+import com.linkgrove.api.util.AfterCommit;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+/**
+ * Local append-only store of raw clicks, so aggregates can be recomputed after the fact. Addresses and
+ * session ids are not kept as sent: see {@link StoredClick}.
+ *
+ * The worker appends each committed click to an in-memory block. A block is compressed and written to
+ * the active segment once it reaches {@code blockBytes} or has waited {@code flushMs}, so a crash can lose
+ * up to that window. A new segment starts every UTC hour or once the active one reaches
+ * {@code maxSegmentBytes}, and segments older than {@code retentionDays} are deleted.
+ *
+ * {@link #scan} visits segments and blocks whose time range (and link filter) can match, reading through
+ * a memory mapping, and only decodes records that pass. Clicks still in the open block are not visible.
+ * Each node keeps its own store, so a full scan needs every node's directory.
+ */
+@Service
+@Slf4j
+public class ClickEventStore {
+
+    private static final DateTimeFormatter SEGMENT_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").withZone(ZoneOffset.UTC);
+
+    private static final int BLOCKS_PER_TASK = 32;
+
+    private final boolean enabled;
+    private final Path dir;
+    private final int blockBytes;
+    private final long flushMs;
+    private final long maxSegmentBytes;
+    private final long retentionDays;
+    private final boolean fsync;
+    private final Deflater deflater;
+
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final Object lock = new Object();
+    private final ClickCodec block = new ClickCodec();
+    private int blockCount;
+    private long blockMin = Long.MAX_VALUE;
+    private long blockMax = Long.MIN_VALUE;
+    private long[] blockBloom = Segment.newBloom();
+    private long blockStartedAt;
+    private Segment active;
+    private long activeHour;
+
+    public ClickEventStore(@Value("${analytics.events.enabled:true}") boolean enabled,
+                           @Value("${analytics.events.dir:${java.io.tmpdir}/linkgrove-events}") String dir,
+                           @Value("${analytics.events.blockBytes:65536}") int blockBytes,
+                           @Value("${analytics.events.flushMs:2000}") long flushMs,
+                           @Value("${analytics.events.maxSegmentBytes:268435456}") long maxSegmentBytes,
+                           @Value("${analytics.events.retentionDays:90}") long retentionDays,
+                           @Value("${analytics.events.fsync:false}") boolean fsync,
+                           @Value("${analytics.events.compressionLevel:1}") int compressionLevel) {
+        this.enabled = enabled;
+        this.dir = Paths.get(dir);
+        this.blockBytes = Math.max(1024, blockBytes);
+        this.flushMs = flushMs;
+        // Segments are mapped whole, and a mapping is limited to 2 GiB
+        this.maxSegmentBytes = Math.min(Math.max(this.blockBytes * 4L, maxSegmentBytes), 1L << 30);
+        this.retentionDays = retentionDays;
+        this.fsync = fsync;
+        this.deflater = new Deflater(compressionLevel);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) return;
+        try {
+            Files.createDirectories(dir);
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path p : files.filter(f -> f.getFileName().toString().endsWith(Segment.SEG)).sorted().toList()) {
+                    try {
+                        segments.add(Segment.open(p));
+                    } catch (IOException e) {
+                        log.error("Skipping unreadable click store segment {}: {}", p, e.getMessage());
+                    }
+                }
+            }
+            log.info("Click event store at {} with {} segments", dir, segments.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open click event store at " + dir, e);
+        }
+        io.micrometer.core.instrument.Gauge.builder("analytics.events.segments", segments, List::size)
+                .register(io.micrometer.core.instrument.Metrics.globalRegistry);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (!enabled) return;
+        synchronized (lock) {
+            writeBlock();
+            if (active != null) active.close();
+        }
+        deflater.end();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Append the click, pseudonymized (see {@link StoredClick}), once the worker's transaction commits.
+     *
+     * @param visitorId the id the worker counted the click's unique visitor by
+     */
+    public void onClick(LinkClickEvent event, String visitorId) {
+        if (!enabled || event.getLinkId() == null || event.getClickedAt() == null) return;
+        StoredClick click = StoredClick.from(event, visitorId);
+        AfterCommit.run(() -> append(click));
+    }
+
+    public void append(StoredClick click) {
+        if (!enabled) return;
+        synchronized (lock) {
+            if (blockCount == 0) blockStartedAt = System.currentTimeMillis();
+            block.encode(click);
+            blockCount++;
+            blockMin = Math.min(blockMin, click.clickedAtMillis());
+            blockMax = Math.max(blockMax, click.clickedAtMillis());
+            Segment.addToBloom(blockBloom, click.linkId());
+            if (block.size() >= blockBytes) writeBlock();
+        }
+    }
+
+    /**
+     * Write the open block if it has waited long enough.
+     */
+    @Scheduled(fixedDelayString = "${analytics.events.flushMs:2000}", initialDelay = 5000)
+    public void flush() {
+        if (!enabled) return;
+        synchronized (lock) {
+            if (blockCount > 0 && System.currentTimeMillis() - blockStartedAt >= flushMs) writeBlock();
+        }
+    }
+
+    /**
+     * Visit every stored click with {@code from <= clickedAt < to}, optionally for one link, in write order
+     * within each segment.
+     *
+     * @return the number of clicks visited
+     */
+    public long scan(Instant from, Instant to, Long linkId, Consumer<StoredClick> sink) {
+        if (!enabled) return 0;
+        long fromMs = from.toEpochMilli();
+        long toMs = to.toEpochMilli() - 1;
+        long visited = 0;
+        for (Segment s : segments) {
+            try {
+                visited += s.scan(fromMs, toMs, linkId, sink);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Scan failed in " + s.path(), e);
+            }
+        }
+        io.micrometer.core.instrument.Metrics.counter("analytics.events.scanned").increment(visited);
+        return visited;
+    }
+
+    /**
+     * Fold every stored click in {@code [from, to)} (optionally for one link) into a result on {@code pool}:
+     * runs of up to {@code blocksPerTask} matching blocks are scanned in parallel, each into its own
+     * {@code identity()}, and the partial results are combined pairwise. Clicks reach the accumulator in no
+     * particular order.
+     */
+    public <A> A reduce(Instant from, Instant to, Long linkId, Supplier<A> identity,
+                        BiConsumer<A, StoredClick> accumulator, BinaryOperator<A> combiner, ForkJoinPool pool) {
+        if (!enabled) return identity.get();
+        long fromMs = from.toEpochMilli();
+        long toMs = to.toEpochMilli() - 1;
+        List<ScanTask.Run> runs = new ArrayList<>();
+        for (Segment s : segments) {
+            List<Segment.Block> blocks = s.candidates(fromMs, toMs, linkId);
+            for (int i = 0; i < blocks.size(); i += BLOCKS_PER_TASK) {
+                runs.add(new ScanTask.Run(s, blocks.subList(i, Math.min(blocks.size(), i + BLOCKS_PER_TASK))));
+            }
+        }
+        if (runs.isEmpty()) return identity.get();
+        return pool.invoke(new ScanTask<>(runs, 0, runs.size(), fromMs, toMs, linkId, identity, accumulator, combiner));
+    }
+
+    /**
+     * Delete segments whose newest click is past retention.
+     */
+    @Scheduled(cron = "${analytics.events.purgeCron:0 17 * * * *}")
+    public void purge() {
+        if (!enabled || retentionDays <= 0) return;
+        long cutoff = Instant.now().minus(Duration.ofDays(retentionDays)).toEpochMilli();
+        for (Segment s : segments) {
+            if (s == active || s.blocks().isEmpty() || s.maxTime() >= cutoff) continue;
+            try {
+                segments.remove(s);
+                s.delete();
+                log.info("Deleted click store segment {}", s.path());
+            } catch (IOException e) {
+                log.warn("Could not delete click store segment {}: {}", s.path(), e.getMessage());
+            }
+        }
+    }
+
+    private void writeBlock() {
+        if (blockCount == 0) return;
+        try {
+            Segment target = activeSegment();
+            target.append(block.array(), block.size(), blockCount, blockMin, blockMax, blockBloom, deflater, fsync);
+            io.micrometer.core.instrument.Metrics.counter("analytics.events.appended").increment(blockCount);
+        } catch (IOException e) {
+            io.micrometer.core.instrument.Metrics.counter("analytics.events.dropped").increment(blockCount);
+            log.error("Dropping {} clicks: writing a click store block failed: {}", blockCount, e.getMessage());
+            if (active != null) {
+                active.close();
+                active = null;
+            }
+        } finally {
+            block.reset();
+            blockCount = 0;
+            blockMin = Long.MAX_VALUE;
+            blockMax = Long.MIN_VALUE;
+            blockBloom = Segment.newBloom();
+        }
+    }
+
+    private Segment activeSegment() throws IOException {
+        long now = System.currentTimeMillis();
+        long hour = now / 3_600_000;
+        if (active != null && hour == activeHour && active.length() + block.size() <= maxSegmentBytes) {
+            return active;
+        }
+        if (active != null) active.close();
+        Path path;
+        do {
+            path = dir.resolve("clicks-" + SEGMENT_NAME.format(Instant.ofEpochMilli(now)) + "-" + sequence.incrementAndGet() + Segment.SEG);
+        } while (Files.exists(path));
+        active = Segment.create(path);
+        activeHour = hour;
+        segments.add(active);
+        return active;
+    }
+
+    private static final class ScanTask<A> extends RecursiveTask<A> {
+
+        record Run(Segment segment, List<Segment.Block> blocks) {}
+
+        private final List<Run> runs;
+        private final int lo;
+        private final int hi;
+        private final long from;
+        private final long to;
+        private final Long linkId;
+        private final Supplier<A> identity;
+        private final BiConsumer<A, StoredClick> accumulator;
+        private final BinaryOperator<A> combiner;
+
+        ScanTask(List<Run> runs, int lo, int hi, long from, long to, Long linkId, Supplier<A> identity,
+                 BiConsumer<A, StoredClick> accumulator, BinaryOperator<A> combiner) {
+            this.runs = runs;
+            this.lo = lo;
+            this.hi = hi;
+            this.from = from;
+            this.to = to;
+            this.linkId = linkId;
+            this.identity = identity;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected A compute() {
+            if (hi - lo == 1) {
+                A result = identity.get();
+                Run run = runs.get(lo);
+                try {
+                    run.segment().scan(run.blocks(), from, to, linkId, c -> accumulator.accept(result, c));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Scan failed in " + run.segment().path(), e);
+                }
+                return result;
+            }
+            int mid = (lo + hi) >>> 1;
+            ScanTask<A> left = new ScanTask<>(runs, lo, mid, from, to, linkId, identity, accumulator, combiner);
+            left.fork();
+            A right = new ScanTask<>(runs, mid, hi, from, to, linkId, identity, accumulator, combiner).compute();
+            return combiner.apply(left.join(), right);
+        }
+    }
+}
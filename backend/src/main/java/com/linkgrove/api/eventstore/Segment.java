@@ -0,0 +1,325 @@
+package com.linkgrove.api.eventstore;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * One segment of the click store: a {@code .seg} file of compressed blocks and a {@code .idx} file with one
+ * fixed-size entry per block.
+ *
+ * A block header carries the record count, the time range, the sizes, a CRC of the compressed bytes and a
+ * 512-bit link id filter, so a scan can skip blocks by time or link without inflating them. The index is a
+ * copy of the headers with their offsets; blocks are always written to the segment before the index, so a
+ * crash leaves at most a torn block at the end, which {@link #open} drops, and index entries missing for
+ * whole blocks, which it rebuilds.
+ */
+@Slf4j
+final class Segment {
+
+    static final String SEG = ".seg";
+    static final String IDX = ".idx";
+
+    private static final int MAGIC = 0x4C47424B; // "LGBK"
+    private static final int BLOOM_LONGS = 8;
+    static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4 + 4 + 4 + BLOOM_LONGS * 8;
+    private static final int INDEX_BYTES = 8 + HEADER_BYTES;
+
+    record Block(long offset, int count, long minTime, long maxTime, int rawLen, int compressedLen, int crc, long[] bloom) {
+        boolean overlaps(long from, long to) {
+            return maxTime >= from && minTime <= to;
+        }
+
+        boolean mayContain(long linkId) {
+            int bit = bloomBit(linkId);
+            return (bloom[bit >>> 6] & (1L << bit)) != 0;
+        }
+    }
+
+    private final Path path;
+    private final Path indexPath;
+    private final List<Block> blocks = new CopyOnWriteArrayList<>();
+    private FileChannel data;
+    private FileChannel index;
+    private volatile long length;
+    private volatile long minTime = Long.MAX_VALUE;
+    private volatile long maxTime = Long.MIN_VALUE;
+
+    private Segment(Path path) {
+        this.path = path;
+        String name = path.getFileName().toString();
+        this.indexPath = path.resolveSibling(name.substring(0, name.length() - SEG.length()) + IDX);
+    }
+
+    static Segment create(Path path) throws IOException {
+        Segment s = new Segment(path);
+        s.data = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        s.index = FileChannel.open(s.indexPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        return s;
+    }
+
+    /**
+     * Open a closed segment read-only, repairing its index and dropping a torn trailing block.
+     */
+    static Segment open(Path path) throws IOException {
+        Segment s = new Segment(path);
+        long size = Files.size(path);
+        long end = 0;
+        long indexSize = Files.exists(s.indexPath) ? Files.size(s.indexPath) : -1;
+        if (indexSize > 0) {
+            ByteBuffer idx = ByteBuffer.wrap(Files.readAllBytes(s.indexPath));
+            while (idx.remaining() >= INDEX_BYTES) {
+                long offset = idx.getLong();
+                Block b = readHeader(idx, offset);
+                if (b == null || offset != end || offset + HEADER_BYTES + b.compressedLen > size) break;
+                s.add(b);
+                end = offset + HEADER_BYTES + b.compressedLen;
+            }
+        }
+        List<Block> recovered = new ArrayList<>();
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (end + HEADER_BYTES <= size) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                ch.read(header, end);
+                header.flip();
+                Block b = readHeader(header, end);
+                if (b == null || end + HEADER_BYTES + b.compressedLen > size) break;
+                ByteBuffer body = ByteBuffer.allocate(b.compressedLen);
+                ch.read(body, end + HEADER_BYTES);
+                CRC32 crc = new CRC32();
+                crc.update(body.array(), 0, b.compressedLen);
+                if ((int) crc.getValue() != b.crc) break;
+                recovered.add(b);
+                s.add(b);
+                end += HEADER_BYTES + b.compressedLen;
+            }
+        }
+        if (end < size) {
+            log.warn("Click store segment {} has {} trailing bytes that are not a complete block; truncating", path, size - end);
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                ch.truncate(end);
+            }
+        }
+        if (!recovered.isEmpty() || indexSize != (long) s.blocks.size() * INDEX_BYTES) {
+            s.writeIndex();
+        }
+        s.length = end;
+        return s;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long minTime() {
+        return minTime;
+    }
+
+    long maxTime() {
+        return maxTime;
+    }
+
+    long length() {
+        return length;
+    }
+
+    List<Block> blocks() {
+        return List.copyOf(blocks);
+    }
+
+    long count() {
+        long n = 0;
+        for (Block b : blocks) n += b.count;
+        return n;
+    }
+
+    /**
+     * Compress and append one block of encoded records. Only the writer thread calls this.
+     */
+    void append(byte[] raw, int rawLen, int count, long blockMin, long blockMax, long[] bloom, Deflater deflater, boolean fsync) throws IOException {
+        deflater.reset();
+        deflater.setInput(raw, 0, rawLen);
+        deflater.finish();
+        byte[] out = new byte[Math.max(64, rawLen + rawLen / 1000 + 64)];
+        int compressedLen = 0;
+        while (!deflater.finished()) {
+            if (compressedLen == out.length) out = java.util.Arrays.copyOf(out, out.length * 2);
+            compressedLen += deflater.deflate(out, compressedLen, out.length - compressedLen);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(out, 0, compressedLen);
+        Block b = new Block(length, count, blockMin, blockMax, rawLen, compressedLen, (int) crc.getValue(), bloom);
+
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES + compressedLen);
+        writeHeader(buf, b);
+        buf.put(out, 0, compressedLen).flip();
+        long pos = length;
+        while (buf.hasRemaining()) pos += data.write(buf, pos);
+        if (fsync) data.force(false);
+
+        ByteBuffer entry = ByteBuffer.allocate(INDEX_BYTES);
+        entry.putLong(b.offset);
+        writeHeader(entry, b);
+        entry.flip();
+        long idxPos = (long) blocks.size() * INDEX_BYTES;
+        while (entry.hasRemaining()) idxPos += index.write(entry, idxPos);
+
+        add(b);
+        length = pos;
+    }
+
+    /**
+     * Blocks that may hold records with {@code from <= time <= to} (and the link, when given), in file order.
+     */
+    List<Block> candidates(long from, long to, Long linkId) {
+        List<Block> out = new ArrayList<>();
+        if (maxTime < from || minTime > to) return out;
+        long end = length;
+        for (Block b : blocks) {
+            if (b.offset + HEADER_BYTES + b.compressedLen <= end && b.overlaps(from, to) && (linkId == null || b.mayContain(linkId))) {
+                out.add(b);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Decode every record with {@code from <= time <= to} (and the link, when given) in write order.
+     *
+     * @return the number of records delivered
+     */
+    long scan(long from, long to, Long linkId, Consumer<StoredClick> sink) throws IOException {
+        return scan(candidates(from, to, linkId), from, to, linkId, sink);
+    }
+
+    /**
+     * Same as {@link #scan(long, long, Long, Consumer)} over a run of this segment's {@link #candidates},
+     * mapping only the bytes those blocks span.
+     */
+    long scan(List<Block> blocks, long from, long to, Long linkId, Consumer<StoredClick> sink) throws IOException {
+        if (blocks.isEmpty()) return 0;
+        long start = blocks.get(0).offset;
+        Block lastBlock = blocks.get(blocks.size() - 1);
+        long end = lastBlock.offset + HEADER_BYTES + lastBlock.compressedLen;
+        long delivered = 0;
+        Inflater inflater = new Inflater();
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = ch.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            byte[] raw = new byte[0];
+            long[] timeAndLink = new long[2];
+            for (Block b : blocks) {
+                if (raw.length < b.rawLen) raw = new byte[b.rawLen];
+                inflater.reset();
+                inflater.setInput(mapped.slice((int) (b.offset - start) + HEADER_BYTES, b.compressedLen));
+                try {
+                    int n = 0;
+                    while (n < b.rawLen && !inflater.finished()) n += inflater.inflate(raw, n, b.rawLen - n);
+                } catch (DataFormatException e) {
+                    throw new IOException("Corrupt block at " + b.offset + " in " + path, e);
+                }
+                ByteBuffer records = ByteBuffer.wrap(raw, 0, b.rawLen);
+                boolean wholeBlock = b.minTime >= from && b.maxTime <= to && linkId == null;
+                while (records.hasRemaining()) {
+                    if (wholeBlock) {
+                        sink.accept(ClickCodec.decode(records));
+                        delivered++;
+                        continue;
+                    }
+                    int recordStart = records.position();
+                    long t = ClickCodec.skip(records, timeAndLink);
+                    if (t < from || t > to || (linkId != null && timeAndLink[1] != linkId)) continue;
+                    int next = records.position();
+                    records.position(recordStart);
+                    sink.accept(ClickCodec.decode(records));
+                    records.position(next);
+                    delivered++;
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+        return delivered;
+    }
+
+    void close() {
+        try {
+            if (data != null) data.close();
+            if (index != null) index.close();
+        } catch (IOException e) {
+            log.debug("Closing segment {} failed: {}", path, e.getMessage());
+        }
+        data = null;
+        index = null;
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(indexPath);
+        Files.deleteIfExists(path);
+    }
+
+    static int bloomBit(long linkId) {
+        return (int) ((linkId * 0x9E3779B97F4A7C15L) >>> (64 - 9));
+    }
+
+    static long[] newBloom() {
+        return new long[BLOOM_LONGS];
+    }
+
+    static void addToBloom(long[] bloom, long linkId) {
+        int bit = bloomBit(linkId);
+        bloom[bit >>> 6] |= 1L << bit;
+    }
+
+    private void add(Block b) {
+        blocks.add(b);
+        if (b.minTime < minTime) minTime = b.minTime;
+        if (b.maxTime > maxTime) maxTime = b.maxTime;
+    }
+
+    private void writeIndex() throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(blocks.size() * INDEX_BYTES);
+        for (Block b : blocks) {
+            buf.putLong(b.offset);
+            writeHeader(buf, b);
+        }
+        buf.flip();
+        try (FileChannel ch = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buf.hasRemaining()) ch.write(buf);
+        }
+    }
+
+    private static void writeHeader(ByteBuffer buf, Block b) {
+        buf.putInt(MAGIC).putInt(b.count).putLong(b.minTime).putLong(b.maxTime)
+                .putInt(b.rawLen).putInt(b.compressedLen).putInt(b.crc);
+        for (long word : b.bloom) buf.putLong(word);
+    }
+
+    private static Block readHeader(ByteBuffer buf, long offset) {
+        if (buf.getInt() != MAGIC) return null;
+        int count = buf.getInt();
+        long min = buf.getLong();
+        long max = buf.getLong();
+        int rawLen = buf.getInt();
+        int compressedLen = buf.getInt();
+        int crc = buf.getInt();
+        long[] bloom = new long[BLOOM_LONGS];
+        for (int i = 0; i < BLOOM_LONGS; i++) bloom[i] = buf.getLong();
+        if (count < 0 || rawLen < 0 || compressedLen < 0) return null;
+        return new Block(offset, count, min, max, rawLen, compressedLen, crc, bloom);
+    }
+}
@@ -0,0 +1,98 @@
+package com.linkgrove.api.eventstore;
+
+import com.linkgrove.api.event.LinkClickEvent;
+import com.linkgrove.api.util.HyperLogLog;
+import com.linkgrove.api.util.IpLiterals;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * One click as kept in the {@link ClickEventStore}: every field of the {@link LinkClickEvent} the
+ * aggregates are derived from, so they can be derived again.
+ *
+ * Clicks are pseudonymized on the way in. {@code clientIp} is cut to its network (/24 for IPv4, /48 for
+ * IPv6), which still resolves to the same country, and {@code visitor} is a hash of the visitor id the
+ * worker counted uniques by ({@code h:<hex>}) instead of the session id or address it came from. Segments
+ * written before that hold the raw session id in {@code visitor} and the full address; they age out with
+ * {@code analytics.events.retentionDays}. The User-Agent is kept as sent so clicks can be reclassified.
+ */
+public record StoredClick(long clickedAtMillis,
+                          long linkId,
+                          Long variantId,
+                          String username,
+                          String clientIp,
+                          String userAgent,
+                          String referrer,
+                          String visitor,
+                          String source,
+                          String utmSource,
+                          String utmMedium,
+                          String utmCampaign,
+                          String utmTerm,
+                          String utmContent) {
+
+    private static final String HASHED_VISITOR = "h:";
+
+    /**
+     * @param visitorId the id the worker counted the click's unique visitor by, or {@code null} for none
+     */
+    public static StoredClick from(LinkClickEvent event, String visitorId) {
+        String visitor = visitorId == null || visitorId.isBlank() ? null : HASHED_VISITOR + Long.toHexString(HyperLogLog.hash(visitorId));
+        return new StoredClick(event.getClickedAt().toEpochMilli(), event.getLinkId(), event.getVariantId(),
+                event.getUsername(), maskIp(event.getClientIp()), event.getUserAgent(), event.getReferrer(), visitor,
+                event.getSource(), event.getUtmSource(), event.getUtmMedium(), event.getUtmCampaign(),
+                event.getUtmTerm(), event.getUtmContent());
+    }
+
+    public Instant clickedAt() {
+        return Instant.ofEpochMilli(clickedAtMillis);
+    }
+
+    /**
+     * @return the visitor's {@link HyperLogLog#hash}, or {@code null} if the click was stored without one
+     *         or before visitors were hashed
+     */
+    public Long visitorHash() {
+        if (visitor == null || !visitor.startsWith(HASHED_VISITOR)) return null;
+        return Long.parseUnsignedLong(visitor, HASHED_VISITOR.length(), visitor.length(), 16);
+    }
+
+    public LinkClickEvent toEvent() {
+        return LinkClickEvent.builder()
+                .clickedAt(clickedAt())
+                .linkId(linkId)
+                .variantId(variantId)
+                .username(username)
+                .clientIp(clientIp)
+                .userAgent(userAgent)
+                .referrer(referrer)
+                .sessionId(visitor == null || visitor.startsWith(HASHED_VISITOR) ? null : visitor)
+                .source(source)
+                .utmSource(utmSource)
+                .utmMedium(utmMedium)
+                .utmCampaign(utmCampaign)
+                .utmTerm(utmTerm)
+                .utmContent(utmContent)
+                .build();
+    }
+
+    /**
+     * @return the /24 (IPv4) or /48 (IPv6) network of {@code ip}, or {@code null} if it isn't an address
+     *         {@link IpLiterals} accepts
+     */
+    static String maskIp(String ip) {
+        byte[] bytes = IpLiterals.toBytes(ip);
+        if (bytes == null) return null;
+        Arrays.fill(bytes, bytes.length == 4 ? 3 : 6, bytes.length, (byte) 0);
+        if (bytes.length == 4) {
+            return (bytes[0] & 0xff) + "." + (bytes[1] & 0xff) + "." + (bytes[2] & 0xff) + "." + (bytes[3] & 0xff);
+        }
+        // The zeroed host part is written as "::"
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < 6; i += 2) {
+            out.append(Integer.toHexString((bytes[i] & 0xff) << 8 | (bytes[i + 1] & 0xff))).append(':');
+        }
+        return out.append(':').toString();
+    }
+}
@@ -0,0 +1,83 @@
+package com.linkgrove.api.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * A background analytics export: what was asked for, where it is in its lifecycle, and, once it has
+ * succeeded, how big the gzip artifact is and when it expires.
+ */
+@Entity
+@Table(name = "export_jobs", indexes = {
+        @Index(name = "idx_export_jobs_user_created", columnList = "username, created_at"),
+        @Index(name = "idx_export_jobs_status_heartbeat", columnList = "status, heartbeat_at")
+})
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExportJob {
+
+    public enum Status { QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED }
+
+    public enum Format { CSV, JSONL }
+
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Column(nullable = false, length = 100)
+    private String username;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 8)
+    private Format format;
+
+    @Column(name = "from_day", nullable = false)
+    private LocalDate fromDay;
+
+    @Column(name = "to_day", nullable = false)
+    private LocalDate toDay;
+
+    @Column(nullable = false, length = 128)
+    private String dimensions; // comma-separated, e.g. clicks,referrer
+
+    @Column(name = "link_ids", columnDefinition = "TEXT")
+    private String linkIds; // comma-separated; null means all links
+
+    @Column(name = "row_count")
+    private Long rowCount;
+
+    @Column(name = "size_bytes")
+    private Long sizeBytes;
+
+    @Column(name = "error_message", length = 500)
+    private String errorMessage;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    @Column(name = "heartbeat_at", nullable = false)
+    private LocalDateTime heartbeatAt;
+
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
+
+    public boolean isActive() {
+        return status == Status.QUEUED || status == Status.RUNNING;
+    }
+}
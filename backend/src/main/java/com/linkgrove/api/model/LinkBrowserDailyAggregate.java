@@ -0,0 +1,43 @@
+package com.linkgrove.api.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+
+@Entity
+@Table(name = "link_browser_daily_aggregate", uniqueConstraints = {
+        @UniqueConstraint(name = "uq_user_link_day_browser", columnNames = {"username", "link_id", "day", "browser"})
+})
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LinkBrowserDailyAggregate {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 100)
+    private String username;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "link_id", nullable = false)
+    private Link link;
+
+    @Column(name = "day", nullable = false)
+    private LocalDate day;
+
+    @Column(name = "browser", nullable = false, length = 32)
+    private String browser; // chrome|safari|firefox|edge|...|other
+
+    @Column(name = "clicks", nullable = false)
+    private long clicks;
+
+    @Column(name = "unique_visitors", nullable = false)
+    private long uniqueVisitors;
+}
+
+
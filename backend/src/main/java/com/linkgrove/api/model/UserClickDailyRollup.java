@@ -0,0 +1,38 @@
+package com.linkgrove.api.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+
+/**
+ * Clicks per user per UTC day, summed over all of the user's links. Maintained by {@code AnalyticsWorker}
+ * alongside {@link LinkClickDailyAggregate} so account-level timeseries read one row per day.
+ */
+@Entity
+@Table(name = "user_click_daily_rollup", uniqueConstraints = {
+        @UniqueConstraint(name = "uq_ucdr_user_day", columnNames = {"username", "day"})
+})
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserClickDailyRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 100)
+    private String username;
+
+    @Column(name = "day", nullable = false)
+    private LocalDate day;
+
+    @Column(name = "clicks", nullable = false)
+    private long clicks;
+
+    @Column(name = "unique_visitors", nullable = false)
+    private long uniqueVisitors;
+}
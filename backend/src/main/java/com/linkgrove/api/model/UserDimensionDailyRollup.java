@@ -0,0 +1,49 @@
+package com.linkgrove.api.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+
+/**
+ * Clicks per user per UTC day per breakdown value (referrer domain, device type, country, source),
+ * summed over all of the user's links.
+ */
+@Entity
+@Table(name = "user_dimension_daily_rollup", uniqueConstraints = {
+        @UniqueConstraint(name = "uq_uddr_user_dim_day_value", columnNames = {"username", "dimension", "day", "dimension_value"})
+})
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserDimensionDailyRollup {
+
+    public static final String REFERRER = "referrer";
+    public static final String DEVICE = "device";
+    public static final String COUNTRY = "country";
+    public static final String SOURCE = "source";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 100)
+    private String username;
+
+    @Column(name = "dimension", nullable = false, length = 16)
+    private String dimension;
+
+    @Column(name = "day", nullable = false)
+    private LocalDate day;
+
+    @Column(name = "dimension_value", nullable = false, length = 255)
+    private String dimensionValue;
+
+    @Column(name = "clicks", nullable = false)
+    private long clicks;
+
+    @Column(name = "unique_visitors", nullable = false)
+    private long uniqueVisitors;
+}
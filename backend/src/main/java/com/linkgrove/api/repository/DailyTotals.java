@@ -0,0 +1,12 @@
+package com.linkgrove.api.repository;
+
+import java.time.LocalDate;
+
+/**
+ * Clicks and unique visitors summed per day in SQL.
+ */
+public interface DailyTotals {
+    LocalDate getDay();
+    Long getClicks();
+    Long getUniqueVisitors();
+}
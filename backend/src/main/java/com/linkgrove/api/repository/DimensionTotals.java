@@ -0,0 +1,23 @@
+package com.linkgrove.api.repository;
+
+/**
+ * One row of a breakdown summed in SQL, e.g. clicks per referrer domain over a date range.
+ *
+ * Breakdowns cut to a top N end with one folded row for everything else. It is labelled {@link #OTHER},
+ * which a real value could still be (sources are free text), so {@link #getFolded} is what tells it apart.
+ */
+public interface DimensionTotals {
+
+    String OTHER = "(other)";
+
+    String getDimension();
+    Long getClicks();
+
+    /**
+     * Summed daily unique visitors; {@code null} on the folded row, where one visitor can be counted under
+     * several values.
+     */
+    Long getUniqueVisitors();
+
+    Boolean getFolded();
+}
@@ -0,0 +1,63 @@
+package com.linkgrove.api.repository;
+
+import com.linkgrove.api.model.ExportJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Status changes are conditional updates, so a job cancelled or failed by one node is never
+ * flipped back to running or succeeded by another.
+ */
+public interface ExportJobRepository extends JpaRepository<ExportJob, String> {
+
+    Optional<ExportJob> findByIdAndUsername(String id, String username);
+
+    List<ExportJob> findTop50ByUsernameOrderByCreatedAtDesc(String username);
+
+    long countByUsernameAndStatusIn(String username, Collection<ExportJob.Status> statuses);
+
+    @Query("select j.status from ExportJob j where j.id = :id")
+    Optional<ExportJob.Status> findStatusById(@Param("id") String id);
+
+    @Modifying
+    @Query("update ExportJob j set j.status = :to, j.startedAt = :now, j.heartbeatAt = :now where j.id = :id and j.status = :from")
+    int start(@Param("id") String id, @Param("from") ExportJob.Status from, @Param("to") ExportJob.Status to,
+              @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("update ExportJob j set j.status = :to, j.rowCount = :rows, j.sizeBytes = :bytes, j.finishedAt = :now, " +
+            "j.expiresAt = :expiresAt where j.id = :id and j.status = :from")
+    int succeed(@Param("id") String id, @Param("from") ExportJob.Status from, @Param("to") ExportJob.Status to,
+                @Param("rows") long rows, @Param("bytes") long bytes,
+                @Param("now") LocalDateTime now, @Param("expiresAt") LocalDateTime expiresAt);
+
+    @Modifying
+    @Query("update ExportJob j set j.status = :to, j.errorMessage = :reason, j.finishedAt = :now " +
+            "where j.id = :id and j.status in :from")
+    int finish(@Param("id") String id, @Param("from") Collection<ExportJob.Status> from, @Param("to") ExportJob.Status to,
+               @Param("reason") String reason, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("update ExportJob j set j.heartbeatAt = :now where j.id in :ids and j.status in :active")
+    int touch(@Param("ids") Collection<String> ids, @Param("active") Collection<ExportJob.Status> active,
+              @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("update ExportJob j set j.status = :to, j.errorMessage = :reason, j.finishedAt = :now " +
+            "where j.status in :active and j.heartbeatAt < :staleBefore")
+    int failStale(@Param("active") Collection<ExportJob.Status> active, @Param("to") ExportJob.Status to,
+                  @Param("staleBefore") LocalDateTime staleBefore, @Param("now") LocalDateTime now,
+                  @Param("reason") String reason);
+
+    @Query("select j from ExportJob j where j.status not in :active and " +
+            "((j.expiresAt is not null and j.expiresAt < :now) or (j.expiresAt is null and j.finishedAt < :finishedBefore))")
+    List<ExportJob> findExpired(@Param("active") Collection<ExportJob.Status> active,
+                                @Param("now") LocalDateTime now, @Param("finishedBefore") LocalDateTime finishedBefore);
+}
@@ -0,0 +1,44 @@
+package com.linkgrove.api.repository;
+
+import com.linkgrove.api.model.LinkBrowserDailyAggregate;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface LinkBrowserDailyAggregateRepository extends JpaRepository<LinkBrowserDailyAggregate, Long> {
+
+    /**
+     * Add a batch's clicks and new unique visitors for one row, creating it if needed.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO link_browser_daily_aggregate (username, link_id, day, browser, clicks, unique_visitors) " +
+            "VALUES (:username, :linkId, :day, :browser, :clicks, :uniques) " +
+            "ON CONFLICT (username, link_id, day, browser) DO UPDATE SET clicks = link_browser_daily_aggregate.clicks + EXCLUDED.clicks, " +
+            "unique_visitors = link_browser_daily_aggregate.unique_visitors + EXCLUDED.unique_visitors", nativeQuery = true)
+    void upsertAdd(@Param("username") String username,
+                   @Param("linkId") Long linkId,
+                   @Param("day") LocalDate day,
+                   @Param("browser") String browser,
+                   @Param("clicks") long clicks,
+                   @Param("uniques") long uniques);
+
+    /**
+     * Per-browser totals ordered by clicks; everything past the first {@code topN} is folded into one {@link DimensionTotals#OTHER} row.
+     */
+    @Query(value = "SELECT CASE WHEN t.rn <= :topN THEN t.dim ELSE '" + DimensionTotals.OTHER + "' END AS \"dimension\", " +
+            "CAST(SUM(t.clicks) AS BIGINT) AS \"clicks\", " +
+            "CASE WHEN MIN(t.rn) <= :topN THEN CAST(SUM(t.uniques) AS BIGINT) END AS \"uniqueVisitors\", " +
+            "MIN(t.rn) > :topN AS \"folded\" " +
+            "FROM (SELECT CAST(browser AS TEXT) AS dim, SUM(clicks) AS clicks, SUM(unique_visitors) AS uniques, " +
+            "ROW_NUMBER() OVER (ORDER BY SUM(clicks) DESC, browser) AS rn " +
+            "FROM link_browser_daily_aggregate WHERE username = :username AND day BETWEEN :start AND :end GROUP BY browser) t " +
+            "GROUP BY 1, t.rn <= :topN ORDER BY MIN(t.rn)", nativeQuery = true)
+    List<DimensionTotals> sumByBrowser(@Param("username") String username,
+                                       @Param("start") LocalDate start,
+                                       @Param("end") LocalDate end,
+                                       @Param("topN") int topN);
+}
@@ -11,19 +11,19 @@ import java.util.List;
 
 public interface LinkClickDailyAggregateRepository extends JpaRepository<LinkClickDailyAggregate, Long> {
 
+    /**
+     * Add a batch's clicks and new unique visitors for one row, creating it if needed.
+     */
     @Modifying
     @Query(value = "INSERT INTO link_click_daily_aggregate (username, link_id, day, clicks, unique_visitors) " +
-            "VALUES (:username, :linkId, :day, 1, 0) " +
-            "ON CONFLICT (username, link_id, day) DO UPDATE SET clicks = link_click_daily_aggregate.clicks + 1", nativeQuery = true)
-    void upsertIncrement(@Param("username") String username,
-                         @Param("linkId") Long linkId,
-                         @Param("day") LocalDate day);
-
-    @Modifying
-    @Query(value = "UPDATE link_click_daily_aggregate SET unique_visitors = unique_visitors + 1 WHERE username = :username AND link_id = :linkId AND day = :day", nativeQuery = true)
-    void incrementUnique(@Param("username") String username,
-                         @Param("linkId") Long linkId,
-                         @Param("day") LocalDate day);
+            "VALUES (:username, :linkId, :day, :clicks, :uniques) " +
+            "ON CONFLICT (username, link_id, day) DO UPDATE SET clicks = link_click_daily_aggregate.clicks + EXCLUDED.clicks, " +
+            "unique_visitors = link_click_daily_aggregate.unique_visitors + EXCLUDED.unique_visitors", nativeQuery = true)
+    void upsertAdd(@Param("username") String username,
+                   @Param("linkId") Long linkId,
+                   @Param("day") LocalDate day,
+                   @Param("clicks") long clicks,
+                   @Param("uniques") long uniques);
 
     @Query("SELECT a FROM LinkClickDailyAggregate a WHERE a.username = :username AND a.day BETWEEN :start AND :end")
     List<LinkClickDailyAggregate> findRange(@Param("username") String username,
@@ -35,4 +35,17 @@ public interface LinkClickDailyAggregateRepository extends JpaRepository<LinkCli
                                                    @Param("linkId") Long linkId,
                                                    @Param("start") LocalDate start,
                                                    @Param("end") LocalDate end);
+
+    @Query("SELECT a.day AS day, SUM(a.clicks) AS clicks, SUM(a.uniqueVisitors) AS uniqueVisitors " +
+            "FROM LinkClickDailyAggregate a WHERE a.username = :username AND a.day BETWEEN :start AND :end GROUP BY a.day")
+    List<DailyTotals> sumByDay(@Param("username") String username,
+                               @Param("start") LocalDate start,
+                               @Param("end") LocalDate end);
+
+    @Query("SELECT a.day AS day, SUM(a.clicks) AS clicks, SUM(a.uniqueVisitors) AS uniqueVisitors " +
+            "FROM LinkClickDailyAggregate a WHERE a.username = :username AND a.link.id = :linkId AND a.day BETWEEN :start AND :end GROUP BY a.day")
+    List<DailyTotals> sumByDayForLink(@Param("username") String username,
+                                      @Param("linkId") Long linkId,
+                                      @Param("start") LocalDate start,
+                                      @Param("end") LocalDate end);
 }
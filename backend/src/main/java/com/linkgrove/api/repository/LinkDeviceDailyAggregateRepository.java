@@ -11,26 +11,39 @@ import java.util.List;
 
 public interface LinkDeviceDailyAggregateRepository extends JpaRepository<LinkDeviceDailyAggregate, Long> {
 
+    /**
+     * Add a batch's clicks and new unique visitors for one row, creating it if needed.
+     */
     @Modifying
     @Query(value = "INSERT INTO link_device_daily_aggregate (username, link_id, day, device_type, clicks, unique_visitors) " +
-            "VALUES (:username, :linkId, :day, :device, 1, 0) " +
-            "ON CONFLICT (username, link_id, day, device_type) DO UPDATE SET clicks = link_device_daily_aggregate.clicks + 1", nativeQuery = true)
-    void upsertIncrement(@Param("username") String username,
-                         @Param("linkId") Long linkId,
-                         @Param("day") LocalDate day,
-                         @Param("device") String device);
-
-    @Modifying
-    @Query(value = "UPDATE link_device_daily_aggregate SET unique_visitors = unique_visitors + 1 WHERE username = :username AND link_id = :linkId AND day = :day AND device_type = :device", nativeQuery = true)
-    void incrementUnique(@Param("username") String username,
-                         @Param("linkId") Long linkId,
-                         @Param("day") LocalDate day,
-                         @Param("device") String device);
+            "VALUES (:username, :linkId, :day, :device, :clicks, :uniques) " +
+            "ON CONFLICT (username, link_id, day, device_type) DO UPDATE SET clicks = link_device_daily_aggregate.clicks + EXCLUDED.clicks, " +
+            "unique_visitors = link_device_daily_aggregate.unique_visitors + EXCLUDED.unique_visitors", nativeQuery = true)
+    void upsertAdd(@Param("username") String username,
+                   @Param("linkId") Long linkId,
+                   @Param("day") LocalDate day,
+                   @Param("device") String device,
+                   @Param("clicks") long clicks,
+                   @Param("uniques") long uniques);
 
     @Query("SELECT d FROM LinkDeviceDailyAggregate d WHERE d.username = :username AND d.day BETWEEN :start AND :end")
     List<LinkDeviceDailyAggregate> findRange(@Param("username") String username,
                                              @Param("start") LocalDate start,
                                              @Param("end") LocalDate end);
-}
-
 
+    /**
+     * Per-device totals ordered by clicks; everything past the first {@code topN} is folded into one {@link DimensionTotals#OTHER} row.
+     */
+    @Query(value = "SELECT CASE WHEN t.rn <= :topN THEN t.dim ELSE '" + DimensionTotals.OTHER + "' END AS \"dimension\", " +
+            "CAST(SUM(t.clicks) AS BIGINT) AS \"clicks\", " +
+            "CASE WHEN MIN(t.rn) <= :topN THEN CAST(SUM(t.uniques) AS BIGINT) END AS \"uniqueVisitors\", " +
+            "MIN(t.rn) > :topN AS \"folded\" " +
+            "FROM (SELECT CAST(device_type AS TEXT) AS dim, SUM(clicks) AS clicks, SUM(unique_visitors) AS uniques, " +
+            "ROW_NUMBER() OVER (ORDER BY SUM(clicks) DESC, device_type) AS rn " +
+            "FROM link_device_daily_aggregate WHERE username = :username AND day BETWEEN :start AND :end GROUP BY device_type) t " +
+            "GROUP BY 1, t.rn <= :topN ORDER BY MIN(t.rn)", nativeQuery = true)
+    List<DimensionTotals> sumByDevice(@Param("username") String username,
+                                      @Param("start") LocalDate start,
+                                      @Param("end") LocalDate end,
+                                      @Param("topN") int topN);
+}
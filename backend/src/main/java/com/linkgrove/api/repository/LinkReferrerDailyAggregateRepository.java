@@ -11,26 +11,39 @@ import java.util.List;
 
 public interface LinkReferrerDailyAggregateRepository extends JpaRepository<LinkReferrerDailyAggregate, Long> {
 
+    /**
+     * Add a batch's clicks and new unique visitors for one row, creating it if needed.
+     */
     @Modifying
     @Query(value = "INSERT INTO link_referrer_daily_aggregate (username, link_id, day, referrer_domain, clicks, unique_visitors) " +
-            "VALUES (:username, :linkId, :day, :ref, 1, 0) " +
-            "ON CONFLICT (username, link_id, day, referrer_domain) DO UPDATE SET clicks = link_referrer_daily_aggregate.clicks + 1", nativeQuery = true)
-    void upsertIncrement(@Param("username") String username,
-                         @Param("linkId") Long linkId,
-                         @Param("day") LocalDate day,
-                         @Param("ref") String referrerDomain);
-
-    @Modifying
-    @Query(value = "UPDATE link_referrer_daily_aggregate SET unique_visitors = unique_visitors + 1 WHERE username = :username AND link_id = :linkId AND day = :day AND referrer_domain = :ref", nativeQuery = true)
-    void incrementUnique(@Param("username") String username,
-                         @Param("linkId") Long linkId,
-                         @Param("day") LocalDate day,
-                         @Param("ref") String referrerDomain);
+            "VALUES (:username, :linkId, :day, :ref, :clicks, :uniques) " +
+            "ON CONFLICT (username, link_id, day, referrer_domain) DO UPDATE SET clicks = link_referrer_daily_aggregate.clicks + EXCLUDED.clicks, " +
+            "unique_visitors = link_referrer_daily_aggregate.unique_visitors + EXCLUDED.unique_visitors", nativeQuery = true)
+    void upsertAdd(@Param("username") String username,
+                   @Param("linkId") Long linkId,
+                   @Param("day") LocalDate day,
+                   @Param("ref") String referrerDomain,
+                   @Param("clicks") long clicks,
+                   @Param("uniques") long uniques);
 
     @Query("SELECT r FROM LinkReferrerDailyAggregate r WHERE r.username = :username AND r.day BETWEEN :start AND :end")
     List<LinkReferrerDailyAggregate> findRange(@Param("username") String username,
                                                @Param("start") LocalDate start,
                                                @Param("end") LocalDate end);
-}
-
 
+    /**
+     * Per-referrer totals ordered by clicks; everything past the first {@code topN} is folded into one {@link DimensionTotals#OTHER} row.
+     */
+    @Query(value = "SELECT CASE WHEN t.rn <= :topN THEN t.dim ELSE '" + DimensionTotals.OTHER + "' END AS \"dimension\", " +
+            "CAST(SUM(t.clicks) AS BIGINT) AS \"clicks\", " +
+            "CASE WHEN MIN(t.rn) <= :topN THEN CAST(SUM(t.uniques) AS BIGINT) END AS \"uniqueVisitors\", " +
+            "MIN(t.rn) > :topN AS \"folded\" " +
+            "FROM (SELECT CAST(referrer_domain AS TEXT) AS dim, SUM(clicks) AS clicks, SUM(unique_visitors) AS uniques, " +
+            "ROW_NUMBER() OVER (ORDER BY SUM(clicks) DESC, referrer_domain) AS rn " +
+            "FROM link_referrer_daily_aggregate WHERE username = :username AND day BETWEEN :start AND :end GROUP BY referrer_domain) t " +
+            "GROUP BY 1, t.rn <= :topN ORDER BY MIN(t.rn)", nativeQuery = true)
+    List<DimensionTotals> sumByReferrer(@Param("username") String username,
+                                        @Param("start") LocalDate start,
+                                        @Param("end") LocalDate end,
+                                        @Param("topN") int topN);
+}
@@ -27,6 +27,29 @@ public interface LinkRepository extends JpaRepository<Link, Long> {
     @Query("SELECT l FROM Link l WHERE l.user.username = :username AND l.isActive = true ORDER BY l.displayOrder ASC")
     List<Link> findActiveLinksForPublicProfile(@Param("username") String username);
 
+    @Query("SELECT l FROM Link l JOIN FETCH l.user WHERE (l.startAt > :from AND l.startAt <= :to) OR (l.endAt >= :from AND l.endAt <= :to)")
+    List<Link> findWithScheduleBoundaryBetween(@Param("from") java.time.LocalDateTime from,
+                                               @Param("to") java.time.LocalDateTime to);
+
+    @Query("SELECT MAX(l.id) FROM Link l")
+    Long findMaxId();
+
+    @Query("SELECT l.id FROM Link l")
+    List<Long> findAllIds();
+
+    @Query("SELECT l.id FROM Link l WHERE l.id IN :ids")
+    List<Long> findExistingIds(@Param("ids") java.util.Collection<Long> ids);
+
+    @Query("SELECT l.id, l.user.username FROM Link l WHERE l.id IN :ids")
+    List<Object[]> findOwnerUsernames(@Param("ids") java.util.Collection<Long> ids);
+
+    @org.springframework.data.jpa.repository.Modifying
+    @Query("UPDATE Link l SET l.clickCount = l.clickCount + :clicks, l.updatedAt = :now WHERE l.id = :id")
+    int incrementClickCount(@Param("id") Long id, @Param("clicks") long clicks, @Param("now") java.time.LocalDateTime now);
+
+    @Query("SELECT l.alias FROM Link l WHERE l.alias IS NOT NULL")
+    List<String> findAllAliases();
+
     @Query("SELECT COUNT(l) FROM Link l WHERE l.user = :user AND l.isActive = true")
     long countActiveLinksForUser(@Param("user") User user);
 
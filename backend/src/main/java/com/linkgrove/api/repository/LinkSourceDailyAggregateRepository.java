@@ -11,21 +11,20 @@ import java.util.List;
 
 public interface LinkSourceDailyAggregateRepository extends JpaRepository<LinkSourceDailyAggregate, Long> {
 
+    /**
+     * Add a batch's clicks and new unique visitors for one row, creating it if needed.
+     */
     @Modifying
     @Query(value = "INSERT INTO link_source_daily_aggregate (username, link_id, day, source, clicks, unique_visitors) " +
-            "VALUES (:username, :linkId, :day, :src, 1, 0) " +
-            "ON CONFLICT (username, link_id, day, source) DO UPDATE SET clicks = link_source_daily_aggregate.clicks + 1", nativeQuery = true)
-    void upsertIncrement(@Param("username") String username,
-                         @Param("linkId") Long linkId,
-                         @Param("day") LocalDate day,
-                         @Param("src") String source);
-
-    @Modifying
-    @Query(value = "UPDATE link_source_daily_aggregate SET unique_visitors = unique_visitors + 1 WHERE username = :username AND link_id = :linkId AND day = :day AND source = :src", nativeQuery = true)
-    void incrementUnique(@Param("username") String username,
-                         @Param("linkId") Long linkId,
-                         @Param("day") LocalDate day,
-                         @Param("src") String source);
+            "VALUES (:username, :linkId, :day, :src, :clicks, :uniques) " +
+            "ON CONFLICT (username, link_id, day, source) DO UPDATE SET clicks = link_source_daily_aggregate.clicks + EXCLUDED.clicks, " +
+            "unique_visitors = link_source_daily_aggregate.unique_visitors + EXCLUDED.unique_visitors", nativeQuery = true)
+    void upsertAdd(@Param("username") String username,
+                   @Param("linkId") Long linkId,
+                   @Param("day") LocalDate day,
+                   @Param("src") String source,
+                   @Param("clicks") long clicks,
+                   @Param("uniques") long uniques);
 
     @Query("SELECT s FROM LinkSourceDailyAggregate s WHERE s.username = :username AND s.day BETWEEN :start AND :end")
     List<LinkSourceDailyAggregate> findRange(@Param("username") String username,
@@ -37,6 +36,34 @@ public interface LinkSourceDailyAggregateRepository extends JpaRepository<LinkSo
                                                     @Param("linkId") Long linkId,
                                                     @Param("start") LocalDate start,
                                                     @Param("end") LocalDate end);
-}
 
+    /**
+     * Per-source totals ordered by clicks; everything past the first {@code topN} is folded into one {@link DimensionTotals#OTHER} row.
+     */
+    @Query(value = "SELECT CASE WHEN t.rn <= :topN THEN t.dim ELSE '" + DimensionTotals.OTHER + "' END AS \"dimension\", " +
+            "CAST(SUM(t.clicks) AS BIGINT) AS \"clicks\", " +
+            "CASE WHEN MIN(t.rn) <= :topN THEN CAST(SUM(t.uniques) AS BIGINT) END AS \"uniqueVisitors\", " +
+            "MIN(t.rn) > :topN AS \"folded\" " +
+            "FROM (SELECT CAST(source AS TEXT) AS dim, SUM(clicks) AS clicks, SUM(unique_visitors) AS uniques, " +
+            "ROW_NUMBER() OVER (ORDER BY SUM(clicks) DESC, source) AS rn " +
+            "FROM link_source_daily_aggregate WHERE username = :username AND day BETWEEN :start AND :end GROUP BY source) t " +
+            "GROUP BY 1, t.rn <= :topN ORDER BY MIN(t.rn)", nativeQuery = true)
+    List<DimensionTotals> sumBySource(@Param("username") String username,
+                                      @Param("start") LocalDate start,
+                                      @Param("end") LocalDate end,
+                                      @Param("topN") int topN);
 
+    @Query(value = "SELECT CASE WHEN t.rn <= :topN THEN t.dim ELSE '" + DimensionTotals.OTHER + "' END AS \"dimension\", " +
+            "CAST(SUM(t.clicks) AS BIGINT) AS \"clicks\", " +
+            "CASE WHEN MIN(t.rn) <= :topN THEN CAST(SUM(t.uniques) AS BIGINT) END AS \"uniqueVisitors\", " +
+            "MIN(t.rn) > :topN AS \"folded\" " +
+            "FROM (SELECT CAST(source AS TEXT) AS dim, SUM(clicks) AS clicks, SUM(unique_visitors) AS uniques, " +
+            "ROW_NUMBER() OVER (ORDER BY SUM(clicks) DESC, source) AS rn " +
+            "FROM link_source_daily_aggregate WHERE username = :username AND link_id = :linkId AND day BETWEEN :start AND :end GROUP BY source) t " +
+            "GROUP BY 1, t.rn <= :topN ORDER BY MIN(t.rn)", nativeQuery = true)
+    List<DimensionTotals> sumBySourceForLink(@Param("username") String username,
+                                             @Param("linkId") Long linkId,
+                                             @Param("start") LocalDate start,
+                                             @Param("end") LocalDate end,
+                                             @Param("topN") int topN);
+}
@@ -11,27 +11,31 @@ import java.util.List;
 
 public interface LinkVariantDailyAggregateRepository extends JpaRepository<LinkVariantDailyAggregate, Long> {
 
+    /**
+     * Add a batch's clicks and new unique visitors for one row, creating it if needed.
+     */
     @Modifying
     @Query(value = "INSERT INTO link_variant_daily_aggregate (username, link_id, variant_id, day, clicks, unique_visitors) " +
-            "VALUES (:username, :linkId, :variantId, :day, 1, 0) " +
-            "ON CONFLICT (username, link_id, variant_id, day) DO UPDATE SET clicks = link_variant_daily_aggregate.clicks + 1", nativeQuery = true)
-    void upsertIncrement(@Param("username") String username,
-                          @Param("linkId") Long linkId,
-                          @Param("variantId") Long variantId,
-                          @Param("day") LocalDate day);
-
-    @Modifying
-    @Query(value = "UPDATE link_variant_daily_aggregate SET unique_visitors = unique_visitors + 1 " +
-            "WHERE username = :username AND link_id = :linkId AND variant_id = :variantId AND day = :day", nativeQuery = true)
-    void incrementUnique(@Param("username") String username,
-                         @Param("linkId") Long linkId,
-                         @Param("variantId") Long variantId,
-                         @Param("day") LocalDate day);
+            "VALUES (:username, :linkId, :variantId, :day, :clicks, :uniques) " +
+            "ON CONFLICT (username, link_id, variant_id, day) DO UPDATE SET clicks = link_variant_daily_aggregate.clicks + EXCLUDED.clicks, " +
+            "unique_visitors = link_variant_daily_aggregate.unique_visitors + EXCLUDED.unique_visitors", nativeQuery = true)
+    void upsertAdd(@Param("username") String username,
+                   @Param("linkId") Long linkId,
+                   @Param("variantId") Long variantId,
+                   @Param("day") LocalDate day,
+                   @Param("clicks") long clicks,
+                   @Param("uniques") long uniques);
 
     @Query("SELECT a FROM LinkVariantDailyAggregate a WHERE a.username = :username AND a.day BETWEEN :start AND :end")
     List<LinkVariantDailyAggregate> findRange(@Param("username") String username,
                                               @Param("start") LocalDate start,
                                               @Param("end") LocalDate end);
-}
-
 
+    @Query("SELECT v.id AS variantId, v.title AS variantTitle, SUM(a.clicks) AS clicks, SUM(a.uniqueVisitors) AS uniqueVisitors " +
+            "FROM LinkVariantDailyAggregate a JOIN a.variant v WHERE a.username = :username AND a.day BETWEEN :start AND :end " +
+            "AND (:linkId IS NULL OR a.link.id = :linkId) GROUP BY v.id, v.title ORDER BY SUM(a.clicks) DESC")
+    List<VariantTotals> sumByVariant(@Param("username") String username,
+                                     @Param("linkId") Long linkId,
+                                     @Param("start") LocalDate start,
+                                     @Param("end") LocalDate end);
+}
@@ -0,0 +1,47 @@
+package com.linkgrove.api.repository;
+
+import com.linkgrove.api.model.UserClickDailyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface UserClickDailyRollupRepository extends JpaRepository<UserClickDailyRollup, Long> {
+
+    /**
+     * Add a batch's clicks and new unique visitors for one row, creating it if needed.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO user_click_daily_rollup (username, day, clicks, unique_visitors) " +
+            "VALUES (:username, :day, :clicks, :uniques) " +
+            "ON CONFLICT (username, day) DO UPDATE SET clicks = user_click_daily_rollup.clicks + EXCLUDED.clicks, " +
+            "unique_visitors = user_click_daily_rollup.unique_visitors + EXCLUDED.unique_visitors", nativeQuery = true)
+    void upsertAdd(@Param("username") String username,
+                   @Param("day") LocalDate day,
+                   @Param("clicks") long clicks,
+                   @Param("uniques") long uniques);
+
+    @Query("SELECT r.day AS day, r.clicks AS clicks, r.uniqueVisitors AS uniqueVisitors " +
+            "FROM UserClickDailyRollup r WHERE r.username = :username AND r.day BETWEEN :start AND :end")
+    List<DailyTotals> findTotals(@Param("username") String username,
+                                 @Param("start") LocalDate start,
+                                 @Param("end") LocalDate end);
+
+    /**
+     * Recompute one day from {@code link_click_daily_aggregate}, optionally for a single user.
+     */
+    @Modifying
+    @Query(value = "DELETE FROM user_click_daily_rollup WHERE day = :day AND (CAST(:username AS TEXT) IS NULL OR username = :username)", nativeQuery = true)
+    int deleteDay(@Param("day") LocalDate day,
+                  @Param("username") String username);
+
+    @Modifying
+    @Query(value = "INSERT INTO user_click_daily_rollup (username, day, clicks, unique_visitors) " +
+            "SELECT username, day, SUM(clicks), SUM(unique_visitors) FROM link_click_daily_aggregate " +
+            "WHERE day = :day AND (CAST(:username AS TEXT) IS NULL OR username = :username) GROUP BY username, day", nativeQuery = true)
+    int insertDay(@Param("day") LocalDate day,
+                  @Param("username") String username);
+}
@@ -0,0 +1,73 @@
+package com.linkgrove.api.repository;
+
+import com.linkgrove.api.model.UserDimensionDailyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface UserDimensionDailyRollupRepository extends JpaRepository<UserDimensionDailyRollup, Long> {
+
+    /**
+     * Add a batch's clicks and new unique visitors for one row, creating it if needed.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO user_dimension_daily_rollup (username, dimension, day, dimension_value, clicks, unique_visitors) " +
+            "VALUES (:username, :dimension, :day, :value, :clicks, :uniques) " +
+            "ON CONFLICT (username, dimension, day, dimension_value) DO UPDATE SET clicks = user_dimension_daily_rollup.clicks + EXCLUDED.clicks, " +
+            "unique_visitors = user_dimension_daily_rollup.unique_visitors + EXCLUDED.unique_visitors", nativeQuery = true)
+    void upsertAdd(@Param("username") String username,
+                   @Param("dimension") String dimension,
+                   @Param("day") LocalDate day,
+                   @Param("value") String value,
+                   @Param("clicks") long clicks,
+                   @Param("uniques") long uniques);
+
+    /**
+     * Per-value totals for one dimension ordered by clicks; everything past the first {@code topN} is folded into one {@link DimensionTotals#OTHER} row.
+     */
+    @Query(value = "SELECT CASE WHEN t.rn <= :topN THEN t.dim ELSE '" + DimensionTotals.OTHER + "' END AS \"dimension\", " +
+            "CAST(SUM(t.clicks) AS BIGINT) AS \"clicks\", " +
+            "CASE WHEN MIN(t.rn) <= :topN THEN CAST(SUM(t.uniques) AS BIGINT) END AS \"uniqueVisitors\", " +
+            "MIN(t.rn) > :topN AS \"folded\" " +
+            "FROM (SELECT dimension_value AS dim, SUM(clicks) AS clicks, SUM(unique_visitors) AS uniques, " +
+            "ROW_NUMBER() OVER (ORDER BY SUM(clicks) DESC, dimension_value) AS rn " +
+            "FROM user_dimension_daily_rollup WHERE username = :username AND dimension = :dimension AND day BETWEEN :start AND :end " +
+            "GROUP BY dimension_value) t " +
+            "GROUP BY 1, t.rn <= :topN ORDER BY MIN(t.rn)", nativeQuery = true)
+    List<DimensionTotals> sumByValue(@Param("username") String username,
+                                     @Param("dimension") String dimension,
+                                     @Param("start") LocalDate start,
+                                     @Param("end") LocalDate end,
+                                     @Param("topN") int topN);
+
+    List<UserDimensionDailyRollup> findByUsernameAndDayBetween(String username, LocalDate start, LocalDate end);
+
+    /**
+     * Recompute one day of every dimension from the per-link tables, optionally for a single user.
+     * Values that no longer appear in the source (e.g. after a link was deleted) are removed first.
+     */
+    @Modifying
+    @Query(value = "DELETE FROM user_dimension_daily_rollup WHERE day = :day AND (CAST(:username AS TEXT) IS NULL OR username = :username)", nativeQuery = true)
+    int deleteDay(@Param("day") LocalDate day,
+                  @Param("username") String username);
+
+    @Modifying
+    @Query(value = "INSERT INTO user_dimension_daily_rollup (username, dimension, day, dimension_value, clicks, unique_visitors) " +
+            "SELECT username, 'referrer', day, referrer_domain, SUM(clicks), SUM(unique_visitors) FROM link_referrer_daily_aggregate " +
+            "WHERE day = :day AND (CAST(:username AS TEXT) IS NULL OR username = :username) GROUP BY username, day, referrer_domain " +
+            "UNION ALL " +
+            "SELECT username, 'device', day, device_type, SUM(clicks), SUM(unique_visitors) FROM link_device_daily_aggregate " +
+            "WHERE day = :day AND (CAST(:username AS TEXT) IS NULL OR username = :username) GROUP BY username, day, device_type " +
+            "UNION ALL " +
+            "SELECT username, 'country', day, CAST(country AS TEXT), SUM(clicks), SUM(unique_visitors) FROM link_geo_daily_aggregate " +
+            "WHERE day = :day AND (CAST(:username AS TEXT) IS NULL OR username = :username) GROUP BY username, day, country " +
+            "UNION ALL " +
+            "SELECT username, 'source', day, source, SUM(clicks), SUM(unique_visitors) FROM link_source_daily_aggregate " +
+            "WHERE day = :day AND (CAST(:username AS TEXT) IS NULL OR username = :username) GROUP BY username, day, source", nativeQuery = true)
+    int insertDay(@Param("day") LocalDate day,
+                  @Param("username") String username);
+}
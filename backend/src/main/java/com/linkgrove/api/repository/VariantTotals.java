@@ -0,0 +1,11 @@
+package com.linkgrove.api.repository;
+
+/**
+ * Clicks and unique visitors summed per variant in SQL.
+ */
+public interface VariantTotals {
+    Long getVariantId();
+    String getVariantTitle();
+    Long getClicks();
+    Long getUniqueVisitors();
+}
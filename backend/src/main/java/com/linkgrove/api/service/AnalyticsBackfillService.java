@@ -0,0 +1,408 @@
+package com.linkgrove.api.service;
+
+import com.linkgrove.api.config.CacheConfig;
+import com.linkgrove.api.eventstore.ClickEventStore;
+import com.linkgrove.api.eventstore.StoredClick;
+import com.linkgrove.api.event.LinkClickEvent;
+import com.linkgrove.api.util.HyperLogLog;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Rebuilds the per-link daily aggregates from the raw clicks in the {@link ClickEventStore}, e.g. after a
+ * change to {@link ClickNormalizer}.
+ *
+ * Each day is one partition: its clicks are folded into per-(link, dimension value) counts and visitor
+ * sets on a fork-join pool, then the day's aggregate rows are replaced and its rollups recomputed in one
+ * transaction, so readers see either the old day or the new one. Only closed UTC days can be rebuilt.
+ * A day whose store holds fewer clicks than {@code minCoverage} of what the aggregates already count
+ * (clicks from before the store existed, past its retention, or on another node) is skipped unless forced.
+ *
+ * One backfill runs at a time across nodes. Progress is checkpointed in Redis after every day; a run cut
+ * short by a restart resumes from its next day on startup, and a failed or cancelled run can be resumed.
+ */
+@Service
+@Slf4j
+public class AnalyticsBackfillService {
+
+    static final String KEY_PREFIX = "linkgrove:analytics:backfill:";
+    private static final String LOCK_KEY = KEY_PREFIX + "lock";
+    private static final String LATEST_KEY = KEY_PREFIX + "latest";
+    private static final Duration LOCK_TTL = Duration.ofMinutes(10);
+    private static final Duration CHECKPOINT_TTL = Duration.ofDays(30);
+
+    enum Dimension {
+        LINK("link_click_daily_aggregate", null),
+        REFERRER("link_referrer_daily_aggregate", "referrer_domain"),
+        DEVICE("link_device_daily_aggregate", "device_type"),
+        BROWSER("link_browser_daily_aggregate", "browser"),
+        OS("link_os_daily_aggregate", "os"),
+        BOT("link_bot_daily_aggregate", "bot"),
+        COUNTRY("link_geo_daily_aggregate", "country"),
+        SOURCE("link_source_daily_aggregate", "source"),
+        VARIANT("link_variant_daily_aggregate", "variant_id");
+
+        final String table;
+        final String valueColumn;
+
+        Dimension(String table, String valueColumn) {
+            this.table = table;
+            this.valueColumn = valueColumn;
+        }
+
+        String insertSql() {
+            String value = valueColumn == null ? "" : valueColumn + ", ";
+            String bind = valueColumn == null ? "" : "?, ";
+            // Links (and variants) deleted since the click have no row to reference; their counts are dropped
+            String from = this == VARIANT
+                    ? " FROM link_variants v WHERE v.id = ? AND v.link_id = ?"
+                    : " FROM links l WHERE l.id = ?";
+            return "INSERT INTO " + table + " (username, link_id, day, " + value + "clicks, unique_visitors, uv_sketch) " +
+                    "SELECT ?, ?, ?, " + bind + "?, ?, ?" + from;
+        }
+    }
+
+    record Key(Dimension dimension, String username, long linkId, String value) {}
+
+    static final class Counts {
+        long clicks;
+        final Set<Long> visitors = new HashSet<>();
+    }
+
+    /**
+     * One day's clicks folded into aggregate rows, the same way the worker counts them.
+     */
+    static final class DayAggregates {
+        final Map<Key, Counts> rows = new HashMap<>();
+        long clicks;
+
+        void add(StoredClick click, ClickNormalizer normalizer) {
+            LinkClickEvent event = click.toEvent();
+            Long visitor = click.visitorHash();
+            if (visitor == null) {
+                // Stored without a hashed visitor: derive it from the session id or address as the worker did
+                String visitorId = normalizer.deriveVisitorId(event);
+                visitor = visitorId == null || visitorId.isBlank() ? null : HyperLogLog.hash(visitorId);
+            }
+            clicks++;
+            count(new Key(Dimension.LINK, click.username(), click.linkId(), null), visitor);
+            if (click.variantId() != null) {
+                count(new Key(Dimension.VARIANT, click.username(), click.linkId(), click.variantId().toString()), visitor);
+            }
+            String domain = normalizer.extractDomain(click.referrer());
+            if (domain != null) count(new Key(Dimension.REFERRER, click.username(), click.linkId(), domain), visitor);
+            String source = normalizer.normalizeSource(event);
+            if (source != null) count(new Key(Dimension.SOURCE, click.username(), click.linkId(), source), visitor);
+            UserAgentClassifier.Classification ua = normalizer.classifyUserAgent(click.userAgent());
+            count(new Key(Dimension.DEVICE, click.username(), click.linkId(), ua.device()), visitor);
+            count(new Key(Dimension.BROWSER, click.username(), click.linkId(), ua.browser()), visitor);
+            count(new Key(Dimension.OS, click.username(), click.linkId(), ua.os()), visitor);
+            if (ua.isBot()) count(new Key(Dimension.BOT, click.username(), click.linkId(), ua.bot()), visitor);
+            String country = normalizer.resolveCountry(click.clientIp());
+            if (country != null) count(new Key(Dimension.COUNTRY, click.username(), click.linkId(), country), visitor);
+        }
+
+        DayAggregates merge(DayAggregates other) {
+            DayAggregates big = rows.size() >= other.rows.size() ? this : other;
+            DayAggregates small = big == this ? other : this;
+            small.rows.forEach((key, c) -> {
+                Counts into = big.rows.computeIfAbsent(key, k -> new Counts());
+                into.clicks += c.clicks;
+                into.visitors.addAll(c.visitors);
+            });
+            big.clicks += small.clicks;
+            return big;
+        }
+
+        private void count(Key key, Long visitor) {
+            Counts c = rows.computeIfAbsent(key, k -> new Counts());
+            c.clicks++;
+            if (visitor != null) c.visitors.add(visitor);
+        }
+    }
+
+    private final ClickEventStore clickStore;
+    private final ClickNormalizer normalizer;
+    private final JdbcTemplate jdbcTemplate;
+    private final AnalyticsRollupService rollupService;
+    private final SealedDayAnalyticsCache sealedDayCache;
+    private final StringRedisTemplate redisTemplate;
+    private final CacheManager cacheManager;
+    private final TransactionTemplate transactionTemplate;
+    private final ForkJoinPool pool;
+    private final double minCoverage;
+    private final int maxDays;
+
+    public AnalyticsBackfillService(ClickEventStore clickStore,
+                                    ClickNormalizer normalizer,
+                                    JdbcTemplate jdbcTemplate,
+                                    AnalyticsRollupService rollupService,
+                                    SealedDayAnalyticsCache sealedDayCache,
+                                    StringRedisTemplate redisTemplate,
+                                    CacheManager cacheManager,
+                                    PlatformTransactionManager transactionManager,
+                                    @Value("${analytics.backfill.parallelism:0}") int parallelism,
+                                    @Value("${analytics.backfill.minCoverage:0.99}") double minCoverage,
+                                    @Value("${analytics.backfill.maxDays:366}") int maxDays) {
+        this.clickStore = clickStore;
+        this.normalizer = normalizer;
+        this.jdbcTemplate = jdbcTemplate;
+        this.rollupService = rollupService;
+        this.sealedDayCache = sealedDayCache;
+        this.redisTemplate = redisTemplate;
+        this.cacheManager = cacheManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.minCoverage = minCoverage;
+        this.maxDays = maxDays;
+    }
+
+    @PreDestroy
+    public void stop() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Start rebuilding {@code [from, to]} for one user, or everyone when {@code username} is null.
+     */
+    public Map<String, Object> start(LocalDate from, LocalDate to, String username, boolean force) {
+        if (!clickStore.isEnabled()) {
+            throw new IllegalArgumentException("The click event store is disabled");
+        }
+        if (from == null || to == null || to.isBefore(from)) {
+            throw new IllegalArgumentException("Invalid range");
+        }
+        if (!to.isBefore(LocalDate.now(ZoneOffset.UTC))) {
+            throw new IllegalArgumentException("Only days before today (UTC) can be rebuilt");
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= maxDays) {
+            throw new IllegalArgumentException("Range too large (max " + maxDays + " days)");
+        }
+        String id = UUID.randomUUID().toString();
+        if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, id, LOCK_TTL))) {
+            throw new IllegalArgumentException("Another analytics backfill is running");
+        }
+        Map<String, String> checkpoint = new HashMap<>();
+        checkpoint.put("id", id);
+        checkpoint.put("from", from.toString());
+        checkpoint.put("to", to.toString());
+        checkpoint.put("username", username == null ? "" : username);
+        checkpoint.put("force", String.valueOf(force));
+        checkpoint.put("nextDay", from.toString());
+        checkpoint.put("daysDone", "0");
+        checkpoint.put("daysSkipped", "0");
+        checkpoint.put("clicks", "0");
+        checkpoint.put("status", "running");
+        checkpoint.put("createdAt", Instant.now().toString());
+        redisTemplate.opsForHash().putAll(KEY_PREFIX + id, checkpoint);
+        redisTemplate.expire(KEY_PREFIX + id, CHECKPOINT_TTL);
+        redisTemplate.opsForValue().set(LATEST_KEY, id, CHECKPOINT_TTL);
+        launch(id);
+        return status(id);
+    }
+
+    /**
+     * Continue a failed, cancelled or interrupted run from its next unfinished day.
+     */
+    public Map<String, Object> resume(String id) {
+        Map<String, Object> current = status(id);
+        if ("succeeded".equals(current.get("status"))) {
+            throw new IllegalArgumentException("Backfill already finished");
+        }
+        if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, id, LOCK_TTL))) {
+            throw new IllegalArgumentException("Another analytics backfill is running");
+        }
+        redisTemplate.opsForHash().delete(KEY_PREFIX + id, "cancelRequested", "error");
+        redisTemplate.opsForHash().put(KEY_PREFIX + id, "status", "running");
+        launch(id);
+        return status(id);
+    }
+
+    /**
+     * Ask a running backfill to stop after its current day.
+     */
+    public Map<String, Object> cancel(String id) {
+        status(id);
+        redisTemplate.opsForHash().put(KEY_PREFIX + id, "cancelRequested", "true");
+        return status(id);
+    }
+
+    public Map<String, Object> status(String id) {
+        Map<Object, Object> raw = redisTemplate.opsForHash().entries(KEY_PREFIX + id);
+        if (raw == null || raw.isEmpty()) {
+            throw new IllegalArgumentException("Unknown backfill " + id);
+        }
+        Map<String, Object> out = new HashMap<>();
+        raw.forEach((k, v) -> out.put(k.toString(), v));
+        return out;
+    }
+
+    /**
+     * Pick up the latest run if it was still running when its node went away.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterrupted() {
+        try {
+            String id = redisTemplate.opsForValue().get(LATEST_KEY);
+            if (id == null) return;
+            Object status = redisTemplate.opsForHash().get(KEY_PREFIX + id, "status");
+            if (!"running".equals(status)) return;
+            if (Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, id, LOCK_TTL))) {
+                log.info("Resuming interrupted analytics backfill {}", id);
+                launch(id);
+            }
+        } catch (Exception e) {
+            log.warn("Could not check for an interrupted analytics backfill: {}", e.getMessage());
+        }
+    }
+
+    private void launch(String id) {
+        Thread.ofPlatform().daemon().name("analytics-backfill").start(() -> run(id));
+    }
+
+    void run(String id) {
+        String key = KEY_PREFIX + id;
+        try {
+            Map<String, Object> cp = status(id);
+            LocalDate to = LocalDate.parse((String) cp.get("to"));
+            String username = ((String) cp.get("username")).isEmpty() ? null : (String) cp.get("username");
+            boolean force = Boolean.parseBoolean((String) cp.get("force"));
+            for (LocalDate day = LocalDate.parse((String) cp.get("nextDay")); !day.isAfter(to); day = day.plusDays(1)) {
+                if (redisTemplate.opsForHash().get(key, "cancelRequested") != null) {
+                    redisTemplate.opsForHash().put(key, "status", "cancelled");
+                    log.info("Analytics backfill {} cancelled before {}", id, day);
+                    return;
+                }
+                if (!id.equals(redisTemplate.opsForValue().get(LOCK_KEY))) {
+                    throw new IllegalStateException("Backfill lock lost");
+                }
+                redisTemplate.expire(LOCK_KEY, LOCK_TTL);
+
+                long started = System.currentTimeMillis();
+                long[] result = rebuildDay(day, username, force);
+                Map<String, String> progress = new HashMap<>();
+                progress.put("nextDay", day.plusDays(1).toString());
+                progress.put("updatedAt", Instant.now().toString());
+                redisTemplate.opsForHash().putAll(key, progress);
+                redisTemplate.opsForHash().increment(key, "clicks", result[0]);
+                if (result[1] < 0) {
+                    redisTemplate.opsForHash().increment(key, "daysSkipped", 1);
+                    redisTemplate.opsForHash().put(key, "lastSkippedDay", day.toString());
+                } else {
+                    redisTemplate.opsForHash().increment(key, "daysDone", 1);
+                }
+                log.info("Analytics backfill {} day {}: {} clicks, {} rows{} in {}ms", id, day, result[0],
+                        Math.max(0, result[1]), result[1] < 0 ? " (skipped: store incomplete)" : "", System.currentTimeMillis() - started);
+            }
+            redisTemplate.opsForHash().put(key, "status", "succeeded");
+            io.micrometer.core.instrument.Metrics.counter("analytics.backfill.runs", "status", "succeeded").increment();
+        } catch (Exception e) {
+            log.error("Analytics backfill {} failed: {}", id, e.getMessage(), e);
+            try {
+                redisTemplate.opsForHash().put(key, "status", "failed");
+                redisTemplate.opsForHash().put(key, "error", String.valueOf(e.getMessage()));
+            } catch (Exception ignored) {}
+            io.micrometer.core.instrument.Metrics.counter("analytics.backfill.runs", "status", "failed").increment();
+        } finally {
+            try {
+                if (id.equals(redisTemplate.opsForValue().get(LOCK_KEY))) redisTemplate.delete(LOCK_KEY);
+            } catch (Exception ignored) {}
+        }
+    }
+
+    /**
+     * @return the day's clicks in the store, and the rows written, or -1 if the day was skipped
+     */
+    long[] rebuildDay(LocalDate day, String username, boolean force) {
+        Instant start = day.atStartOfDay(ZoneOffset.UTC).toInstant();
+        DayAggregates agg = clickStore.reduce(start, start.plus(Duration.ofDays(1)), null, DayAggregates::new,
+                (a, click) -> {
+                    if (username == null || username.equals(click.username())) a.add(click, normalizer);
+                },
+                DayAggregates::merge, pool);
+
+        String userFilter = username == null ? "" : " AND username = ?";
+        Object[] dayArgs = username == null ? new Object[]{day} : new Object[]{day, username};
+        Long existing = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(clicks), 0) FROM link_click_daily_aggregate WHERE day = ?" + userFilter, Long.class, dayArgs);
+        if (!force && agg.clicks < (existing == null ? 0 : existing) * minCoverage) {
+            return new long[]{agg.clicks, -1};
+        }
+
+        Map<Dimension, List<Object[]>> rows = new HashMap<>();
+        agg.rows.forEach((key, c) -> {
+            HyperLogLog sketch = new HyperLogLog();
+            for (Long v : c.visitors) sketch.add(v);
+            List<Object> args = new ArrayList<>(9);
+            args.add(key.username());
+            args.add(key.linkId());
+            args.add(day);
+            if (key.dimension() == Dimension.VARIANT) {
+                args.add(Long.parseLong(key.value()));
+            } else if (key.dimension().valueColumn != null) {
+                args.add(key.value());
+            }
+            args.add(c.clicks);
+            args.add((long) c.visitors.size());
+            args.add(sketch.toBytes());
+            if (key.dimension() == Dimension.VARIANT) args.add(Long.parseLong(key.value()));
+            args.add(key.linkId());
+            rows.computeIfAbsent(key.dimension(), d -> new ArrayList<>()).add(args.toArray());
+        });
+
+        long[] written = {0};
+        transactionTemplate.executeWithoutResult(status -> {
+            for (Dimension d : Dimension.values()) {
+                jdbcTemplate.update("DELETE FROM " + d.table + " WHERE day = ?" + userFilter, dayArgs);
+                List<Object[]> batch = rows.getOrDefault(d, List.of());
+                if (!batch.isEmpty()) {
+                    for (int n : jdbcTemplate.batchUpdate(d.insertSql(), batch)) written[0] += Math.max(0, n);
+                }
+            }
+            // Joins this transaction, so the rollups flip together with the aggregates
+            rollupService.rebuild(day, day, username);
+        });
+        // A slice reloaded between the eviction inside the transaction and its commit holds the old day
+        sealedDayCache.evict(day, day, username);
+        evictCaches();
+        io.micrometer.core.instrument.Metrics.counter("analytics.backfill.days").increment();
+        return new long[]{agg.clicks, written[0]};
+    }
+
+    /**
+     * Drop the cached analytics responses, which may cover the rebuilt day: the {@code analytics} cache and
+     * every breakdown cache the worker clears. Their keys are per user and range, so they are cleared whole.
+     */
+    private void evictCaches() {
+        List<String> names = new ArrayList<>(CacheConfig.ANALYTICS_BREAKDOWN_CACHES);
+        names.add("analytics");
+        for (String name : names) {
+            Cache cache = cacheManager.getCache(name);
+            if (cache != null) cache.clear();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.linkgrove.api.service;
+
+import com.linkgrove.api.repository.DimensionTotals;
+import com.linkgrove.api.util.AnalyticsCube;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-user {@link AnalyticsCube}s over the last {@code analytics.cube.days} sealed days, kept in an LRU
+ * bounded by {@code analytics.cube.maxBytes}.
+ *
+ * A cube is loaded lazily from the sealed day slices (one MGET) and replaced once another day seals.
+ * Open days are read live and overlaid at query time, so clicks for today never touch the cube. A late
+ * click or a rollup rebuild evicts the sealed slice; that eviction is broadcast on a Redis channel so
+ * every node drops the affected cube. Ranges reaching past the cube fall back to the sealed slices.
+ */
+@Service
+@Slf4j
+public class AnalyticsCubeService {
+
+    private static final String CHANNEL = "linkgrove:analytics:cube:events";
+    private static final String ALL_USERS = "*";
+
+    private final SealedDayAnalyticsCache sealedDayCache;
+    private final StringRedisTemplate redisTemplate;
+    private final RedisConnectionFactory redisConnectionFactory;
+
+    @Value("${analytics.cube.enabled:true}")
+    private boolean enabled;
+
+    @Value("${analytics.cube.days:366}")
+    private int horizonDays;
+
+    @Value("${analytics.cube.maxBytes:67108864}")
+    private long maxBytes;
+
+    private final LinkedHashMap<String, AnalyticsCube> cubes = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+    // Bumped on every invalidation; a cube loaded across a bump may contain the evicted data and is not kept
+    private final AtomicLong epoch = new AtomicLong();
+    private RedisMessageListenerContainer listenerContainer;
+
+    public AnalyticsCubeService(SealedDayAnalyticsCache sealedDayCache,
+                                StringRedisTemplate redisTemplate,
+                                RedisConnectionFactory redisConnectionFactory) {
+        this.sealedDayCache = sealedDayCache;
+        this.redisTemplate = redisTemplate;
+        this.redisConnectionFactory = redisConnectionFactory;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) return;
+        sealedDayCache.addEvictionListener(this::publishInvalidation);
+        try {
+            listenerContainer = new RedisMessageListenerContainer();
+            listenerContainer.setConnectionFactory(redisConnectionFactory);
+            listenerContainer.addMessageListener((message, pattern) ->
+                    invalidate(new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(CHANNEL));
+            listenerContainer.afterPropertiesSet();
+            listenerContainer.start();
+        } catch (Exception e) {
+            // Without the channel other nodes cannot tell us about late clicks; do not serve possibly stale cubes
+            log.warn("Analytics cube pub/sub unavailable, cube disabled: {}", e.getMessage());
+            enabled = false;
+            return;
+        }
+        io.micrometer.core.instrument.Gauge.builder("analytics.cube.bytes", this, s -> s.usedBytes())
+                .register(io.micrometer.core.instrument.Metrics.globalRegistry);
+        io.micrometer.core.instrument.Gauge.builder("analytics.cube.users", this, s -> s.size())
+                .register(io.micrometer.core.instrument.Metrics.globalRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (listenerContainer != null) {
+            try {
+                listenerContainer.destroy();
+            } catch (Exception ignored) {}
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Fill {@code clicks} / {@code uniques} (indexed by day offset from {@code start}) for {@code [start, end]}.
+     */
+    public void timeseries(String username, LocalDate start, LocalDate end, long[] clicks, long[] uniques) {
+        LocalDate lastSealed = sealedDayCache.lastSealedDay();
+        if (start.isBefore(firstDay(lastSealed))) {
+            fill(sealedDayCache.slices(username, start, end), start, clicks, uniques);
+            return;
+        }
+        AnalyticsCube cube = cube(username, lastSealed);
+        int i = 0;
+        for (LocalDate d = start; !d.isAfter(end) && !d.isAfter(lastSealed); d = d.plusDays(1), i++) {
+            clicks[i] = cube.clicks(d);
+            uniques[i] = cube.uniqueVisitors(d);
+        }
+        if (end.isAfter(lastSealed)) {
+            LocalDate openFrom = start.isAfter(lastSealed) ? start : lastSealed.plusDays(1);
+            fill(sealedDayCache.slices(username, openFrom, end), start, clicks, uniques);
+        }
+    }
+
+    /**
+     * Same contract as {@link SealedDayAnalyticsCache#breakdown}.
+     */
+    public List<DimensionTotals> breakdown(String username, String dimension, LocalDate start, LocalDate end, int topN) {
+        LocalDate lastSealed = sealedDayCache.lastSealedDay();
+        if (start.isBefore(firstDay(lastSealed))) {
+            return sealedDayCache.breakdown(username, dimension, start, end, topN);
+        }
+        AnalyticsCube cube = cube(username, lastSealed);
+        Map<String, long[]> open = null;
+        if (end.isAfter(lastSealed)) {
+            open = new HashMap<>();
+            LocalDate openFrom = start.isAfter(lastSealed) ? start : lastSealed.plusDays(1);
+            for (SealedDayAnalyticsCache.DaySlice s : sealedDayCache.slices(username, openFrom, end)) {
+                Map<String, long[]> values = s.getDimensions().get(dimension);
+                if (values == null) continue;
+                for (Map.Entry<String, long[]> e : values.entrySet()) {
+                    long[] acc = open.computeIfAbsent(e.getKey(), k -> new long[2]);
+                    acc[0] += e.getValue()[0];
+                    acc[1] += e.getValue()[1];
+                }
+            }
+        }
+        LocalDate to = end.isAfter(lastSealed) ? lastSealed : end;
+        List<DimensionTotals> out = new ArrayList<>();
+        for (AnalyticsCube.Total t : cube.top(dimension, start, to, open, topN)) {
+            out.add(t.folded() ? SealedDayAnalyticsCache.Row.folded(t.clicks())
+                    : new SealedDayAnalyticsCache.Row(null, t.value(), t.clicks(), t.uniqueVisitors()));
+        }
+        return out;
+    }
+
+    private AnalyticsCube cube(String username, LocalDate lastSealed) {
+        synchronized (cubes) {
+            AnalyticsCube cube = cubes.get(username);
+            if (cube != null && cube.lastDay().equals(lastSealed)) return cube;
+        }
+        long seen = epoch.get();
+        LocalDate first = firstDay(lastSealed);
+        AnalyticsCube.Builder builder = AnalyticsCube.builder(first, horizonDays);
+        for (SealedDayAnalyticsCache.DaySlice s : sealedDayCache.slices(username, first, lastSealed)) {
+            builder.day(s.getDay(), s.getClicks(), s.getUniqueVisitors());
+            s.getDimensions().forEach((dim, values) -> values.forEach((v, c) -> builder.value(dim, s.getDay(), v, c[0], c[1])));
+        }
+        AnalyticsCube cube = builder.build();
+        io.micrometer.core.instrument.Metrics.counter("analytics.cube.loads").increment();
+        if (epoch.get() == seen) put(username, cube);
+        return cube;
+    }
+
+    private LocalDate firstDay(LocalDate lastSealed) {
+        return lastSealed.minusDays(horizonDays - 1L);
+    }
+
+    private void put(String username, AnalyticsCube cube) {
+        synchronized (cubes) {
+            AnalyticsCube previous = cubes.put(username, cube);
+            if (previous != null) usedBytes -= previous.estimatedBytes();
+            usedBytes += cube.estimatedBytes();
+            var it = cubes.entrySet().iterator();
+            while (usedBytes > maxBytes && cubes.size() > 1 && it.hasNext()) {
+                var eldest = it.next();
+                if (eldest.getKey().equals(username)) continue;
+                usedBytes -= eldest.getValue().estimatedBytes();
+                it.remove();
+                io.micrometer.core.instrument.Metrics.counter("analytics.cube.evictions").increment();
+            }
+        }
+    }
+
+    private void publishInvalidation(String username) {
+        String target = username == null ? ALL_USERS : username;
+        invalidate(target);
+        try {
+            redisTemplate.convertAndSend(CHANNEL, target);
+        } catch (Exception e) {
+            log.warn("Failed to publish analytics cube invalidation: {}", e.getMessage());
+        }
+    }
+
+    void invalidate(String username) {
+        epoch.incrementAndGet();
+        synchronized (cubes) {
+            if (ALL_USERS.equals(username)) {
+                cubes.clear();
+                usedBytes = 0;
+                return;
+            }
+            AnalyticsCube removed = cubes.remove(username);
+            if (removed != null) usedBytes -= removed.estimatedBytes();
+        }
+    }
+
+    private long usedBytes() {
+        synchronized (cubes) {
+            return usedBytes;
+        }
+    }
+
+    private int size() {
+        synchronized (cubes) {
+            return cubes.size();
+        }
+    }
+
+    private static void fill(List<SealedDayAnalyticsCache.DaySlice> slices, LocalDate start, long[] clicks, long[] uniques) {
+        for (SealedDayAnalyticsCache.DaySlice s : slices) {
+            int i = (int) ChronoUnit.DAYS.between(start, s.getDay());
+            clicks[i] = s.getClicks();
+            uniques[i] = s.getUniqueVisitors();
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.linkgrove.api.service;
 
 import com.linkgrove.api.dto.DeviceStat;
 import com.linkgrove.api.dto.DevicesResponse;
+import com.linkgrove.api.dto.UserAgentStat;
+import com.linkgrove.api.dto.UserAgentsResponse;
 import com.linkgrove.api.dto.CountryStat;
 import com.linkgrove.api.dto.CountriesResponse;
 import com.linkgrove.api.dto.ReferrerStat;
@@ -10,10 +12,10 @@ import com.linkgrove.api.dto.SourceStat;
 import com.linkgrove.api.dto.SourcesResponse;
 import com.linkgrove.api.model.Link;
 import com.linkgrove.api.model.User;
+import com.linkgrove.api.model.UserDimensionDailyRollup;
 import com.linkgrove.api.repository.LinkClickDailyAggregateRepository;
 import com.linkgrove.api.repository.LinkDeviceDailyAggregateRepository;
 import com.linkgrove.api.repository.LinkVariantDailyAggregateRepository;
-import com.linkgrove.api.repository.LinkVariantRepository;
 import com.linkgrove.api.repository.LinkReferrerDailyAggregateRepository;
 import com.linkgrove.api.repository.LinkRepository;
 import com.linkgrove.api.repository.UserRepository;
@@ -38,9 +40,25 @@ public class AnalyticsService {
     private final LinkReferrerDailyAggregateRepository referrerAggregateRepository;
     private final LinkDeviceDailyAggregateRepository deviceAggregateRepository;
     private final LinkVariantDailyAggregateRepository variantAggregateRepository;
-    private final LinkVariantRepository linkVariantRepository;
     private final com.linkgrove.api.repository.LinkGeoDailyAggregateRepository geoAggregateRepository;
     private final com.linkgrove.api.repository.LinkSourceDailyAggregateRepository sourceAggregateRepository;
+    private final com.linkgrove.api.repository.LinkBrowserDailyAggregateRepository browserAggregateRepository;
+    private final com.linkgrove.api.repository.LinkOsDailyAggregateRepository osAggregateRepository;
+    private final com.linkgrove.api.repository.LinkBotDailyAggregateRepository botAggregateRepository;
+    private final com.linkgrove.api.repository.UserClickDailyRollupRepository clickRollupRepository;
+    private final com.linkgrove.api.repository.UserDimensionDailyRollupRepository dimensionRollupRepository;
+
+    /** Read account-level timeseries and breakdowns from the per-user rollups instead of summing per-link rows. */
+    @org.springframework.beans.factory.annotation.Value("${analytics.rollups.read-enabled:true}")
+    private boolean readRollups;
+
+    private final SealedDayAnalyticsCache sealedDayCache;
+    private final AnalyticsCubeService cubeService;
+    private final VisitorSketchService visitorSketches;
+
+    /** Serve closed days from sealed per-day slices and only query today's rollups; needs {@code readRollups}. */
+    @org.springframework.beans.factory.annotation.Value("${analytics.sealed.enabled:true}")
+    private boolean readSealed;
 
     @Cacheable(value = "analytics", key = "#username + '_overview'")
     @Transactional(readOnly = true)
@@ -104,10 +122,19 @@ public class AnalyticsService {
     @Cacheable(value = "analytics", key = "#username + '_top_links'")
     @Transactional(readOnly = true)
     public Map<String, Object> getTopPerformingLinks(String username) {
-        log.info("Fetching top performing links from database for user: {}", username);
-        
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"));
+        return getTopPerformingLinks(user);
+    }
+
+    /**
+     * {@link #getTopPerformingLinks(String)} for a user already loaded, as the dashboard does.
+     */
+    @Cacheable(value = "analytics", key = "#user.username + '_top_links'")
+    @Transactional(readOnly = true)
+    public Map<String, Object> getTopPerformingLinks(User user) {
+        String username = user.getUsername();
+        log.info("Fetching top performing links from database for user: {}", username);
 
         List<Link> userLinks = linkRepository.findByUserOrderByDisplayOrderAsc(user);
         
@@ -136,10 +163,19 @@ public class AnalyticsService {
     @Cacheable(value = "analytics", key = "#username + '_dashboard_summary'")
     @Transactional(readOnly = true)
     public Map<String, Object> getDashboardSummary(String username) {
-        log.info("Fetching dashboard summary from database for user: {}", username);
-        
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"));
+        return getDashboardSummary(user);
+    }
+
+    /**
+     * {@link #getDashboardSummary(String)} for a user already loaded, as the dashboard does.
+     */
+    @Cacheable(value = "analytics", key = "#user.username + '_dashboard_summary'")
+    @Transactional(readOnly = true)
+    public Map<String, Object> getDashboardSummary(User user) {
+        String username = user.getUsername();
+        log.info("Fetching dashboard summary from database for user: {}", username);
 
         List<Link> userLinks = linkRepository.findByUserOrderByDisplayOrderAsc(user);
         
@@ -181,32 +217,45 @@ public class AnalyticsService {
     @Cacheable(value = "analytics", key = "#username + '_timeseries_' + #days")
     @Transactional(readOnly = true)
     public Map<String, Object> getTimeseriesData(String username, int days) {
-        log.info("Fetching timeseries data for user: {} for last {} days", username, days);
-
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"));
+        return getTimeseriesData(user, days);
+    }
+
+    /**
+     * {@link #getTimeseriesData(String, int)} for a user already loaded, as the dashboard does.
+     */
+    @Cacheable(value = "analytics", key = "#user.username + '_timeseries_' + #days")
+    @Transactional(readOnly = true)
+    public Map<String, Object> getTimeseriesData(User user, int days) {
+        String username = user.getUsername();
+        log.info("Fetching timeseries data for user: {} for last {} days", username, days);
 
         java.time.LocalDate end = java.time.LocalDate.now(java.time.ZoneOffset.UTC);
         java.time.LocalDate start = end.minusDays(Math.max(0, days - 1));
 
-        var aggregates = aggregateRepository.findRange(user.getUsername(), start, end);
-        var byDay = new java.util.HashMap<java.time.LocalDate, Long>();
-        var byDayUnique = new java.util.HashMap<java.time.LocalDate, Long>();
-        for (var a : aggregates) {
-            byDay.merge(a.getDay(), a.getClicks(), Long::sum);
-            byDayUnique.merge(a.getDay(), a.getUniqueVisitors(), Long::sum);
+        // Day-offset indexed columns; every source fills the same arrays
+        int n = (int) java.time.temporal.ChronoUnit.DAYS.between(start, end) + 1;
+        long[] clicksByDay = new long[n];
+        long[] uniquesByDay = new long[n];
+        if (readRollups && readSealed && cubeService.isEnabled()) {
+            cubeService.timeseries(user.getUsername(), start, end, clicksByDay, uniquesByDay);
+        } else {
+            var totals = !readRollups ? aggregateRepository.sumByDay(user.getUsername(), start, end)
+                    : readSealed ? sealedDayCache.dailyTotals(user.getUsername(), start, end)
+                    : clickRollupRepository.findTotals(user.getUsername(), start, end);
+            fillByDay(totals, start, clicksByDay, uniquesByDay);
         }
 
-        java.util.List<java.util.Map<String, Object>> timeseriesData = new java.util.ArrayList<>();
+        java.util.List<java.util.Map<String, Object>> timeseriesData = new java.util.ArrayList<>(n);
         long totalClicks = 0;
-        for (java.time.LocalDate d = start; !d.isAfter(end); d = d.plusDays(1)) {
-            long clicks = byDay.getOrDefault(d, 0L);
-            totalClicks += clicks;
-            java.util.Map<String, Object> dayData = new java.util.HashMap<>();
+        java.time.LocalDate d = start;
+        for (int i = 0; i < n; i++, d = d.plusDays(1)) {
+            totalClicks += clicksByDay[i];
+            java.util.Map<String, Object> dayData = new java.util.HashMap<>(4);
             dayData.put("date", d.toString());
-            dayData.put("clicks", clicks);
-            long uniques = byDayUnique.getOrDefault(d, 0L);
-            dayData.put("uniqueVisitors", uniques);
+            dayData.put("clicks", clicksByDay[i]);
+            dayData.put("uniqueVisitors", uniquesByDay[i]);
             timeseriesData.add(dayData);
         }
 
@@ -217,6 +266,12 @@ public class AnalyticsService {
         result.put("totalClicks", totalClicks);
         result.put("averageDailyClicks", timeseriesData.isEmpty() ? 0.0 :
                 Math.round((double) totalClicks / timeseriesData.size() * 100.0) / 100.0);
+        if (visitorSketches.isEnabled()) {
+            // Distinct over the whole period, not the sum of the daily figures
+            result.put("totalUniqueVisitors", readRollups && readSealed
+                    ? SealedDayAnalyticsCache.uniques(sealedDayCache.slices(user.getUsername(), start, end)).estimate()
+                    : visitorSketches.userUniques(user.getUsername(), start, end));
+        }
 
         return result;
     }
@@ -236,24 +291,20 @@ public class AnalyticsService {
         java.time.LocalDate end = java.time.LocalDate.now(java.time.ZoneOffset.UTC);
         java.time.LocalDate start = end.minusDays(Math.max(0, days - 1));
 
-        var aggregates = aggregateRepository.findRangeForLink(user.getUsername(), link.getId(), start, end);
-        var byDay = new java.util.HashMap<java.time.LocalDate, Long>();
-        var byDayUnique = new java.util.HashMap<java.time.LocalDate, Long>();
-        for (var a : aggregates) {
-            byDay.merge(a.getDay(), a.getClicks(), Long::sum);
-            byDayUnique.merge(a.getDay(), a.getUniqueVisitors(), Long::sum);
-        }
+        int n = (int) java.time.temporal.ChronoUnit.DAYS.between(start, end) + 1;
+        long[] clicksByDay = new long[n];
+        long[] uniquesByDay = new long[n];
+        fillByDay(aggregateRepository.sumByDayForLink(user.getUsername(), link.getId(), start, end), start, clicksByDay, uniquesByDay);
 
-        java.util.List<java.util.Map<String, Object>> timeseriesData = new java.util.ArrayList<>();
+        java.util.List<java.util.Map<String, Object>> timeseriesData = new java.util.ArrayList<>(n);
         long totalClicks = 0;
-        for (java.time.LocalDate d = start; !d.isAfter(end); d = d.plusDays(1)) {
-            long clicks = byDay.getOrDefault(d, 0L);
-            totalClicks += clicks;
-            java.util.Map<String, Object> dayData = new java.util.HashMap<>();
+        java.time.LocalDate d = start;
+        for (int i = 0; i < n; i++, d = d.plusDays(1)) {
+            totalClicks += clicksByDay[i];
+            java.util.Map<String, Object> dayData = new java.util.HashMap<>(4);
             dayData.put("date", d.toString());
-            dayData.put("clicks", clicks);
-            long uniques = byDayUnique.getOrDefault(d, 0L);
-            dayData.put("uniqueVisitors", uniques);
+            dayData.put("clicks", clicksByDay[i]);
+            dayData.put("uniqueVisitors", uniquesByDay[i]);
             timeseriesData.add(dayData);
         }
 
@@ -266,6 +317,9 @@ public class AnalyticsService {
         result.put("totalClicks", totalClicks);
         result.put("averageDailyClicks", timeseriesData.isEmpty() ? 0.0 :
                 Math.round((double) totalClicks / timeseriesData.size() * 100.0) / 100.0);
+        if (visitorSketches.isEnabled()) {
+            result.put("totalUniqueVisitors", visitorSketches.linkUniques(user.getUsername(), link.getId(), start, end));
+        }
 
         return result;
     }
@@ -273,104 +327,187 @@ public class AnalyticsService {
     @Cacheable(value = "analytics-referrers-v1", key = "#username + ':' + #days")
     @Transactional(readOnly = true)
     public ReferrersResponse getReferrerBreakdown(String username, int days) {
+        return getReferrerBreakdown(username, days, null);
+    }
+
+    /**
+     * @param top keep the {@code top} referrers by clicks and fold the rest into one {@code (other)} row; {@code null} for all
+     */
+    @Cacheable(value = "analytics-referrers-v1", key = "#username + ':' + #days + ':top' + #top")
+    @Transactional(readOnly = true)
+    public ReferrersResponse getReferrerBreakdown(String username, int days, Integer top) {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"));
+        return getReferrerBreakdown(user, days, top);
+    }
+
+    /**
+     * {@link #getReferrerBreakdown(String, int, Integer)} for a user already loaded, as the dashboard does.
+     */
+    @Cacheable(value = "analytics-referrers-v1", key = "#user.username + ':' + #days + ':top' + #top")
+    @Transactional(readOnly = true)
+    public ReferrersResponse getReferrerBreakdown(User user, int days, Integer top) {
+        String username = user.getUsername();
 
         java.time.LocalDate end = java.time.LocalDate.now(java.time.ZoneOffset.UTC);
         java.time.LocalDate start = end.minusDays(Math.max(0, days - 1));
 
-        var rows = referrerAggregateRepository.findRange(user.getUsername(), start, end);
-        Map<String, Map<String, Long>> byRef = new java.util.HashMap<>();
-        for (var r : rows) {
-            var m = byRef.computeIfAbsent(r.getReferrerDomain(), k -> new java.util.HashMap<>());
-            m.merge("clicks", r.getClicks(), Long::sum);
-            m.merge("uniqueVisitors", r.getUniqueVisitors(), Long::sum);
-        }
-        java.util.List<ReferrerStat> list = new java.util.ArrayList<>();
-        for (var e : byRef.entrySet()) {
-            long clicks = e.getValue().getOrDefault("clicks", 0L);
-            long uniques = e.getValue().getOrDefault("uniqueVisitors", 0L);
-            list.add(new ReferrerStat(e.getKey(), clicks, uniques));
-        }
-        list.sort((a, b) -> Long.compare(b.getClicks(), a.getClicks()));
+        var totals = readRollups
+                ? rollupBreakdown(user.getUsername(), UserDimensionDailyRollup.REFERRER, start, end, top)
+                : referrerAggregateRepository.sumByReferrer(user.getUsername(), start, end, topN(top));
+        var uniques = rangeUniques(totals, UserDimensionDailyRollup.REFERRER, VisitorSketchService.Table.LINK_REFERRER, user.getUsername(), null, start, end);
+        java.util.List<ReferrerStat> list = totals.stream()
+                .map(t -> new ReferrerStat(t.getDimension(), nz(t.getClicks()), uniques.of(t)))
+                // Keep a mutable list: cached values are written with default typing
+                .collect(java.util.stream.Collectors.toCollection(java.util.ArrayList::new));
         return new ReferrersResponse(username, days + " days", list);
     }
 
     @Cacheable(value = "analytics-devices-v1", key = "#username + ':' + #days")
     @Transactional(readOnly = true)
     public DevicesResponse getDeviceBreakdown(String username, int days) {
+        return getDeviceBreakdown(username, days, null);
+    }
+
+    /**
+     * @param top keep the {@code top} device types by clicks and fold the rest into one {@code (other)} row; {@code null} for all
+     */
+    @Cacheable(value = "analytics-devices-v1", key = "#username + ':' + #days + ':top' + #top")
+    @Transactional(readOnly = true)
+    public DevicesResponse getDeviceBreakdown(String username, int days, Integer top) {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"));
+        return getDeviceBreakdown(user, days, top);
+    }
+
+    /**
+     * {@link #getDeviceBreakdown(String, int, Integer)} for a user already loaded, as the dashboard does.
+     */
+    @Cacheable(value = "analytics-devices-v1", key = "#user.username + ':' + #days + ':top' + #top")
+    @Transactional(readOnly = true)
+    public DevicesResponse getDeviceBreakdown(User user, int days, Integer top) {
+        String username = user.getUsername();
 
         java.time.LocalDate end = java.time.LocalDate.now(java.time.ZoneOffset.UTC);
         java.time.LocalDate start = end.minusDays(Math.max(0, days - 1));
 
-        var rows = deviceAggregateRepository.findRange(user.getUsername(), start, end);
-        Map<String, Map<String, Long>> byDev = new java.util.HashMap<>();
-        for (var r : rows) {
-            var m = byDev.computeIfAbsent(r.getDeviceType(), k -> new java.util.HashMap<>());
-            m.merge("clicks", r.getClicks(), Long::sum);
-            m.merge("uniqueVisitors", r.getUniqueVisitors(), Long::sum);
-        }
-        java.util.List<DeviceStat> list = new java.util.ArrayList<>();
-        for (var e : byDev.entrySet()) {
-            long clicks = e.getValue().getOrDefault("clicks", 0L);
-            long uniques = e.getValue().getOrDefault("uniqueVisitors", 0L);
-            list.add(new DeviceStat(e.getKey(), clicks, uniques));
-        }
-        list.sort((a, b) -> Long.compare(b.getClicks(), a.getClicks()));
+        var totals = readRollups
+                ? rollupBreakdown(user.getUsername(), UserDimensionDailyRollup.DEVICE, start, end, top)
+                : deviceAggregateRepository.sumByDevice(user.getUsername(), start, end, topN(top));
+        var uniques = rangeUniques(totals, UserDimensionDailyRollup.DEVICE, VisitorSketchService.Table.LINK_DEVICE, user.getUsername(), null, start, end);
+        java.util.List<DeviceStat> list = totals.stream()
+                .map(t -> new DeviceStat(t.getDimension(), nz(t.getClicks()), uniques.of(t)))
+                .collect(java.util.stream.Collectors.toCollection(java.util.ArrayList::new));
         return new DevicesResponse(username, days + " days", list);
     }
 
+    /**
+     * Browser, OS and bot-family breakdowns. These come from the per-link tables only (there are no
+     * account rollups for them), with range uniques from the per-link sketches.
+     *
+     * @param top keep the {@code top} values of each by clicks and fold the rest into one {@code (other)} row; {@code null} for all
+     */
+    @Cacheable(value = "analytics-user-agents-v1", key = "#username + ':' + #days + ':top' + #top")
+    @Transactional(readOnly = true)
+    public UserAgentsResponse getUserAgentBreakdown(String username, int days, Integer top) {
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+
+        java.time.LocalDate end = java.time.LocalDate.now(java.time.ZoneOffset.UTC);
+        java.time.LocalDate start = end.minusDays(Math.max(0, days - 1));
+
+        return new UserAgentsResponse(username, days + " days",
+                userAgentStats(browserAggregateRepository.sumByBrowser(user.getUsername(), start, end, topN(top)),
+                        VisitorSketchService.Table.LINK_BROWSER, user.getUsername(), start, end),
+                userAgentStats(osAggregateRepository.sumByOs(user.getUsername(), start, end, topN(top)),
+                        VisitorSketchService.Table.LINK_OS, user.getUsername(), start, end),
+                userAgentStats(botAggregateRepository.sumByBot(user.getUsername(), start, end, topN(top)),
+                        VisitorSketchService.Table.LINK_BOT, user.getUsername(), start, end));
+    }
+
+    private java.util.List<UserAgentStat> userAgentStats(java.util.List<com.linkgrove.api.repository.DimensionTotals> totals,
+                                                         VisitorSketchService.Table table, String username,
+                                                         java.time.LocalDate start, java.time.LocalDate end) {
+        VisitorSketchService.Estimates uniques = !visitorSketches.isEnabled() || totals.isEmpty() ? VisitorSketchService.Estimates.NONE
+                : VisitorSketchService.estimates(totals, visitorSketches.linkByValue(table, username, null, start, end));
+        return totals.stream()
+                .map(t -> new UserAgentStat(t.getDimension(), nz(t.getClicks()), uniques.of(t)))
+                .collect(java.util.stream.Collectors.toCollection(java.util.ArrayList::new));
+    }
+
     @Cacheable(value = "analytics-countries-v1", key = "#username + ':' + #days")
     @Transactional(readOnly = true)
     public CountriesResponse getCountryBreakdown(String username, int days) {
+        return getCountryBreakdown(username, days, null);
+    }
+
+    /**
+     * @param top keep the {@code top} countries by clicks and fold the rest into one {@code (other)} row; {@code null} for all
+     */
+    @Cacheable(value = "analytics-countries-v1", key = "#username + ':' + #days + ':top' + #top")
+    @Transactional(readOnly = true)
+    public CountriesResponse getCountryBreakdown(String username, int days, Integer top) {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"));
+        return getCountryBreakdown(user, days, top);
+    }
+
+    /**
+     * {@link #getCountryBreakdown(String, int, Integer)} for a user already loaded, as the dashboard does.
+     */
+    @Cacheable(value = "analytics-countries-v1", key = "#user.username + ':' + #days + ':top' + #top")
+    @Transactional(readOnly = true)
+    public CountriesResponse getCountryBreakdown(User user, int days, Integer top) {
+        String username = user.getUsername();
 
         java.time.LocalDate end = java.time.LocalDate.now(java.time.ZoneOffset.UTC);
         java.time.LocalDate start = end.minusDays(Math.max(0, days - 1));
 
-        var rows = geoAggregateRepository.findRange(user.getUsername(), start, end);
-        Map<String, Map<String, Long>> byCountry = new java.util.HashMap<>();
-        for (var r : rows) {
-            var m = byCountry.computeIfAbsent(r.getCountry(), k -> new java.util.HashMap<>());
-            m.merge("clicks", r.getClicks(), Long::sum);
-            m.merge("uniqueVisitors", r.getUniqueVisitors(), Long::sum);
-        }
-        java.util.List<CountryStat> list = new java.util.ArrayList<>();
-        for (var e : byCountry.entrySet()) {
-            long clicks = e.getValue().getOrDefault("clicks", 0L);
-            long uniques = e.getValue().getOrDefault("uniqueVisitors", 0L);
-            list.add(new CountryStat(e.getKey(), clicks, uniques));
-        }
-        list.sort((a, b) -> Long.compare(b.getClicks(), a.getClicks()));
+        var totals = readRollups
+                ? rollupBreakdown(user.getUsername(), UserDimensionDailyRollup.COUNTRY, start, end, top)
+                : geoAggregateRepository.sumByCountry(user.getUsername(), start, end, topN(top));
+        var uniques = rangeUniques(totals, UserDimensionDailyRollup.COUNTRY, VisitorSketchService.Table.LINK_COUNTRY, user.getUsername(), null, start, end);
+        java.util.List<CountryStat> list = totals.stream()
+                .map(t -> new CountryStat(t.getDimension(), nz(t.getClicks()), uniques.of(t)))
+                .collect(java.util.stream.Collectors.toCollection(java.util.ArrayList::new));
         return new CountriesResponse(username, days + " days", list);
     }
 
     @org.springframework.cache.annotation.Cacheable(value = "analytics-sources-v1", key = "#username + ':' + #days")
     @Transactional(readOnly = true)
     public SourcesResponse getSourceBreakdown(String username, int days) {
+        return getSourceBreakdown(username, days, null);
+    }
+
+    /**
+     * @param top keep the {@code top} sources by clicks and fold the rest into one {@code (other)} row; {@code null} for all
+     */
+    @org.springframework.cache.annotation.Cacheable(value = "analytics-sources-v1", key = "#username + ':' + #days + ':top' + #top")
+    @Transactional(readOnly = true)
+    public SourcesResponse getSourceBreakdown(String username, int days, Integer top) {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"));
+        return getSourceBreakdown(user, days, top);
+    }
+
+    /**
+     * {@link #getSourceBreakdown(String, int, Integer)} for a user already loaded, as the dashboard does.
+     */
+    @org.springframework.cache.annotation.Cacheable(value = "analytics-sources-v1", key = "#user.username + ':' + #days + ':top' + #top")
+    @Transactional(readOnly = true)
+    public SourcesResponse getSourceBreakdown(User user, int days, Integer top) {
+        String username = user.getUsername();
 
         java.time.LocalDate end = java.time.LocalDate.now(java.time.ZoneOffset.UTC);
         java.time.LocalDate start = end.minusDays(Math.max(0, days - 1));
 
-        var rows = sourceAggregateRepository.findRange(user.getUsername(), start, end);
-        Map<String, Map<String, Long>> bySrc = new java.util.HashMap<>();
-        for (var r : rows) {
-            var m = bySrc.computeIfAbsent(r.getSource(), k -> new java.util.HashMap<>());
-            m.merge("clicks", r.getClicks(), Long::sum);
-            m.merge("uniqueVisitors", r.getUniqueVisitors(), Long::sum);
-        }
-        java.util.List<SourceStat> list = new java.util.ArrayList<>();
-        for (var e : bySrc.entrySet()) {
-            long clicks = e.getValue().getOrDefault("clicks", 0L);
-            long uniques = e.getValue().getOrDefault("uniqueVisitors", 0L);
-            list.add(new SourceStat(e.getKey(), clicks, uniques));
-        }
-        list.sort((a, b) -> Long.compare(b.getClicks(), a.getClicks()));
+        var totals = readRollups
+                ? rollupBreakdown(user.getUsername(), UserDimensionDailyRollup.SOURCE, start, end, top)
+                : sourceAggregateRepository.sumBySource(user.getUsername(), start, end, topN(top));
+        var uniques = rangeUniques(totals, UserDimensionDailyRollup.SOURCE, VisitorSketchService.Table.LINK_SOURCE, user.getUsername(), null, start, end);
+        java.util.List<SourceStat> list = totals.stream()
+                .map(t -> new SourceStat(t.getDimension(), nz(t.getClicks()), uniques.of(t)))
+                .collect(java.util.stream.Collectors.toCollection(java.util.ArrayList::new));
         return new SourcesResponse(username, days + " days", list);
     }
 
@@ -385,20 +522,11 @@ public class AnalyticsService {
         java.time.LocalDate end = java.time.LocalDate.now(java.time.ZoneOffset.UTC);
         java.time.LocalDate start = end.minusDays(Math.max(0, days - 1));
 
-        var rows = sourceAggregateRepository.findRangeForLink(user.getUsername(), link.getId(), start, end);
-        Map<String, Map<String, Long>> bySrc = new java.util.HashMap<>();
-        for (var r : rows) {
-            var m = bySrc.computeIfAbsent(r.getSource(), k -> new java.util.HashMap<>());
-            m.merge("clicks", r.getClicks(), Long::sum);
-            m.merge("uniqueVisitors", r.getUniqueVisitors(), Long::sum);
-        }
-        java.util.List<SourceStat> list = new java.util.ArrayList<>();
-        for (var e : bySrc.entrySet()) {
-            long clicks = e.getValue().getOrDefault("clicks", 0L);
-            long uniques = e.getValue().getOrDefault("uniqueVisitors", 0L);
-            list.add(new SourceStat(e.getKey(), clicks, uniques));
-        }
-        list.sort((a, b) -> Long.compare(b.getClicks(), a.getClicks()));
+        var totals = sourceAggregateRepository.sumBySourceForLink(user.getUsername(), link.getId(), start, end, topN(null));
+        var uniques = rangeUniques(totals, UserDimensionDailyRollup.SOURCE, VisitorSketchService.Table.LINK_SOURCE, user.getUsername(), link.getId(), start, end);
+        java.util.List<SourceStat> list = totals.stream()
+                .map(t -> new SourceStat(t.getDimension(), nz(t.getClicks()), uniques.of(t)))
+                .collect(java.util.stream.Collectors.toCollection(java.util.ArrayList::new));
         return new SourcesResponse(username, days + " days", list);
     }
 
@@ -407,34 +535,30 @@ public class AnalyticsService {
     public Map<String, Object> getVariantBreakdown(String username, int days) {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"));
+        return getVariantBreakdown(user, days);
+    }
+
+    /**
+     * {@link #getVariantBreakdown(String, int)} for a user already loaded, as the dashboard does.
+     */
+    @Cacheable(value = "analytics-variants-v1", key = "#user.username + ':' + #days")
+    @Transactional(readOnly = true)
+    public Map<String, Object> getVariantBreakdown(User user, int days) {
+        String username = user.getUsername();
 
         java.time.LocalDate end = java.time.LocalDate.now(java.time.ZoneOffset.UTC);
         java.time.LocalDate start = end.minusDays(Math.max(0, days - 1));
 
-        var rows = variantAggregateRepository.findRange(user.getUsername(), start, end);
-        Map<Long, Map<String, Long>> byVariant = new java.util.HashMap<>();
-        for (var r : rows) {
-            Long key = r.getVariant().getId();
-            var m = byVariant.computeIfAbsent(key, k -> new java.util.HashMap<>());
-            m.merge("clicks", r.getClicks(), Long::sum);
-            m.merge("uniqueVisitors", r.getUniqueVisitors(), Long::sum);
-        }
-        // Fetch titles for variants
-        java.util.List<Long> ids = new java.util.ArrayList<>(byVariant.keySet());
-        var variants = linkVariantRepository.findAllById(ids);
-        java.util.Map<Long, String> idToTitle = new java.util.HashMap<>();
-        for (var v : variants) idToTitle.put(v.getId(), v.getTitle());
-
         java.util.List<Map<String, Object>> list = new java.util.ArrayList<>();
-        for (var e : byVariant.entrySet()) {
+        var uniques = variantUniques(user.getUsername(), null, start, end);
+        for (var t : variantAggregateRepository.sumByVariant(user.getUsername(), null, start, end)) {
             var v = new java.util.HashMap<String, Object>();
-            v.put("variantId", e.getKey());
-            v.put("variantTitle", idToTitle.getOrDefault(e.getKey(), "(untitled)"));
-            v.put("clicks", e.getValue().getOrDefault("clicks", 0L));
-            v.put("uniqueVisitors", e.getValue().getOrDefault("uniqueVisitors", 0L));
+            v.put("variantId", t.getVariantId());
+            v.put("variantTitle", t.getVariantTitle() != null ? t.getVariantTitle() : "(untitled)");
+            v.put("clicks", nz(t.getClicks()));
+            v.put("uniqueVisitors", uniques.getOrDefault(String.valueOf(t.getVariantId()), nz(t.getUniqueVisitors())));
             list.add(v);
         }
-        list.sort((a, b) -> Long.compare((Long) b.get("clicks"), (Long) a.get("clicks")));
         Map<String, Object> res = new java.util.HashMap<>();
         res.put("username", username);
         res.put("period", days + " days");
@@ -453,30 +577,16 @@ public class AnalyticsService {
         java.time.LocalDate end = java.time.LocalDate.now(java.time.ZoneOffset.UTC);
         java.time.LocalDate start = end.minusDays(Math.max(0, days - 1));
 
-        var rows = variantAggregateRepository.findRange(user.getUsername(), start, end);
-        Map<Long, Map<String, Long>> byVariant = new java.util.HashMap<>();
-        for (var r : rows) {
-            if (!r.getLink().getId().equals(link.getId())) continue;
-            Long key = r.getVariant().getId();
-            var m = byVariant.computeIfAbsent(key, k -> new java.util.HashMap<>());
-            m.merge("clicks", r.getClicks(), Long::sum);
-            m.merge("uniqueVisitors", r.getUniqueVisitors(), Long::sum);
-        }
-        java.util.List<Long> ids = new java.util.ArrayList<>(byVariant.keySet());
-        var variants = linkVariantRepository.findAllById(ids);
-        java.util.Map<Long, String> idToTitle = new java.util.HashMap<>();
-        for (var v : variants) idToTitle.put(v.getId(), v.getTitle());
-
         java.util.List<Map<String, Object>> list = new java.util.ArrayList<>();
-        for (var e : byVariant.entrySet()) {
+        var uniques = variantUniques(user.getUsername(), link.getId(), start, end);
+        for (var t : variantAggregateRepository.sumByVariant(user.getUsername(), link.getId(), start, end)) {
             var v = new java.util.HashMap<String, Object>();
-            v.put("variantId", e.getKey());
-            v.put("variantTitle", idToTitle.getOrDefault(e.getKey(), "(untitled)"));
-            v.put("clicks", e.getValue().getOrDefault("clicks", 0L));
-            v.put("uniqueVisitors", e.getValue().getOrDefault("uniqueVisitors", 0L));
+            v.put("variantId", t.getVariantId());
+            v.put("variantTitle", t.getVariantTitle() != null ? t.getVariantTitle() : "(untitled)");
+            v.put("clicks", nz(t.getClicks()));
+            v.put("uniqueVisitors", uniques.getOrDefault(String.valueOf(t.getVariantId()), nz(t.getUniqueVisitors())));
             list.add(v);
         }
-        list.sort((a, b) -> Long.compare((Long) b.get("clicks"), (Long) a.get("clicks")));
         Map<String, Object> res = new java.util.HashMap<>();
         res.put("username", username);
         res.put("linkId", link.getId());
@@ -484,4 +594,54 @@ public class AnalyticsService {
         res.put("variants", list);
         return res;
     }
+
+    private java.util.List<com.linkgrove.api.repository.DimensionTotals> rollupBreakdown(String username, String dimension,
+                                                                                       java.time.LocalDate start, java.time.LocalDate end, Integer top) {
+        if (!readSealed) return dimensionRollupRepository.sumByValue(username, dimension, start, end, topN(top));
+        return cubeService.isEnabled()
+                ? cubeService.breakdown(username, dimension, start, end, topN(top))
+                : sealedDayCache.breakdown(username, dimension, start, end, topN(top));
+    }
+
+    /**
+     * Distinct visitors per breakdown row over the whole range, merged from the per-day sketches; none (so
+     * callers keep the summed daily counts, and the folded row has no count) when sketches are disabled. Account-level ranges read the sketches
+     * cached with the sealed day slices when those are in use.
+     */
+    private VisitorSketchService.Estimates rangeUniques(java.util.List<? extends com.linkgrove.api.repository.DimensionTotals> totals, String dimension,
+                                           VisitorSketchService.Table linkTable, String username, Long linkId,
+                                           java.time.LocalDate start, java.time.LocalDate end) {
+        if (!visitorSketches.isEnabled() || totals.isEmpty()) return VisitorSketchService.Estimates.NONE;
+        var sketches = !readRollups || linkId != null
+                ? visitorSketches.linkByValue(linkTable, username, linkId, start, end)
+                : readSealed ? SealedDayAnalyticsCache.uniquesByValue(sealedDayCache.slices(username, start, end), dimension)
+                : visitorSketches.userByValue(username, dimension, start, end);
+        return VisitorSketchService.estimates(totals, sketches);
+    }
+
+    private Map<String, Long> variantUniques(String username, Long linkId, java.time.LocalDate start, java.time.LocalDate end) {
+        if (!visitorSketches.isEnabled()) return Map.of();
+        Map<String, Long> out = new HashMap<>();
+        visitorSketches.linkByValue(VisitorSketchService.Table.LINK_VARIANT, username, linkId, start, end)
+                .forEach((variantId, merged) -> out.put(variantId, merged.estimate()));
+        return out;
+    }
+
+    private static void fillByDay(java.util.List<com.linkgrove.api.repository.DailyTotals> totals, java.time.LocalDate start,
+                                  long[] clicks, long[] uniques) {
+        for (var t : totals) {
+            int i = (int) java.time.temporal.ChronoUnit.DAYS.between(start, t.getDay());
+            if (i < 0 || i >= clicks.length) continue;
+            clicks[i] = nz(t.getClicks());
+            uniques[i] = nz(t.getUniqueVisitors());
+        }
+    }
+
+    private static int topN(Integer top) {
+        return top == null || top <= 0 ? Integer.MAX_VALUE : top;
+    }
+
+    private static long nz(Long v) {
+        return v == null ? 0L : v;
+    }
 }
@@ -0,0 +1,276 @@
+package com.linkgrove.api.service;
+
+import com.linkgrove.api.config.RabbitMQConfig;
+import com.linkgrove.api.worker.AnalyticsWorker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sizes the shared click listener from what the queue and its dependencies are doing, in place of a
+ * fixed 3-10 consumers with prefetch 10.
+ *
+ * Every tick samples the queue depth, the consume rate and mean end-to-end lag since the last tick, and
+ * the round trip of a trivial Postgres query and a Redis PING. Consumers grow while lag or the time to
+ * drain the backlog exceeds {@code targetLagSeconds}, up to a ceiling of the Hikari pool size minus
+ * {@code poolReserve} (each consumer holds a connection for its whole transaction), and shrink by a quarter
+ * as soon as either store is slower than its threshold, since more consumers would only queue on it.
+ * With no backlog they step back down one at a time. Prefetch follows the per-consumer rate.
+ *
+ * The container's batch size is left alone: the click listener handles one message at a time and a
+ * failure in a batch of acks would nack and redeliver clicks that were already committed.
+ *
+ * Each decision is counted with its action and reason, and the signals and settings are exposed as
+ * gauges, so a dashboard shows why the listener scaled.
+ */
+@Service
+@Slf4j
+public class ClickConsumerAutoscaler {
+
+    record Signals(long depth, double ratePerSec, double lagSeconds, long dbMillis, long redisMillis) {}
+
+    record Settings(int consumers, int prefetch) {}
+
+    record Decision(Settings settings, String action, String reason) {}
+
+    private final RabbitListenerEndpointRegistry listenerRegistry;
+    private final AmqpAdmin amqpAdmin;
+    private final JdbcTemplate jdbcTemplate;
+    private final StringRedisTemplate redis;
+    private final boolean enabled;
+    private final int minConsumers;
+    private final int ceiling;
+    private final long targetLagSeconds;
+    private final long dbLatencyMs;
+    private final long redisLatencyMs;
+    private final int minPrefetch;
+    private final int maxPrefetch;
+
+    private final AtomicInteger consumers = new AtomicInteger();
+    private final AtomicInteger prefetch = new AtomicInteger();
+    private final AtomicLong depth = new AtomicLong();
+    private final AtomicLong dbMillis = new AtomicLong();
+    private final AtomicLong redisMillis = new AtomicLong();
+    private volatile double ratePerSec;
+    private volatile double lagSeconds;
+    private volatile String lastAction = "hold";
+    private volatile String lastReason = "startup";
+    private long lastProcessed = -1;
+    private double lastLagTotal;
+    private long lastLagCount;
+    private long lastTickNanos;
+
+    public ClickConsumerAutoscaler(RabbitListenerEndpointRegistry listenerRegistry,
+                                   AmqpAdmin amqpAdmin,
+                                   JdbcTemplate jdbcTemplate,
+                                   StringRedisTemplate redis,
+                                   @Value("${analytics.autoscale.enabled:false}") boolean enabled,
+                                   @Value("${analytics.autoscale.minConsumers:2}") int minConsumers,
+                                   @Value("${analytics.autoscale.maxConsumers:16}") int maxConsumers,
+                                   @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize,
+                                   @Value("${analytics.autoscale.poolReserve:5}") int poolReserve,
+                                   @Value("${analytics.autoscale.targetLagSeconds:5}") long targetLagSeconds,
+                                   @Value("${analytics.autoscale.dbLatencyMs:50}") long dbLatencyMs,
+                                   @Value("${analytics.autoscale.redisLatencyMs:20}") long redisLatencyMs,
+                                   @Value("${analytics.autoscale.minPrefetch:5}") int minPrefetch,
+                                   @Value("${analytics.autoscale.maxPrefetch:100}") int maxPrefetch) {
+        this.listenerRegistry = listenerRegistry;
+        this.amqpAdmin = amqpAdmin;
+        this.jdbcTemplate = jdbcTemplate;
+        this.redis = redis;
+        this.enabled = enabled;
+        this.minConsumers = Math.max(1, minConsumers);
+        this.ceiling = Math.max(this.minConsumers, Math.min(maxConsumers, poolSize - poolReserve));
+        this.targetLagSeconds = Math.max(1, targetLagSeconds);
+        this.dbLatencyMs = dbLatencyMs;
+        this.redisLatencyMs = redisLatencyMs;
+        this.minPrefetch = Math.max(1, minPrefetch);
+        this.maxPrefetch = Math.max(this.minPrefetch, maxPrefetch);
+        // Same starting point as the container factory
+        consumers.set(Math.min(ceiling, Math.max(this.minConsumers, 3)));
+        prefetch.set(Math.min(this.maxPrefetch, Math.max(this.minPrefetch, 10)));
+
+        io.micrometer.core.instrument.MeterRegistry registry = io.micrometer.core.instrument.Metrics.globalRegistry;
+        io.micrometer.core.instrument.Gauge.builder("analytics.autoscale.consumers", consumers, AtomicInteger::get).register(registry);
+        io.micrometer.core.instrument.Gauge.builder("analytics.autoscale.prefetch", prefetch, AtomicInteger::get).register(registry);
+        io.micrometer.core.instrument.Gauge.builder("analytics.autoscale.ceiling", () -> ceiling).register(registry);
+        io.micrometer.core.instrument.Gauge.builder("analytics.autoscale.queue.depth", depth, AtomicLong::get).register(registry);
+        io.micrometer.core.instrument.Gauge.builder("analytics.autoscale.consume.rate", () -> ratePerSec).register(registry);
+        io.micrometer.core.instrument.Gauge.builder("analytics.autoscale.lag.seconds", () -> lagSeconds).register(registry);
+        io.micrometer.core.instrument.Gauge.builder("analytics.autoscale.db.latency.ms", dbMillis, AtomicLong::get).register(registry);
+        io.micrometer.core.instrument.Gauge.builder("analytics.autoscale.redis.latency.ms", redisMillis, AtomicLong::get).register(registry);
+    }
+
+    @Scheduled(fixedDelayString = "${analytics.autoscale.intervalMs:10000}", initialDelay = 30000)
+    public synchronized void tick() {
+        if (!enabled) return;
+        SimpleMessageListenerContainer container = container();
+        if (container == null || !container.isRunning()) return;
+        Signals signals;
+        try {
+            signals = sample();
+        } catch (Exception e) {
+            log.debug("Click autoscaler skipped a tick: {}", e.getMessage());
+            return;
+        }
+        if (signals == null) return;
+        Settings current = new Settings(consumers.get(), prefetch.get());
+        Decision decision = decide(signals, current);
+        apply(container, current, decision.settings());
+        lastAction = decision.action();
+        lastReason = decision.reason();
+        io.micrometer.core.instrument.Metrics.counter("analytics.autoscale.decisions",
+                "action", decision.action(), "reason", decision.reason()).increment();
+        if (!decision.settings().equals(current)) {
+            log.info("Click listener {} ({}): consumers {} -> {}, prefetch {} -> {}; depth={} rate={}/s lag={}s db={}ms redis={}ms",
+                    decision.action(), decision.reason(),
+                    current.consumers(), decision.settings().consumers(),
+                    current.prefetch(), decision.settings().prefetch(),
+                    signals.depth(), Math.round(signals.ratePerSec()), Math.round(signals.lagSeconds()),
+                    signals.dbMillis(), signals.redisMillis());
+        }
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", enabled);
+        out.put("consumers", consumers.get());
+        out.put("prefetch", prefetch.get());
+        out.put("minConsumers", minConsumers);
+        out.put("ceiling", ceiling);
+        out.put("queueDepth", depth.get());
+        out.put("consumeRatePerSec", ratePerSec);
+        out.put("lagSeconds", lagSeconds);
+        out.put("dbLatencyMs", dbMillis.get());
+        out.put("redisLatencyMs", redisMillis.get());
+        out.put("lastAction", lastAction);
+        out.put("lastReason", lastReason);
+        return out;
+    }
+
+    /**
+     * Next settings for the listener given this tick's signals.
+     */
+    Decision decide(Signals s, Settings current) {
+        int n = current.consumers();
+        int target;
+        String action;
+        String reason;
+        if (s.dbMillis() > dbLatencyMs || s.redisMillis() > redisLatencyMs) {
+            target = Math.max(minConsumers, n - Math.max(1, n / 4));
+            action = target < n ? "down" : "hold";
+            reason = s.dbMillis() > dbLatencyMs ? "db_slow" : "redis_slow";
+        } else if (s.depth() > 0 && (s.lagSeconds() > targetLagSeconds || drainSeconds(s) > targetLagSeconds)) {
+            target = Math.min(ceiling, n + Math.max(1, n / 2));
+            action = target > n ? "up" : "hold";
+            reason = target > n ? (s.lagSeconds() > targetLagSeconds ? "lag" : "backlog") : "at_ceiling";
+        } else if (s.depth() == 0 && s.lagSeconds() < targetLagSeconds / 2.0 && n > minConsumers) {
+            target = n - 1;
+            action = "down";
+            reason = "idle";
+        } else {
+            target = n;
+            action = "hold";
+            reason = "steady";
+        }
+        // Enough prefetch for about a second of each consumer's share of the rate
+        int nextPrefetch = clamp((int) Math.ceil(s.ratePerSec() / target), minPrefetch, maxPrefetch);
+        return new Decision(new Settings(target, nextPrefetch), action, reason);
+    }
+
+    private Signals sample() {
+        QueueInformation info = amqpAdmin.getQueueInfo(RabbitMQConfig.LINK_CLICK_QUEUE);
+        if (info == null) return null;
+        long now = System.nanoTime();
+        io.micrometer.core.instrument.Timer processed = io.micrometer.core.instrument.Metrics.globalRegistry
+                .find("analytics.process.time").timer();
+        io.micrometer.core.instrument.DistributionSummary lag = io.micrometer.core.instrument.Metrics.globalRegistry
+                .find("analytics.queue.lag.seconds").summary();
+        long processedCount = processed == null ? 0 : processed.count();
+        double lagTotal = lag == null ? 0 : lag.totalAmount();
+        long lagCount = lag == null ? 0 : lag.count();
+
+        boolean first = lastProcessed < 0;
+        double elapsedSec = Math.max(0.001, (now - lastTickNanos) / 1e9);
+        double rate = first ? 0 : Math.max(0, processedCount - lastProcessed) / elapsedSec;
+        long lagDelta = lagCount - lastLagCount;
+        double meanLag = lagDelta > 0 ? (lagTotal - lastLagTotal) / lagDelta : 0;
+        lastProcessed = processedCount;
+        lastLagTotal = lagTotal;
+        lastLagCount = lagCount;
+        lastTickNanos = now;
+        // Rates need two samples
+        if (first) return null;
+
+        Signals s = new Signals(info.getMessageCount(), rate, meanLag, probeDb(), probeRedis());
+        depth.set(s.depth());
+        ratePerSec = s.ratePerSec();
+        lagSeconds = s.lagSeconds();
+        dbMillis.set(s.dbMillis());
+        redisMillis.set(s.redisMillis());
+        return s;
+    }
+
+    private long probeDb() {
+        long start = System.nanoTime();
+        try {
+            jdbcTemplate.queryForObject("SELECT 1", Integer.class);
+        } catch (Exception e) {
+            return Long.MAX_VALUE;
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private long probeRedis() {
+        long start = System.nanoTime();
+        try {
+            redis.execute((RedisCallback<String>) RedisConnection::ping);
+        } catch (Exception e) {
+            return Long.MAX_VALUE;
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private void apply(SimpleMessageListenerContainer container, Settings current, Settings next) {
+        // Pin min and max together so the container's own idle/active heuristics don't fight ours
+        if (next.consumers() > current.consumers()) {
+            container.setMaxConcurrentConsumers(next.consumers());
+            container.setConcurrentConsumers(next.consumers());
+        } else if (next.consumers() < current.consumers()) {
+            container.setConcurrentConsumers(next.consumers());
+            container.setMaxConcurrentConsumers(next.consumers());
+        }
+        // Prefetch is fixed per channel, so consumers started from now on pick it up
+        container.setPrefetchCount(next.prefetch());
+        consumers.set(next.consumers());
+        prefetch.set(next.prefetch());
+    }
+
+    private SimpleMessageListenerContainer container() {
+        MessageListenerContainer c = listenerRegistry.getListenerContainer(AnalyticsWorker.CLICK_LISTENER_ID);
+        return c instanceof SimpleMessageListenerContainer simple ? simple : null;
+    }
+
+    private static double drainSeconds(Signals s) {
+        return s.ratePerSec() <= 0 ? Double.MAX_VALUE : s.depth() / s.ratePerSec();
+    }
+
+    private static int clamp(int v, int min, int max) {
+        return Math.max(min, Math.min(max, v));
+    }
+}
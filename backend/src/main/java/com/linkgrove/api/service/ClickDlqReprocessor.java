@@ -0,0 +1,357 @@
+package com.linkgrove.api.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.linkgrove.api.config.ClickRouting;
+import com.linkgrove.api.config.RabbitMQConfig;
+import com.linkgrove.api.event.LinkClickEvent;
+import com.linkgrove.api.repository.LinkRepository;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.GetResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drains the click dead-letter queue on demand.
+ *
+ * A run pulls up to {@code max} messages from {@code linkgrove.clicks.dlq} in batches and gives each one
+ * a verdict:
+ * - clicks that are fine now are re-published the way a fresh click would be: to the click stream, the
+ *   link's partition or the shared queue (see {@link ClickRouting});
+ * - clicks with a missing timestamp or a wrong or missing username are repaired from the dead-letter
+ *   time and the link's owner, then re-published;
+ * - messages that can't be parsed, lack a link id, point at a deleted link, are older than
+ *   {@code maxAgeDays}, or have already died {@code maxDeaths} times are parked in
+ *   {@code linkgrove.clicks.parked} with the reason in a header.
+ * Re-publishing is paced to {@code rate} messages per second. Copies go out on the confirming template,
+ * and a message is acked off the DLQ only once the broker has confirmed its re-published or parked copy;
+ * a copy that isn't confirmed fails the run, and the rest of the batch is requeued.
+ *
+ * A dry run holds every message it reads unacked, so it sees each one once, then requeues them all.
+ * Progress and counts per reason are kept in Redis like the analytics backfill, and one run at a time is
+ * allowed across nodes.
+ */
+@Service
+@Slf4j
+public class ClickDlqReprocessor {
+
+    static final String KEY_PREFIX = "linkgrove:clicks:dlq:";
+    private static final String LOCK_KEY = KEY_PREFIX + "lock";
+    private static final String LATEST_KEY = KEY_PREFIX + "latest";
+    private static final Duration LOCK_TTL = Duration.ofMinutes(10);
+    private static final Duration JOB_TTL = Duration.ofDays(30);
+    public static final String REASON_HEADER = "x-linkgrove-dlq-reason";
+    static final String JOB_HEADER = "x-linkgrove-reprocessed-by";
+
+    enum Action { REINJECT, REPAIR, PARK }
+
+    // linkId routes a re-published click; body is set only for repaired clicks
+    record Verdict(Action action, String reason, byte[] body, Long linkId) {
+
+        static Verdict park(String reason) {
+            return new Verdict(Action.PARK, reason, null, null);
+        }
+    }
+
+    private final RabbitTemplate rabbitTemplate;
+    private final RabbitTemplate confirmingTemplate;
+    private final ClickRouting clickRouting;
+    private final LinkRepository linkRepository;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final MessagePropertiesConverter propertiesConverter = new DefaultMessagePropertiesConverter();
+    private final int maxDryRun;
+    private final long maxAgeDays;
+    private final long maxDeaths;
+
+    public ClickDlqReprocessor(RabbitTemplate rabbitTemplate,
+                               @Qualifier("confirmingRabbitTemplate") RabbitTemplate confirmingTemplate,
+                               ClickRouting clickRouting,
+                               LinkRepository linkRepository,
+                               StringRedisTemplate redisTemplate,
+                               @Value("${analytics.dlq.maxDryRun:10000}") int maxDryRun,
+                               @Value("${analytics.dlq.maxAgeDays:30}") long maxAgeDays,
+                               @Value("${analytics.dlq.maxDeaths:3}") long maxDeaths) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.confirmingTemplate = confirmingTemplate;
+        this.clickRouting = clickRouting;
+        this.linkRepository = linkRepository;
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.findAndRegisterModules();
+        this.maxDryRun = maxDryRun;
+        this.maxAgeDays = maxAgeDays;
+        this.maxDeaths = maxDeaths;
+    }
+
+    /**
+     * Start a run over at most {@code max} messages, {@code batchSize} at a time, re-publishing at most
+     * {@code rate} per second.
+     */
+    public Map<String, Object> start(int max, int batchSize, int rate, boolean dryRun) {
+        if (max <= 0 || batchSize <= 0 || rate <= 0) {
+            throw new IllegalArgumentException("max, batchSize and rate must be positive");
+        }
+        if (dryRun && max > maxDryRun) {
+            throw new IllegalArgumentException("A dry run holds its messages unacked; max is " + maxDryRun);
+        }
+        String id = UUID.randomUUID().toString();
+        if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, id, LOCK_TTL))) {
+            throw new IllegalArgumentException("Another DLQ reprocessing run is active");
+        }
+        Map<String, String> job = new HashMap<>();
+        job.put("id", id);
+        job.put("max", String.valueOf(max));
+        job.put("batchSize", String.valueOf(batchSize));
+        job.put("rate", String.valueOf(rate));
+        job.put("dryRun", String.valueOf(dryRun));
+        job.put("scanned", "0");
+        job.put("reinjected", "0");
+        job.put("repaired", "0");
+        job.put("parked", "0");
+        job.put("status", "running");
+        job.put("createdAt", Instant.now().toString());
+        redisTemplate.opsForHash().putAll(KEY_PREFIX + id, job);
+        redisTemplate.expire(KEY_PREFIX + id, JOB_TTL);
+        redisTemplate.opsForValue().set(LATEST_KEY, id, JOB_TTL);
+        Thread.ofPlatform().daemon().name("click-dlq-reprocess").start(() -> run(id, max, batchSize, rate, dryRun));
+        return status(id);
+    }
+
+    /**
+     * Ask a run to stop after its current batch.
+     */
+    public Map<String, Object> cancel(String id) {
+        status(id);
+        redisTemplate.opsForHash().put(KEY_PREFIX + id, "cancelRequested", "true");
+        return status(id);
+    }
+
+    public Map<String, Object> status(String id) {
+        Map<Object, Object> raw = redisTemplate.opsForHash().entries(KEY_PREFIX + id);
+        if (raw == null || raw.isEmpty()) {
+            throw new IllegalArgumentException("Unknown DLQ reprocessing run " + id);
+        }
+        Map<String, Object> out = new HashMap<>();
+        raw.forEach((k, v) -> out.put(k.toString(), v));
+        return out;
+    }
+
+    public Map<String, Object> latest() {
+        String id = redisTemplate.opsForValue().get(LATEST_KEY);
+        if (id == null) throw new IllegalArgumentException("No DLQ reprocessing run yet");
+        return status(id);
+    }
+
+    void run(String id, int max, int batchSize, int rate, boolean dryRun) {
+        String key = KEY_PREFIX + id;
+        try {
+            String outcome = rabbitTemplate.execute(channel -> drain(channel, id, max, batchSize, rate, dryRun));
+            redisTemplate.opsForHash().put(key, "status", outcome);
+            log.info("Click DLQ reprocessing {} {}: {}", id, outcome, status(id));
+        } catch (Exception e) {
+            log.error("Click DLQ reprocessing {} failed: {}", id, e.getMessage(), e);
+            try {
+                redisTemplate.opsForHash().put(key, "status", "failed");
+                redisTemplate.opsForHash().put(key, "error", String.valueOf(e.getMessage()));
+            } catch (Exception ignored) {}
+        } finally {
+            try {
+                if (id.equals(redisTemplate.opsForValue().get(LOCK_KEY))) redisTemplate.delete(LOCK_KEY);
+            } catch (Exception ignored) {}
+        }
+    }
+
+    private String drain(Channel channel, String id, int max, int batchSize, int rate, boolean dryRun) throws Exception {
+        String key = KEY_PREFIX + id;
+        long pacingNanos = 1_000_000_000L / rate;
+        long nextSendAt = System.nanoTime();
+        long lastTag = 0;
+        int unacked = 0;
+        int scanned = 0;
+        try {
+            while (scanned < max) {
+                if (redisTemplate.opsForHash().get(key, "cancelRequested") != null) return "cancelled";
+                if (!id.equals(redisTemplate.opsForValue().get(LOCK_KEY))) {
+                    throw new IllegalStateException("DLQ reprocessing lock lost");
+                }
+                redisTemplate.expire(LOCK_KEY, LOCK_TTL);
+
+                List<GetResponse> batch = new ArrayList<>();
+                while (batch.size() < Math.min(batchSize, max - scanned)) {
+                    GetResponse r = channel.basicGet(RabbitMQConfig.LINK_CLICK_DLQ, false);
+                    if (r == null) break;
+                    batch.add(r);
+                    lastTag = r.getEnvelope().getDeliveryTag();
+                    unacked++;
+                }
+                if (batch.isEmpty()) break;
+                scanned += batch.size();
+
+                List<Message> messages = new ArrayList<>(batch.size());
+                for (GetResponse r : batch) {
+                    MessageProperties props = propertiesConverter.toMessageProperties(r.getProps(), r.getEnvelope(), StandardCharsets.UTF_8.name());
+                    messages.add(new Message(r.getBody(), props));
+                }
+                List<Verdict> verdicts = classify(messages);
+                for (int i = 0; i < batch.size(); i++) {
+                    Verdict v = verdicts.get(i);
+                    redisTemplate.opsForHash().increment(key, "reason." + v.reason(), 1);
+                    if (dryRun) continue;
+                    if (v.action() != Action.PARK) {
+                        long wait = nextSendAt - System.nanoTime();
+                        if (wait > 0) LockSupport.parkNanos(wait);
+                        nextSendAt = Math.max(nextSendAt, System.nanoTime()) + pacingNanos;
+                    }
+                    publish(messages.get(i), v, id);
+                    channel.basicAck(batch.get(i).getEnvelope().getDeliveryTag(), false);
+                    unacked--;
+                    redisTemplate.opsForHash().increment(key, switch (v.action()) {
+                        case REINJECT -> "reinjected";
+                        case REPAIR -> "repaired";
+                        case PARK -> "parked";
+                    }, 1);
+                    io.micrometer.core.instrument.Metrics.counter("analytics.dlq.reprocessed",
+                            "action", v.action().name().toLowerCase(), "reason", v.reason()).increment();
+                }
+                redisTemplate.opsForHash().increment(key, "scanned", batch.size());
+                redisTemplate.opsForHash().put(key, "updatedAt", Instant.now().toString());
+            }
+            return "succeeded";
+        } finally {
+            // The channel goes back to the cache, so hand back what is still unacked: all of a dry run, or
+            // the rest of a batch cut short by an error
+            if (unacked > 0 && channel.isOpen()) channel.basicNack(lastTag, true, true);
+        }
+    }
+
+    /**
+     * Verdicts for one batch, in order, looking up the batch's links in one query.
+     */
+    List<Verdict> classify(List<Message> messages) {
+        List<LinkClickEvent> events = new ArrayList<>(messages.size());
+        Set<Long> linkIds = new java.util.HashSet<>();
+        for (Message m : messages) {
+            LinkClickEvent e;
+            try {
+                e = objectMapper.readValue(m.getBody(), LinkClickEvent.class);
+            } catch (Exception ex) {
+                e = null;
+            }
+            events.add(e);
+            if (e != null && e.getLinkId() != null) linkIds.add(e.getLinkId());
+        }
+        Map<Long, String> owners = new HashMap<>();
+        if (!linkIds.isEmpty()) {
+            for (Object[] row : linkRepository.findOwnerUsernames(linkIds)) {
+                owners.put((Long) row[0], (String) row[1]);
+            }
+        }
+        List<Verdict> out = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            out.add(verdict(messages.get(i), events.get(i), owners));
+        }
+        return out;
+    }
+
+    private Verdict verdict(Message message, LinkClickEvent event, Map<Long, String> owners) {
+        if (event == null) return Verdict.park("malformed");
+        if (event.getLinkId() == null) return Verdict.park("no_link_id");
+        if (deaths(message) >= maxDeaths) return Verdict.park("too_many_deaths");
+        String owner = owners.get(event.getLinkId());
+        if (owner == null) return Verdict.park("link_missing");
+
+        String repaired = null;
+        if (event.getClickedAt() == null) {
+            Date diedAt = firstDeathTime(message);
+            if (diedAt == null) diedAt = message.getMessageProperties().getTimestamp();
+            if (diedAt == null) return Verdict.park("no_timestamp");
+            event.setClickedAt(diedAt.toInstant());
+            repaired = "timestamp_restored";
+        }
+        if (!owner.equals(event.getUsername())) {
+            event.setUsername(owner);
+            repaired = repaired == null ? "owner_restored" : repaired;
+        }
+        if (maxAgeDays > 0 && event.getClickedAt().isBefore(Instant.now().minus(Duration.ofDays(maxAgeDays)))) {
+            return Verdict.park("too_old");
+        }
+        if (repaired == null) return new Verdict(Action.REINJECT, "retryable", null, event.getLinkId());
+        try {
+            return new Verdict(Action.REPAIR, repaired, objectMapper.writeValueAsBytes(event), event.getLinkId());
+        } catch (IOException e) {
+            return Verdict.park("malformed");
+        }
+    }
+
+    /**
+     * Send the message's copy and wait for the broker to confirm it.
+     */
+    private void publish(Message original, Verdict v, String jobId) throws Exception {
+        MessageProperties props = original.getMessageProperties();
+        props.setHeader(JOB_HEADER, jobId);
+        CorrelationData correlation = new CorrelationData(jobId + ":" + props.getDeliveryTag());
+        if (v.action() == Action.PARK) {
+            props.setHeader(REASON_HEADER, v.reason());
+            confirmingTemplate.send("", RabbitMQConfig.LINK_CLICK_PARKING, new Message(original.getBody(), props), correlation);
+        } else {
+            // Carried on the message, so a click that dies again counts towards maxDeaths
+            props.incrementRetryCount();
+            byte[] body = v.body() != null ? v.body() : original.getBody();
+            ClickRouting.Route route = clickRouting.forLink(v.linkId());
+            confirmingTemplate.send(route.exchange(), route.routingKey(), new Message(body, props), correlation);
+        }
+        CorrelationData.Confirm confirm = correlation.getFuture().get(10, TimeUnit.SECONDS);
+        if (!confirm.isAck()) throw new IllegalStateException("copy not confirmed: " + confirm.getReason());
+    }
+
+    /**
+     * Times this click has been dead-lettered: RabbitMQ's x-death counts, plus our own re-publish count,
+     * since brokers from 4.0 drop an x-death header set by a publisher.
+     */
+    static long deaths(Message message) {
+        long total = message.getMessageProperties().getRetryCount();
+        for (Map<String, ?> entry : xDeath(message)) {
+            if (entry.get("count") instanceof Number n) total = Math.max(total, n.longValue());
+        }
+        return total;
+    }
+
+    private static Date firstDeathTime(Message message) {
+        // Newest death first
+        List<Map<String, ?>> entries = xDeath(message);
+        if (!entries.isEmpty() && entries.get(entries.size() - 1).get("time") instanceof Date d) return d;
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, ?>> xDeath(Message message) {
+        List<Map<String, ?>> entries = message.getMessageProperties().getXDeathHeader();
+        if (entries == null && message.getMessageProperties().getHeaders().get("x-death") instanceof List<?> l) {
+            entries = (List<Map<String, ?>>) l;
+        }
+        return entries == null ? List.of() : entries;
+    }
+}
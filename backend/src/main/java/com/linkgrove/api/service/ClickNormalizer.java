@@ -0,0 +1,63 @@
+package com.linkgrove.api.service;
+
+import com.linkgrove.api.event.LinkClickEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+/**
+ * How a raw click maps onto the aggregate dimensions: visitor identity, referrer domain, device class,
+ * browser, OS and bot family, traffic source and country. The live worker and the backfill both go
+ * through here, so a rebuilt day matches what the worker would have written with the current rules.
+ */
+@Service
+@RequiredArgsConstructor
+public class ClickNormalizer {
+
+    private final GeoIpService geoIpService;
+    private final UserAgentClassifier userAgentClassifier;
+    private final ReferrerDomainResolver referrerDomainResolver;
+
+    public String deriveVisitorId(LinkClickEvent event) {
+        // Prefer sessionId, fall back to IP + minimal UA hash
+        if (event.getSessionId() != null && !event.getSessionId().isBlank()) {
+            return "s:" + event.getSessionId();
+        }
+        String ip = event.getClientIp();
+        String ua = event.getUserAgent();
+        if (ip == null && ua == null) return null;
+        String uaSig = (ua == null) ? "" : Integer.toHexString(ua.hashCode());
+        return "i:" + (ip != null ? ip : "?") + ":u:" + uaSig;
+    }
+
+    public String extractDomain(String referrer) {
+        return referrerDomainResolver.resolve(referrer);
+    }
+
+    public String classifyDevice(String ua) {
+        return userAgentClassifier.classify(ua).device();
+    }
+
+    public UserAgentClassifier.Classification classifyUserAgent(String ua) {
+        return userAgentClassifier.classify(ua);
+    }
+
+    public String normalizeSource(LinkClickEvent event) {
+        try {
+            if (event == null) return null;
+            if (event.getSource() != null && !event.getSource().isBlank()) {
+                return event.getSource().toLowerCase();
+            }
+            String utmMedium = event.getUtmMedium();
+            if (utmMedium != null && !utmMedium.isBlank()) {
+                return utmMedium.toLowerCase();
+            }
+            return null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public String resolveCountry(String clientIp) {
+        return geoIpService.resolveCountryIso2(clientIp);
+    }
+}
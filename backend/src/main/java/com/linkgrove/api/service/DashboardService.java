@@ -0,0 +1,196 @@
+package com.linkgrove.api.service;
+
+import com.linkgrove.api.model.User;
+import com.linkgrove.api.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Loads several analytics panels for one user in a single request.
+ *
+ * The user is resolved once up front and handed to each panel, so panels don't look it up again. Each
+ * panel runs on the bounded {@code dashboardExecutor} and goes through the same cached
+ * {@link AnalyticsService} methods, and cache entries, as the individual endpoints. A panel that fails or
+ * exceeds {@code analytics.dashboard.timeoutMs} is reported under {@code errors} without failing the others.
+ */
+@Service
+@Slf4j
+public class DashboardService {
+
+    public enum Panel {
+        SUMMARY, TIMESERIES, REFERRERS, DEVICES, COUNTRIES, SOURCES, VARIANTS, TOP_LINKS;
+
+        public String key() {
+            return name().toLowerCase(Locale.ROOT).replace('_', '-');
+        }
+
+        public static Panel parse(String key) {
+            for (Panel p : values()) {
+                if (p.key().equalsIgnoreCase(key.trim())) return p;
+            }
+            throw new IllegalArgumentException("Unknown dashboard panel: " + key);
+        }
+    }
+
+    private final AnalyticsService analyticsService;
+    private final UserRepository userRepository;
+    private final Executor executor;
+    private final long timeoutMs;
+
+    public DashboardService(AnalyticsService analyticsService,
+                            UserRepository userRepository,
+                            @Qualifier("dashboardExecutor") Executor executor,
+                            @Value("${analytics.dashboard.timeoutMs:10000}") long timeoutMs) {
+        this.analyticsService = analyticsService;
+        this.userRepository = userRepository;
+        this.executor = executor;
+        this.timeoutMs = timeoutMs;
+    }
+
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    public static Set<Panel> parsePanels(List<String> keys) {
+        Set<Panel> panels = EnumSet.noneOf(Panel.class);
+        if (keys == null || keys.isEmpty()) return EnumSet.allOf(Panel.class);
+        for (String key : keys) {
+            if (key != null && !key.isBlank()) panels.add(Panel.parse(key));
+        }
+        return panels.isEmpty() ? EnumSet.allOf(Panel.class) : panels;
+    }
+
+    /**
+     * Run all requested panels and wait for them (bounded by the timeout).
+     */
+    public Map<String, Object> load(String username, Set<Panel> panels, int days, Integer top) {
+        long started = System.nanoTime();
+        Map<Panel, CompletableFuture<Object>> futures = submit(username, panels, days, top);
+
+        Map<String, Object> results = new LinkedHashMap<>();
+        Map<String, String> errors = new LinkedHashMap<>();
+        long deadline = started + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        for (Map.Entry<Panel, CompletableFuture<Object>> e : futures.entrySet()) {
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                results.put(e.getKey().key(), e.getValue().get(remaining, TimeUnit.NANOSECONDS));
+            } catch (TimeoutException ex) {
+                e.getValue().cancel(true);
+                errors.put(e.getKey().key(), "timeout");
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                errors.put(e.getKey().key(), "interrupted");
+            } catch (Exception ex) {
+                errors.put(e.getKey().key(), message(ex));
+            }
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("username", username);
+        response.put("period", days + " days");
+        response.put("panels", results);
+        if (!errors.isEmpty()) response.put("errors", errors);
+        response.put("tookMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return response;
+    }
+
+    /**
+     * Run all requested panels and send each one as an SSE event named after the panel as soon as it
+     * completes, then a final {@code done} event.
+     */
+    public void stream(String username, Set<Panel> panels, int days, Integer top, SseEmitter emitter) {
+        long started = System.nanoTime();
+        Map<Panel, CompletableFuture<Object>> futures = submit(username, panels, days, top);
+        List<CompletableFuture<?>> sent = new ArrayList<>();
+        for (Map.Entry<Panel, CompletableFuture<Object>> e : futures.entrySet()) {
+            String key = e.getKey().key();
+            sent.add(e.getValue()
+                    .orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                    .handle((data, ex) -> {
+                        Object payload = ex == null ? data : Map.of("error", ex instanceof TimeoutException || ex.getCause() instanceof TimeoutException ? "timeout" : message(ex));
+                        send(emitter, SseEmitter.event().name(ex == null ? key : key + ".error").data(payload));
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(sent.toArray(new CompletableFuture[0])).whenComplete((v, ex) -> {
+            send(emitter, SseEmitter.event().name("done")
+                    .data(Map.of("tookMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started))));
+            emitter.complete();
+        });
+    }
+
+    private Map<Panel, CompletableFuture<Object>> submit(String username, Set<Panel> panels, int days, Integer top) {
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+
+        Map<Panel, CompletableFuture<Object>> futures = new LinkedHashMap<>();
+        for (Panel panel : panels) {
+            Supplier<Object> task = switch (panel) {
+                case SUMMARY -> () -> analyticsService.getDashboardSummary(user);
+                case TIMESERIES -> () -> analyticsService.getTimeseriesData(user, days);
+                case REFERRERS -> () -> analyticsService.getReferrerBreakdown(user, days, top);
+                case DEVICES -> () -> analyticsService.getDeviceBreakdown(user, days, top);
+                case COUNTRIES -> () -> analyticsService.getCountryBreakdown(user, days, top);
+                case SOURCES -> () -> analyticsService.getSourceBreakdown(user, days, top);
+                case VARIANTS -> () -> analyticsService.getVariantBreakdown(user, days);
+                case TOP_LINKS -> () -> analyticsService.getTopPerformingLinks(user);
+            };
+            CompletableFuture<Object> future;
+            try {
+                future = CompletableFuture.supplyAsync(timed(panel, task), executor);
+            } catch (Exception e) {
+                // Pool and queue are full: report this panel as failed instead of blocking the request thread
+                io.micrometer.core.instrument.Metrics.counter("analytics.dashboard.rejected").increment();
+                future = CompletableFuture.failedFuture(new IllegalStateException("Dashboard is busy, retry shortly"));
+            }
+            futures.put(panel, future);
+        }
+        return futures;
+    }
+
+    private static Supplier<Object> timed(Panel panel, Supplier<Object> task) {
+        return () -> {
+            io.micrometer.core.instrument.Timer.Sample sample = io.micrometer.core.instrument.Timer.start(io.micrometer.core.instrument.Metrics.globalRegistry);
+            try {
+                return task.get();
+            } finally {
+                sample.stop(io.micrometer.core.instrument.Metrics.timer("analytics.dashboard.panel", "panel", panel.key()));
+            }
+        };
+    }
+
+    private static void send(SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+        } catch (IOException | IllegalStateException e) {
+            // Client went away; remaining panels still finish and are dropped
+            log.debug("Dashboard stream closed: {}", e.getMessage());
+        }
+    }
+
+    private static String message(Throwable ex) {
+        Throwable cause = ex;
+        while ((cause instanceof CompletionException || cause instanceof java.util.concurrent.ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+}
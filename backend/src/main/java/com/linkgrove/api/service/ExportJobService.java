@@ -0,0 +1,434 @@
+package com.linkgrove.api.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.linkgrove.api.dto.ExportJobRequest;
+import com.linkgrove.api.dto.ExportJobResponse;
+import com.linkgrove.api.exception.RateLimitExceededException;
+import com.linkgrove.api.model.ExportJob;
+import com.linkgrove.api.repository.ExportJobRepository;
+import com.linkgrove.api.util.CsvWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Background analytics exports for ranges too large to serve within one HTTP request.
+ *
+ * A submitted job is recorded in {@code export_jobs} and run on the bounded {@code exportExecutor}. Each
+ * requested dimension is read from its per-link daily aggregate table over a forward-only cursor and
+ * written as gzip CSV or JSON lines to {@code analytics.exports.dir}; the file is moved into place only
+ * once complete. At most {@code analytics.exports.maxActivePerUser} jobs per user may be queued or
+ * running, enforced under a per-user advisory lock so concurrent submits on different nodes cannot
+ * overshoot it.
+ *
+ * The node holding a job refreshes its heartbeat every maintenance pass; any node fails jobs whose
+ * heartbeat is older than {@code staleMinutes} (their node died), and deletes expired artifacts and rows.
+ * Downloads need the artifact's file, so multi-node deployments should point the directory at a shared volume.
+ */
+@Service
+@Slf4j
+public class ExportJobService {
+
+    public static final List<String> DIMENSIONS = List.of("clicks", "referrer", "device", "country", "source", "variant");
+
+    private static final Map<String, String> SOURCES = Map.of(
+            "clicks", "SELECT day, link_id, NULL, clicks, unique_visitors FROM link_click_daily_aggregate",
+            "referrer", "SELECT day, link_id, referrer_domain, clicks, unique_visitors FROM link_referrer_daily_aggregate",
+            "device", "SELECT day, link_id, device_type, clicks, unique_visitors FROM link_device_daily_aggregate",
+            "country", "SELECT day, link_id, CAST(country AS TEXT), clicks, unique_visitors FROM link_geo_daily_aggregate",
+            "source", "SELECT day, link_id, source, clicks, unique_visitors FROM link_source_daily_aggregate",
+            "variant", "SELECT day, link_id, CAST(variant_id AS TEXT), clicks, unique_visitors FROM link_variant_daily_aggregate");
+
+    private static final Set<ExportJob.Status> ACTIVE = EnumSet.of(ExportJob.Status.QUEUED, ExportJob.Status.RUNNING);
+    private static final int CANCEL_CHECK_ROWS = 50_000;
+
+    private final ExportJobRepository jobRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate tx;
+    private final TransactionTemplate readOnlyTx;
+    private final Executor executor;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final Set<String> localJobs = ConcurrentHashMap.newKeySet();
+
+    private final Path dir;
+    private final int maxActivePerUser;
+    private final int maxDays;
+    private final long retentionHours;
+    private final long staleMinutes;
+    private final int fetchSize;
+
+    public ExportJobService(ExportJobRepository jobRepository,
+                            JdbcTemplate jdbcTemplate,
+                            PlatformTransactionManager transactionManager,
+                            @Qualifier("exportExecutor") Executor executor,
+                            @Value("${analytics.exports.dir:${java.io.tmpdir}/linkgrove-exports}") String dir,
+                            @Value("${analytics.exports.maxActivePerUser:2}") int maxActivePerUser,
+                            @Value("${analytics.exports.maxDays:1830}") int maxDays,
+                            @Value("${analytics.exports.retentionHours:24}") long retentionHours,
+                            @Value("${analytics.exports.staleMinutes:10}") long staleMinutes,
+                            @Value("${analytics.exports.fetchSize:2000}") int fetchSize) {
+        this.jobRepository = jobRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+        this.executor = executor;
+        this.dir = Paths.get(dir);
+        this.maxActivePerUser = maxActivePerUser;
+        this.maxDays = maxDays;
+        this.retentionHours = retentionHours;
+        this.staleMinutes = staleMinutes;
+        this.fetchSize = fetchSize;
+    }
+
+    public static List<String> parseDimensions(List<String> requested) {
+        if (requested == null || requested.stream().allMatch(d -> d == null || d.isBlank())) return DIMENSIONS;
+        Set<String> wanted = requested.stream()
+                .filter(d -> d != null && !d.isBlank())
+                .map(d -> d.trim().toLowerCase(Locale.ROOT))
+                .collect(Collectors.toSet());
+        for (String d : wanted) {
+            if (!DIMENSIONS.contains(d)) throw new IllegalArgumentException("Unknown export dimension: " + d);
+        }
+        return DIMENSIONS.stream().filter(wanted::contains).toList();
+    }
+
+    static ExportJob.Format parseFormat(String format) {
+        if (format == null || format.isBlank()) return ExportJob.Format.CSV;
+        try {
+            return ExportJob.Format.valueOf(format.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown export format: " + format);
+        }
+    }
+
+    public ExportJobResponse submit(String username, ExportJobRequest request) {
+        if (request.getTo().isBefore(request.getFrom())) {
+            throw new IllegalArgumentException("to must not be before from");
+        }
+        if (ChronoUnit.DAYS.between(request.getFrom(), request.getTo()) + 1 > maxDays) {
+            throw new IllegalArgumentException("Export range is limited to " + maxDays + " days");
+        }
+        List<String> dimensions = parseDimensions(request.getDimensions());
+        ExportJob.Format format = parseFormat(request.getFormat());
+        List<Long> linkIds = request.getLinkIds() == null ? List.of() : request.getLinkIds().stream().distinct().sorted().toList();
+
+        LocalDateTime now = LocalDateTime.now();
+        ExportJob job = tx.execute(status -> {
+            jdbcTemplate.query("SELECT pg_advisory_xact_lock(hashtext(?))", (RowCallbackHandler) rs -> { }, "export:" + username);
+            if (jobRepository.countByUsernameAndStatusIn(username, ACTIVE) >= maxActivePerUser) {
+                throw new RateLimitExceededException("At most " + maxActivePerUser + " exports may run at once", 60);
+            }
+            return jobRepository.save(ExportJob.builder()
+                    .id(UUID.randomUUID().toString())
+                    .username(username)
+                    .status(ExportJob.Status.QUEUED)
+                    .format(format)
+                    .fromDay(request.getFrom())
+                    .toDay(request.getTo())
+                    .dimensions(String.join(",", dimensions))
+                    .linkIds(linkIds.isEmpty() ? null : linkIds.stream().map(String::valueOf).collect(Collectors.joining(",")))
+                    .createdAt(now)
+                    .heartbeatAt(now)
+                    .build());
+        });
+
+        String id = job.getId();
+        localJobs.add(id);
+        try {
+            executor.execute(() -> run(id));
+        } catch (RejectedExecutionException e) {
+            localJobs.remove(id);
+            tx.executeWithoutResult(s -> jobRepository.finish(id, ACTIVE, ExportJob.Status.FAILED, "Export queue full", LocalDateTime.now()));
+            throw new RateLimitExceededException("Export queue is full, try again later", 60);
+        }
+        log.info("Queued export {} for user {}: {} to {}, dimensions {}", id, username, job.getFromDay(), job.getToDay(), job.getDimensions());
+        return toResponse(job);
+    }
+
+    public List<ExportJobResponse> list(String username) {
+        return jobRepository.findTop50ByUsernameOrderByCreatedAtDesc(username).stream().map(this::toResponse).toList();
+    }
+
+    public Optional<ExportJobResponse> get(String username, String id) {
+        return jobRepository.findByIdAndUsername(id, username).map(this::toResponse);
+    }
+
+    public Optional<ExportJob> find(String username, String id) {
+        return jobRepository.findByIdAndUsername(id, username);
+    }
+
+    /**
+     * The finished artifact, if this node can see it.
+     */
+    public Optional<Path> artifact(ExportJob job) {
+        if (job.getStatus() != ExportJob.Status.SUCCEEDED) return Optional.empty();
+        Path path = artifactPath(job);
+        return Files.isRegularFile(path) ? Optional.of(path) : Optional.empty();
+    }
+
+    public String downloadName(ExportJob job) {
+        return "analytics_export_" + job.getFromDay() + "_" + job.getToDay() + "." + extension(job.getFormat()) + ".gz";
+    }
+
+    /**
+     * Cancel a queued or running job (the worker stops at its next check), or delete a finished one and its file.
+     */
+    public boolean cancelOrDelete(String username, String id) {
+        Optional<ExportJob> found = jobRepository.findByIdAndUsername(id, username);
+        if (found.isEmpty()) return false;
+        ExportJob job = found.get();
+        if (job.isActive()) {
+            tx.executeWithoutResult(s -> jobRepository.finish(id, ACTIVE, ExportJob.Status.CANCELLED, "Cancelled", LocalDateTime.now()));
+        } else {
+            deleteQuietly(artifactPath(job));
+            jobRepository.delete(job);
+        }
+        return true;
+    }
+
+    void run(String id) {
+        long started = System.currentTimeMillis();
+        Path part = dir.resolve(id + ".part");
+        try {
+            Integer claimed = tx.execute(s -> jobRepository.start(id, ExportJob.Status.QUEUED, ExportJob.Status.RUNNING, LocalDateTime.now()));
+            if (claimed == null || claimed == 0) return; // cancelled while queued
+            ExportJob job = jobRepository.findById(id).orElseThrow();
+
+            Files.createDirectories(dir);
+            long rows;
+            try (RowSink sink = open(job.getFormat(), new GZIPOutputStream(Files.newOutputStream(part), 64 * 1024))) {
+                rows = write(job, sink);
+            }
+            Path target = artifactPath(job);
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            long bytes = Files.size(target);
+            LocalDateTime now = LocalDateTime.now();
+            Integer done = tx.execute(s -> jobRepository.succeed(id, ExportJob.Status.RUNNING, ExportJob.Status.SUCCEEDED,
+                    rows, bytes, now, now.plusHours(retentionHours)));
+            if (done == null || done == 0) {
+                deleteQuietly(target);
+                return;
+            }
+            io.micrometer.core.instrument.Metrics.counter("analytics.exports.rows").increment(rows);
+            io.micrometer.core.instrument.Metrics.counter("analytics.exports.jobs", "status", "succeeded").increment();
+            log.info("Export {} finished: {} rows, {} bytes in {}ms", id, rows, bytes, System.currentTimeMillis() - started);
+        } catch (CancellationException e) {
+            deleteQuietly(part);
+            log.info("Export {} cancelled after {}ms", id, System.currentTimeMillis() - started);
+        } catch (Exception e) {
+            deleteQuietly(part);
+            String reason = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+            String truncated = reason.length() > 500 ? reason.substring(0, 500) : reason;
+            try {
+                tx.executeWithoutResult(s -> jobRepository.finish(id, ACTIVE, ExportJob.Status.FAILED, truncated, LocalDateTime.now()));
+            } catch (Exception ex) {
+                log.warn("Could not mark export {} failed: {}", id, ex.getMessage());
+            }
+            io.micrometer.core.instrument.Metrics.counter("analytics.exports.jobs", "status", "failed").increment();
+            log.error("Export {} failed: {}", id, reason, e);
+        } finally {
+            localJobs.remove(id);
+        }
+    }
+
+    private long write(ExportJob job, RowSink sink) throws IOException {
+        Long[] linkIds = job.getLinkIds() == null ? null
+                : Arrays.stream(job.getLinkIds().split(",")).map(Long::valueOf).toArray(Long[]::new);
+        long[] rows = {0};
+        for (String dimension : job.getDimensions().split(",")) {
+            StringBuilder sql = new StringBuilder(SOURCES.get(dimension)).append(" WHERE username = ? AND day BETWEEN ? AND ?");
+            if (linkIds != null) sql.append(" AND link_id = ANY(?)");
+            sql.append(" ORDER BY day, link_id, 3");
+            try {
+                readOnlyTx.executeWithoutResult(status -> jdbcTemplate.query(con -> {
+                    PreparedStatement ps = con.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    ps.setFetchSize(fetchSize);
+                    ps.setString(1, job.getUsername());
+                    ps.setObject(2, job.getFromDay());
+                    ps.setObject(3, job.getToDay());
+                    if (linkIds != null) ps.setArray(4, con.createArrayOf("bigint", linkIds));
+                    return ps;
+                }, (ResultSet rs) -> {
+                    try {
+                        sink.row(dimension, rs.getObject(1, LocalDate.class), rs.getLong(2), rs.getString(3), rs.getLong(4), rs.getLong(5));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    if (++rows[0] % CANCEL_CHECK_ROWS == 0 && !stillRunning(job.getId())) {
+                        throw new CancellationException();
+                    }
+                }));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        return rows[0];
+    }
+
+    private boolean stillRunning(String id) {
+        return jobRepository.findStatusById(id).map(s -> s == ExportJob.Status.RUNNING).orElse(false);
+    }
+
+    /**
+     * Heartbeat this node's jobs, fail jobs abandoned by dead nodes, and delete expired artifacts.
+     */
+    @Scheduled(fixedDelayString = "${analytics.exports.maintenanceMs:60000}", initialDelay = 30000)
+    public void maintain() {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            if (!localJobs.isEmpty()) {
+                List<String> ids = new ArrayList<>(localJobs);
+                tx.executeWithoutResult(s -> jobRepository.touch(ids, ACTIVE, now));
+            }
+            Integer stale = tx.execute(s -> jobRepository.failStale(ACTIVE, ExportJob.Status.FAILED,
+                    now.minusMinutes(staleMinutes), now, "Export interrupted"));
+            if (stale != null && stale > 0) log.warn("Failed {} abandoned export job(s)", stale);
+
+            List<ExportJob> expired = jobRepository.findExpired(ACTIVE, now, now.minusHours(retentionHours));
+            for (ExportJob job : expired) deleteQuietly(artifactPath(job));
+            if (!expired.isEmpty()) {
+                jobRepository.deleteAll(expired);
+                log.info("Deleted {} expired export job(s)", expired.size());
+            }
+            sweepOrphans(now);
+        } catch (Exception e) {
+            log.warn("Export maintenance failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Files left behind by crashes, or by jobs whose rows another node already deleted.
+     */
+    private void sweepOrphans(LocalDateTime now) throws IOException {
+        if (!Files.isDirectory(dir)) return;
+        long cutoff = System.currentTimeMillis() - (retentionHours * 60 + staleMinutes) * 60_000L;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int dot = name.indexOf('.');
+                if (dot > 0 && localJobs.contains(name.substring(0, dot))) continue;
+                if (Files.getLastModifiedTime(file).toMillis() < cutoff) deleteQuietly(file);
+            }
+        }
+    }
+
+    private Path artifactPath(ExportJob job) {
+        return dir.resolve(job.getId() + "." + extension(job.getFormat()) + ".gz");
+    }
+
+    private static String extension(ExportJob.Format format) {
+        return format == ExportJob.Format.JSONL ? "jsonl" : "csv";
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete {}: {}", path, e.getMessage());
+        }
+    }
+
+    private ExportJobResponse toResponse(ExportJob job) {
+        return ExportJobResponse.builder()
+                .id(job.getId())
+                .status(job.getStatus().name().toLowerCase(Locale.ROOT))
+                .format(extension(job.getFormat()))
+                .from(job.getFromDay())
+                .to(job.getToDay())
+                .dimensions(List.of(job.getDimensions().split(",")))
+                .linkIds(job.getLinkIds() == null ? null : Arrays.stream(job.getLinkIds().split(",")).map(Long::valueOf).toList())
+                .rowCount(job.getRowCount())
+                .sizeBytes(job.getSizeBytes())
+                .error(job.getErrorMessage())
+                .createdAt(job.getCreatedAt())
+                .startedAt(job.getStartedAt())
+                .finishedAt(job.getFinishedAt())
+                .expiresAt(job.getExpiresAt())
+                .downloadUrl(job.getStatus() == ExportJob.Status.SUCCEEDED ? "/api/analytics/exports/" + job.getId() + "/download" : null)
+                .build();
+    }
+
+    RowSink open(ExportJob.Format format, OutputStream out) throws IOException {
+        if (format == ExportJob.Format.JSONL) {
+            JsonGenerator gen = jsonFactory.createGenerator(out, JsonEncoding.UTF8);
+            gen.setRootValueSeparator(null); // newline-delimited below, not Jackson's default space
+            return new RowSink() {
+                @Override
+                public void row(String dimension, LocalDate day, long linkId, String value, long clicks, long uniques) throws IOException {
+                    gen.writeStartObject();
+                    gen.writeStringField("dimension", dimension);
+                    gen.writeStringField("day", day.toString());
+                    gen.writeNumberField("linkId", linkId);
+                    if (value != null) gen.writeStringField("value", value);
+                    gen.writeNumberField("clicks", clicks);
+                    gen.writeNumberField("uniqueVisitors", uniques);
+                    gen.writeEndObject();
+                    gen.writeRaw('\n');
+                }
+
+                @Override
+                public void close() throws IOException {
+                    gen.close();
+                }
+            };
+        }
+        CsvWriter csv = new CsvWriter(out, 64 * 1024);
+        csv.header("dimension", "day", "linkId", "value", "clicks", "uniqueVisitors");
+        return new RowSink() {
+            @Override
+            public void row(String dimension, LocalDate day, long linkId, String value, long clicks, long uniques) throws IOException {
+                csv.field(dimension).field(day.toString()).field(linkId).field(value).field(clicks).field(uniques).endRow();
+            }
+
+            @Override
+            public void close() throws IOException {
+                try (out) {
+                    csv.close();
+                }
+            }
+        };
+    }
+
+    interface RowSink extends Closeable {
+        void row(String dimension, LocalDate day, long linkId, String value, long clicks, long uniques) throws IOException;
+    }
+}
@@ -1,56 +1,173 @@
 package com.linkgrove.api.service;
 
+import com.linkgrove.api.util.IpLiterals;
+import com.linkgrove.api.util.ShardedLruCache;
+import com.maxmind.db.Network;
+import com.maxmind.db.Reader;
+import com.maxmind.geoip2.DatabaseReader;
+import com.maxmind.geoip2.model.AbstractCountryResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.InetAddress;
+import java.util.Optional;
 
+/**
+ * Country lookup for click IPs from a MaxMind Country or City database.
+ *
+ * The database is memory-mapped, and IPs are parsed as literals only ({@link IpLiterals}), so a bad
+ * X-Forwarded-For value never reaches DNS. Results are cached in a bounded LRU: when the database says
+ * a whole /24 (IPv4) or /48 (IPv6) shares one record, the entry is keyed by that prefix so its
+ * neighbours hit too, and otherwise by the exact address. Unknown IPs are cached as well.
+ *
+ * Every {@code reloadCheckMs} the file's size and modification time are compared with the loaded copy.
+ * A changed file is opened, checked and swapped in atomically, and the cache is cleared; the old reader
+ * is closed a cycle later, once lookups in flight have finished with it. Replace the file by rename
+ * (as geoipupdate does) rather than rewriting it in place.
+ */
 @Service
 @Slf4j
 public class GeoIpService {
 
+    private record Database(DatabaseReader reader, boolean city, long size, long modified) {}
+
+    private static final String UNKNOWN = "";
+
     @Value("${GEOIP_ENABLED:false}")
     private boolean enabled;
 
     @Value("${GEOIP_DB_PATH:}")
     private String dbPath;
 
-    private com.maxmind.geoip2.DatabaseReader reader;
+    @Value("${analytics.geoip.cacheSize:100000}")
+    private int cacheSize;
+
+    private volatile Database database;
+    private Database retired;
+    private ShardedLruCache<String, String> cache;
 
     @jakarta.annotation.PostConstruct
     public void init() {
+        cache = new ShardedLruCache<>(Math.max(16, cacheSize));
         if (!enabled) {
             log.info("GeoIP disabled");
             return;
         }
+        io.micrometer.core.instrument.Gauge.builder("geoip.cache.size", cache, ShardedLruCache::size)
+                .register(io.micrometer.core.instrument.Metrics.globalRegistry);
+        File file = new File(dbPath);
+        if (!file.exists()) {
+            log.warn("GeoIP DB not found at {}. Geo analytics will be disabled until it appears.", dbPath);
+            return;
+        }
         try {
-            java.io.File database = new java.io.File(dbPath);
-            if (!database.exists()) {
-                log.warn("GeoIP DB not found at {}. Geo analytics will be disabled.", dbPath);
-                enabled = false;
-                return;
-            }
-            reader = new com.maxmind.geoip2.DatabaseReader.Builder(database).build();
-            log.info("GeoIP database loaded: {}", dbPath);
+            database = open(file);
+            log.info("GeoIP database loaded: {} ({})", dbPath, database.reader().getMetadata().getDatabaseType());
         } catch (Exception e) {
             log.warn("Failed to initialize GeoIP reader: {}", e.getMessage());
-            enabled = false;
         }
     }
 
+    @jakarta.annotation.PreDestroy
+    public void close() {
+        closeQuietly(retired);
+        closeQuietly(database);
+    }
+
     public String resolveCountryIso2(String ip) {
-        if (!enabled || ip == null || ip.isBlank() || reader == null) return null;
+        Database db = database;
+        if (db == null) return null;
+        byte[] bytes = IpLiterals.toBytes(ip);
+        if (bytes == null) {
+            io.micrometer.core.instrument.Metrics.counter("geoip.lookups", "result", "invalid").increment();
+            return null;
+        }
+        String prefixKey = prefixKey(bytes);
+        String exactKey = exactKey(bytes);
+        String cached = cache.get(prefixKey);
+        if (cached == null) cached = cache.get(exactKey);
+        if (cached != null) {
+            io.micrometer.core.instrument.Metrics.counter("geoip.lookups", "result", "cached").increment();
+            return cached.isEmpty() ? null : cached;
+        }
+        io.micrometer.core.instrument.Metrics.counter("geoip.lookups", "result", "db").increment();
+        String iso = UNKNOWN;
+        int prefixLength = bytes.length * 8;
         try {
-            InetAddress address = InetAddress.getByName(ip);
-            var response = reader.country(address);
-            String iso = response.getCountry().getIsoCode();
-            if (iso == null || iso.isBlank()) return null;
-            return iso;
+            InetAddress address = InetAddress.getByAddress(bytes);
+            Optional<? extends AbstractCountryResponse> response = db.city() ? db.reader().tryCity(address) : db.reader().tryCountry(address);
+            if (response.isPresent()) {
+                String code = response.get().getCountry().getIsoCode();
+                if (code != null && !code.isBlank()) iso = code;
+                Network network = response.get().getTraits().getNetwork();
+                if (network != null) prefixLength = network.getPrefixLength();
+            }
         } catch (Exception e) {
             return null;
         }
+        // A reload may have swapped the database while we looked; don't cache an answer from the old one
+        if (database == db) {
+            cache.put(prefixLength <= (bytes.length == 4 ? 24 : 48) ? prefixKey : exactKey, iso);
+        }
+        return iso.isEmpty() ? null : iso;
     }
-}
 
+    /**
+     * Swap in the database file if it changed since it was loaded.
+     */
+    @Scheduled(fixedDelayString = "${analytics.geoip.reloadCheckMs:60000}", initialDelay = 60000)
+    public synchronized void reloadIfChanged() {
+        if (!enabled) return;
+        closeQuietly(retired);
+        retired = null;
+        File file = new File(dbPath);
+        if (!file.exists()) return;
+        Database current = database;
+        if (current != null && current.size() == file.length() && current.modified() == file.lastModified()) return;
+        try {
+            Database next = open(file);
+            database = next;
+            cache.clear();
+            retired = current;
+            io.micrometer.core.instrument.Metrics.counter("geoip.reloads", "result", "ok").increment();
+            log.info("GeoIP database reloaded: {} (built {})", dbPath, next.reader().getMetadata().getBuildDate());
+        } catch (Exception e) {
+            io.micrometer.core.instrument.Metrics.counter("geoip.reloads", "result", "failed").increment();
+            log.warn("GeoIP reload from {} failed; keeping the loaded database: {}", dbPath, e.getMessage());
+        }
+    }
+
+    private static Database open(File file) throws IOException {
+        long size = file.length();
+        long modified = file.lastModified();
+        DatabaseReader reader = new DatabaseReader.Builder(file).fileMode(Reader.FileMode.MEMORY_MAPPED).build();
+        String type = reader.getMetadata().getDatabaseType();
+        if (type == null || !(type.contains("Country") || type.contains("City"))) {
+            reader.close();
+            throw new IOException("Not a country or city database: " + type);
+        }
+        return new Database(reader, type.contains("City"), size, modified);
+    }
+
+    private static void closeQuietly(Database db) {
+        if (db == null) return;
+        try {
+            db.reader().close();
+        } catch (IOException e) {
+            log.debug("Closing GeoIP reader failed: {}", e.getMessage());
+        }
+    }
 
+    private static String prefixKey(byte[] b) {
+        if (b.length == 4) return "4/" + (b[0] & 0xff) + "." + (b[1] & 0xff) + "." + (b[2] & 0xff);
+        return "6/" + java.util.HexFormat.of().formatHex(b, 0, 6);
+    }
+
+    private static String exactKey(byte[] b) {
+        return (b.length == 4 ? "4:" : "6:") + java.util.HexFormat.of().formatHex(b);
+    }
+}
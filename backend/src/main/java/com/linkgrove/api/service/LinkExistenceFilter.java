@@ -0,0 +1,371 @@
+package com.linkgrove.api.service;
+
+import com.linkgrove.api.exception.LinkNotFoundException;
+import com.linkgrove.api.model.Link;
+import com.linkgrove.api.repository.LinkRepository;
+import com.linkgrove.api.util.AfterCommit;
+import com.linkgrove.api.util.BloomFilter;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Answers "does this link id / alias definitely not exist?" without touching Redis or Postgres, so
+ * scanners walking {@code /r/{id}} or guessing aliases get a 404 straight away. Unknown keys are never
+ * cached by the redirect caches, so without this every miss would reach the database.
+ *
+ * Ids use an exact bitmap up to the highest id in the database at the last full rebuild; anything above it
+ * is treated as possibly present, since its bit may not have reached this node yet from the one that created
+ * it. Ids are only ruled out once a rebuild has read them from the database. Aliases use a Bloom filter, which has no false negatives; renamed aliases simply
+ * stay in it until the next rebuild. Both are rebuilt from the database on startup and periodically.
+ *
+ * Nodes share state through Redis: creates set bits in {@code linkgrove:exists:*} bitmaps and are announced on
+ * a pub/sub channel, and each node periodically ORs the Redis bitmaps into its own. A link created on
+ * another node is therefore visible here once its message arrives, and at the latest after the next sync.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LinkExistenceFilter {
+
+    private static final String IDS_KEY = "linkgrove:exists:ids";
+    private static final String ALIASES_KEY_PREFIX = "linkgrove:exists:aliases:";
+    private static final String CHANNEL = "linkgrove:exists:events";
+
+    private final LinkRepository linkRepository;
+    private final StringRedisTemplate redisTemplate;
+    private final RedisConnectionFactory redisConnectionFactory;
+
+    @Value("${links.existence.enabled:true}")
+    private boolean enabled;
+
+    @Value("${links.existence.expectedAliases:1000000}")
+    private long expectedAliases;
+
+    @Value("${links.existence.falsePositiveRate:0.01}")
+    private double falsePositiveRate;
+
+    @Value("${links.existence.syncSeconds:30}")
+    private long syncSeconds;
+
+    @Value("${links.existence.rebuildMinutes:60}")
+    private long rebuildMinutes;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Queue<Link> addedDuringRebuild = new ConcurrentLinkedQueue<>();
+    private volatile boolean ready;
+    private volatile boolean rebuilding;
+    private BitSet ids = new BitSet();
+    private long rebuiltWatermark;
+    private BloomFilter aliases;
+    private ScheduledExecutorService scheduler;
+    private RedisMessageListenerContainer listenerContainer;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            log.info("Link existence filter disabled via links.existence.enabled=false");
+            return;
+        }
+        rebuild();
+        try {
+            listenerContainer = new RedisMessageListenerContainer();
+            listenerContainer.setConnectionFactory(redisConnectionFactory);
+            listenerContainer.addMessageListener((message, pattern) ->
+                    onRemoteAdd(new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(CHANNEL));
+            listenerContainer.afterPropertiesSet();
+            listenerContainer.start();
+        } catch (Exception e) {
+            log.warn("Link existence pub/sub unavailable, relying on periodic sync: {}", e.getMessage());
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "link-existence-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::syncQuietly, syncSeconds, syncSeconds, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(this::rebuildQuietly, rebuildMinutes, rebuildMinutes, TimeUnit.MINUTES);
+        io.micrometer.core.instrument.Gauge.builder("links.existence.ids", this, f -> f.cardinality())
+                .register(io.micrometer.core.instrument.Metrics.globalRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) scheduler.shutdownNow();
+        if (listenerContainer != null) {
+            try {
+                listenerContainer.destroy();
+            } catch (Exception ignored) {}
+        }
+    }
+
+    /**
+     * @throws LinkNotFoundException if no link with this id can exist
+     */
+    public void checkId(Long linkId) {
+        if (linkId != null && isDefinitelyMissing(linkId)) {
+            io.micrometer.core.instrument.Metrics.counter("links.existence.rejected", "kind", "id").increment();
+            throw new LinkNotFoundException(linkId);
+        }
+    }
+
+    /**
+     * @throws LinkNotFoundException if no link with this alias can exist
+     */
+    public void checkAlias(String alias) {
+        if (alias != null && isDefinitelyMissing(alias)) {
+            io.micrometer.core.instrument.Metrics.counter("links.existence.rejected", "kind", "alias").increment();
+            throw new LinkNotFoundException("Alias not found: " + alias);
+        }
+    }
+
+    public boolean isDefinitelyMissing(long linkId) {
+        if (!ready) return false;
+        lock.readLock().lock();
+        try {
+            if (linkId <= 0) return true;
+            if (linkId > rebuiltWatermark || linkId > Integer.MAX_VALUE) return false;
+            return !ids.get((int) linkId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isDefinitelyMissing(String alias) {
+        if (!ready) return false;
+        lock.readLock().lock();
+        try {
+            return !aliases.mightContain(alias);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Record a created or edited link locally, in Redis and for the other nodes. Runs after commit.
+     */
+    public void onLinkSaved(Link link) {
+        if (!enabled || link == null || link.getId() == null) return;
+        Long id = link.getId();
+        String alias = link.getAlias();
+        AfterCommit.run(() -> {
+            addLocal(id, alias);
+            try {
+                int[] aliasBits = alias == null ? new int[0] : aliasIndexes(alias);
+                String aliasesKey = aliasesKey();
+                redisTemplate.execute((RedisCallback<Object>) connection -> {
+                    if (id <= Integer.MAX_VALUE) connection.stringCommands().setBit(bytes(IDS_KEY), id, true);
+                    for (int idx : aliasBits) connection.stringCommands().setBit(bytes(aliasesKey), idx, true);
+                    return null;
+                });
+                redisTemplate.convertAndSend(CHANNEL, id + "\n" + (alias == null ? "" : alias));
+            } catch (Exception e) {
+                log.warn("Failed to share existence of link {}: {}", id, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Clear the id bit. Other nodes keep theirs until their next rebuild, which only costs them a lookup.
+     */
+    public void onLinkDeleted(Link link) {
+        if (!enabled || link == null || link.getId() == null) return;
+        long id = link.getId();
+        AfterCommit.run(() -> {
+            lock.writeLock().lock();
+            try {
+                if (id <= Integer.MAX_VALUE) ids.clear((int) id);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Reload everything from the database, publish it to Redis and merge back what other nodes have added.
+     */
+    public void rebuild() {
+        rebuilding = true;
+        try {
+            Long maxId = linkRepository.findMaxId();
+            List<Long> allIds = linkRepository.findAllIds();
+            List<String> allAliases = linkRepository.findAllAliases();
+
+            BitSet freshIds = new BitSet();
+            for (Long id : allIds) {
+                if (id != null && id > 0 && id <= Integer.MAX_VALUE) freshIds.set(id.intValue());
+            }
+            BloomFilter freshAliases = BloomFilter.sized(Math.max(expectedAliases, allAliases.size() * 2L), falsePositiveRate);
+            for (String alias : allAliases) freshAliases.put(alias);
+
+            String aliasesKey = ALIASES_KEY_PREFIX + freshAliases.numBits() + ":" + freshAliases.numHashes();
+            mergeIntoRedis(IDS_KEY, freshIds);
+            mergeIntoRedis(aliasesKey, freshAliases.bits());
+
+            lock.writeLock().lock();
+            try {
+                ids = freshIds;
+                aliases = freshAliases;
+                rebuiltWatermark = maxId == null ? 0 : maxId;
+                rebuilding = false;
+                Link added;
+                while ((added = addedDuringRebuild.poll()) != null) {
+                    addLocked(added.getId(), added.getAlias());
+                }
+                ready = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            sync();
+            log.info("Link existence filter loaded {} ids and {} aliases", allIds.size(), allAliases.size());
+        } finally {
+            rebuilding = false;
+        }
+    }
+
+    /**
+     * OR the shared Redis bitmaps into the local ones.
+     */
+    public void sync() {
+        if (!ready) return;
+        String aliasesKey = aliasesKey();
+        byte[] remoteIds = redisTemplate.execute((RedisCallback<byte[]>) c -> c.stringCommands().get(bytes(IDS_KEY)));
+        byte[] remoteAliases = redisTemplate.execute((RedisCallback<byte[]>) c -> c.stringCommands().get(bytes(aliasesKey)));
+        lock.writeLock().lock();
+        try {
+            if (remoteIds != null) {
+                ids.or(fromRedisBitmap(remoteIds));
+            }
+            if (remoteAliases != null && aliasesKey.equals(aliasesKey())) {
+                aliases.bits().or(fromRedisBitmap(remoteAliases));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int cardinality() {
+        lock.readLock().lock();
+        try {
+            return ids.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void onRemoteAdd(String payload) {
+        int nl = payload.indexOf('\n');
+        try {
+            long id = Long.parseLong(nl < 0 ? payload : payload.substring(0, nl));
+            String alias = nl < 0 || nl == payload.length() - 1 ? null : payload.substring(nl + 1);
+            addLocal(id, alias);
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring malformed link existence message: {}", payload);
+        }
+    }
+
+    private void addLocal(Long id, String alias) {
+        lock.writeLock().lock();
+        try {
+            if (rebuilding) {
+                addedDuringRebuild.add(Link.builder().id(id).alias(alias).build());
+            }
+            if (aliases != null) addLocked(id, alias);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void addLocked(Long id, String alias) {
+        if (id != null && id > 0 && id <= Integer.MAX_VALUE) {
+            ids.set(id.intValue());
+        }
+        if (alias != null && !alias.isBlank()) aliases.put(alias);
+    }
+
+    private int[] aliasIndexes(String alias) {
+        lock.readLock().lock();
+        try {
+            return aliases == null ? new int[0] : aliases.indexes(alias);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private String aliasesKey() {
+        lock.readLock().lock();
+        try {
+            return aliases == null ? ALIASES_KEY_PREFIX : ALIASES_KEY_PREFIX + aliases.numBits() + ":" + aliases.numHashes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void mergeIntoRedis(String key, BitSet bits) {
+        try {
+            byte[] tmp = bytes(key + ":tmp:" + java.util.UUID.randomUUID());
+            byte[] value = toRedisBitmap(bits);
+            redisTemplate.execute((RedisCallback<Object>) c -> {
+                c.stringCommands().set(tmp, value);
+                c.stringCommands().bitOp(RedisStringCommands.BitOperation.OR, bytes(key), bytes(key), tmp);
+                c.keyCommands().del(tmp);
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("Failed to publish {} to Redis: {}", key, e.getMessage());
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (Exception e) {
+            log.warn("Link existence sync failed: {}", e.getMessage());
+        }
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.warn("Link existence rebuild failed: {}", e.getMessage());
+        }
+    }
+
+    /** Redis numbers bitmap offsets from the most significant bit of each byte; {@link BitSet} from the least. */
+    static byte[] toRedisBitmap(BitSet bits) {
+        byte[] raw = bits.toByteArray();
+        for (int i = 0; i < raw.length; i++) raw[i] = (byte) (Integer.reverse(raw[i] & 0xff) >>> 24);
+        return raw;
+    }
+
+    static BitSet fromRedisBitmap(byte[] redis) {
+        byte[] raw = new byte[redis.length];
+        for (int i = 0; i < redis.length; i++) raw[i] = (byte) (Integer.reverse(redis[i] & 0xff) >>> 24);
+        return BitSet.valueOf(raw);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
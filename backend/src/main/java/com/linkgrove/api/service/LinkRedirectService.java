@@ -1,6 +1,6 @@
 package com.linkgrove.api.service;
 
-import com.linkgrove.api.config.RabbitMQConfig;
+import com.linkgrove.api.config.ClickRouting;
 import com.linkgrove.api.event.LinkClickEvent;
 import com.linkgrove.api.exception.LinkNotFoundException;
 import com.linkgrove.api.model.Link;
@@ -31,6 +31,7 @@ public class LinkRedirectService {
     private final LinkRepository linkRepository;
     private final LinkVariantRepository linkVariantRepository;
     private final RabbitTemplate rabbitTemplate;
+    private final ClickRouting clickRouting;
 
     /**
      * Get redirect URL for a link with Redis caching for performance.
@@ -108,12 +109,6 @@ public class LinkRedirectService {
             String sessionId = request.getSession(false) != null ? 
                 request.getSession().getId() : null;
 
-            // Get the target URL for the event (from cache if possible)
-            String targetUrl = getRedirectUrl(linkId);
-            
-            // Get username from link (cached)
-            String username = getLinkOwnerUsername(linkId);
-
             // Extract marketing params
             String utmSource = request.getParameter("utm_source");
             String utmMedium = request.getParameter("utm_medium");
@@ -125,13 +120,11 @@ public class LinkRedirectService {
             // Create click event (include requestId for tracing if present)
             LinkClickEvent event = LinkClickEvent.builder()
                     .linkId(linkId)
-                    .username(username)
                     .clickedAt(Instant.now())
                     .clientIp(clientIp)
                     .userAgent(userAgent)
                     .referrer(referrer)
                     .sessionId(sessionId)
-                    .targetUrl(targetUrl)
                     .variantId(com.linkgrove.api.util.RequestContext.getSelectedVariantId())
                     .utmSource(utmSource)
                     .utmMedium(utmMedium)
@@ -142,12 +135,7 @@ public class LinkRedirectService {
                     .requestId(org.slf4j.MDC.get(com.linkgrove.api.config.RequestIdFilter.MDC_REQUEST_ID))
                     .build();
 
-            // Publish to RabbitMQ asynchronously
-            rabbitTemplate.convertAndSend(
-                RabbitMQConfig.LINK_CLICK_EXCHANGE,
-                RabbitMQConfig.LINK_CLICK_ROUTING_KEY,
-                event
-            );
+            publishClickEvent(event);
             sample.stop(io.micrometer.core.instrument.Timer.builder("redirect.publish_click.time").register(io.micrometer.core.instrument.Metrics.globalRegistry));
             
             log.debug("Published click event for link: {}", linkId);
@@ -158,6 +146,28 @@ public class LinkRedirectService {
         }
     }
 
+    /**
+     * Publish a pre-built click event, filling in the target URL and owner from cache when absent.
+     * Used by redirect front-ends that do not run on the servlet stack.
+     *
+     * @param event Click event carrying at least the link id and client details
+     */
+    public void publishClickEvent(LinkClickEvent event) {
+        Long linkId = event.getLinkId();
+        // Get the target URL for the event (from cache if possible)
+        if (event.getTargetUrl() == null) {
+            event.setTargetUrl(getRedirectUrl(linkId));
+        }
+        // Get username from link (cached)
+        if (event.getUsername() == null) {
+            event.setUsername(getLinkOwnerUsername(linkId));
+        }
+
+        // Publish to RabbitMQ asynchronously
+        ClickRouting.Route route = clickRouting.forLink(linkId);
+        rabbitTemplate.convertAndSend(route.exchange(), route.routingKey(), event);
+    }
+
     /**
      * Get link preview information without redirecting.
      * Useful for link validation and preview cards.
@@ -0,0 +1,233 @@
+package com.linkgrove.api.service;
+
+import com.linkgrove.api.model.Link;
+import com.linkgrove.api.repository.LinkRepository;
+import com.linkgrove.api.util.AfterCommit;
+import com.linkgrove.api.util.HierarchicalTimingWheel;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fires cache invalidations at the exact instants a link's schedule window opens or closes.
+ *
+ * Visibility checks against {@link Link#getStartAt()} / {@link Link#getEndAt()} happen inside cached
+ * methods, so without this the redirect and public profile caches would keep serving the old answer
+ * until their TTL expires. Boundaries within the configured horizon are loaded on startup, refreshed
+ * periodically, and kept in sync from {@link LinkService} on every edit.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LinkScheduleService {
+
+    private final LinkRepository linkRepository;
+    private final CacheManager cacheManager;
+
+    @Value("${links.schedule.wheel.enabled:true}")
+    private boolean enabled;
+
+    @Value("${links.schedule.wheel.tickMs:1000}")
+    private long tickMs;
+
+    @Value("${links.schedule.wheel.horizonHours:72}")
+    private long horizonHours;
+
+    @Value("${links.schedule.wheel.refreshMinutes:60}")
+    private long refreshMinutes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Long, List<HierarchicalTimingWheel.Timeout<Boundary>>> timersByLink = new HashMap<>();
+    private HierarchicalTimingWheel<Boundary> wheel;
+    private ScheduledExecutorService ticker;
+
+    /** Cache keys touched by a single schedule boundary. */
+    record Boundary(Long linkId, String alias, String username) {}
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            log.info("Link schedule wheel disabled via links.schedule.wheel.enabled=false");
+            return;
+        }
+        reload();
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "link-schedule-wheel");
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.scheduleWithFixedDelay(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        ticker.scheduleWithFixedDelay(this::reloadQuietly, refreshMinutes, refreshMinutes, TimeUnit.MINUTES);
+        io.micrometer.core.instrument.Gauge.builder("links.schedule.pending", this, LinkScheduleService::pendingBoundaries)
+                .register(io.micrometer.core.instrument.Metrics.globalRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (ticker != null) ticker.shutdownNow();
+    }
+
+    /**
+     * Rebuild the wheel from every boundary that falls inside the horizon.
+     */
+    public void reload() {
+        long nowMs = System.currentTimeMillis();
+        LocalDateTime from = toUtc(nowMs);
+        LocalDateTime to = from.plusHours(horizonHours);
+        List<Link> links = linkRepository.findWithScheduleBoundaryBetween(from, to);
+        lock.lock();
+        try {
+            wheel = new HierarchicalTimingWheel<>(tickMs, 6, 4, nowMs);
+            timersByLink.clear();
+            for (Link link : links) {
+                scheduleLocked(link, nowMs);
+            }
+        } finally {
+            lock.unlock();
+        }
+        log.info("Loaded {} link schedule boundaries within {}h", pendingBoundaries(), horizonHours);
+    }
+
+    /**
+     * Re-arm the boundaries of a created or edited link and drop entries that may already be stale.
+     * Runs after commit when called inside a transaction.
+     */
+    public void onLinkSaved(Link link, String previousAlias) {
+        if (!enabled || link == null || link.getId() == null) return;
+        Boundary current = boundaryOf(link);
+        AfterCommit.run(() -> {
+            evict(current);
+            if (previousAlias != null && !previousAlias.equals(link.getAlias())) {
+                evict(new Boundary(link.getId(), previousAlias, current.username()));
+            }
+            lock.lock();
+            try {
+                if (wheel == null) return;
+                cancelLocked(link.getId());
+                scheduleLocked(link, System.currentTimeMillis());
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    public void onLinkDeleted(Link link) {
+        if (!enabled || link == null || link.getId() == null) return;
+        Boundary boundary = boundaryOf(link);
+        AfterCommit.run(() -> {
+            evict(boundary);
+            lock.lock();
+            try {
+                if (wheel != null) cancelLocked(link.getId());
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    void tick() {
+        List<Boundary> fired = new ArrayList<>();
+        lock.lock();
+        try {
+            if (wheel == null) return;
+            wheel.advance(System.currentTimeMillis(), fired::add);
+            for (Boundary b : fired) {
+                List<HierarchicalTimingWheel.Timeout<Boundary>> timers = timersByLink.get(b.linkId());
+                if (timers != null) {
+                    timers.removeIf(t -> t.getPayload() == b);
+                    if (timers.isEmpty()) timersByLink.remove(b.linkId());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Boundary b : fired) {
+            try {
+                evict(b);
+                io.micrometer.core.instrument.Metrics.counter("links.schedule.boundary.fired").increment();
+                log.debug("Schedule boundary reached for link {}", b.linkId());
+            } catch (Exception e) {
+                log.warn("Failed to invalidate caches for link {} at schedule boundary: {}", b.linkId(), e.getMessage());
+            }
+        }
+    }
+
+    int pendingBoundaries() {
+        lock.lock();
+        try {
+            return wheel == null ? 0 : wheel.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void reloadQuietly() {
+        try {
+            reload();
+        } catch (Exception e) {
+            log.warn("Link schedule wheel refresh failed: {}", e.getMessage());
+        }
+    }
+
+    private void scheduleLocked(Link link, long nowMs) {
+        long horizonMs = nowMs + TimeUnit.HOURS.toMillis(horizonHours);
+        List<HierarchicalTimingWheel.Timeout<Boundary>> timers = new ArrayList<>(2);
+        // The window opens at startAt inclusive but only closes once now is strictly after endAt
+        Long[] instants = {
+                link.getStartAt() == null ? null : toEpochMs(link.getStartAt()),
+                link.getEndAt() == null ? null : toEpochMs(link.getEndAt()) + 1
+        };
+        for (Long at : instants) {
+            if (at == null || at <= nowMs || at > horizonMs) continue;
+            timers.add(wheel.schedule(at, boundaryOf(link), b -> {}));
+        }
+        if (!timers.isEmpty()) timersByLink.put(link.getId(), timers);
+    }
+
+    private void cancelLocked(Long linkId) {
+        List<HierarchicalTimingWheel.Timeout<Boundary>> timers = timersByLink.remove(linkId);
+        if (timers != null) timers.forEach(wheel::cancel);
+    }
+
+    private void evict(Boundary b) {
+        evict("linkRedirects", b.linkId());
+        evict("linkPreviews", b.linkId());
+        if (b.alias() != null) evict("linkAliasResolveV1", b.alias());
+        if (b.username() != null) evict("publicProfiles", b.username());
+    }
+
+    private void evict(String cacheName, Object key) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache != null) cache.evict(key);
+    }
+
+    private static Boundary boundaryOf(Link link) {
+        String username = link.getUser() != null ? link.getUser().getUsername() : null;
+        return new Boundary(link.getId(), link.getAlias(), username);
+    }
+
+    private static long toEpochMs(LocalDateTime utc) {
+        return utc.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime toUtc(long epochMs) {
+        return LocalDateTime.ofInstant(java.time.Instant.ofEpochMilli(epochMs), ZoneOffset.UTC);
+    }
+}
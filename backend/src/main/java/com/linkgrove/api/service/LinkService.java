@@ -31,6 +31,8 @@ public class LinkService {
     private final StringRedisTemplate redisTemplate;
     private final TagRepository tagRepository;
     private final QrPrewarmService qrPrewarmService;
+    private final LinkScheduleService linkScheduleService;
+    private final LinkExistenceFilter linkExistenceFilter;
 
     @Caching(evict = {
         @CacheEvict(value = "publicProfiles", key = "#username"),
@@ -75,6 +77,8 @@ public class LinkService {
         Link saved = linkRepository.save(link);
         // Fire-and-forget prewarm
         try { qrPrewarmService.onLinkCreatedOrUpdated(saved); } catch (Exception ignored) {}
+        linkScheduleService.onLinkSaved(saved, null);
+        linkExistenceFilter.onLinkSaved(saved);
         io.micrometer.core.instrument.Metrics.counter("links.created").increment();
         sample.stop(io.micrometer.core.instrument.Timer.builder("links.create.time").register(io.micrometer.core.instrument.Metrics.globalRegistry));
         return mapToLinkResponse(saved);
@@ -156,6 +160,7 @@ public class LinkService {
 
         Link link = linkRepository.findByIdAndUser(linkId, user)
                 .orElseThrow(() -> new RuntimeException("Link not found"));
+        String previousAlias = link.getAlias();
 
         link.setTitle(sanitizeTitle(request.getTitle()));
         link.setUrl(sanitizeUrl(request.getUrl()));
@@ -184,6 +189,8 @@ public class LinkService {
         }
 
         link = linkRepository.save(link);
+        linkScheduleService.onLinkSaved(link, previousAlias);
+        linkExistenceFilter.onLinkSaved(link);
         io.micrometer.core.instrument.Metrics.counter("links.updated").increment();
         sample.stop(io.micrometer.core.instrument.Timer.builder("links.update.time").register(io.micrometer.core.instrument.Metrics.globalRegistry));
         return mapToLinkResponse(link);
@@ -207,6 +214,8 @@ public class LinkService {
                 .orElseThrow(() -> new RuntimeException("Link not found"));
 
         linkRepository.delete(link);
+        linkScheduleService.onLinkDeleted(link);
+        linkExistenceFilter.onLinkDeleted(link);
     }
 
     @Caching(evict = {
@@ -328,7 +337,7 @@ public class LinkService {
         return out;
     }
 
-    private java.util.List<String> normalize(java.util.List<String> names) {
+    static java.util.List<String> normalize(java.util.List<String> names) {
         if (names == null) return java.util.List.of();
         return names.stream().filter(java.util.Objects::nonNull)
                 .map(s -> collapseSeparators(s.trim().toLowerCase()))
@@ -357,7 +366,7 @@ public class LinkService {
         return a;
     }
 
-    private String collapseSeparators(String s) {
+    private static String collapseSeparators(String s) {
         return s == null ? null : s.replaceAll("[\\._-]{2,}", "-");
     }
 }
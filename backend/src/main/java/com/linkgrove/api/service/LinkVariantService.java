@@ -7,7 +7,10 @@ import com.linkgrove.api.model.Link;
 import com.linkgrove.api.model.LinkVariant;
 import com.linkgrove.api.repository.LinkRepository;
 import com.linkgrove.api.repository.LinkVariantRepository;
+import com.linkgrove.api.util.AfterCommit;
 import lombok.RequiredArgsConstructor;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -20,6 +23,7 @@ public class LinkVariantService {
 
     private final LinkRepository linkRepository;
     private final LinkVariantRepository linkVariantRepository;
+    private final CacheManager cacheManager;
 
     @Transactional(readOnly = true)
     public List<LinkVariantResponse> listVariants(String username, Long linkId) {
@@ -42,6 +46,7 @@ public class LinkVariantService {
                 .isActive(request.getIsActive() == null ? true : request.getIsActive())
                 .build();
         io.micrometer.core.instrument.Metrics.counter("variants.added").increment();
+        evictRedirectAfterCommit(linkId);
         return toResponse(linkVariantRepository.save(v));
     }
 
@@ -56,6 +61,7 @@ public class LinkVariantService {
         if (request.getWeight() != null) v.setWeight(Math.max(0, request.getWeight()));
         if (request.getIsActive() != null) v.setIsActive(request.getIsActive());
         io.micrometer.core.instrument.Metrics.counter("variants.updated").increment();
+        evictRedirectAfterCommit(linkId);
         return toResponse(linkVariantRepository.save(v));
     }
 
@@ -66,6 +72,18 @@ public class LinkVariantService {
         if (!v.getLink().getId().equals(link.getId())) throw new UnauthorizedException("Variant does not belong to link");
         linkVariantRepository.delete(v);
         io.micrometer.core.instrument.Metrics.counter("variants.deleted").increment();
+        evictRedirectAfterCommit(linkId);
+    }
+
+    /**
+     * Drop the cached redirect once the variant change is committed; evicting earlier lets a concurrent
+     * redirect re-cache the old variants from the still-uncommitted state.
+     */
+    private void evictRedirectAfterCommit(Long linkId) {
+        AfterCommit.run(() -> {
+            Cache cache = cacheManager.getCache("linkRedirects");
+            if (cache != null) cache.evict(linkId);
+        });
     }
 
     private Link assertOwnership(String username, Long linkId) {
@@ -0,0 +1,280 @@
+package com.linkgrove.api.service;
+
+import com.linkgrove.api.exception.RateLimitExceededException;
+import com.linkgrove.api.util.AfterCommit;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes click-count deltas to open dashboards over server-sent events, so they do not need to poll.
+ *
+ * The worker counts each committed click into a per-node pending map. Every {@code analytics.live.flushMs}
+ * the map is drained into one {@code clicks} event per user, {@code {"at":..,"links":{"12":3},"total":3}}, and
+ * published on a Redis channel. Every node, including the publisher, fans the event out to its own
+ * subscribers for that user. Without the channel, events only reach subscribers on the same node.
+ *
+ * Each subscriber has a bounded queue drained by its own task on {@code liveStreamExecutor}. A subscriber
+ * whose queue is full is too slow to keep up; it is closed rather than allowed to hold memory, and the
+ * browser's EventSource reconnects.
+ */
+@Service
+@Slf4j
+public class LiveClickService {
+
+    static final String CHANNEL = "linkgrove:analytics:live";
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisConnectionFactory redisConnectionFactory;
+    private final Executor executor;
+    private final boolean enabled;
+    private final int bufferSize;
+    private final int maxPerUser;
+    private final long timeoutMs;
+    private final long flushMs;
+
+    private final ConcurrentHashMap<String, Map<Long, Long>> pending = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private RedisMessageListenerContainer listenerContainer;
+    private volatile boolean pubSub;
+
+    public LiveClickService(StringRedisTemplate redisTemplate,
+                            RedisConnectionFactory redisConnectionFactory,
+                            @Qualifier("liveStreamExecutor") Executor executor,
+                            @Value("${analytics.live.enabled:true}") boolean enabled,
+                            @Value("${analytics.live.bufferSize:32}") int bufferSize,
+                            @Value("${analytics.live.maxPerUser:5}") int maxPerUser,
+                            @Value("${analytics.live.timeoutMs:1800000}") long timeoutMs,
+                            @Value("${analytics.live.flushMs:1000}") long flushMs) {
+        this.redisTemplate = redisTemplate;
+        this.redisConnectionFactory = redisConnectionFactory;
+        this.executor = executor;
+        this.enabled = enabled;
+        this.bufferSize = Math.max(1, bufferSize);
+        this.maxPerUser = Math.max(1, maxPerUser);
+        this.timeoutMs = timeoutMs;
+        this.flushMs = flushMs;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) return;
+        try {
+            listenerContainer = new RedisMessageListenerContainer();
+            listenerContainer.setConnectionFactory(redisConnectionFactory);
+            listenerContainer.addMessageListener((message, pattern) ->
+                    onMessage(new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(CHANNEL));
+            listenerContainer.afterPropertiesSet();
+            listenerContainer.start();
+            pubSub = true;
+        } catch (Exception e) {
+            log.warn("Live click pub/sub unavailable, streaming to local subscribers only: {}", e.getMessage());
+        }
+        io.micrometer.core.instrument.Gauge.builder("analytics.live.subscribers", subscriberCount, AtomicInteger::get)
+                .register(io.micrometer.core.instrument.Metrics.globalRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (listenerContainer != null) {
+            try {
+                listenerContainer.destroy();
+            } catch (Exception ignored) {}
+        }
+        subscribers.values().forEach(set -> set.forEach(s -> s.emitter.complete()));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Open a stream of the user's click deltas.
+     *
+     * @throws RateLimitExceededException if the user already has {@code maxPerUser} streams open on this node
+     */
+    public SseEmitter subscribe(String username) {
+        return subscribe(username, new SseEmitter(timeoutMs));
+    }
+
+    SseEmitter subscribe(String username, SseEmitter emitter) {
+        if (!enabled) throw new IllegalArgumentException("Live analytics are disabled");
+        Subscriber subscriber = new Subscriber(username, emitter, new ArrayBlockingQueue<>(bufferSize));
+        // Check and add under the entry's lock, so concurrent subscribes can't overshoot the cap and a
+        // concurrent remove() can't drop the set this subscriber is being added to
+        subscribers.compute(username, (k, set) -> {
+            if (set == null) set = ConcurrentHashMap.newKeySet();
+            if (set.size() >= maxPerUser) {
+                throw new RateLimitExceededException("Too many live analytics streams open", 30);
+            }
+            set.add(subscriber);
+            return set;
+        });
+        subscriberCount.incrementAndGet();
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(e -> remove(subscriber));
+        enqueue(subscriber, SseEmitter.event().name("ready").data("{\"flushMs\":" + flushMs + "}"));
+        return emitter;
+    }
+
+    /**
+     * Count a click for the next flush once the worker's transaction commits.
+     */
+    public void onClick(String username, Long linkId) {
+        if (!enabled || username == null || linkId == null) return;
+        AfterCommit.run(() -> count(username, linkId));
+    }
+
+    void count(String username, Long linkId) {
+        // compute() holds the entry while it updates, so a concurrent flush's remove() sees every increment
+        pending.compute(username, (k, links) -> {
+            if (links == null) links = new HashMap<>();
+            links.merge(linkId, 1L, Long::sum);
+            return links;
+        });
+    }
+
+    /**
+     * Publish one coalesced event per user with clicks since the last flush.
+     */
+    @Scheduled(fixedDelayString = "${analytics.live.flushMs:1000}", initialDelay = 5000)
+    public void flush() {
+        if (!enabled || pending.isEmpty()) return;
+        String at = Instant.now().toString();
+        for (String username : pending.keySet()) {
+            Map<Long, Long> links = pending.remove(username);
+            if (links == null || links.isEmpty()) continue;
+            String message = username + "\n" + payload(at, links);
+            if (pubSub) {
+                try {
+                    redisTemplate.convertAndSend(CHANNEL, message);
+                    continue;
+                } catch (Exception e) {
+                    log.debug("Live click publish failed, delivering locally: {}", e.getMessage());
+                }
+            }
+            onMessage(message);
+        }
+    }
+
+    /**
+     * Keep idle streams open through proxies and notice clients that have gone away.
+     */
+    @Scheduled(fixedDelayString = "${analytics.live.heartbeatMs:15000}", initialDelay = 15000)
+    public void heartbeat() {
+        if (!enabled) return;
+        subscribers.values().forEach(set -> set.forEach(s -> enqueue(s, SseEmitter.event().comment("ping"))));
+    }
+
+    void onMessage(String message) {
+        int nl = message.indexOf('\n');
+        if (nl < 0) return;
+        Set<Subscriber> set = subscribers.get(message.substring(0, nl));
+        if (set == null || set.isEmpty()) return;
+        String data = message.substring(nl + 1);
+        for (Subscriber s : set) {
+            enqueue(s, SseEmitter.event().name("clicks").data(data));
+        }
+    }
+
+    static String payload(String at, Map<Long, Long> links) {
+        StringBuilder sb = new StringBuilder(32 + links.size() * 16);
+        sb.append("{\"at\":\"").append(at).append("\",\"links\":{");
+        long total = 0;
+        boolean first = true;
+        for (var e : links.entrySet()) {
+            long n = e.getValue();
+            total += n;
+            if (!first) sb.append(',');
+            first = false;
+            sb.append('"').append(e.getKey()).append("\":").append(n);
+        }
+        return sb.append("},\"total\":").append(total).append('}').toString();
+    }
+
+    private void enqueue(Subscriber s, SseEmitter.SseEventBuilder event) {
+        if (s.closed.get()) return;
+        if (!s.queue.offer(event)) {
+            io.micrometer.core.instrument.Metrics.counter("analytics.live.dropped").increment();
+            log.debug("Closing slow live analytics stream for {}", s.username);
+            s.emitter.complete();
+            remove(s);
+            return;
+        }
+        if (s.draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> drain(s));
+            } catch (RuntimeException e) {
+                s.draining.set(false);
+                s.emitter.complete();
+                remove(s);
+            }
+        }
+    }
+
+    private void drain(Subscriber s) {
+        while (true) {
+            SseEmitter.SseEventBuilder event;
+            while ((event = s.queue.poll()) != null) {
+                try {
+                    s.emitter.send(event);
+                } catch (Exception e) {
+                    // Client went away
+                    remove(s);
+                    s.queue.clear();
+                    return;
+                }
+            }
+            s.draining.set(false);
+            // An event queued after the last poll but before the flag was cleared still needs a drainer
+            if (s.queue.isEmpty() || !s.draining.compareAndSet(false, true)) return;
+        }
+    }
+
+    private void remove(Subscriber s) {
+        if (!s.closed.compareAndSet(false, true)) return;
+        subscriberCount.decrementAndGet();
+        subscribers.computeIfPresent(s.username, (k, set) -> {
+            set.remove(s);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private static final class Subscriber {
+        final String username;
+        final SseEmitter emitter;
+        final BlockingQueue<SseEmitter.SseEventBuilder> queue;
+        final AtomicBoolean draining = new AtomicBoolean();
+        final AtomicBoolean closed = new AtomicBoolean();
+
+        Subscriber(String username, SseEmitter emitter, BlockingQueue<SseEmitter.SseEventBuilder> queue) {
+            this.username = username;
+            this.emitter = emitter;
+            this.queue = queue;
+        }
+    }
+}
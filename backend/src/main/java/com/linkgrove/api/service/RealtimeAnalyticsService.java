@@ -0,0 +1,311 @@
+package com.linkgrove.api.service;
+
+import com.linkgrove.api.util.AfterCommit;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Sub-day analytics: per-minute click counters for the last {@code analytics.realtime.windowMinutes}
+ * (48h by default), rolled up into hourly tables as hours close.
+ *
+ * Each user and each link has a Redis hash used as a ring buffer: slot {@code minute % window} holds the
+ * minute it counts ({@code m<slot>}) and its clicks ({@code c<slot>}); a click for a newer minute resets the
+ * slot, so the buffer never needs trimming. One Lua call per click bumps both rings and notes the user and
+ * link in the hour's active set. A minute series costs O(minutes) in Redis regardless of traffic.
+ *
+ * Once an hour is {@code graceMinutes} past closing, one node (under a short Redis lock) sums the hour's
+ * slots for every active key and writes {@code link_click_hourly_aggregate} / {@code user_click_hourly_rollup}
+ * with the full counts. Clicks that arrive for an hour already rolled mark it dirty and it is rolled again,
+ * which is safe because rolling overwrites rather than adds.
+ */
+@Service
+@Slf4j
+public class RealtimeAnalyticsService {
+
+    static final String KEY_PREFIX = "linkgrove:rt:";
+
+    private static final DefaultRedisScript<Long> RECORD = new DefaultRedisScript<>(
+            "for i = 1, 2 do " +
+            "  local k = KEYS[i] " +
+            "  if redis.call('HGET', k, 'm' .. ARGV[1]) == ARGV[2] then " +
+            "    redis.call('HINCRBY', k, 'c' .. ARGV[1], 1) " +
+            "  else " +
+            "    redis.call('HSET', k, 'm' .. ARGV[1], ARGV[2], 'c' .. ARGV[1], 1) " +
+            "  end " +
+            "  redis.call('PEXPIRE', k, ARGV[3]) " +
+            "end " +
+            "redis.call('SADD', KEYS[3], ARGV[5], ARGV[6]) " +
+            "redis.call('PEXPIRE', KEYS[3], ARGV[3]) " +
+            "if redis.call('EXISTS', KEYS[4]) == 1 then redis.call('SADD', KEYS[5], ARGV[4]) end " +
+            "return 1", Long.class);
+
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> READ = new DefaultRedisScript<>(
+            "local out = {} " +
+            "local window = tonumber(ARGV[3]) " +
+            "for m = tonumber(ARGV[1]), tonumber(ARGV[2]) do " +
+            "  local slot = m % window " +
+            "  local c = 0 " +
+            "  if redis.call('HGET', KEYS[1], 'm' .. slot) == tostring(m) then " +
+            "    c = tonumber(redis.call('HGET', KEYS[1], 'c' .. slot)) " +
+            "  end " +
+            "  out[#out + 1] = c " +
+            "end " +
+            "return out", List.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int windowMinutes;
+    private final long graceMinutes;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    public RealtimeAnalyticsService(StringRedisTemplate redisTemplate,
+                                    JdbcTemplate jdbcTemplate,
+                                    @Value("${analytics.realtime.enabled:true}") boolean enabled,
+                                    @Value("${analytics.realtime.windowMinutes:2880}") int windowMinutes,
+                                    @Value("${analytics.realtime.graceMinutes:2}") long graceMinutes) {
+        this.redisTemplate = redisTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.windowMinutes = Math.max(120, windowMinutes);
+        this.graceMinutes = Math.max(0, graceMinutes);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getWindowMinutes() {
+        return windowMinutes;
+    }
+
+    /**
+     * Count a click once the worker's transaction commits, so redelivered events are not counted twice.
+     */
+    public void onClick(String username, Long linkId, Instant clickedAt) {
+        if (!enabled || username == null || linkId == null || clickedAt == null) return;
+        AfterCommit.run(() -> record(username, linkId, clickedAt));
+    }
+
+    void record(String username, Long linkId, Instant clickedAt) {
+        long minute = clickedAt.getEpochSecond() / 60;
+        long now = System.currentTimeMillis() / 60_000;
+        if (minute <= now - windowMinutes || minute > now + 1) {
+            io.micrometer.core.instrument.Metrics.counter("analytics.realtime.dropped").increment();
+            return;
+        }
+        long hour = minute / 60;
+        try {
+            redisTemplate.execute(RECORD,
+                    List.of(userKey(username), linkKey(username, linkId), activeKey(hour), rolledKey(hour), KEY_PREFIX + "dirty"),
+                    String.valueOf(minute % windowMinutes), String.valueOf(minute),
+                    String.valueOf(Duration.ofMinutes(windowMinutes + 60).toMillis()), String.valueOf(hour),
+                    "u:" + username, "l:" + linkId + ":" + username);
+        } catch (Exception e) {
+            io.micrometer.core.instrument.Metrics.counter("analytics.realtime.errors").increment();
+            log.debug("Realtime counter update failed for link {}: {}", linkId, e.getMessage());
+        }
+    }
+
+    /**
+     * Clicks per minute for the last {@code minutes} minutes, oldest first; the last entry is the current minute.
+     */
+    public Map<String, Object> minuteSeries(String username, Long linkId, int minutes) {
+        int n = Math.max(1, Math.min(minutes, windowMinutes));
+        long to = System.currentTimeMillis() / 60_000;
+        long[] counts = read(linkId == null ? userKey(username) : linkKey(username, linkId), to - n + 1, to);
+        List<Map<String, Object>> series = new ArrayList<>(n);
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            total += counts[i];
+            Map<String, Object> point = new HashMap<>(4);
+            point.put("minute", Instant.ofEpochSecond((to - n + 1 + i) * 60).toString());
+            point.put("clicks", counts[i]);
+            series.add(point);
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("username", username);
+        if (linkId != null) result.put("linkId", linkId);
+        result.put("minutes", n);
+        result.put("series", series);
+        result.put("totalClicks", total);
+        return result;
+    }
+
+    /**
+     * Clicks per hour for the last {@code hours} hours, oldest first. Rolled hours come from the hourly
+     * tables; hours not rolled yet (the current one, at least) are summed from the minute ring.
+     */
+    public Map<String, Object> hourlySeries(String username, Long linkId, int hours) {
+        int n = Math.max(1, hours);
+        long nowMinute = System.currentTimeMillis() / 60_000;
+        long endHour = nowMinute / 60;
+        long startHour = endHour - n + 1;
+        long[] counts = new long[n];
+
+        String sql = linkId == null
+                ? "SELECT hour, clicks FROM user_click_hourly_rollup WHERE username = ? AND hour BETWEEN ? AND ?"
+                : "SELECT hour, clicks FROM link_click_hourly_aggregate WHERE username = ? AND hour BETWEEN ? AND ? AND link_id = ?";
+        List<Object> args = new ArrayList<>(List.of(username, hourTimestamp(startHour), hourTimestamp(endHour)));
+        if (linkId != null) args.add(linkId);
+        jdbcTemplate.query(sql, rs -> {
+            long h = rs.getTimestamp(1).toLocalDateTime().toEpochSecond(ZoneOffset.UTC) / 3600;
+            if (h >= startHour && h <= endHour) counts[(int) (h - startHour)] = rs.getLong(2);
+        }, args.toArray());
+
+        // Hours still fully inside the ring and not rolled yet
+        long firstRingHour = Math.max(startHour, (nowMinute - windowMinutes) / 60 + 1);
+        if (firstRingHour <= endHour) {
+            List<String> rolledKeys = new ArrayList<>();
+            for (long h = firstRingHour; h <= endHour; h++) rolledKeys.add(rolledKey(h));
+            List<String> rolled = redisTemplate.opsForValue().multiGet(rolledKeys);
+            String key = linkId == null ? userKey(username) : linkKey(username, linkId);
+            for (long h = firstRingHour; h <= endHour; h++) {
+                if (rolled != null && rolled.get((int) (h - firstRingHour)) != null) continue;
+                counts[(int) (h - startHour)] = sum(read(key, h * 60, h * 60 + 59));
+            }
+        }
+
+        List<Map<String, Object>> series = new ArrayList<>(n);
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            total += counts[i];
+            Map<String, Object> point = new HashMap<>(4);
+            point.put("hour", Instant.ofEpochSecond((startHour + i) * 3600).toString());
+            point.put("clicks", counts[i]);
+            series.add(point);
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("username", username);
+        if (linkId != null) result.put("linkId", linkId);
+        result.put("hours", n);
+        result.put("series", series);
+        result.put("totalClicks", total);
+        return result;
+    }
+
+    /**
+     * Roll every closed hour still in the ring that has not been rolled, plus hours marked dirty by late clicks.
+     */
+    @Scheduled(fixedDelayString = "${analytics.realtime.rollMs:60000}", initialDelay = 20000)
+    public void rollClosedHours() {
+        if (!enabled) return;
+        try {
+            long nowMinute = System.currentTimeMillis() / 60_000;
+            long lastClosed = (nowMinute - graceMinutes) / 60 - 1;
+            long firstInRing = (nowMinute - windowMinutes) / 60 + 1;
+            if (lastClosed < firstInRing) return;
+            List<String> rolledKeys = new ArrayList<>();
+            for (long h = firstInRing; h <= lastClosed; h++) rolledKeys.add(rolledKey(h));
+            List<String> rolled = redisTemplate.opsForValue().multiGet(rolledKeys);
+            for (long h = firstInRing; h <= lastClosed; h++) {
+                if (rolled == null || rolled.get((int) (h - firstInRing)) == null) rollHour(h);
+            }
+            List<String> dirty = redisTemplate.opsForSet().pop(KEY_PREFIX + "dirty", 100);
+            if (dirty != null) {
+                for (String d : dirty) {
+                    long h = Long.parseLong(d);
+                    if (h >= firstInRing && h <= lastClosed) rollHour(h);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Hourly rollup failed: {}", e.getMessage());
+        }
+    }
+
+    void rollHour(long hour) {
+        String lock = KEY_PREFIX + "rolling:" + hour;
+        if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(lock, nodeId, Duration.ofMinutes(5)))) return;
+        try {
+            Set<String> members = redisTemplate.opsForSet().members(activeKey(hour));
+            List<Object[]> userRows = new ArrayList<>();
+            List<Object[]> linkRows = new ArrayList<>();
+            Timestamp ts = hourTimestamp(hour);
+            if (members != null) {
+                for (String member : members) {
+                    if (member.startsWith("u:")) {
+                        String username = member.substring(2);
+                        long clicks = sum(read(userKey(username), hour * 60, hour * 60 + 59));
+                        userRows.add(new Object[]{username, ts, clicks});
+                    } else if (member.startsWith("l:")) {
+                        int sep = member.indexOf(':', 2);
+                        long linkId = Long.parseLong(member.substring(2, sep));
+                        String username = member.substring(sep + 1);
+                        long clicks = sum(read(linkKey(username, linkId), hour * 60, hour * 60 + 59));
+                        linkRows.add(new Object[]{username, linkId, ts, clicks});
+                    }
+                }
+            }
+            jdbcTemplate.batchUpdate("INSERT INTO user_click_hourly_rollup (username, hour, clicks) VALUES (?, ?, ?) " +
+                    "ON CONFLICT (username, hour) DO UPDATE SET clicks = EXCLUDED.clicks", userRows);
+            // A link deleted since the click has no row to reference; skip it rather than fail the batch
+            jdbcTemplate.batchUpdate("INSERT INTO link_click_hourly_aggregate (username, link_id, hour, clicks) " +
+                    "SELECT ?, l.id, ?, ? FROM links l WHERE l.id = ? " +
+                    "ON CONFLICT (username, link_id, hour) DO UPDATE SET clicks = EXCLUDED.clicks",
+                    linkRows.stream().map(r -> new Object[]{r[0], r[2], r[3], r[1]}).toList());
+            redisTemplate.opsForValue().set(rolledKey(hour), "1", Duration.ofMinutes(windowMinutes + 60));
+            io.micrometer.core.instrument.Metrics.counter("analytics.realtime.hours_rolled").increment();
+            log.debug("Rolled hour {}: {} users, {} links", hourTimestamp(hour), userRows.size(), linkRows.size());
+        } finally {
+            redisTemplate.delete(lock);
+        }
+    }
+
+    private long[] read(String key, long fromMinute, long toMinute) {
+        int n = (int) (toMinute - fromMinute + 1);
+        long[] out = new long[n];
+        List<?> counts = redisTemplate.execute(READ, List.of(key),
+                String.valueOf(fromMinute), String.valueOf(toMinute), String.valueOf(windowMinutes));
+        if (counts != null) {
+            for (int i = 0; i < Math.min(n, counts.size()); i++) {
+                if (counts.get(i) instanceof Number c) out[i] = c.longValue();
+            }
+        }
+        return out;
+    }
+
+    private static long sum(long[] counts) {
+        long total = 0;
+        for (long c : counts) total += c;
+        return total;
+    }
+
+    private static Timestamp hourTimestamp(long hour) {
+        return Timestamp.valueOf(LocalDateTime.ofEpochSecond(hour * 3600, 0, ZoneOffset.UTC));
+    }
+
+    private static String userKey(String username) {
+        return KEY_PREFIX + "u:" + username;
+    }
+
+    private static String linkKey(String username, long linkId) {
+        return KEY_PREFIX + "l:" + username + ":" + linkId;
+    }
+
+    private static String activeKey(long hour) {
+        return KEY_PREFIX + "active:" + hour;
+    }
+
+    private static String rolledKey(long hour) {
+        return KEY_PREFIX + "rolled:" + hour;
+    }
+}
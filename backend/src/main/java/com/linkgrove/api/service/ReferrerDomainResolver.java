@@ -0,0 +1,82 @@
+package com.linkgrove.api.service;
+
+import com.linkgrove.api.util.PublicSuffixList;
+import com.linkgrove.api.util.ShardedLruCache;
+import com.linkgrove.api.util.UrlHosts;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The referrer dimension: the registrable domain (eTLD+1) of a Referer URL, so {@code www.}, {@code m.}
+ * and {@code l.facebook.com} count as one referrer.
+ *
+ * The public suffix list is bundled at {@code publicsuffix/public_suffix_list.dat}; refresh it from
+ * publicsuffix.org now and then. Only http(s) referrers are reduced: an app referrer such as
+ * {@code android-app://com.google.android.gm} names a package, not a domain, and keeps its host. So do IP
+ * literals and hosts that are themselves a public suffix. With
+ * {@code analytics.referrer.registrableDomain=false}, every referrer keeps its full host.
+ *
+ * Reductions are cached by host rather than by URL, since referrer URLs carry click ids and UTM
+ * parameters that would make nearly every URL a miss.
+ */
+@Service
+@Slf4j
+public class ReferrerDomainResolver {
+
+    static final String LIST_RESOURCE = "publicsuffix/public_suffix_list.dat";
+
+    private final PublicSuffixList suffixes;
+    private final ShardedLruCache<String, String> cache;
+
+    public ReferrerDomainResolver(@Value("${analytics.referrer.registrableDomain:true}") boolean registrableDomain,
+                                  @Value("${analytics.referrer.cacheSize:10000}") int cacheSize) {
+        this.suffixes = registrableDomain ? loadBundledList() : null;
+        this.cache = new ShardedLruCache<>(Math.max(16, cacheSize));
+        io.micrometer.core.instrument.Gauge.builder("referrer.domain.cache.size", cache, ShardedLruCache::size)
+                .register(io.micrometer.core.instrument.Metrics.globalRegistry);
+    }
+
+    /**
+     * @return the referrer's domain, or {@code null} when there is no usable host
+     */
+    public String resolve(String referrer) {
+        String host = UrlHosts.host(referrer);
+        if (host == null || suffixes == null || !UrlHosts.isHttp(referrer)) return host;
+        String cached = cache.get(host);
+        if (cached != null) {
+            io.micrometer.core.instrument.Metrics.counter("referrer.domain.lookups", "result", "cached").increment();
+            return cached;
+        }
+        io.micrometer.core.instrument.Metrics.counter("referrer.domain.lookups", "result", "resolved").increment();
+        String domain = reduce(host);
+        cache.put(host, domain);
+        return domain;
+    }
+
+    private String reduce(String host) {
+        // IPv6 literals are bracketed; IPv4 literals end in a numeric label, which no TLD does
+        char last = host.charAt(host.length() - 1);
+        if (host.charAt(0) == '[' || (last >= '0' && last <= '9')) return host;
+        String domain = suffixes.registrableDomain(host);
+        return domain == null ? host : domain;
+    }
+
+    private static PublicSuffixList loadBundledList() {
+        try (InputStream in = ReferrerDomainResolver.class.getClassLoader().getResourceAsStream(LIST_RESOURCE)) {
+            if (in == null) {
+                log.warn("Public suffix list {} not found; referrers keep their full host", LIST_RESOURCE);
+                return null;
+            }
+            PublicSuffixList list = PublicSuffixList.load(in);
+            log.info("Public suffix list loaded: {} rules", list.ruleCount());
+            return list;
+        } catch (IOException e) {
+            log.warn("Failed to load public suffix list; referrers keep their full host: {}", e.getMessage());
+            return null;
+        }
+    }
+}
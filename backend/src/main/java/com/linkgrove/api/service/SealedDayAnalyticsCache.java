@@ -0,0 +1,448 @@
+package com.linkgrove.api.service;
+
+import com.linkgrove.api.model.UserDimensionDailyRollup;
+import com.linkgrove.api.repository.DailyTotals;
+import com.linkgrove.api.repository.DimensionTotals;
+import com.linkgrove.api.repository.UserClickDailyRollupRepository;
+import com.linkgrove.api.repository.UserDimensionDailyRollupRepository;
+import com.linkgrove.api.util.AfterCommit;
+import com.linkgrove.api.util.HyperLogLog;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Per-user, per-day analytics slices read from the rollup tables.
+ *
+ * A UTC day is sealed once it has been closed for longer than the grace period: its slice is written
+ * to Redis without a TTL-driven refresh and is never recomputed. Range queries then read every sealed
+ * day with one MGET and only go to the database for the open days (today, plus yesterday during the
+ * grace period) and for sealed days not cached yet. With visitor sketches enabled, a slice also carries
+ * the day's sketches, so distinct-visitor counts over a range merge cached sketches too. Clicks that
+ * still arrive for a sealed day (queue backlog, redelivery) evict that day's slice after their
+ * transaction commits, as does a rollup rebuild.
+ *
+ * An eviction can land while a reader is between loading a day and sealing it, which would otherwise
+ * persist the pre-eviction slice for the whole TTL. Every eviction therefore bumps a generation counter
+ * (per user and day, or a global one when evicting for everyone) before deleting. Readers note the
+ * generations before loading and check them again after sealing; a slice whose generation moved is
+ * deleted again and simply reloaded by the next read.
+ */
+@Service
+@Slf4j
+public class SealedDayAnalyticsCache {
+
+    static final String KEY_PREFIX = "linkgrove:analytics:sealed:v2:";
+    static final String GENERATION_PREFIX = "linkgrove:analytics:sealed-gen:v1:";
+    static final String GLOBAL_GENERATION = GENERATION_PREFIX + "*";
+
+    private final UserClickDailyRollupRepository clickRollupRepository;
+    private final UserDimensionDailyRollupRepository dimensionRollupRepository;
+    private final VisitorSketchService visitorSketches;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final Duration grace;
+    private final Duration ttl;
+    private final List<Consumer<String>> evictionListeners = new CopyOnWriteArrayList<>();
+
+    public SealedDayAnalyticsCache(UserClickDailyRollupRepository clickRollupRepository,
+                                   UserDimensionDailyRollupRepository dimensionRollupRepository,
+                                   VisitorSketchService visitorSketches,
+                                   RedisTemplate<String, Object> redisTemplate,
+                                   @Value("${analytics.sealed.graceMinutes:120}") long graceMinutes,
+                                   @Value("${analytics.sealed.ttlDays:400}") long ttlDays) {
+        this.clickRollupRepository = clickRollupRepository;
+        this.dimensionRollupRepository = dimensionRollupRepository;
+        this.visitorSketches = visitorSketches;
+        this.redisTemplate = redisTemplate;
+        this.grace = Duration.ofMinutes(Math.max(0, graceMinutes));
+        this.ttl = Duration.ofDays(Math.max(1, ttlDays));
+    }
+
+    /**
+     * Counters for one user and UTC day: totals plus clicks/uniques per value of every breakdown dimension.
+     */
+    @Data
+    @NoArgsConstructor
+    public static class DaySlice {
+        private LocalDate day;
+        private long clicks;
+        private long uniqueVisitors;
+        /** dimension -> value -> {clicks, uniqueVisitors} */
+        private HashMap<String, HashMap<String, long[]>> dimensions = new HashMap<>();
+        /** Visitor sketch of the day's total; null when the rollup row has none */
+        private byte[] sketch;
+        /** dimension -> value -> visitor sketch, for the values whose rollup row has one */
+        private HashMap<String, HashMap<String, byte[]>> sketches = new HashMap<>();
+
+        DaySlice(LocalDate day) {
+            this.day = day;
+        }
+
+        void add(String dimension, String value, long clicks, long uniqueVisitors) {
+            long[] c = dimensions.computeIfAbsent(dimension, k -> new HashMap<>()).computeIfAbsent(value, k -> new long[2]);
+            c[0] += clicks;
+            c[1] += uniqueVisitors;
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    static class Row implements DimensionTotals, DailyTotals {
+        private LocalDate day;
+        private String dimension;
+        private Long clicks;
+        private Long uniqueVisitors;
+        private Boolean folded;
+
+        Row(LocalDate day, String dimension, Long clicks, Long uniqueVisitors) {
+            this(day, dimension, clicks, uniqueVisitors, false);
+        }
+
+        /** The folded tail of a breakdown, shaped like the SQL version's. */
+        static Row folded(long clicks) {
+            return new Row(null, OTHER, clicks, null, true);
+        }
+    }
+
+    /**
+     * One slice per day of {@code [start, end]}, in order. Days without clicks come back as empty slices.
+     */
+    public List<DaySlice> slices(String username, LocalDate start, LocalDate end) {
+        Instant now = Instant.now();
+        List<LocalDate> days = new ArrayList<>();
+        for (LocalDate d = start; !d.isAfter(end); d = d.plusDays(1)) days.add(d);
+
+        Map<LocalDate, DaySlice> found = new HashMap<>();
+        List<LocalDate> sealed = days.stream().filter(d -> isSealed(d, now, grace)).toList();
+        if (!sealed.isEmpty()) {
+            try {
+                List<Object> cached = redisTemplate.opsForValue().multiGet(sealed.stream().map(d -> key(username, d)).toList());
+                for (int i = 0; cached != null && i < cached.size(); i++) {
+                    if (cached.get(i) instanceof DaySlice s) found.put(sealed.get(i), s);
+                }
+            } catch (Exception e) {
+                log.debug("Sealed analytics read failed for {}: {}", username, e.getMessage());
+            }
+        }
+        io.micrometer.core.instrument.Metrics.counter("analytics.sealed.hits").increment(found.size());
+
+        LocalDate loadFrom = null, loadTo = null;
+        for (LocalDate d : days) {
+            if (found.containsKey(d)) continue;
+            if (loadFrom == null) loadFrom = d;
+            loadTo = d;
+        }
+        if (loadFrom != null) {
+            List<LocalDate> sealable = sealed.stream().filter(d -> !found.containsKey(d)).toList();
+            List<String> generationKeys = generationKeys(username, sealable);
+            // Read before loading, so an eviction committed after this point is caught by the check below
+            List<String> generations = sealable.isEmpty() ? List.of() : generations(generationKeys);
+            Map<LocalDate, DaySlice> loaded = load(username, loadFrom, loadTo);
+            Map<String, Object> toSeal = new HashMap<>();
+            for (LocalDate d : days) {
+                if (found.containsKey(d)) continue;
+                DaySlice s = loaded.getOrDefault(d, new DaySlice(d));
+                found.put(d, s);
+                if (isSealed(d, now, grace)) toSeal.put(key(username, d), s);
+            }
+            io.micrometer.core.instrument.Metrics.counter("analytics.sealed.misses").increment(toSeal.size());
+            if (generations != null && seal(toSeal)) {
+                unsealIfEvicted(username, sealable, generationKeys, generations);
+            }
+        }
+        List<DaySlice> out = new ArrayList<>(days.size());
+        for (LocalDate d : days) out.add(found.get(d));
+        return out;
+    }
+
+    /**
+     * Most recent day that is sealed right now.
+     */
+    public LocalDate lastSealedDay() {
+        return Instant.now().minus(grace).atZone(ZoneOffset.UTC).toLocalDate().minusDays(1);
+    }
+
+    /**
+     * Register a callback run after sealed slices are evicted, with the username or {@code null} for all users.
+     */
+    public void addEvictionListener(Consumer<String> listener) {
+        evictionListeners.add(listener);
+    }
+
+    /**
+     * Daily totals shaped like {@link UserClickDailyRollupRepository#findTotals}.
+     */
+    public List<DailyTotals> dailyTotals(String username, LocalDate start, LocalDate end) {
+        List<DailyTotals> out = new ArrayList<>();
+        for (DaySlice s : slices(username, start, end)) {
+            out.add(new Row(s.getDay(), null, s.getClicks(), s.getUniqueVisitors()));
+        }
+        return out;
+    }
+
+    /**
+     * Breakdown shaped like {@link UserDimensionDailyRollupRepository#sumByValue}: values ordered by clicks,
+     * everything past the first {@code topN} folded into one {@link DimensionTotals#OTHER} row.
+     */
+    public List<DimensionTotals> breakdown(String username, String dimension, LocalDate start, LocalDate end, int topN) {
+        return merge(slices(username, start, end), dimension, topN);
+    }
+
+    /**
+     * Distinct visitors over the slices: their day sketches merged, plus the daily counts of days without one.
+     */
+    public static VisitorSketchService.Merged uniques(List<DaySlice> slices) {
+        HyperLogLog merged = new HyperLogLog();
+        long unsketched = 0;
+        for (DaySlice s : slices) {
+            if (s.getSketch() != null) merged.merge(HyperLogLog.fromBytes(s.getSketch()));
+            else unsketched += s.getUniqueVisitors();
+        }
+        return new VisitorSketchService.Merged(merged, unsketched);
+    }
+
+    /**
+     * Distinct visitors per value of {@code dimension} over the slices, shaped like
+     * {@link VisitorSketchService#userByValue}.
+     */
+    public static Map<String, VisitorSketchService.Merged> uniquesByValue(List<DaySlice> slices, String dimension) {
+        Map<String, HyperLogLog> merged = new HashMap<>();
+        Map<String, Long> unsketched = new HashMap<>();
+        for (DaySlice s : slices) {
+            Map<String, long[]> values = s.getDimensions().get(dimension);
+            if (values == null) continue;
+            Map<String, byte[]> sketches = s.getSketches().getOrDefault(dimension, new HashMap<>());
+            values.forEach((v, c) -> {
+                HyperLogLog acc = merged.computeIfAbsent(v, k -> new HyperLogLog());
+                byte[] sketch = sketches.get(v);
+                if (sketch != null) acc.merge(HyperLogLog.fromBytes(sketch));
+                else unsketched.merge(v, c[1], Long::sum);
+            });
+        }
+        Map<String, VisitorSketchService.Merged> out = new HashMap<>(merged.size() * 2);
+        merged.forEach((v, sketch) -> out.put(v, new VisitorSketchService.Merged(sketch, unsketched.getOrDefault(v, 0L))));
+        return out;
+    }
+
+    static List<DimensionTotals> merge(List<DaySlice> slices, String dimension, int topN) {
+        Map<String, long[]> sums = new HashMap<>();
+        for (DaySlice s : slices) {
+            Map<String, long[]> values = s.getDimensions().get(dimension);
+            if (values == null) continue;
+            values.forEach((v, c) -> {
+                long[] acc = sums.computeIfAbsent(v, k -> new long[2]);
+                acc[0] += c[0];
+                acc[1] += c[1];
+            });
+        }
+        List<Map.Entry<String, long[]>> ranked = new ArrayList<>(sums.entrySet());
+        ranked.sort(Comparator.<Map.Entry<String, long[]>>comparingLong(e -> -e.getValue()[0]).thenComparing(Map.Entry::getKey));
+
+        List<DimensionTotals> out = new ArrayList<>(Math.min(ranked.size(), topN) + 1);
+        long foldedClicks = 0;
+        for (int i = 0; i < ranked.size(); i++) {
+            long[] c = ranked.get(i).getValue();
+            if (i < topN) out.add(new Row(null, ranked.get(i).getKey(), c[0], c[1]));
+            else foldedClicks += c[0];
+        }
+        if (ranked.size() > topN) out.add(Row.folded(foldedClicks));
+        return out;
+    }
+
+    /**
+     * Called by the analytics worker for every processed click. If the click lands on a day that is already
+     * sealed, the cached slice is dropped once the rollup update commits so the next read reseals it.
+     */
+    public void onClick(String username, LocalDate day) {
+        if (username == null || day == null || !isSealed(day, Instant.now(), grace)) return;
+        io.micrometer.core.instrument.Metrics.counter("analytics.sealed.late_events").increment();
+        String key = key(username, day);
+        String generationKey = generationKey(username, day);
+        AfterCommit.run(() -> {
+            bump(List.of(generationKey));
+            delete(List.of(key));
+            notifyEvicted(username);
+        });
+    }
+
+    /**
+     * Drop sealed slices for {@code [from, to]}, for one user or everyone when {@code username} is null.
+     */
+    public void evict(LocalDate from, LocalDate to, String username) {
+        if (username != null) {
+            List<String> keys = new ArrayList<>();
+            List<String> generationKeys = new ArrayList<>();
+            for (LocalDate d = from; !d.isAfter(to); d = d.plusDays(1)) {
+                keys.add(key(username, d));
+                generationKeys.add(generationKey(username, d));
+            }
+            bump(generationKeys);
+            delete(keys);
+            notifyEvicted(username);
+            return;
+        }
+        bump(List.of(GLOBAL_GENERATION));
+        List<String> keys = new ArrayList<>();
+        try (Cursor<String> cursor = redisTemplate.scan(ScanOptions.scanOptions().match(KEY_PREFIX + "*").count(1000).build())) {
+            while (cursor.hasNext()) {
+                String k = cursor.next();
+                LocalDate d = LocalDate.parse(k.substring(k.lastIndexOf(':') + 1));
+                if (!d.isBefore(from) && !d.isAfter(to)) keys.add(k);
+                if (keys.size() >= 1000) {
+                    delete(keys);
+                    keys = new ArrayList<>();
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Sealed analytics eviction scan failed: {}", e.getMessage());
+        }
+        delete(keys);
+        notifyEvicted(null);
+    }
+
+    static boolean isSealed(LocalDate day, Instant now, Duration grace) {
+        Instant closedAt = day.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+        return !now.isBefore(closedAt.plus(grace));
+    }
+
+    static String key(String username, LocalDate day) {
+        return KEY_PREFIX + username + ":" + day;
+    }
+
+    static String generationKey(String username, LocalDate day) {
+        return GENERATION_PREFIX + username + ":" + day;
+    }
+
+    /** The per-day generation keys of {@code days}, followed by the global one. */
+    private static List<String> generationKeys(String username, List<LocalDate> days) {
+        List<String> keys = new ArrayList<>(days.size() + 1);
+        for (LocalDate d : days) keys.add(generationKey(username, d));
+        keys.add(GLOBAL_GENERATION);
+        return keys;
+    }
+
+    /**
+     * Current values of the generation counters, or {@code null} if they can't be read (then nothing is sealed).
+     */
+    private List<String> generations(List<String> keys) {
+        try {
+            byte[][] raw = keys.stream().map(SealedDayAnalyticsCache::bytes).toArray(byte[][]::new);
+            List<byte[]> values = redisTemplate.execute((RedisCallback<List<byte[]>>) c -> c.stringCommands().mGet(raw));
+            if (values == null || values.size() != keys.size()) return null;
+            List<String> out = new ArrayList<>(values.size());
+            for (byte[] v : values) out.add(v == null ? null : new String(v, StandardCharsets.UTF_8));
+            return out;
+        } catch (Exception e) {
+            log.debug("Reading sealed analytics generations failed: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void unsealIfEvicted(String username, List<LocalDate> days, List<String> keys, List<String> before) {
+        List<String> after = generations(keys);
+        boolean global = after == null || !Objects.equals(before.get(days.size()), after.get(days.size()));
+        List<String> stale = new ArrayList<>();
+        for (int i = 0; i < days.size(); i++) {
+            if (global || !Objects.equals(before.get(i), after.get(i))) stale.add(key(username, days.get(i)));
+        }
+        if (stale.isEmpty()) return;
+        io.micrometer.core.instrument.Metrics.counter("analytics.sealed.races").increment(stale.size());
+        delete(stale);
+    }
+
+    private void bump(List<String> generationKeys) {
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) c -> {
+                for (String k : generationKeys) {
+                    c.stringCommands().incr(bytes(k));
+                    c.keyCommands().expire(bytes(k), ttl.toSeconds());
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("Failed to bump sealed analytics generations: {}", e.getMessage());
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Map<LocalDate, DaySlice> load(String username, LocalDate start, LocalDate end) {
+        Map<LocalDate, DaySlice> out = new HashMap<>();
+        for (DailyTotals t : clickRollupRepository.findTotals(username, start, end)) {
+            DaySlice s = out.computeIfAbsent(t.getDay(), DaySlice::new);
+            s.setClicks(t.getClicks() == null ? 0 : t.getClicks());
+            s.setUniqueVisitors(t.getUniqueVisitors() == null ? 0 : t.getUniqueVisitors());
+        }
+        for (UserDimensionDailyRollup r : dimensionRollupRepository.findByUsernameAndDayBetween(username, start, end)) {
+            out.computeIfAbsent(r.getDay(), DaySlice::new).add(r.getDimension(), r.getDimensionValue(), r.getClicks(), r.getUniqueVisitors());
+        }
+        if (visitorSketches.isEnabled()) {
+            for (VisitorSketchService.DaySketch d : visitorSketches.userDaySketches(username, start, end)) {
+                DaySlice s = out.computeIfAbsent(d.day(), DaySlice::new);
+                if (d.dimension() == null) s.setSketch(d.sketch());
+                else s.getSketches().computeIfAbsent(d.dimension(), k -> new HashMap<>()).put(d.value(), d.sketch());
+            }
+        }
+        return out;
+    }
+
+    private boolean seal(Map<String, Object> slices) {
+        if (slices.isEmpty()) return false;
+        try {
+            redisTemplate.executePipelined(new org.springframework.data.redis.core.SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings({"unchecked", "rawtypes"})
+                public Object execute(org.springframework.data.redis.core.RedisOperations operations) {
+                    slices.forEach((k, v) -> operations.opsForValue().set(k, v, ttl));
+                    return null;
+                }
+            });
+            return true;
+        } catch (Exception e) {
+            log.debug("Sealing analytics slices failed: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void notifyEvicted(String username) {
+        for (Consumer<String> listener : evictionListeners) {
+            try {
+                listener.accept(username);
+            } catch (Exception e) {
+                log.warn("Sealed analytics eviction listener failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void delete(List<String> keys) {
+        if (keys.isEmpty()) return;
+        try {
+            redisTemplate.delete(keys);
+        } catch (Exception e) {
+            log.warn("Failed to evict sealed analytics slices: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.linkgrove.api.service;
+
+import com.linkgrove.api.util.AhoCorasick;
+import com.linkgrove.api.util.ShardedLruCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Device class, browser, OS and bot family of a User-Agent, from one keyword scan of the raw header.
+ *
+ * Every keyword of every rule is matched together ({@link AhoCorasick}); each dimension then takes the
+ * first of its rules, in order, that had a keyword present. Order matters because UAs borrow each other's
+ * tokens: Edge says Chrome and Safari, Chrome says Safari, and iOS says "like Mac OS X". The device rules
+ * are the ones the worker has always used, so device aggregates are unchanged.
+ *
+ * The catch-all bot keywords ({@code bot}, {@code crawler}, ...) also turn up inside device names such as
+ * CUBOT, so they only count where they end a token: followed by punctuation such as the {@code /} before a
+ * version or the {@code ;} closing a comment field, or by the end of the header. {@code AhrefsBot/7.0} and
+ * {@code (compatible; bot)} are bots; {@code CUBOT X19} and {@code CUBOT_NOTE_7} are not.
+ *
+ * The same few UAs account for most clicks, so results are kept in a bounded LRU keyed by the header.
+ */
+@Service
+public class UserAgentClassifier {
+
+    public record Classification(String device, String browser, String os, String bot) {
+        public boolean isBot() {
+            return bot != null;
+        }
+    }
+
+    static final String OTHER = "other";
+    private static final Classification UNKNOWN = new Classification(OTHER, OTHER, OTHER, null);
+    // Longer headers are classified but not cached, so junk can't crowd out real UAs
+    private static final int MAX_CACHED_LENGTH = 512;
+
+    private record Rule(String value, String... keywords) {}
+
+    private static final Rule GENERIC_BOT = new Rule(OTHER, "bot", "crawl", "crawler", "spider", "slurp");
+
+    private static final List<Rule> DEVICES = List.of(
+            new Rule("tablet", "tablet", "ipad"),
+            new Rule("mobile", "mobi", "iphone", "android"),
+            new Rule("desktop", "windows", "macintosh", "linux"));
+
+    private static final List<Rule> BROWSERS = List.of(
+            new Rule("edge", "edg/", "edge/", "edga/", "edgios/"),
+            new Rule("opera", "opr/", "opera", "opios/"),
+            new Rule("samsung", "samsungbrowser/"),
+            new Rule("yandex", "yabrowser/"),
+            new Rule("uc", "ucbrowser/"),
+            new Rule("facebook", "fban/", "fbav/"),
+            new Rule("instagram", "instagram"),
+            new Rule("tiktok", "musical_ly", "bytedancewebview"),
+            new Rule("firefox", "firefox/", "fxios/"),
+            new Rule("chrome", "chrome/", "crios/", "chromium/"),
+            new Rule("safari", "safari/"),
+            new Rule("ie", "msie ", "trident/"));
+
+    private static final List<Rule> OPERATING_SYSTEMS = List.of(
+            new Rule("ios", "iphone", "ipad", "ipod"),
+            new Rule("android", "android"),
+            new Rule("windows", "windows"),
+            new Rule("chromeos", "cros "),
+            new Rule("macos", "macintosh", "mac os x"),
+            new Rule("linux", "linux"));
+
+    private static final List<Rule> BOTS = List.of(
+            new Rule("google", "googlebot", "google-inspectiontool", "adsbot-google", "mediapartners-google"),
+            new Rule("bing", "bingbot", "bingpreview"),
+            new Rule("yandex", "yandexbot"),
+            new Rule("baidu", "baiduspider"),
+            new Rule("duckduckgo", "duckduckbot"),
+            new Rule("apple", "applebot"),
+            new Rule("facebook", "facebookexternalhit", "facebookcatalog"),
+            new Rule("twitter", "twitterbot"),
+            new Rule("linkedin", "linkedinbot"),
+            new Rule("slack", "slackbot", "slack-imgproxy"),
+            new Rule("discord", "discordbot"),
+            new Rule("telegram", "telegrambot"),
+            new Rule("whatsapp", "whatsapp"),
+            new Rule("headless", "headlesschrome", "phantomjs"),
+            new Rule("http-client", "curl/", "wget/", "python-requests", "python-urllib", "go-http-client",
+                    "okhttp", "java/", "axios/", "node-fetch", "postmanruntime"),
+            GENERIC_BOT);
+
+    private final AhoCorasick matcher;
+    private final int[][] devices;
+    private final int[][] browsers;
+    private final int[][] operatingSystems;
+    private final int[][] bots;
+    private final ShardedLruCache<String, Classification> cache;
+
+    public UserAgentClassifier(@Value("${analytics.userAgent.cacheSize:20000}") int cacheSize) {
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        devices = compile(DEVICES, ids);
+        browsers = compile(BROWSERS, ids);
+        operatingSystems = compile(OPERATING_SYSTEMS, ids);
+        bots = compile(BOTS, ids);
+        matcher = new AhoCorasick(new ArrayList<>(ids.keySet()));
+        cache = new ShardedLruCache<>(Math.max(16, cacheSize));
+        io.micrometer.core.instrument.Gauge.builder("useragent.cache.size", cache, ShardedLruCache::size)
+                .register(io.micrometer.core.instrument.Metrics.globalRegistry);
+    }
+
+    public Classification classify(String ua) {
+        if (ua == null || ua.isBlank()) return UNKNOWN;
+        boolean cacheable = ua.length() <= MAX_CACHED_LENGTH;
+        if (cacheable) {
+            Classification cached = cache.get(ua);
+            if (cached != null) {
+                io.micrometer.core.instrument.Metrics.counter("useragent.lookups", "result", "cached").increment();
+                return cached;
+            }
+        }
+        io.micrometer.core.instrument.Metrics.counter("useragent.lookups", "result", "parsed").increment();
+        Classification result = classifyUncached(ua);
+        if (cacheable) cache.put(ua, result);
+        return result;
+    }
+
+    /**
+     * The scan itself, bypassing the cache.
+     */
+    public Classification classifyUncached(String ua) {
+        if (ua == null || ua.isBlank()) return UNKNOWN;
+        BitSet hits = matcher.match(ua);
+        return new Classification(
+                pick(DEVICES, devices, hits, OTHER),
+                pick(BROWSERS, browsers, hits, OTHER),
+                pick(OPERATING_SYSTEMS, operatingSystems, hits, OTHER),
+                bot(ua, pick(BOTS, bots, hits, null)));
+    }
+
+    private static String bot(String ua, String picked) {
+        // Only the catch-all rule picks OTHER
+        if (!OTHER.equals(picked)) return picked;
+        for (String keyword : GENERIC_BOT.keywords()) {
+            if (endsToken(ua, keyword)) return picked;
+        }
+        return null;
+    }
+
+    private static boolean endsToken(String ua, String keyword) {
+        int k = keyword.length();
+        for (int i = 0; i + k <= ua.length(); i++) {
+            if (!ua.regionMatches(true, i, keyword, 0, k)) continue;
+            if (i + k == ua.length()) return true;
+            char next = ua.charAt(i + k);
+            if (!Character.isLetterOrDigit(next) && next != '_' && next != ' ') return true;
+        }
+        return false;
+    }
+
+    private static int[][] compile(List<Rule> rules, Map<String, Integer> ids) {
+        int[][] compiled = new int[rules.size()][];
+        for (int r = 0; r < rules.size(); r++) {
+            String[] keywords = rules.get(r).keywords();
+            compiled[r] = new int[keywords.length];
+            for (int k = 0; k < keywords.length; k++) {
+                compiled[r][k] = ids.computeIfAbsent(keywords[k], key -> ids.size());
+            }
+        }
+        return compiled;
+    }
+
+    private static String pick(List<Rule> rules, int[][] compiled, BitSet hits, String fallback) {
+        for (int r = 0; r < compiled.length; r++) {
+            for (int id : compiled[r]) {
+                if (hits.get(id)) return rules.get(r).value();
+            }
+        }
+        return fallback;
+    }
+}
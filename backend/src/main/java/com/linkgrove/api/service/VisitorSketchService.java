@@ -0,0 +1,303 @@
+package com.linkgrove.api.service;
+
+import com.linkgrove.api.repository.DimensionTotals;
+import com.linkgrove.api.util.HyperLogLog;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-row {@link HyperLogLog} sketches in the {@code uv_sketch} column of the daily aggregate and rollup
+ * tables, for unique visitor counts over a range.
+ *
+ * The worker adds a visitor to each row's sketch in the same transaction that bumps the row's daily
+ * {@code unique_visitors}. Inside a transaction the visitors are collected per row and written just before
+ * commit, so a batch rewrites each row's sketch once rather than once per new visitor. Readers merge the
+ * sketches of every day in the range, so a visitor who returns daily counts once rather than once per day.
+ *
+ * Rows from before sketches existed have none and contribute their daily counts unchanged. Such a row
+ * never gets a sketch started later in its day: one holding only the later visitors would replace its
+ * earlier count with a smaller one.
+ */
+@Service
+@Slf4j
+public class VisitorSketchService {
+
+    public enum Table {
+        LINK("link_click_daily_aggregate", "username = ? AND link_id = ? AND day = ?", null),
+        LINK_REFERRER("link_referrer_daily_aggregate", "username = ? AND link_id = ? AND day = ? AND referrer_domain = ?", "referrer_domain"),
+        LINK_DEVICE("link_device_daily_aggregate", "username = ? AND link_id = ? AND day = ? AND device_type = ?", "device_type"),
+        LINK_COUNTRY("link_geo_daily_aggregate", "username = ? AND link_id = ? AND day = ? AND country = ?", "CAST(country AS TEXT)"),
+        LINK_SOURCE("link_source_daily_aggregate", "username = ? AND link_id = ? AND day = ? AND source = ?", "source"),
+        LINK_BROWSER("link_browser_daily_aggregate", "username = ? AND link_id = ? AND day = ? AND browser = ?", "browser"),
+        LINK_OS("link_os_daily_aggregate", "username = ? AND link_id = ? AND day = ? AND os = ?", "os"),
+        LINK_BOT("link_bot_daily_aggregate", "username = ? AND link_id = ? AND day = ? AND bot = ?", "bot"),
+        LINK_VARIANT("link_variant_daily_aggregate", "username = ? AND link_id = ? AND variant_id = ? AND day = ?", "CAST(variant_id AS TEXT)"),
+        USER("user_click_daily_rollup", "username = ? AND day = ?", null),
+        USER_DIMENSION("user_dimension_daily_rollup", "username = ? AND dimension = ? AND day = ? AND dimension_value = ?", "dimension_value");
+
+        final String table;
+        final String where;
+        final String valueColumn;
+
+        Table(String table, String where, String valueColumn) {
+            this.table = table;
+            this.where = where;
+            this.valueColumn = valueColumn;
+        }
+    }
+
+    /**
+     * Visitors merged over a range: the sketch, plus the summed daily counts of rows that had no sketch.
+     */
+    public record Merged(HyperLogLog sketch, long unsketched) {
+        public long estimate() {
+            return sketch.estimate() + unsketched;
+        }
+    }
+
+    /**
+     * One user-level rollup row's sketch: the day total when {@code dimension} is null, else one breakdown value.
+     */
+    public record DaySketch(LocalDate day, String dimension, String value, byte[] sketch) {}
+
+    /**
+     * Range estimates for a breakdown: one per listed value, and one for its folded row ({@code null} when
+     * there is none).
+     */
+    public record Estimates(Map<String, Long> byValue, Long folded) {
+
+        public static final Estimates NONE = new Estimates(Map.of(), null);
+
+        /**
+         * @return the estimate for {@code row}, or its own unique count when there is no sketch for it
+         */
+        public Long of(DimensionTotals row) {
+            Long estimate = Boolean.TRUE.equals(row.getFolded()) ? folded : byValue.get(row.getDimension());
+            return estimate != null ? estimate : row.getUniqueVisitors();
+        }
+    }
+
+    private record Row(Table table, List<Object> key) {}
+
+    // Transaction resource key for the visitors waiting to be written at commit
+    private static final Object PENDING = new Object();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+
+    public VisitorSketchService(JdbcTemplate jdbcTemplate,
+                                @Value("${analytics.sketches.enabled:true}") boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Add a visitor to one row's sketch; {@code key} binds the table's key columns in order. Call inside the
+     * transaction that upserted the row and bumped its {@code unique_visitors}; the write happens at commit.
+     */
+    public void add(Table table, long visitorHash, Object... key) {
+        if (!enabled) return;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            write(table, key, List.of(visitorHash));
+            return;
+        }
+        pending().computeIfAbsent(new Row(table, Arrays.asList(key)), k -> new ArrayList<>()).add(visitorHash);
+    }
+
+    /**
+     * The day-total and per-value sketches of a user's rollup rows over {@code [start, end]}, for rows that have one.
+     */
+    public List<DaySketch> userDaySketches(String username, LocalDate start, LocalDate end) {
+        List<DaySketch> out = new ArrayList<>();
+        jdbcTemplate.query("SELECT day, uv_sketch FROM user_click_daily_rollup WHERE username = ? AND day BETWEEN ? AND ? AND uv_sketch IS NOT NULL",
+                rs -> {
+                    out.add(new DaySketch(rs.getObject(1, LocalDate.class), null, null, rs.getBytes(2)));
+                }, username, start, end);
+        jdbcTemplate.query("SELECT day, dimension, dimension_value, uv_sketch FROM user_dimension_daily_rollup " +
+                        "WHERE username = ? AND day BETWEEN ? AND ? AND uv_sketch IS NOT NULL",
+                rs -> {
+                    out.add(new DaySketch(rs.getObject(1, LocalDate.class), rs.getString(2), rs.getString(3), rs.getBytes(4)));
+                }, username, start, end);
+        return out;
+    }
+
+    /** Distinct visitors across all of a user's links over {@code [start, end]}. */
+    public long userUniques(String username, LocalDate start, LocalDate end) {
+        return merge("SELECT '', uv_sketch, unique_visitors FROM user_click_daily_rollup WHERE username = ? AND day BETWEEN ? AND ?",
+                username, start, end).getOrDefault("", empty()).estimate();
+    }
+
+    /** Distinct visitors of one link over {@code [start, end]}. */
+    public long linkUniques(String username, Long linkId, LocalDate start, LocalDate end) {
+        return merge("SELECT '', uv_sketch, unique_visitors FROM link_click_daily_aggregate WHERE username = ? AND link_id = ? AND day BETWEEN ? AND ?",
+                username, linkId, start, end).getOrDefault("", empty()).estimate();
+    }
+
+    /** Distinct visitors per value of an account-level dimension (referrer, device, country, source). */
+    public Map<String, Merged> userByValue(String username, String dimension, LocalDate start, LocalDate end) {
+        return merge("SELECT dimension_value, uv_sketch, unique_visitors FROM user_dimension_daily_rollup " +
+                "WHERE username = ? AND dimension = ? AND day BETWEEN ? AND ?", username, dimension, start, end);
+    }
+
+    /** Distinct visitors per value of a per-link table, for one link or all of them when {@code linkId} is null. */
+    public Map<String, Merged> linkByValue(Table table, String username, Long linkId, LocalDate start, LocalDate end) {
+        String sql = "SELECT " + table.valueColumn + ", uv_sketch, unique_visitors FROM " + table.table +
+                " WHERE username = ? AND day BETWEEN ? AND ?";
+        return linkId == null ? merge(sql, username, start, end) : merge(sql + " AND link_id = ?", username, start, end, linkId);
+    }
+
+    /**
+     * Range estimates for the rows of a breakdown. The folded row covers every value not listed on a row of
+     * its own.
+     */
+    public static Estimates estimates(List<? extends DimensionTotals> rows, Map<String, Merged> byValue) {
+        Set<String> listed = new HashSet<>();
+        boolean hasFolded = false;
+        for (DimensionTotals row : rows) {
+            if (Boolean.TRUE.equals(row.getFolded())) hasFolded = true;
+            else listed.add(row.getDimension());
+        }
+        Map<String, Long> out = new HashMap<>();
+        HyperLogLog folded = null;
+        long foldedUnsketched = 0;
+        for (var e : byValue.entrySet()) {
+            if (listed.contains(e.getKey())) {
+                out.put(e.getKey(), e.getValue().estimate());
+            } else if (hasFolded) {
+                folded = folded == null ? HyperLogLog.fromBytes(e.getValue().sketch().toBytes()) : folded.merge(e.getValue().sketch());
+                foldedUnsketched += e.getValue().unsketched();
+            }
+        }
+        return new Estimates(out, folded == null ? null : folded.estimate() + foldedUnsketched);
+    }
+
+    /**
+     * Re-derive one day's rollup sketches from the per-link rows after the rollups were rebuilt. A rollup row
+     * fed by any per-link row without a sketch gets none either, so it falls back to its daily count.
+     */
+    public void rebuildRollups(LocalDate day, String username) {
+        if (!enabled) return;
+        String userFilter = username == null ? "" : " AND username = ?";
+        Object[] args = username == null ? new Object[]{day} : new Object[]{day, username};
+
+        Map<String, HyperLogLog> users = new HashMap<>();
+        jdbcTemplate.query("SELECT username, uv_sketch, unique_visitors FROM link_click_daily_aggregate WHERE day = ?" + userFilter,
+                rs -> {
+                    fold(users, rs.getString(1), rs.getBytes(2), rs.getLong(3));
+                }, args);
+        List<Object[]> userRows = new ArrayList<>(users.size());
+        users.forEach((user, sketch) -> userRows.add(new Object[]{sketch == null ? null : sketch.toBytes(), user, day}));
+        jdbcTemplate.batchUpdate("UPDATE user_click_daily_rollup SET uv_sketch = ? WHERE username = ? AND day = ?", userRows);
+
+        Map<List<String>, HyperLogLog> values = new HashMap<>();
+        for (var entry : Map.of("referrer", Table.LINK_REFERRER, "device", Table.LINK_DEVICE,
+                "country", Table.LINK_COUNTRY, "source", Table.LINK_SOURCE).entrySet()) {
+            Table t = entry.getValue();
+            jdbcTemplate.query("SELECT username, " + t.valueColumn + ", uv_sketch, unique_visitors FROM " + t.table +
+                            " WHERE day = ?" + userFilter,
+                    rs -> {
+                        fold(values, List.of(rs.getString(1), entry.getKey(), rs.getString(2)), rs.getBytes(3), rs.getLong(4));
+                    }, args);
+        }
+        List<Object[]> valueRows = new ArrayList<>(values.size());
+        values.forEach((k, sketch) -> valueRows.add(new Object[]{sketch == null ? null : sketch.toBytes(), k.get(0), k.get(1), day, k.get(2)}));
+        jdbcTemplate.batchUpdate("UPDATE user_dimension_daily_rollup SET uv_sketch = ? " +
+                "WHERE username = ? AND dimension = ? AND day = ? AND dimension_value = ?", valueRows);
+    }
+
+    /**
+     * Merge one per-link row into its rollup's sketch; a row that has visitors but no sketch leaves the rollup
+     * without one (a {@code null} value).
+     */
+    private static <K> void fold(Map<K, HyperLogLog> rollups, K key, byte[] sketch, long uniqueVisitors) {
+        boolean seen = rollups.containsKey(key);
+        if (seen && rollups.get(key) == null) return;
+        if (sketch == null && uniqueVisitors > 0) {
+            rollups.put(key, null);
+            return;
+        }
+        if (!seen) rollups.put(key, new HyperLogLog());
+        if (sketch != null) rollups.get(key).merge(HyperLogLog.fromBytes(sketch));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Row, List<Long>> pending() {
+        Map<Row, List<Long>> pending = (Map<Row, List<Long>>) TransactionSynchronizationManager.getResource(PENDING);
+        if (pending != null) return pending;
+        Map<Row, List<Long>> fresh = new LinkedHashMap<>();
+        TransactionSynchronizationManager.bindResource(PENDING, fresh);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                fresh.forEach((row, hashes) -> write(row.table(), row.key().toArray(), hashes));
+                io.micrometer.core.instrument.Metrics.summary("analytics.sketches.rows.per.commit").record(fresh.size());
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(PENDING);
+            }
+        });
+        return fresh;
+    }
+
+    private void write(Table table, Object[] key, List<Long> hashes) {
+        List<Object[]> stored = jdbcTemplate.query("SELECT uv_sketch, unique_visitors FROM " + table.table + " WHERE " + table.where + " FOR UPDATE",
+                (rs, i) -> new Object[]{rs.getBytes(1), rs.getLong(2)}, key);
+        if (stored.isEmpty()) return;
+        byte[] bytes = (byte[]) stored.get(0)[0];
+        if (bytes == null && (Long) stored.get(0)[1] > hashes.size()) {
+            // Counted before sketches existed; it keeps contributing its daily count instead
+            io.micrometer.core.instrument.Metrics.counter("analytics.sketches.skipped", "reason", "unsketched_row").increment();
+            return;
+        }
+        HyperLogLog sketch = HyperLogLog.fromBytes(bytes);
+        boolean changed = false;
+        for (long hash : hashes) changed |= sketch.add(hash);
+        if (!changed) return;
+        Object[] args = new Object[key.length + 1];
+        args[0] = sketch.toBytes();
+        System.arraycopy(key, 0, args, 1, key.length);
+        jdbcTemplate.update("UPDATE " + table.table + " SET uv_sketch = ? WHERE " + table.where, args);
+    }
+
+    private Map<String, Merged> merge(String sql, Object... args) {
+        Map<String, HyperLogLog> sketches = new HashMap<>();
+        Map<String, Long> unsketched = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            String value = rs.getString(1);
+            byte[] bytes = rs.getBytes(2);
+            HyperLogLog sketch = sketches.computeIfAbsent(value, k -> new HyperLogLog());
+            if (bytes != null) {
+                sketch.merge(HyperLogLog.fromBytes(bytes));
+            } else {
+                unsketched.merge(value, rs.getLong(3), Long::sum);
+            }
+        }, args);
+        Map<String, Merged> out = new HashMap<>(sketches.size() * 2);
+        sketches.forEach((value, sketch) -> out.put(value, new Merged(sketch, unsketched.getOrDefault(value, 0L))));
+        return out;
+    }
+
+    private static Merged empty() {
+        return new Merged(new HyperLogLog(), 0);
+    }
+}
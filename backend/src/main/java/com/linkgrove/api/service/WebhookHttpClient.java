@@ -3,27 +3,31 @@ package com.linkgrove.api.service;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.retry.annotation.Retry;
 import io.github.resilience4j.timelimiter.annotation.TimeLimiter;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 @Component
 public class WebhookHttpClient {
 
     private final RestTemplate restTemplate;
+    private final Executor webhookExecutor;
 
-    public WebhookHttpClient(RestTemplate restTemplate) {
+    public WebhookHttpClient(RestTemplate restTemplate, @Qualifier("webhookExecutor") Executor webhookExecutor) {
         this.restTemplate = restTemplate;
+        this.webhookExecutor = webhookExecutor;
     }
 
     @TimeLimiter(name = "webhook")
     @CircuitBreaker(name = "webhook")
     @Retry(name = "webhook")
     public CompletableFuture<ResponseEntity<String>> postAsync(String url, HttpEntity<String> entity) {
-        return CompletableFuture.supplyAsync(() -> restTemplate.postForEntity(url, entity, String.class));
+        return CompletableFuture.supplyAsync(() -> restTemplate.postForEntity(url, entity, String.class), webhookExecutor);
     }
 }
 
@@ -0,0 +1,140 @@
+package com.linkgrove.api.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Concurrency limit that follows observed latency, in the style of the gradient limiters in
+ * Netflix's concurrency-limits.
+ *
+ * A slow moving average of request latency serves as the no-queueing baseline and a fast one as
+ * the current latency. Each sample scales the limit by {@code baseline / current} (clamped to
+ * [0.5, 1]) plus a small headroom of {@code sqrt(limit)}, so the limit grows while latency stays flat
+ * and shrinks as soon as requests start queueing. Overload signals such as 5xx responses cut the limit
+ * multiplicatively.
+ *
+ * Admission is split by priority: a request of class {@code p} is admitted only while in-flight requests
+ * are below {@code limit * share(p)}, so lower classes are shed first as the limit tightens.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double SMOOTHING = 0.2;
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final double TOLERANCE = 1.5;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Ewma shortRtt = new Ewma(10);
+    private final Ewma longRtt = new Ewma(600);
+    private final LongSupplier nanoClock;
+    private volatile double limit;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this(initialLimit, minLimit, maxLimit, System::nanoTime);
+    }
+
+    AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, LongSupplier nanoClock) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @param share fraction of the limit this request's priority class may fill, in (0, 1]
+     * @return a token to complete once the request finishes, or {@code null} if the request should be shed
+     */
+    public Token tryAcquire(double share) {
+        int allowed = Math.max(1, (int) (limit * share));
+        while (true) {
+            int current = inFlight.get();
+            if (current >= allowed) return null;
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return new Token(nanoClock.getAsLong(), current + 1);
+            }
+        }
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private synchronized void onSample(long rttNanos, int inFlightAtStart) {
+        double shortAvg = shortRtt.add(rttNanos);
+        double longAvg = longRtt.add(rttNanos);
+        // Let the baseline recover quickly after a sustained latency shift so we don't stay throttled
+        if (longAvg / shortAvg > 2) {
+            longRtt.set(longAvg * 0.95);
+        }
+        // Application-limited: too little traffic to say anything about a higher limit
+        if (inFlightAtStart < limit / 2) return;
+
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longAvg / shortAvg));
+        double target = limit * gradient + Math.sqrt(limit);
+        setLimit(limit * (1 - SMOOTHING) + target * SMOOTHING);
+    }
+
+    private synchronized void onDropped() {
+        setLimit(limit * BACKOFF_RATIO);
+    }
+
+    private void setLimit(double next) {
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+    }
+
+    public final class Token {
+        private final long startNanos;
+        private final int inFlightAtStart;
+        private boolean done;
+
+        private Token(long startNanos, int inFlightAtStart) {
+            this.startNanos = startNanos;
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        /** Request completed normally; feeds its latency into the limit. */
+        public void onSuccess() {
+            if (release()) onSample(nanoClock.getAsLong() - startNanos, inFlightAtStart);
+        }
+
+        /** Request failed in a way that indicates overload (5xx, timeout). */
+        public void onDropped() {
+            if (release()) AdaptiveConcurrencyLimiter.this.onDropped();
+        }
+
+        /** Request finished but says nothing about capacity (client error, disconnect). */
+        public void onIgnore() {
+            release();
+        }
+
+        private boolean release() {
+            if (done) return false;
+            done = true;
+            inFlight.decrementAndGet();
+            return true;
+        }
+    }
+
+    private static final class Ewma {
+        private final double alpha;
+        private double value = Double.NaN;
+
+        Ewma(int window) {
+            this.alpha = 2.0 / (window + 1);
+        }
+
+        double add(double sample) {
+            value = Double.isNaN(value) ? sample : value + alpha * (sample - value);
+            return value;
+        }
+
+        void set(double v) {
+            value = v;
+        }
+    }
+}
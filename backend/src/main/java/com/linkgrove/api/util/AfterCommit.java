@@ -0,0 +1,30 @@
+package com.linkgrove.api.util;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Side effects (Redis writes, cache evictions, in-memory counters) that must only be seen once the
+ * surrounding transaction has committed. Outside a transaction they run straight away.
+ */
+public final class AfterCommit {
+
+    private AfterCommit() {}
+
+    /**
+     * Run {@code action} after the current transaction commits, or now if there is none. It never runs if
+     * the transaction rolls back.
+     */
+    public static void run(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
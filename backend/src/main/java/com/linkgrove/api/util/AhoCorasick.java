@@ -0,0 +1,125 @@
+package com.linkgrove.api.util;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Finds every occurrence of a fixed set of ASCII keywords in one pass over the text, ignoring ASCII case.
+ *
+ * The trie is compiled into a full transition table (one row of 128 entries per state), so scanning
+ * costs one array read per character no matter how many keywords there are, and the text is never
+ * copied or lowercased. Characters outside ASCII can't be part of a keyword and reset the scan.
+ * Instances are immutable and safe to share between threads.
+ */
+public final class AhoCorasick {
+
+    private static final int ALPHABET = 128;
+
+    private final int[] delta;
+    private final int[][] outputs;
+    private final int keywordCount;
+
+    /**
+     * @param keywords non-empty ASCII strings; the index of each is the bit set by {@link #match}
+     */
+    public AhoCorasick(List<String> keywords) {
+        int capacity = 1;
+        for (String keyword : keywords) {
+            if (keyword == null || keyword.isEmpty()) {
+                throw new IllegalArgumentException("Keywords must not be empty");
+            }
+            capacity += keyword.length();
+        }
+        int[] trie = new int[capacity * ALPHABET];
+        Arrays.fill(trie, -1);
+        int[][] out = new int[capacity][];
+        int states = 1;
+        for (int k = 0; k < keywords.size(); k++) {
+            String keyword = keywords.get(k);
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                int c = fold(keyword.charAt(i));
+                if (c < 0) throw new IllegalArgumentException("Keyword is not ASCII: " + keyword);
+                int next = trie[state * ALPHABET + c];
+                if (next < 0) {
+                    next = states++;
+                    trie[state * ALPHABET + c] = next;
+                }
+                state = next;
+            }
+            out[state] = append(out[state], k);
+        }
+
+        // Breadth-first, so a state's failure target is complete before the state itself
+        int[] fail = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < ALPHABET; c++) {
+            int next = trie[c];
+            if (next < 0) {
+                trie[c] = 0;
+            } else {
+                fail[next] = 0;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            int[] inherited = out[fail[state]];
+            if (inherited != null) {
+                for (int k : inherited) out[state] = append(out[state], k);
+            }
+            for (int c = 0; c < ALPHABET; c++) {
+                int next = trie[state * ALPHABET + c];
+                int viaFail = trie[fail[state] * ALPHABET + c];
+                if (next < 0) {
+                    trie[state * ALPHABET + c] = viaFail;
+                } else {
+                    fail[next] = viaFail;
+                    queue.add(next);
+                }
+            }
+        }
+        this.delta = Arrays.copyOf(trie, states * ALPHABET);
+        this.outputs = Arrays.copyOf(out, states);
+        this.keywordCount = keywords.size();
+    }
+
+    /**
+     * @return the indexes of the keywords that occur in {@code text}; empty for {@code null}
+     */
+    public BitSet match(CharSequence text) {
+        BitSet found = new BitSet(keywordCount);
+        if (text == null) return found;
+        int state = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            int c = fold(text.charAt(i));
+            state = c < 0 ? 0 : delta[state * ALPHABET + c];
+            int[] hits = outputs[state];
+            if (hits != null) {
+                for (int k : hits) found.set(k);
+            }
+        }
+        return found;
+    }
+
+    public int keywordCount() {
+        return keywordCount;
+    }
+
+    private static int fold(char c) {
+        if (c >= ALPHABET) return -1;
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+
+    private static int[] append(int[] values, int value) {
+        if (values == null) return new int[]{value};
+        for (int v : values) {
+            if (v == value) return values;
+        }
+        int[] grown = Arrays.copyOf(values, values.length + 1);
+        grown[values.length] = value;
+        return grown;
+    }
+}
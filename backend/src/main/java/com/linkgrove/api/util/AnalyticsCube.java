@@ -0,0 +1,267 @@
+package com.linkgrove.api.util;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable, column-oriented daily counters for one user over a fixed run of days.
+ *
+ * Totals are two {@code long[]} indexed by day offset. Each breakdown dimension keeps a sorted value
+ * dictionary and its (day, value) counters in CSR layout: the entries of day {@code d} are
+ * {@code [dayStart[d], dayStart[d + 1])} of the parallel {@code valueIds / clicks / uniques} arrays.
+ * Range queries are plain loops over those arrays; nothing is allocated per day or per entry.
+ */
+public final class AnalyticsCube {
+
+    /**
+     * One breakdown row. The folded tail has a {@code null} value and {@code null} uniques: the values'
+     * daily uniques overlap, so their sum is not a visitor count.
+     */
+    public record Total(String value, long clicks, Long uniqueVisitors) {
+
+        public boolean folded() {
+            return value == null;
+        }
+    }
+
+    private final LocalDate firstDay;
+    private final long[] clicks;
+    private final long[] uniques;
+    private final Map<String, Dimension> dimensions;
+
+    private static final class Dimension {
+        final String[] values;
+        final int[] dayStart;
+        final int[] valueIds;
+        final long[] clicks;
+        final long[] uniques;
+
+        Dimension(String[] values, int[] dayStart, int[] valueIds, long[] clicks, long[] uniques) {
+            this.values = values;
+            this.dayStart = dayStart;
+            this.valueIds = valueIds;
+            this.clicks = clicks;
+            this.uniques = uniques;
+        }
+    }
+
+    private AnalyticsCube(LocalDate firstDay, long[] clicks, long[] uniques, Map<String, Dimension> dimensions) {
+        this.firstDay = firstDay;
+        this.clicks = clicks;
+        this.uniques = uniques;
+        this.dimensions = dimensions;
+    }
+
+    public static Builder builder(LocalDate firstDay, int days) {
+        return new Builder(firstDay, days);
+    }
+
+    public LocalDate firstDay() {
+        return firstDay;
+    }
+
+    public LocalDate lastDay() {
+        return firstDay.plusDays(clicks.length - 1L);
+    }
+
+    public boolean covers(LocalDate day) {
+        return !day.isBefore(firstDay) && !day.isAfter(lastDay());
+    }
+
+    public long clicks(LocalDate day) {
+        return clicks[offset(day)];
+    }
+
+    public long uniqueVisitors(LocalDate day) {
+        return uniques[offset(day)];
+    }
+
+    /**
+     * Sum one dimension over {@code [from, to]} (inside the cube; empty when {@code from} is after {@code to}), add {@code extra} per-value counts
+     * (e.g. today's live overlay) and return values by clicks descending then value ascending, with
+     * everything past {@code topN} folded into one trailing {@link Total#folded} row.
+     */
+    public List<Total> top(String dimension, LocalDate from, LocalDate to, Map<String, long[]> extra, int topN) {
+        Dimension dim = dimensions.get(dimension);
+        String[] dict = dim == null ? new String[0] : dim.values;
+        int n = dict.length;
+
+        // Overlay values missing from the dictionary get ids after it, so one pair of arrays holds everything
+        List<String> extraValues = new ArrayList<>();
+        if (extra != null) {
+            for (String v : extra.keySet()) {
+                if (Arrays.binarySearch(dict, v) < 0) extraValues.add(v);
+            }
+            extraValues.sort(null);
+        }
+        int size = n + extraValues.size();
+        long[] c = new long[size];
+        long[] u = new long[size];
+
+        if (dim != null && !from.isAfter(to)) {
+            int lo = dim.dayStart[offset(from)];
+            int hi = dim.dayStart[offset(to) + 1];
+            for (int i = lo; i < hi; i++) {
+                int id = dim.valueIds[i];
+                c[id] += dim.clicks[i];
+                u[id] += dim.uniques[i];
+            }
+        }
+        if (extra != null) {
+            for (Map.Entry<String, long[]> e : extra.entrySet()) {
+                int id = Arrays.binarySearch(dict, e.getKey());
+                if (id < 0) id = n + Collections.binarySearch(extraValues, e.getKey());
+                c[id] += e.getValue()[0];
+                u[id] += e.getValue()[1];
+            }
+        }
+
+        // Alphabetical rank of every id: merge of the two sorted label runs
+        String[] labels = new String[size];
+        int[] byRank = new int[size];
+        System.arraycopy(dict, 0, labels, 0, n);
+        for (int i = 0, j = 0, r = 0; r < size; r++) {
+            boolean takeDict = j >= extraValues.size() || (i < n && dict[i].compareTo(extraValues.get(j)) <= 0);
+            int id = takeDict ? i++ : n + j++;
+            if (id >= n) labels[id] = extraValues.get(id - n);
+            byRank[r] = id;
+        }
+
+        int[] order = rankByClicks(c, byRank);
+        List<Total> out = new ArrayList<>(Math.min(order.length, topN) + 1);
+        long foldedClicks = 0;
+        for (int i = 0; i < order.length; i++) {
+            int id = order[i];
+            if (i < topN) out.add(new Total(labels[id], c[id], u[id]));
+            else foldedClicks += c[id];
+        }
+        if (order.length > topN) out.add(new Total(null, foldedClicks, null));
+        return out;
+    }
+
+    /**
+     * Ids with clicks, ordered by clicks descending and then by alphabetical rank. Sorts packed
+     * {@code (clicks, rank)} longs when both fit in 63 bits, which is always the case in practice.
+     */
+    static int[] rankByClicks(long[] clicks, int[] byRank) {
+        long max = 0;
+        int nonZero = 0;
+        for (long v : clicks) {
+            if (v > 0) nonZero++;
+            max = Math.max(max, v);
+        }
+        int rankBits = 32 - Integer.numberOfLeadingZeros(Math.max(1, byRank.length - 1));
+        int clickBits = 64 - Long.numberOfLeadingZeros(max);
+        int[] order = new int[nonZero];
+        if (clickBits + rankBits <= 63) {
+            long[] keys = new long[nonZero];
+            int k = 0;
+            for (int r = 0; r < byRank.length; r++) {
+                long v = clicks[byRank[r]];
+                if (v > 0) keys[k++] = ((max - v) << rankBits) | r;
+            }
+            Arrays.sort(keys);
+            long mask = (1L << rankBits) - 1;
+            for (int i = 0; i < nonZero; i++) order[i] = byRank[(int) (keys[i] & mask)];
+            return order;
+        }
+        Integer[] ranks = new Integer[nonZero];
+        int k = 0;
+        for (int r = 0; r < byRank.length; r++) {
+            if (clicks[byRank[r]] > 0) ranks[k++] = r;
+        }
+        Arrays.sort(ranks, (a, b) -> {
+            int cmp = Long.compare(clicks[byRank[b]], clicks[byRank[a]]);
+            return cmp != 0 ? cmp : Integer.compare(a, b);
+        });
+        for (int i = 0; i < nonZero; i++) order[i] = byRank[ranks[i]];
+        return order;
+    }
+
+    /**
+     * Rough heap footprint, used to keep the set of loaded cubes under a memory budget.
+     */
+    public long estimatedBytes() {
+        long bytes = 64 + 16L * clicks.length;
+        for (Dimension d : dimensions.values()) {
+            bytes += 4L * d.dayStart.length + 20L * d.valueIds.length;
+            for (String v : d.values) bytes += 48 + v.length();
+        }
+        return bytes;
+    }
+
+    private int offset(LocalDate day) {
+        return (int) ChronoUnit.DAYS.between(firstDay, day);
+    }
+
+    public static final class Builder {
+        private final LocalDate firstDay;
+        private final long[] clicks;
+        private final long[] uniques;
+        private final Map<String, Map<Integer, Map<String, long[]>>> entries = new HashMap<>();
+
+        private Builder(LocalDate firstDay, int days) {
+            this.firstDay = firstDay;
+            this.clicks = new long[days];
+            this.uniques = new long[days];
+        }
+
+        public Builder day(LocalDate day, long clicks, long uniqueVisitors) {
+            int d = (int) ChronoUnit.DAYS.between(firstDay, day);
+            this.clicks[d] += clicks;
+            this.uniques[d] += uniqueVisitors;
+            return this;
+        }
+
+        public Builder value(String dimension, LocalDate day, String value, long clicks, long uniqueVisitors) {
+            int d = (int) ChronoUnit.DAYS.between(firstDay, day);
+            long[] c = entries.computeIfAbsent(dimension, k -> new HashMap<>())
+                    .computeIfAbsent(d, k -> new HashMap<>())
+                    .computeIfAbsent(value, k -> new long[2]);
+            c[0] += clicks;
+            c[1] += uniqueVisitors;
+            return this;
+        }
+
+        public AnalyticsCube build() {
+            Map<String, Dimension> dims = new HashMap<>();
+            entries.forEach((name, byDay) -> {
+                TreeMap<String, Integer> dict = new TreeMap<>();
+                int count = 0;
+                for (Map<String, long[]> values : byDay.values()) {
+                    for (String v : values.keySet()) dict.putIfAbsent(v, 0);
+                    count += values.size();
+                }
+                String[] sorted = dict.keySet().toArray(new String[0]);
+                for (int i = 0; i < sorted.length; i++) dict.put(sorted[i], i);
+
+                int[] dayStart = new int[clicks.length + 1];
+                int[] valueIds = new int[count];
+                long[] c = new long[count];
+                long[] u = new long[count];
+                int k = 0;
+                for (int d = 0; d < clicks.length; d++) {
+                    dayStart[d] = k;
+                    Map<String, long[]> values = byDay.get(d);
+                    if (values == null) continue;
+                    for (Map.Entry<String, long[]> e : values.entrySet()) {
+                        valueIds[k] = dict.get(e.getKey());
+                        c[k] = e.getValue()[0];
+                        u[k] = e.getValue()[1];
+                        k++;
+                    }
+                }
+                dayStart[clicks.length] = k;
+                dims.put(name, new Dimension(sorted, dayStart, valueIds, c, u));
+            });
+            return new AnalyticsCube(firstDay, clicks, uniques, dims);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.linkgrove.api.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+/**
+ * Plain Bloom filter over strings. Not thread-safe; callers guard it.
+ *
+ * Bit positions come from double hashing two 64-bit FNV-1a variants, so the same key always maps to the
+ * same {@link #indexes} on every node, which lets nodes exchange filters as Redis bitmaps.
+ */
+public class BloomFilter {
+
+    private final int numBits;
+    private final int numHashes;
+    private final BitSet bits;
+
+    public BloomFilter(int numBits, int numHashes) {
+        this.numBits = numBits;
+        this.numHashes = numHashes;
+        this.bits = new BitSet(numBits);
+    }
+
+    /**
+     * Size a filter for {@code expectedInsertions} keys at the given false-positive rate.
+     */
+    public static BloomFilter sized(long expectedInsertions, double fpp) {
+        long n = Math.max(1, expectedInsertions);
+        long m = (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        int bitsCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(64, m));
+        int k = Math.max(1, (int) Math.round((double) bitsCount / n * Math.log(2)));
+        return new BloomFilter(bitsCount, k);
+    }
+
+    public int numBits() {
+        return numBits;
+    }
+
+    public int numHashes() {
+        return numHashes;
+    }
+
+    public BitSet bits() {
+        return bits;
+    }
+
+    public void put(String key) {
+        for (int idx : indexes(key)) bits.set(idx);
+    }
+
+    public boolean mightContain(String key) {
+        for (int idx : indexes(key)) {
+            if (!bits.get(idx)) return false;
+        }
+        return true;
+    }
+
+    public int[] indexes(String key) {
+        byte[] data = key.getBytes(StandardCharsets.UTF_8);
+        long h1 = fnv1a(data, 0xcbf29ce484222325L);
+        long h2 = fnv1a(data, 0x84222325cbf29ce4L) | 1L;
+        int[] out = new int[numHashes];
+        for (int i = 0; i < numHashes; i++) {
+            out[i] = (int) Long.remainderUnsigned(h1 + i * h2, numBits);
+        }
+        return out;
+    }
+
+    private static long fnv1a(byte[] data, long seed) {
+        long h = seed;
+        for (byte b : data) {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+        // Final avalanche so short keys still spread across the whole range
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
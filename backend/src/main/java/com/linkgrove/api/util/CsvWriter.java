@@ -0,0 +1,160 @@
+package com.linkgrove.api.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Minimal RFC 4180 CSV writer that encodes straight into one reusable byte buffer.
+ *
+ * Fields are UTF-8 encoded and quoted only when they contain a comma, quote or line break; numbers are
+ * written digit by digit, so a row costs no allocation beyond what the caller already holds. The buffer
+ * is handed to the underlying stream when full, which keeps memory constant however many rows are written.
+ * {@link #close()} finishes the gzip trailer if any but leaves the underlying stream open.
+ */
+public final class CsvWriter implements Closeable {
+
+    private final OutputStream out;
+    private final byte[] buf;
+    private int pos;
+    private boolean rowStarted;
+    private long rows;
+
+    public CsvWriter(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buf = new byte[Math.max(64, bufferSize)];
+    }
+
+    /**
+     * Writer with a 16 KiB buffer, optionally gzip-compressing on the fly.
+     */
+    public static CsvWriter open(OutputStream out, boolean gzip) throws IOException {
+        return new CsvWriter(gzip ? new GZIPOutputStream(out, 8192) : out, 16 * 1024);
+    }
+
+    public CsvWriter header(String... names) throws IOException {
+        for (String n : names) field(n);
+        return endRow();
+    }
+
+    public CsvWriter field(String value) throws IOException {
+        separator();
+        if (value == null || value.isEmpty()) return this;
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (quote) put((byte) '"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c == '"') put((byte) '"');
+                put((byte) c);
+            } else if (c < 0x800) {
+                put((byte) (0xC0 | (c >> 6)));
+                put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                put((byte) (0xF0 | (cp >> 18)));
+                put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                put((byte) (0x80 | (cp & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                // Lone surrogate: '?' like String.getBytes(UTF_8)
+                put((byte) '?');
+            } else {
+                put((byte) (0xE0 | (c >> 12)));
+                put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        if (quote) put((byte) '"');
+        return this;
+    }
+
+    public CsvWriter field(long value) throws IOException {
+        separator();
+        if (value == Long.MIN_VALUE) {
+            ascii(Long.toString(value));
+            return this;
+        }
+        if (value < 0) {
+            put((byte) '-');
+            value = -value;
+        }
+        if (buf.length - pos < 20) drain();
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) digits++;
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            buf[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        pos += digits;
+        return this;
+    }
+
+    public CsvWriter field(boolean value) throws IOException {
+        separator();
+        ascii(value ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * {@code null} as an empty field, anything else via {@code toString()}.
+     */
+    public CsvWriter field(Object value) throws IOException {
+        if (value instanceof Number n && !(value instanceof Double || value instanceof Float || value instanceof java.math.BigDecimal)) {
+            return field(n.longValue());
+        }
+        return field(value == null ? null : value.toString());
+    }
+
+    public CsvWriter endRow() throws IOException {
+        put((byte) '\n');
+        rowStarted = false;
+        rows++;
+        return this;
+    }
+
+    public long rows() {
+        return rows;
+    }
+
+    /**
+     * Push buffered bytes to the client, e.g. every few thousand rows of a long export.
+     */
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        drain();
+        if (out instanceof GZIPOutputStream gzip) gzip.finish();
+        out.flush();
+    }
+
+    private void separator() throws IOException {
+        if (rowStarted) put((byte) ',');
+        rowStarted = true;
+    }
+
+    private void ascii(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) put((byte) s.charAt(i));
+    }
+
+    private void put(byte b) throws IOException {
+        if (pos == buf.length) drain();
+        buf[pos++] = b;
+    }
+
+    private void drain() throws IOException {
+        if (pos > 0) {
+            out.write(buf, 0, pos);
+            pos = 0;
+        }
+    }
+}
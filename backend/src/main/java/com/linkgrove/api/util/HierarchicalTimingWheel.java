@@ -0,0 +1,150 @@
+package com.linkgrove.api.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical hashed timing wheel (Varghese &amp; Lauck). Timers are placed in the lowest level
+ * whose span still covers their deadline and cascade down as time advances, so scheduling,
+ * cancelling and expiring are all O(1) amortised regardless of how far out a deadline is.
+ *
+ * Deadlines are rounded up to the tick, so a timer never fires before its deadline.
+ * The wheel is not thread-safe; callers serialise access.
+ */
+public final class HierarchicalTimingWheel<T> {
+
+    public static final class Timeout<T> {
+        private final long deadlineTick;
+        private final T payload;
+        private boolean cancelled;
+
+        private Timeout(long deadlineTick, T payload) {
+            this.deadlineTick = deadlineTick;
+            this.payload = payload;
+        }
+
+        public T getPayload() {
+            return payload;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private final long tickMs;
+    private final int bits;
+    private final int mask;
+    private final List<ArrayDeque<Timeout<T>>[]> levels = new ArrayList<>();
+    private final ArrayDeque<Timeout<T>> overflow = new ArrayDeque<>();
+    private long currentTick;
+    private int pending;
+
+    /**
+     * @param tickMs    resolution of the wheel in milliseconds
+     * @param wheelBits log2 of the number of slots per level
+     * @param levels    number of levels; the wheel covers tickMs * 2^(wheelBits * levels) before overflow
+     * @param startMs   current wall-clock time in milliseconds
+     */
+    @SuppressWarnings("unchecked")
+    public HierarchicalTimingWheel(long tickMs, int wheelBits, int levels, long startMs) {
+        if (tickMs <= 0 || wheelBits <= 0 || levels <= 0 || wheelBits * levels >= 62) {
+            throw new IllegalArgumentException("Invalid timing wheel geometry");
+        }
+        this.tickMs = tickMs;
+        this.bits = wheelBits;
+        this.mask = (1 << wheelBits) - 1;
+        for (int i = 0; i < levels; i++) {
+            ArrayDeque<Timeout<T>>[] slots = new ArrayDeque[1 << wheelBits];
+            for (int s = 0; s < slots.length; s++) slots[s] = new ArrayDeque<>();
+            this.levels.add(slots);
+        }
+        this.currentTick = Math.floorDiv(startMs, tickMs);
+    }
+
+    /**
+     * Schedule a payload at an absolute deadline. Deadlines at or before the current tick
+     * are handed straight to {@code onExpired} and no timer is retained.
+     */
+    public Timeout<T> schedule(long deadlineMs, T payload, Consumer<T> onExpired) {
+        long deadlineTick = Math.floorDiv(deadlineMs + tickMs - 1, tickMs);
+        Timeout<T> timeout = new Timeout<>(deadlineTick, payload);
+        if (deadlineTick <= currentTick) {
+            onExpired.accept(payload);
+            return timeout;
+        }
+        place(timeout);
+        pending++;
+        return timeout;
+    }
+
+    /**
+     * Cancel a timer. Cancelled timers are dropped lazily when their slot is next visited.
+     */
+    public boolean cancel(Timeout<T> timeout) {
+        if (timeout == null || timeout.cancelled || timeout.deadlineTick <= currentTick) return false;
+        timeout.cancelled = true;
+        pending--;
+        return true;
+    }
+
+    /**
+     * Advance the wheel to {@code nowMs}, firing every live timer whose deadline has passed.
+     */
+    public void advance(long nowMs, Consumer<T> onExpired) {
+        long targetTick = Math.floorDiv(nowMs, tickMs);
+        while (currentTick < targetTick) {
+            currentTick++;
+            if ((currentTick & levelMask(levels.size())) == 0) {
+                cascade(overflow);
+            }
+            for (int level = levels.size() - 1; level >= 1; level--) {
+                if ((currentTick & levelMask(level)) == 0) {
+                    cascade(levels.get(level)[(int) ((currentTick >>> (bits * level)) & mask)]);
+                }
+            }
+            ArrayDeque<Timeout<T>> slot = levels.get(0)[(int) (currentTick & mask)];
+            Timeout<T> timeout;
+            while ((timeout = slot.pollFirst()) != null) {
+                if (timeout.cancelled) continue;
+                pending--;
+                onExpired.accept(timeout.payload);
+            }
+        }
+    }
+
+    public int size() {
+        return pending;
+    }
+
+    public long getTickMs() {
+        return tickMs;
+    }
+
+    private long levelMask(int level) {
+        return (1L << (bits * level)) - 1;
+    }
+
+    private void cascade(ArrayDeque<Timeout<T>> slot) {
+        if (slot.isEmpty()) return;
+        List<Timeout<T>> moved = new ArrayList<>(slot);
+        slot.clear();
+        for (Timeout<T> timeout : moved) {
+            if (!timeout.cancelled) place(timeout);
+        }
+    }
+
+    private void place(Timeout<T> timeout) {
+        long deadline = timeout.deadlineTick;
+        for (int level = 0; level < levels.size(); level++) {
+            int shift = bits * (level + 1);
+            if ((deadline >>> shift) == (currentTick >>> shift)) {
+                levels.get(level)[(int) ((deadline >>> (bits * level)) & mask)].addLast(timeout);
+                return;
+            }
+        }
+        overflow.addLast(timeout);
+    }
+}
@@ -0,0 +1,158 @@
+package com.linkgrove.api.util;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Strict parsing of IP address literals from request headers, without ever going near DNS.
+ *
+ * {@link InetAddress#getByName} resolves anything that isn't a literal, so a forged X-Forwarded-For
+ * value turns into a lookup on the request path. This accepts only dotted-quad IPv4 (no leading zeros,
+ * which some parsers read as octal) and RFC 4291 IPv6 text, optionally bracketed, with an optional
+ * port after an IPv4 address or a bracketed IPv6 one. IPv4-mapped IPv6 addresses come back as IPv4.
+ */
+public final class IpLiterals {
+
+    private IpLiterals() {}
+
+    /**
+     * @return the address, or {@code null} if {@code text} is not a literal this accepts
+     */
+    public static InetAddress parse(String text) {
+        byte[] bytes = toBytes(text);
+        if (bytes == null) return null;
+        try {
+            return InetAddress.getByAddress(bytes);
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return 4 bytes for IPv4 (including IPv4-mapped IPv6), 16 for IPv6, or {@code null}
+     */
+    public static byte[] toBytes(String text) {
+        if (text == null) return null;
+        String s = text.strip();
+        if (s.isEmpty() || s.length() > 64) return null;
+        if (s.charAt(0) == '[') {
+            int close = s.indexOf(']');
+            if (close < 0) return null;
+            String rest = s.substring(close + 1);
+            if (!rest.isEmpty() && !isPort(rest)) return null;
+            byte[] v6 = parseV6(s.substring(1, close));
+            return v6 == null ? null : unmap(v6);
+        }
+        if (s.indexOf(':') == s.lastIndexOf(':') && s.indexOf(':') > 0 && s.indexOf('.') > 0) {
+            // a.b.c.d:port
+            int colon = s.indexOf(':');
+            if (!isPort(s.substring(colon))) return null;
+            return parseV4(s, 0, colon);
+        }
+        if (s.indexOf(':') >= 0) {
+            byte[] v6 = parseV6(s);
+            return v6 == null ? null : unmap(v6);
+        }
+        return parseV4(s, 0, s.length());
+    }
+
+    private static boolean isPort(String s) {
+        if (s.length() < 2 || s.length() > 6 || s.charAt(0) != ':') return false;
+        int port = 0;
+        for (int i = 1; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return false;
+            port = port * 10 + (c - '0');
+        }
+        return port <= 65535;
+    }
+
+    private static byte[] parseV4(String s, int from, int to) {
+        byte[] out = new byte[4];
+        int octet = 0;
+        int pos = from;
+        while (octet < 4) {
+            int start = pos;
+            int value = 0;
+            while (pos < to && s.charAt(pos) >= '0' && s.charAt(pos) <= '9') {
+                value = value * 10 + (s.charAt(pos) - '0');
+                pos++;
+                if (pos - start > 3) return null;
+            }
+            int digits = pos - start;
+            if (digits == 0 || value > 255 || (digits > 1 && s.charAt(start) == '0')) return null;
+            out[octet++] = (byte) value;
+            if (octet < 4) {
+                if (pos >= to || s.charAt(pos) != '.') return null;
+                pos++;
+            }
+        }
+        return pos == to ? out : null;
+    }
+
+    private static byte[] parseV6(String s) {
+        if (s.isEmpty() || s.indexOf('%') >= 0) return null;
+        byte[] out = new byte[16];
+        int gap = -1;
+        int word = 0;
+        int pos = 0;
+        int len = s.length();
+        if (s.startsWith("::")) {
+            gap = 0;
+            pos = 2;
+            if (pos == len) return out;
+        } else if (s.charAt(0) == ':') {
+            return null;
+        }
+        while (pos < len) {
+            if (word == 8) return null;
+            int start = pos;
+            int value = 0;
+            while (pos < len && Character.digit(s.charAt(pos), 16) >= 0) {
+                value = (value << 4) | Character.digit(s.charAt(pos), 16);
+                pos++;
+                if (pos - start > 4) return null;
+            }
+            if (pos < len && s.charAt(pos) == '.') {
+                // Trailing dotted quad fills the last two words
+                if (word > 6) return null;
+                byte[] v4 = parseV4(s, start, len);
+                if (v4 == null) return null;
+                System.arraycopy(v4, 0, out, word * 2, 4);
+                word += 2;
+                pos = len;
+                break;
+            }
+            if (pos == start) return null;
+            out[word * 2] = (byte) (value >>> 8);
+            out[word * 2 + 1] = (byte) value;
+            word++;
+            if (pos == len) break;
+            if (s.charAt(pos) != ':') return null;
+            pos++;
+            if (pos < len && s.charAt(pos) == ':') {
+                if (gap >= 0) return null;
+                gap = word;
+                pos++;
+                if (pos == len) break;
+            } else if (pos == len) {
+                return null;
+            }
+        }
+        if (gap < 0) return word == 8 ? out : null;
+        if (word == 8) return null;
+        // Shift the words after the gap to the end
+        int tail = (word - gap) * 2;
+        System.arraycopy(out, gap * 2, out, 16 - tail, tail);
+        java.util.Arrays.fill(out, gap * 2, 16 - tail, (byte) 0);
+        return out;
+    }
+
+    private static byte[] unmap(byte[] v6) {
+        for (int i = 0; i < 10; i++) {
+            if (v6[i] != 0) return v6;
+        }
+        if (v6[10] != (byte) 0xff || v6[11] != (byte) 0xff) return v6;
+        return new byte[]{v6[12], v6[13], v6[14], v6[15]};
+    }
+}
@@ -0,0 +1,163 @@
+package com.linkgrove.api.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.IDN;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The Public Suffix List (publicsuffix.org) compiled into a label trie, for reducing a host to its
+ * registrable domain: {@code m.facebook.com} and {@code l.facebook.com} both become {@code facebook.com},
+ * {@code news.bbc.co.uk} becomes {@code bbc.co.uk}.
+ *
+ * Rules are stored right to left, one trie level per label, with each level's children in a sorted array.
+ * A lookup walks the host's labels from the end and binary-searches each one in place, so it allocates
+ * nothing but the returned substring. Wildcard ({@code *.ck}) and exception ({@code !www.ck}) rules follow
+ * the list's algorithm, and a TLD the list doesn't know counts as a one-label suffix. Unicode rules are
+ * stored in their punycode form, which is what hosts arrive in.
+ */
+public final class PublicSuffixList {
+
+    private static final class Node {
+        private static final String[] NO_LABELS = new String[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        String[] labels = NO_LABELS;
+        Node[] children = NO_CHILDREN;
+        boolean rule;
+        boolean wildcard;
+        boolean exception;
+
+        Node child(String host, int from, int to) {
+            int lo = 0;
+            int hi = labels.length - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int cmp = compare(labels[mid], host, from, to);
+                if (cmp < 0) lo = mid + 1;
+                else if (cmp > 0) hi = mid - 1;
+                else return children[mid];
+            }
+            return null;
+        }
+    }
+
+    private static final class Builder {
+        final Map<String, Builder> children = new TreeMap<>();
+        boolean rule;
+        boolean wildcard;
+        boolean exception;
+
+        Node build() {
+            Node node = new Node();
+            node.rule = rule;
+            node.wildcard = wildcard;
+            node.exception = exception;
+            if (!children.isEmpty()) {
+                node.labels = children.keySet().toArray(String[]::new);
+                node.children = children.values().stream().map(Builder::build).toArray(Node[]::new);
+            }
+            return node;
+        }
+    }
+
+    private final Node root;
+    private final int ruleCount;
+
+    private PublicSuffixList(Node root, int ruleCount) {
+        this.root = root;
+        this.ruleCount = ruleCount;
+    }
+
+    /**
+     * Parse the list in its published format: one rule per line, {@code //} comments, blank lines ignored.
+     */
+    public static PublicSuffixList load(InputStream in) throws IOException {
+        Builder root = new Builder();
+        int rules = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("//")) continue;
+                // Only the first whitespace-separated token of a line is the rule
+                int space = line.indexOf(' ');
+                if (space > 0) line = line.substring(0, space);
+                boolean exception = line.startsWith("!");
+                if (exception) line = line.substring(1);
+                String ascii;
+                try {
+                    ascii = IDN.toASCII(line, IDN.ALLOW_UNASSIGNED).toLowerCase(java.util.Locale.ROOT);
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+                String[] labels = ascii.split("\\.");
+                Builder node = root;
+                for (int i = labels.length - 1; i >= 0; i--) {
+                    if (i == 0 && labels[i].equals("*")) {
+                        node.wildcard = true;
+                        node = null;
+                        break;
+                    }
+                    node = node.children.computeIfAbsent(labels[i], k -> new Builder());
+                }
+                if (node != null) {
+                    if (exception) node.exception = true;
+                    else node.rule = true;
+                }
+                rules++;
+            }
+        }
+        return new PublicSuffixList(root.build(), rules);
+    }
+
+    public int ruleCount() {
+        return ruleCount;
+    }
+
+    /**
+     * @param host a lowercase ASCII host name without a trailing dot
+     * @return its registrable domain (public suffix plus one label), {@code host} itself if it already is
+     *         one, or {@code null} if {@code host} is a public suffix
+     */
+    public String registrableDomain(String host) {
+        int end = host.length();
+        if (end == 0) return null;
+        // Until a rule says otherwise, the last label is the suffix
+        int suffixStart = host.lastIndexOf('.') + 1;
+        Node node = root;
+        int labelEnd = end;
+        while (true) {
+            int dot = host.lastIndexOf('.', labelEnd - 1);
+            int labelStart = dot + 1;
+            Node child = node.child(host, labelStart, labelEnd);
+            if (child != null && child.exception) {
+                // An exception rule makes this label registrable: the suffix is everything to its right
+                suffixStart = labelEnd + 1;
+                break;
+            }
+            if (child != null ? child.rule || node.wildcard : node.wildcard) {
+                suffixStart = labelStart;
+            }
+            if (child == null || dot < 0) break;
+            node = child;
+            labelEnd = dot;
+        }
+        if (suffixStart == 0) return null;
+        int registrableStart = host.lastIndexOf('.', suffixStart - 2) + 1;
+        return registrableStart == 0 ? host : host.substring(registrableStart);
+    }
+
+    private static int compare(String label, String host, int from, int to) {
+        int n = Math.min(label.length(), to - from);
+        for (int i = 0; i < n; i++) {
+            int d = label.charAt(i) - host.charAt(from + i);
+            if (d != 0) return d;
+        }
+        return label.length() - (to - from);
+    }
+}
@@ -0,0 +1,116 @@
+package com.linkgrove.api.util;
+
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import java.security.MessageDigest;
+
+/**
+ * Query parameter parsing and validation shared by the QR endpoints
+ * ({@code RedirectController} and the reactive redirect edge).
+ */
+public final class QrParams {
+
+    private QrParams() {}
+
+    public static int clamp(int v, int min, int max) {
+        return Math.max(min, Math.min(max, v));
+    }
+
+    public static String maybeAppendUtm(String url, String utm) {
+        if (utm == null || utm.isBlank()) return url;
+        try {
+            java.net.URI uri = java.net.URI.create(url);
+            String q = uri.getQuery();
+            String extra = "utm_medium=qr&utm_source=linkgrove&src=qr";
+            String newQuery = (q == null || q.isBlank()) ? extra : (q + "&" + extra);
+            return new java.net.URI(uri.getScheme(), uri.getAuthority(), uri.getPath(), newQuery, uri.getFragment()).toString();
+        } catch (Exception e) {
+            return url;
+        }
+    }
+
+    public static Integer parseHexColor(String hex) {
+        if (hex == null || hex.isBlank()) return null;
+        String s = hex.trim();
+        if (s.startsWith("#")) s = s.substring(1);
+        try {
+            int rgb = (int) Long.parseLong(s, 16);
+            return 0xFF000000 | rgb; // add opaque alpha
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public static ErrorCorrectionLevel parseEcc(String ecc) {
+        if (ecc == null) return ErrorCorrectionLevel.M;
+        String v = ecc.trim().toUpperCase();
+        return switch (v) {
+            case "L" -> ErrorCorrectionLevel.L;
+            case "M" -> ErrorCorrectionLevel.M;
+            case "Q" -> ErrorCorrectionLevel.Q;
+            case "H" -> ErrorCorrectionLevel.H;
+            default -> ErrorCorrectionLevel.M;
+        };
+    }
+
+    public static String computeEtag(byte[] data) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] digest = md.digest(data);
+            StringBuilder sb = new StringBuilder(2 + digest.length * 2);
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            // Strong ETag with quotes
+            return '"' + sb.toString() + '"';
+        } catch (Exception e) {
+            // Fallback weak ETag
+            return '"' + Integer.toHexString(java.util.Arrays.hashCode(data)) + '"';
+        }
+    }
+
+    public static void validateContrastOrThrow(Integer fgArgb, Integer bgArgb) {
+        if (fgArgb == null && bgArgb == null) return; // nothing to validate
+        int fgEff = (fgArgb != null ? fgArgb : 0xFF000000);
+        int bgEff = (bgArgb != null ? bgArgb : 0xFFFFFFFF);
+        double c = contrastRatio(fgEff, bgEff);
+        if (c < 2.5) {
+            String msg = String.format("Insufficient contrast between fg and bg (ratio %.2f). Provide higher contrast (>= 2.5) using dark fg and light bg.", c);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    public static double contrastRatio(int argb1, int argb2) {
+        double l1 = relativeLuminance(argb1);
+        double l2 = relativeLuminance(argb2);
+        double lighter = Math.max(l1, l2);
+        double darker = Math.min(l1, l2);
+        return (lighter + 0.05) / (darker + 0.05);
+    }
+
+    public static double relativeLuminance(int argb) {
+        int r = (argb >> 16) & 0xFF;
+        int g = (argb >> 8) & 0xFF;
+        int b = argb & 0xFF;
+        double rs = srgbToLinear(r / 255.0);
+        double gs = srgbToLinear(g / 255.0);
+        double bs = srgbToLinear(b / 255.0);
+        return 0.2126 * rs + 0.7152 * gs + 0.0722 * bs;
+    }
+
+    public static double srgbToLinear(double c) {
+        return (c <= 0.03928) ? (c / 12.92) : Math.pow((c + 0.055) / 1.055, 2.4);
+    }
+
+    public static boolean isAllowedLogoUrl(String url) {
+        try {
+            java.net.URI uri = java.net.URI.create(url);
+            java.net.URL u = uri.toURL();
+            if (!"https".equalsIgnoreCase(u.getProtocol())) return false;
+            String p = u.getPath().toLowerCase();
+            return p.endsWith(".png") || p.endsWith(".jpg") || p.endsWith(".jpeg");
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
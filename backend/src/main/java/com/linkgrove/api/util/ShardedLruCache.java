@@ -0,0 +1,66 @@
+package com.linkgrove.api.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU split into independently locked shards, so concurrent clicks rarely wait on each other.
+ * Null values are not supported; {@link #get} returns {@code null} for a miss.
+ */
+public final class ShardedLruCache<K, V> {
+
+    private static final int SHARDS = 16;
+
+    private final Map<K, V>[] shards;
+
+    @SuppressWarnings("unchecked")
+    public ShardedLruCache(int capacity) {
+        int perShard = Math.max(1, capacity / SHARDS);
+        shards = new Map[SHARDS];
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                    return size() > perShard;
+                }
+            };
+        }
+    }
+
+    public V get(K key) {
+        Map<K, V> shard = shard(key);
+        synchronized (shard) {
+            return shard.get(key);
+        }
+    }
+
+    public void put(K key, V value) {
+        Map<K, V> shard = shard(key);
+        synchronized (shard) {
+            shard.put(key, value);
+        }
+    }
+
+    public void clear() {
+        for (Map<K, V> shard : shards) {
+            synchronized (shard) {
+                shard.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int n = 0;
+        for (Map<K, V> shard : shards) {
+            synchronized (shard) {
+                n += shard.size();
+            }
+        }
+        return n;
+    }
+
+    private Map<K, V> shard(K key) {
+        int h = key.hashCode();
+        return shards[(h ^ (h >>> 16)) & (SHARDS - 1)];
+    }
+}
@@ -0,0 +1,112 @@
+package com.linkgrove.api.util;
+
+/**
+ * Host extraction from absolute URLs such as Referer headers, without {@link java.net.URI}.
+ *
+ * {@code URI.create} builds the whole parsed URI and throws on the malformed values clients send, which
+ * makes a bad header the slow path. This scans the authority in place and never throws: anything it
+ * can't read as {@code scheme://[userinfo@]host[:port]} (or {@code //host}) gives {@code null}. Host names
+ * must be ASCII, as browsers send them (IDNs in punycode); IPv6 literals keep their brackets.
+ */
+public final class UrlHosts {
+
+    private UrlHosts() {}
+
+    /**
+     * @return the lowercase host of {@code url}, or {@code null}
+     */
+    public static String host(String url) {
+        if (url == null) return null;
+        int len = url.length();
+        int start = 0;
+        while (start < len && url.charAt(start) <= ' ') start++;
+        int authority = authorityStart(url, start, len);
+        if (authority < 0) return null;
+        int end = authority;
+        while (end < len) {
+            char c = url.charAt(end);
+            if (c == '/' || c == '?' || c == '#') break;
+            if (c <= ' ') {
+                // Only trailing whitespace may follow a bare authority
+                if (!url.substring(end).isBlank()) return null;
+                break;
+            }
+            end++;
+        }
+        int at = url.lastIndexOf('@', end - 1);
+        int hostStart = at >= authority ? at + 1 : authority;
+        if (hostStart >= end) return null;
+        int hostEnd;
+        if (url.charAt(hostStart) == '[') {
+            int close = url.indexOf(']', hostStart);
+            if (close < 0 || close >= end) return null;
+            hostEnd = close + 1;
+        } else {
+            hostEnd = url.indexOf(':', hostStart);
+            if (hostEnd < 0 || hostEnd > end) hostEnd = end;
+        }
+        if (hostEnd < end && !isPort(url, hostEnd, end)) return null;
+        if (hostEnd > hostStart && url.charAt(hostEnd - 1) == '.') hostEnd--;
+        if (hostEnd == hostStart || hostEnd - hostStart > 253) return null;
+        return normalize(url, hostStart, hostEnd);
+    }
+
+    /**
+     * @return whether {@code url} starts with {@code http://} or {@code https://}, ignoring case
+     */
+    public static boolean isHttp(String url) {
+        if (url == null) return false;
+        int start = 0;
+        while (start < url.length() && url.charAt(start) <= ' ') start++;
+        return url.regionMatches(true, start, "http://", 0, 7) || url.regionMatches(true, start, "https://", 0, 8);
+    }
+
+    private static int authorityStart(String url, int start, int len) {
+        if (url.startsWith("//", start)) return start + 2;
+        if (start >= len || !isAlpha(url.charAt(start))) return -1;
+        int i = start + 1;
+        while (i < len) {
+            char c = url.charAt(i);
+            if (c == ':') break;
+            if (!isAlpha(c) && !(c >= '0' && c <= '9') && c != '+' && c != '-' && c != '.') return -1;
+            i++;
+        }
+        return url.startsWith("://", i) ? i + 3 : -1;
+    }
+
+    private static boolean isPort(String url, int colon, int end) {
+        if (url.charAt(colon) != ':' || end - colon > 6) return false;
+        for (int i = colon + 1; i < end; i++) {
+            char c = url.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
+    private static String normalize(String url, int from, int to) {
+        boolean bracketed = url.charAt(from) == '[';
+        boolean upper = false;
+        char previous = '.';
+        for (int i = from; i < to; i++) {
+            char c = url.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                upper = true;
+                c += 'a' - 'A';
+            }
+            if (bracketed) {
+                if (!(c >= 'a' && c <= 'f') && !(c >= '0' && c <= '9') && c != ':' && c != '.' && c != '[' && c != ']') return null;
+            } else if (c == '.') {
+                if (previous == '.') return null;
+            } else if (!(c >= 'a' && c <= 'z') && !(c >= '0' && c <= '9') && c != '-' && c != '_') {
+                return null;
+            }
+            previous = c;
+        }
+        String host = url.substring(from, to);
+        return upper ? host.toLowerCase(java.util.Locale.ROOT) : host;
+    }
+
+    private static boolean isAlpha(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
@@ -3,10 +3,12 @@ package com.linkgrove.api.worker;
 import com.linkgrove.api.config.RabbitMQConfig;
 import com.linkgrove.api.event.LinkClickEvent;
 import com.linkgrove.api.model.Link;
+import com.linkgrove.api.model.UserDimensionDailyRollup;
 import com.linkgrove.api.repository.LinkRepository;
 import com.linkgrove.api.repository.LinkClickDailyAggregateRepository;
 import com.linkgrove.api.repository.LinkReferrerDailyAggregateRepository;
 import com.linkgrove.api.repository.LinkDeviceDailyAggregateRepository;
+import com.linkgrove.api.service.VisitorSketchService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
@@ -26,6 +28,45 @@ import org.springframework.transaction.annotation.Transactional;
 @Slf4j
 public class AnalyticsWorker {
 
+    // Listener container id for the shared click queue, resized by ClickConsumerAutoscaler
+    public static final String CLICK_LISTENER_ID = "linkClickListener";
+    // Transaction resource key for the unique-visitor marks to undo on rollback
+    private static final Object ADDED_VISITORS = new Object();
+
+    /**
+     * One daily aggregate or rollup row, named by the sketch table it shares. Only the key columns of its
+     * table are set: {@code variantId} for variants, {@code dimension} for the user dimension rollup and
+     * {@code value} for the per-value tables.
+     */
+    private record AggregateRow(VisitorSketchService.Table table, String username, Long linkId, Long variantId,
+                                String dimension, java.time.LocalDate day, String value) {
+
+        static AggregateRow link(VisitorSketchService.Table table, LinkClickEvent event, java.time.LocalDate day, String value) {
+            return new AggregateRow(table, event.getUsername(), event.getLinkId(), null, null, day, value);
+        }
+
+        static AggregateRow user(LinkClickEvent event, String dimension, java.time.LocalDate day, String value) {
+            VisitorSketchService.Table table = dimension == null ? VisitorSketchService.Table.USER : VisitorSketchService.Table.USER_DIMENSION;
+            return new AggregateRow(table, event.getUsername(), null, null, dimension, day, value);
+        }
+
+        Object[] sketchKey() {
+            return switch (table) {
+                case LINK -> new Object[]{username, linkId, day};
+                case LINK_VARIANT -> new Object[]{username, linkId, variantId, day};
+                case USER -> new Object[]{username, day};
+                case USER_DIMENSION -> new Object[]{username, dimension, day, value};
+                default -> new Object[]{username, linkId, day, value};
+            };
+        }
+    }
+
+    // What a batch adds to one row
+    private static final class RowCounts {
+        long clicks;
+        final java.util.List<Long> newVisitors = new java.util.ArrayList<>();
+    }
+
     private final LinkRepository linkRepository;
     private final LinkClickDailyAggregateRepository aggregateRepository;
     private final LinkReferrerDailyAggregateRepository referrerAggregateRepository;
@@ -34,8 +75,19 @@ public class AnalyticsWorker {
     private final com.linkgrove.api.service.WebhookService webhookService;
     private final com.linkgrove.api.repository.LinkVariantDailyAggregateRepository variantAggregateRepository;
     private final com.linkgrove.api.repository.LinkGeoDailyAggregateRepository geoAggregateRepository;
-    private final com.linkgrove.api.service.GeoIpService geoIpService;
+    private final com.linkgrove.api.service.ClickNormalizer clickNormalizer;
     private final com.linkgrove.api.repository.LinkSourceDailyAggregateRepository sourceAggregateRepository;
+    private final com.linkgrove.api.repository.LinkBrowserDailyAggregateRepository browserAggregateRepository;
+    private final com.linkgrove.api.repository.LinkOsDailyAggregateRepository osAggregateRepository;
+    private final com.linkgrove.api.repository.LinkBotDailyAggregateRepository botAggregateRepository;
+    private final com.linkgrove.api.repository.UserClickDailyRollupRepository clickRollupRepository;
+    private final com.linkgrove.api.repository.UserDimensionDailyRollupRepository dimensionRollupRepository;
+    private final com.linkgrove.api.service.SealedDayAnalyticsCache sealedDayCache;
+    private final com.linkgrove.api.service.VisitorSketchService visitorSketches;
+    private final com.linkgrove.api.service.RealtimeAnalyticsService realtimeAnalytics;
+    private final com.linkgrove.api.service.LiveClickService liveClicks;
+    private final com.linkgrove.api.eventstore.ClickEventStore clickStore;
+    private final org.springframework.cache.CacheManager cacheManager;
 
     /**
      * Process link click events from RabbitMQ queue.
@@ -46,17 +98,20 @@ public class AnalyticsWorker {
      * 
      * @param event The link click event to process
      */
-    @RabbitListener(queues = RabbitMQConfig.LINK_CLICK_QUEUE)
+    @RabbitListener(id = CLICK_LISTENER_ID, queues = RabbitMQConfig.LINK_CLICK_QUEUE)
     @Transactional
     @Caching(evict = {
         @CacheEvict(value = "analytics", key = "#event.username + '_overview'"),
         @CacheEvict(value = "analytics", key = "#event.username + '_detailed'"),
         @CacheEvict(value = "analytics", key = "#event.username + '_top_links'"),
         @CacheEvict(value = "linkPreviews", key = "#event.linkId"),
-        // Invalidate analytics breakdown caches so new clicks show up immediately
+        // Invalidate analytics breakdown caches so new clicks show up immediately (CacheConfig.ANALYTICS_BREAKDOWN_CACHES)
         @CacheEvict(value = "analytics-referrers-v1", allEntries = true),
         @CacheEvict(value = "analytics-devices-v1", allEntries = true),
+        @CacheEvict(value = "analytics-user-agents-v1", allEntries = true),
         @CacheEvict(value = "analytics-countries-v1", allEntries = true),
+        @CacheEvict(value = "analytics-sources-v1", allEntries = true),
+        @CacheEvict(value = "analytics-sources-by-link-v1", allEntries = true),
         @CacheEvict(value = "analytics-variants-v1", allEntries = true),
         @CacheEvict(value = "analytics-variants-by-link-v1", allEntries = true)
     })
@@ -96,95 +151,12 @@ public class AnalyticsWorker {
             
             linkRepository.save(link);
             
-            // Aggregate daily clicks (UTC day)
-            java.time.LocalDate day = event.getClickedAt() != null ?
-                    event.getClickedAt().atZone(java.time.ZoneOffset.UTC).toLocalDate() :
-                    java.time.LocalDate.now(java.time.ZoneOffset.UTC);
-            aggregateRepository.upsertIncrement(event.getUsername(), event.getLinkId(), day);
-            if (event.getVariantId() != null) {
-                variantAggregateRepository.upsertIncrement(event.getUsername(), event.getLinkId(), event.getVariantId(), day);
-            }
+            java.util.Map<AggregateRow, RowCounts> rows = new java.util.LinkedHashMap<>();
+            aggregate(event, rows);
+            writeRows(rows);
 
-            // Variant-level aggregation is handled above when a variantId is present.
-
-            // Unique visitor dedup via Redis (per user+link+day+visitor key)
-            String visitorId = deriveVisitorId(event);
-            if (visitorId != null && !visitorId.isBlank()) {
-                String redisKey = String.format("uv:%s:%d:%s", event.getUsername(), event.getLinkId(), day);
-                Long added = redisTemplate.opsForSet().add(redisKey, visitorId);
-                // expire in 40 days to cover late events
-                redisTemplate.expire(redisKey, java.time.Duration.ofDays(40));
-                if (added != null && added > 0) {
-                    aggregateRepository.incrementUnique(event.getUsername(), event.getLinkId(), day);
-                    if (event.getVariantId() != null) {
-                        variantAggregateRepository.incrementUnique(event.getUsername(), event.getLinkId(), event.getVariantId(), day);
-                    }
-                }
-            }
-
-            // Referrer aggregation (domain-level)
-            String domain = extractDomain(event.getReferrer());
-            if (domain != null) {
-                referrerAggregateRepository.upsertIncrement(event.getUsername(), event.getLinkId(), day, domain);
-                if (visitorId != null) {
-                    String rKey = String.format("uvr:%s:%d:%s:%s", event.getUsername(), event.getLinkId(), day, domain);
-                    Long addedR = redisTemplate.opsForSet().add(rKey, visitorId);
-                    redisTemplate.expire(rKey, java.time.Duration.ofDays(40));
-                    if (addedR != null && addedR > 0) {
-                        referrerAggregateRepository.incrementUnique(event.getUsername(), event.getLinkId(), day, domain);
-                    }
-                }
-            }
-
-            // Optional: treat QR scans specially (when source=qr or utm_medium=qr)
-            // Source aggregation (e.g., qr, email, social)
-            String source = normalizeSource(event);
-            if (source != null) {
-                sourceAggregateRepository.upsertIncrement(event.getUsername(), event.getLinkId(), day, source);
-                if (visitorId != null) {
-                    String sKey = String.format("uvs:%s:%d:%s:%s", event.getUsername(), event.getLinkId(), day, source);
-                    Long addedS = redisTemplate.opsForSet().add(sKey, visitorId);
-                    redisTemplate.expire(sKey, java.time.Duration.ofDays(40));
-                    if (addedS != null && addedS > 0) {
-                        sourceAggregateRepository.incrementUnique(event.getUsername(), event.getLinkId(), day, source);
-                    }
-                }
-            }
-
-            // Device aggregation (simple UA classifier)
-            String device = classifyDevice(event.getUserAgent());
-            deviceAggregateRepository.upsertIncrement(event.getUsername(), event.getLinkId(), day, device);
-            if (visitorId != null) {
-                String dKey = String.format("uvd:%s:%d:%s:%s", event.getUsername(), event.getLinkId(), day, device);
-                Long addedD = redisTemplate.opsForSet().add(dKey, visitorId);
-                redisTemplate.expire(dKey, java.time.Duration.ofDays(40));
-                if (addedD != null && addedD > 0) {
-                    deviceAggregateRepository.incrementUnique(event.getUsername(), event.getLinkId(), day, device);
-                }
-            }
-
-            // Geo aggregation (country from IP)
-            String country = geoIpService.resolveCountryIso2(event.getClientIp());
-            if (country != null) {
-                geoAggregateRepository.upsertIncrement(event.getUsername(), event.getLinkId(), day, country);
-                if (visitorId != null) {
-                    String gKey = String.format("uvg:%s:%d:%s:%s", event.getUsername(), event.getLinkId(), day, country);
-                    Long addedG = redisTemplate.opsForSet().add(gKey, visitorId);
-                    redisTemplate.expire(gKey, java.time.Duration.ofDays(40));
-                    if (addedG != null && addedG > 0) {
-                        geoAggregateRepository.incrementUnique(event.getUsername(), event.getLinkId(), day, country);
-                    }
-                }
-            }
-            
-            // Log analytics event for potential future processing
-            logAnalyticsEvent(event);
-            
             log.debug("Successfully processed click event for link {}, new count: {}", 
                     event.getLinkId(), link.getClickCount());
-
-            // Emit webhook (best-effort)
-            webhookService.emitLinkClick(event.getUsername(), event.getLinkId(), event.getTargetUrl(), event.getReferrer(), event.getClientIp(), event.getUserAgent());
             
         } catch (Exception e) {
             log.error("Failed to process click event for link {}: {}", 
@@ -204,6 +176,232 @@ public class AnalyticsWorker {
         }
     }
     
+    /**
+     * Process a batch from one click partition in a single transaction. Every click on a link lands in the
+     * same partition, so the batch's clicks per link are applied to the {@code links} row in one update
+     * rather than one locked read-modify-write each, and each aggregate and rollup row gets one upsert for
+     * the whole batch. Clicks for links deleted since are skipped.
+     */
+    @Transactional
+    public void processLinkClickBatch(java.util.List<LinkClickEvent> events) {
+        io.micrometer.core.instrument.Timer.Sample processingSample = io.micrometer.core.instrument.Timer.start(io.micrometer.core.instrument.Metrics.globalRegistry);
+        java.util.Set<Long> linkIds = new java.util.HashSet<>();
+        for (LinkClickEvent event : events) {
+            if (event.getLinkId() != null) linkIds.add(event.getLinkId());
+        }
+        java.util.Set<Long> existing = linkIds.isEmpty() ? java.util.Set.of() : new java.util.HashSet<>(linkRepository.findExistingIds(linkIds));
+        java.util.Map<Long, Long> clicksPerLink = new java.util.HashMap<>();
+        java.util.Set<String> usernames = new java.util.HashSet<>();
+        java.util.Map<AggregateRow, RowCounts> rows = new java.util.LinkedHashMap<>();
+        for (LinkClickEvent event : events) {
+            if (event.getLinkId() == null || event.getClickedAt() == null) {
+                log.error("Invalid click event received: {}", event);
+                continue;
+            }
+            if (!existing.contains(event.getLinkId())) {
+                io.micrometer.core.instrument.Metrics.counter("analytics.partition.skipped", "reason", "link_missing").increment();
+                continue;
+            }
+            long lagSec = java.time.Duration.between(event.getClickedAt(), java.time.Instant.now()).getSeconds();
+            io.micrometer.core.instrument.Metrics.counter("analytics.queue.lag.events").increment();
+            io.micrometer.core.instrument.DistributionSummary
+                .builder("analytics.queue.lag.seconds")
+                .register(io.micrometer.core.instrument.Metrics.globalRegistry)
+                .record(Math.max(0, lagSec));
+            aggregate(event, rows);
+            clicksPerLink.merge(event.getLinkId(), 1L, Long::sum);
+            if (event.getUsername() != null) usernames.add(event.getUsername());
+        }
+        java.time.LocalDateTime now = java.time.LocalDateTime.now();
+        clicksPerLink.forEach((linkId, clicks) -> linkRepository.incrementClickCount(linkId, clicks, now));
+        writeRows(rows);
+        evictCaches(usernames, clicksPerLink.keySet());
+        processingSample.stop(io.micrometer.core.instrument.Metrics.timer("analytics.partition.batch.time"));
+        io.micrometer.core.instrument.Metrics.summary("analytics.partition.batch.size").record(events.size());
+    }
+
+    /**
+     * Everything a click updates besides its {@code links} row: daily aggregates, rollups, uniques and the
+     * after-commit feeds. Aggregate and rollup counts go into {@code rows}, to be written once per row.
+     */
+    private void aggregate(LinkClickEvent event, java.util.Map<AggregateRow, RowCounts> rows) {
+        // Aggregate daily clicks (UTC day)
+        java.time.LocalDate day = event.getClickedAt() != null ?
+                event.getClickedAt().atZone(java.time.ZoneOffset.UTC).toLocalDate() :
+                java.time.LocalDate.now(java.time.ZoneOffset.UTC);
+        sealedDayCache.onClick(event.getUsername(), day);
+        realtimeAnalytics.onClick(event.getUsername(), event.getLinkId(), event.getClickedAt());
+        liveClicks.onClick(event.getUsername(), event.getLinkId());
+
+        // Unique visitor dedup via Redis (per user+link+day+visitor key)
+        String visitorId = clickNormalizer.deriveVisitorId(event);
+        long visitorHash = visitorId == null ? 0L : com.linkgrove.api.util.HyperLogLog.hash(visitorId);
+        Long newVisitor = null;
+        if (visitorId != null && !visitorId.isBlank()
+                && addVisitor(String.format("uv:%s:%d:%s", event.getUsername(), event.getLinkId(), day), visitorId)) {
+            newVisitor = visitorHash;
+        }
+        count(rows, AggregateRow.link(VisitorSketchService.Table.LINK, event, day, null), newVisitor);
+        count(rows, AggregateRow.user(event, null, day, null), newVisitor);
+        if (event.getVariantId() != null) {
+            count(rows, new AggregateRow(VisitorSketchService.Table.LINK_VARIANT, event.getUsername(), event.getLinkId(),
+                    event.getVariantId(), null, day, null), newVisitor);
+        }
+
+        // Referrer aggregation (domain-level)
+        String domain = clickNormalizer.extractDomain(event.getReferrer());
+        if (domain != null) {
+            countValue(rows, VisitorSketchService.Table.LINK_REFERRER, "uvr", UserDimensionDailyRollup.REFERRER, event, day, domain, visitorId, visitorHash);
+        }
+
+        // Source aggregation (e.g., qr, email, social)
+        String source = clickNormalizer.normalizeSource(event);
+        if (source != null) {
+            countValue(rows, VisitorSketchService.Table.LINK_SOURCE, "uvs", UserDimensionDailyRollup.SOURCE, event, day, source, visitorId, visitorHash);
+        }
+
+        // Device, browser, OS and bot aggregation (one UA scan, cached per UA string)
+        com.linkgrove.api.service.UserAgentClassifier.Classification ua = clickNormalizer.classifyUserAgent(event.getUserAgent());
+        countValue(rows, VisitorSketchService.Table.LINK_DEVICE, "uvd", UserDimensionDailyRollup.DEVICE, event, day, ua.device(), visitorId, visitorHash);
+        countValue(rows, VisitorSketchService.Table.LINK_BROWSER, "uvb", null, event, day, ua.browser(), visitorId, visitorHash);
+        countValue(rows, VisitorSketchService.Table.LINK_OS, "uvo", null, event, day, ua.os(), visitorId, visitorHash);
+        if (ua.isBot()) {
+            countValue(rows, VisitorSketchService.Table.LINK_BOT, "uvbot", null, event, day, ua.bot(), visitorId, visitorHash);
+        }
+
+        // Geo aggregation (country from IP)
+        String country = clickNormalizer.resolveCountry(event.getClientIp());
+        if (country != null) {
+            countValue(rows, VisitorSketchService.Table.LINK_COUNTRY, "uvg", UserDimensionDailyRollup.COUNTRY, event, day, country, visitorId, visitorHash);
+        }
+        
+        // Keep the click so aggregates can be recomputed later
+        clickStore.onClick(event, visitorId);
+
+        // Log analytics event for potential future processing
+        logAnalyticsEvent(event);
+
+        // Emit webhook (best-effort)
+        webhookService.emitLinkClick(event.getUsername(), event.getLinkId(), event.getTargetUrl(), event.getReferrer(), event.getClientIp(), event.getUserAgent());
+    }
+
+    /**
+     * Count a click for one value of a per-link dimension, and for the user's rollup of that dimension when
+     * {@code rollupDimension} is set. Both count the visitor as new when the link's set for the value hadn't seen them.
+     */
+    private void countValue(java.util.Map<AggregateRow, RowCounts> rows, VisitorSketchService.Table table, String setPrefix,
+                            String rollupDimension, LinkClickEvent event, java.time.LocalDate day, String value,
+                            String visitorId, long visitorHash) {
+        Long newVisitor = null;
+        if (visitorId != null) {
+            String key = String.format("%s:%s:%d:%s:%s", setPrefix, event.getUsername(), event.getLinkId(), day, value);
+            if (addVisitor(key, visitorId)) newVisitor = visitorHash;
+        }
+        count(rows, AggregateRow.link(table, event, day, value), newVisitor);
+        if (rollupDimension != null) count(rows, AggregateRow.user(event, rollupDimension, day, value), newVisitor);
+    }
+
+    private static void count(java.util.Map<AggregateRow, RowCounts> rows, AggregateRow row, Long newVisitor) {
+        RowCounts counts = rows.computeIfAbsent(row, k -> new RowCounts());
+        counts.clicks++;
+        if (newVisitor != null) counts.newVisitors.add(newVisitor);
+    }
+
+    /**
+     * One upsert per aggregate and rollup row for the clicks counted by {@link #aggregate}, then their sketches.
+     */
+    private void writeRows(java.util.Map<AggregateRow, RowCounts> rows) {
+        rows.forEach((row, counts) -> {
+            long clicks = counts.clicks;
+            long uniques = counts.newVisitors.size();
+            switch (row.table()) {
+                case LINK -> aggregateRepository.upsertAdd(row.username(), row.linkId(), row.day(), clicks, uniques);
+                case LINK_VARIANT -> variantAggregateRepository.upsertAdd(row.username(), row.linkId(), row.variantId(), row.day(), clicks, uniques);
+                case LINK_REFERRER -> referrerAggregateRepository.upsertAdd(row.username(), row.linkId(), row.day(), row.value(), clicks, uniques);
+                case LINK_SOURCE -> sourceAggregateRepository.upsertAdd(row.username(), row.linkId(), row.day(), row.value(), clicks, uniques);
+                case LINK_DEVICE -> deviceAggregateRepository.upsertAdd(row.username(), row.linkId(), row.day(), row.value(), clicks, uniques);
+                case LINK_COUNTRY -> geoAggregateRepository.upsertAdd(row.username(), row.linkId(), row.day(), row.value(), clicks, uniques);
+                case LINK_BROWSER -> browserAggregateRepository.upsertAdd(row.username(), row.linkId(), row.day(), row.value(), clicks, uniques);
+                case LINK_OS -> osAggregateRepository.upsertAdd(row.username(), row.linkId(), row.day(), row.value(), clicks, uniques);
+                case LINK_BOT -> botAggregateRepository.upsertAdd(row.username(), row.linkId(), row.day(), row.value(), clicks, uniques);
+                case USER -> clickRollupRepository.upsertAdd(row.username(), row.day(), clicks, uniques);
+                case USER_DIMENSION -> dimensionRollupRepository.upsertAdd(row.username(), row.dimension(), row.day(), row.value(), clicks, uniques);
+            }
+            for (long hash : counts.newVisitors) {
+                visitorSketches.add(row.table(), hash, row.sketchKey());
+            }
+        });
+        io.micrometer.core.instrument.Metrics.summary("analytics.aggregate.rows.per.batch").record(rows.size());
+    }
+
+    /**
+     * Add the visitor to a unique-visitor set, keeping it for 40 days to cover late events.
+     *
+     * Redis isn't part of the transaction, so a visitor added here is removed again if the transaction rolls
+     * back; otherwise the retry would find the visitor already seen and never count the unique.
+     *
+     * @return whether the visitor is new to the set
+     */
+    private boolean addVisitor(String key, String visitorId) {
+        Long added = redisTemplate.opsForSet().add(key, visitorId);
+        redisTemplate.expire(key, java.time.Duration.ofDays(40));
+        if (added == null || added == 0) return false;
+        if (org.springframework.transaction.support.TransactionSynchronizationManager.isSynchronizationActive()) {
+            addedVisitors().add(new String[]{key, visitorId});
+        }
+        return true;
+    }
+
+    /**
+     * Visitors added to unique sets by the current transaction, removed again unless it commits.
+     */
+    @SuppressWarnings("unchecked")
+    private java.util.List<String[]> addedVisitors() {
+        java.util.List<String[]> added = (java.util.List<String[]>) org.springframework.transaction.support.TransactionSynchronizationManager.getResource(ADDED_VISITORS);
+        if (added != null) return added;
+        java.util.List<String[]> fresh = new java.util.ArrayList<>();
+        org.springframework.transaction.support.TransactionSynchronizationManager.bindResource(ADDED_VISITORS, fresh);
+        org.springframework.transaction.support.TransactionSynchronizationManager.registerSynchronization(new org.springframework.transaction.support.TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                org.springframework.transaction.support.TransactionSynchronizationManager.unbindResourceIfPossible(ADDED_VISITORS);
+                if (status == STATUS_COMMITTED) return;
+                try {
+                    redisTemplate.executePipelined((org.springframework.data.redis.core.RedisCallback<Object>) connection -> {
+                        for (String[] kv : fresh) {
+                            connection.setCommands().sRem(kv[0].getBytes(java.nio.charset.StandardCharsets.UTF_8),
+                                    kv[1].getBytes(java.nio.charset.StandardCharsets.UTF_8));
+                        }
+                        return null;
+                    });
+                } catch (Exception e) {
+                    log.warn("Failed to roll back {} unique visitor marks: {}", fresh.size(), e.getMessage());
+                }
+            }
+        });
+        return fresh;
+    }
+
+    /**
+     * Same evictions as {@link #processLinkClick}'s annotations, once per batch.
+     */
+    private void evictCaches(java.util.Set<String> usernames, java.util.Set<Long> linkIds) {
+        org.springframework.cache.Cache analytics = cacheManager.getCache("analytics");
+        if (analytics != null) {
+            for (String username : usernames) {
+                analytics.evict(username + "_overview");
+                analytics.evict(username + "_detailed");
+                analytics.evict(username + "_top_links");
+            }
+        }
+        org.springframework.cache.Cache previews = cacheManager.getCache("linkPreviews");
+        if (previews != null) linkIds.forEach(previews::evict);
+        for (String name : com.linkgrove.api.config.CacheConfig.ANALYTICS_BREAKDOWN_CACHES) {
+            org.springframework.cache.Cache cache = cacheManager.getCache(name);
+            if (cache != null) cache.clear();
+        }
+    }
+
     /**
      * Log detailed analytics event for future processing.
      * This could be extended to store in a time-series database,
@@ -212,14 +410,7 @@ public class AnalyticsWorker {
      * @param event The click event to log
      */
     private void logAnalyticsEvent(LinkClickEvent event) {
-        // For now, just log the event details
-        // In a production system, this could:
-        // 1. Store in InfluxDB/TimescaleDB for time-series analytics
-        // 2. Send to Google Analytics or Mixpanel
-        // 3. Aggregate hourly/daily statistics
-        // 4. Detect fraud or bot traffic
-        
-        log.info("Analytics Event - Link: {}, User: {}, IP: {}, Time: {}, UserAgent: {}", 
+        log.debug("Analytics Event - Link: {}, User: {}, IP: {}, Time: {}, UserAgent: {}", 
                 event.getLinkId(),
                 event.getUsername(),
                 maskIpAddress(event.getClientIp()),
@@ -247,53 +438,4 @@ public class AnalyticsWorker {
         // For IPv6 or other formats, just return "masked"
         return "masked";
     }
-
-    private String deriveVisitorId(LinkClickEvent event) {
-        // Prefer sessionId, fall back to IP + minimal UA hash
-        if (event.getSessionId() != null && !event.getSessionId().isBlank()) {
-            return "s:" + event.getSessionId();
-        }
-        String ip = event.getClientIp();
-        String ua = event.getUserAgent();
-        if (ip == null && ua == null) return null;
-        String uaSig = (ua == null) ? "" : Integer.toHexString(ua.hashCode());
-        return "i:" + (ip != null ? ip : "?") + ":u:" + uaSig;
-    }
-
-    private String extractDomain(String referrer) {
-        if (referrer == null || referrer.isBlank()) return null;
-        try {
-            java.net.URI uri = java.net.URI.create(referrer);
-            String host = uri.getHost();
-            if (host == null) return null;
-            return host.toLowerCase();
-        } catch (Exception e) {
-            return null;
-        }
-    }
-
-    private String classifyDevice(String ua) {
-        if (ua == null) return "other";
-        String s = ua.toLowerCase();
-        if (s.contains("tablet") || s.contains("ipad")) return "tablet";
-        if (s.contains("mobi") || s.contains("iphone") || s.contains("android")) return "mobile";
-        if (s.contains("windows") || s.contains("macintosh") || s.contains("linux")) return "desktop";
-        return "other";
-    }
-
-    private String normalizeSource(LinkClickEvent event) {
-        try {
-            if (event == null) return null;
-            if (event.getSource() != null && !event.getSource().isBlank()) {
-                return event.getSource().toLowerCase();
-            }
-            String utmMedium = event.getUtmMedium();
-            if (utmMedium != null && !utmMedium.isBlank()) {
-                return utmMedium.toLowerCase();
-            }
-            return null;
-        } catch (Exception e) {
-            return null;
-        }
-    }
 }
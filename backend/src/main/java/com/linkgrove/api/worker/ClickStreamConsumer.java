@@ -0,0 +1,414 @@
+package com.linkgrove.api.worker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.linkgrove.api.config.RabbitMQConfig;
+import com.linkgrove.api.event.LinkClickEvent;
+import com.linkgrove.api.service.ClickDlqReprocessor;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.BatchMessageListener;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Consumes the click stream ({@code analytics.transport.mode=stream}) in batches, tracking its offset in
+ * Postgres.
+ *
+ * One node at a time consumes, holding a Redis lease. The consumer starts at the offset after
+ * {@code click_stream_offsets.committed_offset} and hands each batch to
+ * {@link AnalyticsWorker#processLinkClickBatch} in a transaction that also locks and advances the offset
+ * row. Clicks at or below the committed offset are dropped first, so a batch redelivered after a crash, or
+ * consumed twice while a lease changes hands, is counted once.
+ *
+ * Any failure, or a gap between batches, stops the consumer until the next tick restarts it from the
+ * committed offset. Once the batch at the same offset has failed {@code maxAttempts} times, the next attempt
+ * goes one click at a time, committing the offset after each; a click that fails on its own although the
+ * offset row could be locked is parked in {@code linkgrove.clicks.parked} (after a publisher confirm) and
+ * skipped, so one poison click can't hold up the stream. A click that can't be parsed is parked the same
+ * way, within the transaction that commits its offset. Failures that look like an outage (connection or
+ * transient data access errors) never park anything.
+ *
+ * {@link #replay} rewinds the offset and bumps the row's epoch, which makes the running consumer restart
+ * from there.
+ */
+@Component
+@ConditionalOnProperty(name = "analytics.transport.mode", havingValue = "stream")
+@Slf4j
+public class ClickStreamConsumer {
+
+    static final String CONSUMER = "aggregates";
+    static final String OFFSET_HEADER = "x-stream-offset";
+    private static final String LEADER_KEY = "linkgrove:clicks:stream:leader";
+
+    private static final DefaultRedisScript<Long> RENEW = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) end return 0",
+            Long.class);
+    private static final DefaultRedisScript<Long> RELEASE = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) end return 0",
+            Long.class);
+
+    private final ConnectionFactory connectionFactory;
+    private final AnalyticsWorker analyticsWorker;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final RabbitTemplate parkingTemplate;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration lease;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final AtomicBoolean restartRequested = new AtomicBoolean();
+    private final AtomicLong committed = new AtomicLong(-1);
+    private volatile SimpleMessageListenerContainer container;
+    private volatile long epoch = -1;
+    private volatile long expectedNext;
+    private volatile boolean freshStart;
+    private volatile long failingAt = -1;
+    private volatile int failedAttempts;
+
+    public ClickStreamConsumer(ConnectionFactory connectionFactory,
+                               AnalyticsWorker analyticsWorker,
+                               JdbcTemplate jdbcTemplate,
+                               PlatformTransactionManager transactionManager,
+                               StringRedisTemplate redisTemplate,
+                               @Qualifier("confirmingRabbitTemplate") RabbitTemplate parkingTemplate,
+                               @Value("${analytics.stream.batchSize:500}") int batchSize,
+                               @Value("${analytics.stream.maxAttempts:3}") int maxAttempts,
+                               @Value("${analytics.stream.leaseMs:15000}") long leaseMs) {
+        this.connectionFactory = connectionFactory;
+        this.analyticsWorker = analyticsWorker;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.redisTemplate = redisTemplate;
+        this.parkingTemplate = parkingTemplate;
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.findAndRegisterModules();
+        this.batchSize = Math.max(1, batchSize);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.lease = Duration.ofMillis(leaseMs);
+        io.micrometer.core.instrument.Gauge.builder("analytics.stream.committed.offset", committed, AtomicLong::get)
+                .register(io.micrometer.core.instrument.Metrics.globalRegistry);
+    }
+
+    /**
+     * Take or renew the lease, then make sure the consumer runs from the committed offset of the current epoch.
+     */
+    @Scheduled(fixedDelayString = "${analytics.stream.renewMs:5000}", initialDelay = 5000)
+    public synchronized void maintain() {
+        boolean leader;
+        try {
+            leader = acquireLease();
+        } catch (Exception e) {
+            log.warn("Click stream lease check failed: {}", e.getMessage());
+            leader = false;
+        }
+        if (!leader) {
+            if (container != null) {
+                log.info("Click stream consumer stopping: lease not held");
+                stopContainer();
+            }
+            return;
+        }
+        Map<String, Object> row = readOffsets();
+        long rowEpoch = ((Number) row.get("epoch")).longValue();
+        if (container == null || !container.isRunning() || restartRequested.get() || rowEpoch != epoch) {
+            restart(((Number) row.get("committed_offset")).longValue(), rowEpoch);
+        }
+    }
+
+    /**
+     * Rewind the consumer so the next click it processes is the one at {@code offset}. Clicks from there on
+     * are counted again, so replay only over a range whose aggregates are being rebuilt or were never written.
+     */
+    public Map<String, Object> replay(long offset) {
+        if (offset < 0) throw new IllegalArgumentException("offset must be >= 0");
+        jdbcTemplate.update("UPDATE click_stream_offsets SET committed_offset = ?, epoch = epoch + 1, updated_at = now() WHERE consumer = ?",
+                offset - 1, CONSUMER);
+        io.micrometer.core.instrument.Metrics.counter("analytics.stream.replays").increment();
+        log.info("Click stream consumer rewound to offset {}", offset);
+        return status();
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> row = readOffsets();
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("stream", RabbitMQConfig.LINK_CLICK_STREAM);
+        out.put("committedOffset", row.get("committed_offset"));
+        out.put("epoch", row.get("epoch"));
+        out.put("updatedAt", row.get("updated_at"));
+        out.put("leader", redisTemplate.opsForValue().get(LEADER_KEY));
+        out.put("consumingHere", container != null && container.isRunning());
+        return out;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        stopContainer();
+        try {
+            redisTemplate.execute(RELEASE, List.of(LEADER_KEY), nodeId);
+        } catch (Exception e) {
+            log.debug("Releasing click stream lease failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Process one delivered batch and advance the committed offset with it.
+     */
+    void onBatch(List<Message> messages) {
+        if (messages.isEmpty() || restartRequested.get()) return;
+        long first = offset(messages.get(0));
+        long last = offset(messages.get(messages.size() - 1));
+        if (first > expectedNext) {
+            if (!freshStart) {
+                log.warn("Click stream gap: expected offset {} but got {}; restarting from the committed offset", expectedNext, first);
+                requestRestart();
+                return;
+            }
+            // The stream's retention already dropped clicks past the committed offset
+            io.micrometer.core.instrument.Metrics.counter("analytics.stream.truncated").increment(first - expectedNext);
+            log.warn("Click stream starts at offset {} but {} was expected; {} clicks expired unprocessed", first, expectedNext, first - expectedNext);
+        }
+        freshStart = false;
+        long batchEpoch = epoch;
+        if (first == failingAt && failedAttempts >= maxAttempts) {
+            isolate(messages, batchEpoch);
+            return;
+        }
+        io.micrometer.core.instrument.Timer.Sample sample = io.micrometer.core.instrument.Timer.start(io.micrometer.core.instrument.Metrics.globalRegistry);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                Map<String, Object> row = jdbcTemplate.queryForMap(
+                        "SELECT committed_offset, epoch FROM click_stream_offsets WHERE consumer = ? FOR UPDATE", CONSUMER);
+                if (((Number) row.get("epoch")).longValue() != batchEpoch) {
+                    throw new OffsetsResetException();
+                }
+                long done = ((Number) row.get("committed_offset")).longValue();
+                if (last <= done) return;
+                List<LinkClickEvent> events = new ArrayList<>(messages.size());
+                for (Message message : messages) {
+                    long offset = offset(message);
+                    if (offset <= done) continue;
+                    try {
+                        events.add(parse(message));
+                    } catch (IOException e) {
+                        // Parked inside the transaction, so it is parked before its offset is committed
+                        parkMalformed(message, offset, e);
+                    }
+                }
+                if (!events.isEmpty()) analyticsWorker.processLinkClickBatch(events);
+                jdbcTemplate.update("UPDATE click_stream_offsets SET committed_offset = ?, updated_at = now() WHERE consumer = ?",
+                        last, CONSUMER);
+            });
+            expectedNext = last + 1;
+            committed.set(last);
+            failingAt = -1;
+            sample.stop(io.micrometer.core.instrument.Metrics.timer("analytics.stream.batch.time"));
+            io.micrometer.core.instrument.Metrics.summary("analytics.stream.batch.size").record(messages.size());
+        } catch (Exception e) {
+            recordFailure(first);
+            log.error("Click stream batch {}-{} failed (attempt {}); restarting from the committed offset: {}",
+                    first, last, failedAttempts, e.getMessage());
+            requestRestart();
+        }
+    }
+
+    /**
+     * Process a batch that keeps failing one click per transaction, parking the clicks that fail alone.
+     */
+    private void isolate(List<Message> messages, long batchEpoch) {
+        log.warn("Click stream batch at offset {} failed {} times; processing it one click at a time", failingAt, failedAttempts);
+        for (Message message : messages) {
+            long offset = offset(message);
+            try {
+                // Null when the offset row was already past this click
+                Boolean processed = commitOne(offset, batchEpoch, parse(message));
+                if (processed == null) continue;
+            } catch (Exception e) {
+                if (!isPoison(e)) {
+                    recordFailure(offset);
+                    log.error("Click stream click at offset {} failed; restarting from the committed offset: {}", offset, e.getMessage());
+                    requestRestart();
+                    return;
+                }
+                try {
+                    park(message, offset, e instanceof IOException ? "malformed" : "poison", e);
+                    commitOne(offset, batchEpoch, null);
+                } catch (Exception parkFailure) {
+                    recordFailure(offset);
+                    log.error("Could not park click at stream offset {}; restarting from the committed offset: {}", offset, parkFailure.getMessage());
+                    requestRestart();
+                    return;
+                }
+            }
+            expectedNext = offset + 1;
+            committed.set(offset);
+        }
+        failingAt = -1;
+    }
+
+    /**
+     * Process {@code event} (if any) and commit {@code offset} in one transaction.
+     *
+     * @return {@code null} if the offset was already committed
+     */
+    private Boolean commitOne(long offset, long batchEpoch, LinkClickEvent event) {
+        return transactionTemplate.execute(status -> {
+            Map<String, Object> row = jdbcTemplate.queryForMap(
+                    "SELECT committed_offset, epoch FROM click_stream_offsets WHERE consumer = ? FOR UPDATE", CONSUMER);
+            if (((Number) row.get("epoch")).longValue() != batchEpoch) {
+                throw new OffsetsResetException();
+            }
+            if (offset <= ((Number) row.get("committed_offset")).longValue()) return null;
+            if (event != null) analyticsWorker.processLinkClickBatch(List.of(event));
+            jdbcTemplate.update("UPDATE click_stream_offsets SET committed_offset = ?, updated_at = now() WHERE consumer = ?",
+                    offset, CONSUMER);
+            return Boolean.TRUE;
+        });
+    }
+
+    private void park(Message message, long offset, String reason, Exception cause) throws Exception {
+        Message parked = MessageBuilder.withBody(message.getBody())
+                .setContentType(MessageProperties.CONTENT_TYPE_JSON)
+                .setHeader(ClickDlqReprocessor.REASON_HEADER, "stream_" + reason + ": " + cause.getMessage())
+                .setHeader(OFFSET_HEADER, offset)
+                .build();
+        CorrelationData correlation = new CorrelationData("stream-" + offset);
+        parkingTemplate.send("", RabbitMQConfig.LINK_CLICK_PARKING, parked, correlation);
+        CorrelationData.Confirm confirm = correlation.getFuture().get(10, TimeUnit.SECONDS);
+        if (!confirm.isAck()) throw new IllegalStateException("parking not confirmed: " + confirm.getReason());
+        io.micrometer.core.instrument.Metrics.counter("analytics.stream.parked", "reason", reason).increment();
+        log.error("Parked {} click at stream offset {}: {}", reason, offset, cause.getMessage());
+    }
+
+    private void parkMalformed(Message message, long offset, IOException cause) {
+        try {
+            park(message, offset, "malformed", cause);
+        } catch (Exception e) {
+            throw new IllegalStateException("could not park malformed click at stream offset " + offset, e);
+        }
+    }
+
+    private void recordFailure(long position) {
+        if (position == failingAt) {
+            failedAttempts++;
+        } else {
+            failingAt = position;
+            failedAttempts = 1;
+        }
+    }
+
+    /**
+     * Whether a failure is down to the click itself rather than an unavailable database or Redis, or a replay.
+     */
+    static boolean isPoison(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof OffsetsResetException
+                    || t instanceof org.springframework.dao.DataAccessResourceFailureException
+                    || t instanceof org.springframework.dao.TransientDataAccessException
+                    || t instanceof org.springframework.transaction.CannotCreateTransactionException) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private LinkClickEvent parse(Message message) throws IOException {
+        return objectMapper.readValue(message.getBody(), LinkClickEvent.class);
+    }
+
+    private static class OffsetsResetException extends IllegalStateException {
+        OffsetsResetException() {
+            super("click stream offsets were reset");
+        }
+    }
+
+    /**
+     * Reset the in-memory position to just after {@code committedOffset} for the given epoch.
+     */
+    void resumeFrom(long committedOffset, long rowEpoch) {
+        epoch = rowEpoch;
+        expectedNext = committedOffset + 1;
+        committed.set(committedOffset);
+        freshStart = true;
+        restartRequested.set(false);
+    }
+
+    private void restart(long committedOffset, long rowEpoch) {
+        stopContainer();
+        resumeFrom(committedOffset, rowEpoch);
+        SimpleMessageListenerContainer c = new SimpleMessageListenerContainer(connectionFactory);
+        c.setQueueNames(RabbitMQConfig.LINK_CLICK_STREAM);
+        c.setConcurrentConsumers(1);
+        c.setAcknowledgeMode(AcknowledgeMode.AUTO);
+        c.setConsumerBatchEnabled(true);
+        c.setBatchSize(batchSize);
+        // Streams require a prefetch; two batches keep the next one in flight while this one commits
+        c.setPrefetchCount(batchSize * 2);
+        c.setDefaultRequeueRejected(false);
+        c.setConsumerArguments(Map.of(OFFSET_HEADER, committedOffset < 0 ? "first" : committedOffset + 1));
+        c.setMessageListener((BatchMessageListener) this::onBatch);
+        c.afterPropertiesSet();
+        c.start();
+        container = c;
+        io.micrometer.core.instrument.Metrics.counter("analytics.stream.restarts").increment();
+        log.info("Click stream consumer started at offset {} (epoch {})", committedOffset < 0 ? "first" : committedOffset + 1, rowEpoch);
+    }
+
+    private void requestRestart() {
+        restartRequested.set(true);
+    }
+
+    private void stopContainer() {
+        SimpleMessageListenerContainer c = container;
+        container = null;
+        if (c != null) {
+            c.stop();
+            c.destroy();
+        }
+    }
+
+    private boolean acquireLease() {
+        if (Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(LEADER_KEY, nodeId, lease))) return true;
+        Long renewed = redisTemplate.execute(RENEW, List.of(LEADER_KEY), nodeId, String.valueOf(lease.toMillis()));
+        return renewed != null && renewed > 0;
+    }
+
+    private Map<String, Object> readOffsets() {
+        return jdbcTemplate.queryForMap("SELECT committed_offset, epoch, updated_at FROM click_stream_offsets WHERE consumer = ?", CONSUMER);
+    }
+
+    private static long offset(Message message) {
+        Object v = message.getMessageProperties().getHeaders().get(OFFSET_HEADER);
+        if (v instanceof Number n) return n.longValue();
+        throw new IllegalStateException("Message without " + OFFSET_HEADER + " header");
+    }
+}
@@ -0,0 +1,27 @@
+-- Covering indexes for the GROUP BY breakdown and timeseries queries in AnalyticsService.
+-- Each one leads with (username, day) for the range filter and carries the grouping column and
+-- counters, so Postgres can answer from the index alone. They replace the plain (username, day) indexes.
+
+CREATE INDEX IF NOT EXISTS idx_aggregate_user_day_cov
+  ON link_click_daily_aggregate (username, day) INCLUDE (link_id, clicks, unique_visitors);
+DROP INDEX IF EXISTS idx_aggregate_user_day;
+
+CREATE INDEX IF NOT EXISTS idx_ref_user_day_cov
+  ON link_referrer_daily_aggregate (username, day) INCLUDE (referrer_domain, clicks, unique_visitors);
+DROP INDEX IF EXISTS idx_ref_user_day;
+
+CREATE INDEX IF NOT EXISTS idx_dev_user_day_cov
+  ON link_device_daily_aggregate (username, day) INCLUDE (device_type, clicks, unique_visitors);
+DROP INDEX IF EXISTS idx_dev_user_day;
+
+CREATE INDEX IF NOT EXISTS idx_geo_user_day_cov
+  ON link_geo_daily_aggregate (username, day) INCLUDE (country, clicks, unique_visitors);
+DROP INDEX IF EXISTS idx_geo_user_day;
+
+CREATE INDEX IF NOT EXISTS idx_source_user_day_cov
+  ON link_source_daily_aggregate (username, day) INCLUDE (link_id, source, clicks, unique_visitors);
+DROP INDEX IF EXISTS idx_source_user_day;
+
+CREATE INDEX IF NOT EXISTS idx_lvda_user_day_cov
+  ON link_variant_daily_aggregate (username, day) INCLUDE (link_id, variant_id, clicks, unique_visitors);
+DROP INDEX IF EXISTS idx_lvda_user_day;
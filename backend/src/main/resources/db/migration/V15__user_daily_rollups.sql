@@ -0,0 +1,47 @@
+-- Per-user rollups of the per-link daily aggregates. Account-level timeseries and breakdowns read
+-- O(days) rows here instead of O(days x links). AnalyticsWorker keeps them current in the same
+-- transaction as the per-link upserts; /api/admin/analytics/rollups/rebuild recomputes a range.
+
+CREATE TABLE IF NOT EXISTS user_click_daily_rollup (
+    id BIGSERIAL PRIMARY KEY,
+    username VARCHAR(100) NOT NULL,
+    day DATE NOT NULL,
+    clicks BIGINT NOT NULL DEFAULT 0,
+    unique_visitors BIGINT NOT NULL DEFAULT 0,
+    CONSTRAINT uq_ucdr_user_day UNIQUE (username, day)
+);
+
+CREATE TABLE IF NOT EXISTS user_dimension_daily_rollup (
+    id BIGSERIAL PRIMARY KEY,
+    username VARCHAR(100) NOT NULL,
+    dimension VARCHAR(16) NOT NULL,
+    day DATE NOT NULL,
+    dimension_value VARCHAR(255) NOT NULL,
+    clicks BIGINT NOT NULL DEFAULT 0,
+    unique_visitors BIGINT NOT NULL DEFAULT 0,
+    CONSTRAINT uq_uddr_user_dim_day_value UNIQUE (username, dimension, day, dimension_value)
+);
+
+CREATE INDEX IF NOT EXISTS idx_uddr_user_dim_day_cov
+  ON user_dimension_daily_rollup (username, dimension, day) INCLUDE (dimension_value, clicks, unique_visitors);
+
+-- Seed from existing per-link data
+INSERT INTO user_click_daily_rollup (username, day, clicks, unique_visitors)
+SELECT username, day, SUM(clicks), SUM(unique_visitors)
+FROM link_click_daily_aggregate
+GROUP BY username, day
+ON CONFLICT (username, day) DO NOTHING;
+
+INSERT INTO user_dimension_daily_rollup (username, dimension, day, dimension_value, clicks, unique_visitors)
+SELECT username, 'referrer', day, referrer_domain, SUM(clicks), SUM(unique_visitors)
+FROM link_referrer_daily_aggregate GROUP BY username, day, referrer_domain
+UNION ALL
+SELECT username, 'device', day, device_type, SUM(clicks), SUM(unique_visitors)
+FROM link_device_daily_aggregate GROUP BY username, day, device_type
+UNION ALL
+SELECT username, 'country', day, CAST(country AS TEXT), SUM(clicks), SUM(unique_visitors)
+FROM link_geo_daily_aggregate GROUP BY username, day, country
+UNION ALL
+SELECT username, 'source', day, source, SUM(clicks), SUM(unique_visitors)
+FROM link_source_daily_aggregate GROUP BY username, day, source
+ON CONFLICT (username, dimension, day, dimension_value) DO NOTHING;
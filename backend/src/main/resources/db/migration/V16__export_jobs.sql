@@ -0,0 +1,25 @@
+-- Background analytics exports. A row tracks one job from submission to download; the artifact itself is a
+-- gzip file under analytics.exports.dir. heartbeat_at is refreshed by the node holding the job, so jobs
+-- orphaned by a crashed node can be failed by any other node.
+
+CREATE TABLE IF NOT EXISTS export_jobs (
+    id VARCHAR(36) PRIMARY KEY,
+    username VARCHAR(100) NOT NULL,
+    status VARCHAR(16) NOT NULL,
+    format VARCHAR(8) NOT NULL,
+    from_day DATE NOT NULL,
+    to_day DATE NOT NULL,
+    dimensions VARCHAR(128) NOT NULL,
+    link_ids TEXT,
+    row_count BIGINT,
+    size_bytes BIGINT,
+    error_message VARCHAR(500),
+    created_at TIMESTAMP NOT NULL,
+    started_at TIMESTAMP,
+    finished_at TIMESTAMP,
+    heartbeat_at TIMESTAMP NOT NULL,
+    expires_at TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_export_jobs_user_created ON export_jobs (username, created_at);
+CREATE INDEX IF NOT EXISTS idx_export_jobs_status_heartbeat ON export_jobs (status, heartbeat_at);
@@ -0,0 +1,12 @@
+-- HyperLogLog sketches of the visitors behind each daily unique_visitors counter (see util/HyperLogLog).
+-- Summing unique_visitors over a range counts a returning visitor once per day; merging the sketches
+-- counts them once. Rows written before this migration have no sketch and contribute their daily counts.
+
+ALTER TABLE IF EXISTS link_click_daily_aggregate ADD COLUMN IF NOT EXISTS uv_sketch BYTEA;
+ALTER TABLE IF EXISTS link_referrer_daily_aggregate ADD COLUMN IF NOT EXISTS uv_sketch BYTEA;
+ALTER TABLE IF EXISTS link_device_daily_aggregate ADD COLUMN IF NOT EXISTS uv_sketch BYTEA;
+ALTER TABLE IF EXISTS link_geo_daily_aggregate ADD COLUMN IF NOT EXISTS uv_sketch BYTEA;
+ALTER TABLE IF EXISTS link_source_daily_aggregate ADD COLUMN IF NOT EXISTS uv_sketch BYTEA;
+ALTER TABLE IF EXISTS link_variant_daily_aggregate ADD COLUMN IF NOT EXISTS uv_sketch BYTEA;
+ALTER TABLE IF EXISTS user_click_daily_rollup ADD COLUMN IF NOT EXISTS uv_sketch BYTEA;
+ALTER TABLE IF EXISTS user_dimension_daily_rollup ADD COLUMN IF NOT EXISTS uv_sketch BYTEA;
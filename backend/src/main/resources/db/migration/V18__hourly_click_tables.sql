@@ -0,0 +1,19 @@
+-- Hourly click counts, rolled up from the Redis per-minute ring buffers (RealtimeAnalyticsService) once
+-- an hour closes. Rows are written with the hour's full count, so re-rolling an hour is idempotent.
+
+CREATE TABLE IF NOT EXISTS link_click_hourly_aggregate (
+    id BIGSERIAL PRIMARY KEY,
+    username VARCHAR(100) NOT NULL,
+    link_id BIGINT NOT NULL REFERENCES links(id) ON DELETE CASCADE,
+    hour TIMESTAMP NOT NULL,
+    clicks BIGINT NOT NULL DEFAULT 0,
+    CONSTRAINT uq_lcha_user_link_hour UNIQUE (username, link_id, hour)
+);
+
+CREATE TABLE IF NOT EXISTS user_click_hourly_rollup (
+    id BIGSERIAL PRIMARY KEY,
+    username VARCHAR(100) NOT NULL,
+    hour TIMESTAMP NOT NULL,
+    clicks BIGINT NOT NULL DEFAULT 0,
+    CONSTRAINT uq_ucha_user_hour UNIQUE (username, hour)
+);
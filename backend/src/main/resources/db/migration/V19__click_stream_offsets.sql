@@ -0,0 +1,12 @@
+-- Committed offsets of the click stream consumers (ClickStreamConsumer). The offset moves in the same
+-- transaction as the aggregates a batch writes, so a redelivered batch is recognised and skipped.
+-- A replay rewinds committed_offset and bumps epoch so the running consumer restarts from there.
+
+CREATE TABLE IF NOT EXISTS click_stream_offsets (
+    consumer VARCHAR(100) PRIMARY KEY,
+    committed_offset BIGINT NOT NULL DEFAULT -1,
+    epoch BIGINT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP NOT NULL DEFAULT now()
+);
+
+INSERT INTO click_stream_offsets (consumer) VALUES ('aggregates') ON CONFLICT (consumer) DO NOTHING;
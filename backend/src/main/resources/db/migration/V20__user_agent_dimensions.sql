@@ -0,0 +1,48 @@
+-- Browser, OS and bot-family breakdowns from the User-Agent classifier (service/UserAgentClassifier).
+-- Same shape as link_device_daily_aggregate, including the visitor sketch. Bot rows only exist for
+-- clicks the classifier recognised as automated; browser and OS rows cover every click.
+
+CREATE TABLE IF NOT EXISTS link_browser_daily_aggregate (
+    id BIGSERIAL PRIMARY KEY,
+    username VARCHAR(100) NOT NULL,
+    link_id BIGINT NOT NULL REFERENCES links(id) ON DELETE CASCADE,
+    day DATE NOT NULL,
+    browser VARCHAR(32) NOT NULL,
+    clicks BIGINT NOT NULL DEFAULT 0,
+    unique_visitors BIGINT NOT NULL DEFAULT 0,
+    uv_sketch BYTEA,
+    CONSTRAINT uq_user_link_day_browser UNIQUE (username, link_id, day, browser)
+);
+
+CREATE INDEX IF NOT EXISTS idx_browser_user_day_cov
+  ON link_browser_daily_aggregate (username, day) INCLUDE (browser, clicks, unique_visitors);
+
+CREATE TABLE IF NOT EXISTS link_os_daily_aggregate (
+    id BIGSERIAL PRIMARY KEY,
+    username VARCHAR(100) NOT NULL,
+    link_id BIGINT NOT NULL REFERENCES links(id) ON DELETE CASCADE,
+    day DATE NOT NULL,
+    os VARCHAR(32) NOT NULL,
+    clicks BIGINT NOT NULL DEFAULT 0,
+    unique_visitors BIGINT NOT NULL DEFAULT 0,
+    uv_sketch BYTEA,
+    CONSTRAINT uq_user_link_day_os UNIQUE (username, link_id, day, os)
+);
+
+CREATE INDEX IF NOT EXISTS idx_os_user_day_cov
+  ON link_os_daily_aggregate (username, day) INCLUDE (os, clicks, unique_visitors);
+
+CREATE TABLE IF NOT EXISTS link_bot_daily_aggregate (
+    id BIGSERIAL PRIMARY KEY,
+    username VARCHAR(100) NOT NULL,
+    link_id BIGINT NOT NULL REFERENCES links(id) ON DELETE CASCADE,
+    day DATE NOT NULL,
+    bot VARCHAR(32) NOT NULL,
+    clicks BIGINT NOT NULL DEFAULT 0,
+    unique_visitors BIGINT NOT NULL DEFAULT 0,
+    uv_sketch BYTEA,
+    CONSTRAINT uq_user_link_day_bot UNIQUE (username, link_id, day, bot)
+);
+
+CREATE INDEX IF NOT EXISTS idx_bot_user_day_cov
+  ON link_bot_daily_aggregate (username, day) INCLUDE (bot, clicks, unique_visitors);
@@ -0,0 +1,75 @@
+package com.linkgrove.api.config;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AdmissionControlledDataSourceTest {
+
+    private DataSource pool() throws Exception {
+        DataSource target = mock(DataSource.class);
+        when(target.getConnection()).thenAnswer(inv -> mock(Connection.class));
+        return target;
+    }
+
+    @Test
+    void releasesPermitOnceWhenConnectionClosed() throws Exception {
+        AdmissionControlledDataSource ds = new AdmissionControlledDataSource(pool(), 2, 10, 50);
+        Connection c = ds.getConnection();
+        assertEquals(1, ds.availablePermits());
+        c.close();
+        c.close();
+        assertEquals(2, ds.availablePermits());
+    }
+
+    @Test
+    void timesOutWhenAllPermitsHeld() throws Exception {
+        AdmissionControlledDataSource ds = new AdmissionControlledDataSource(pool(), 1, 10, 50);
+        Connection held = ds.getConnection();
+        assertThrows(SQLTransientConnectionException.class, ds::getConnection);
+        assertEquals(0, ds.waiting());
+        held.close();
+        ds.getConnection().close();
+    }
+
+    @Test
+    void rejectsImmediatelyWhenWaitQueueFull() throws Exception {
+        AdmissionControlledDataSource ds = new AdmissionControlledDataSource(pool(), 1, 1, 5_000);
+        Connection held = ds.getConnection();
+        CountDownLatch done = new CountDownLatch(1);
+        Thread waiter = Thread.ofVirtual().start(() -> {
+            try {
+                ds.getConnection().close();
+            } catch (Exception ignored) {
+            } finally {
+                done.countDown();
+            }
+        });
+        while (ds.waiting() == 0) Thread.onSpinWait();
+
+        long started = System.nanoTime();
+        assertThrows(SQLTransientConnectionException.class, ds::getConnection);
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(1));
+
+        held.close();
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        waiter.join();
+        assertEquals(1, ds.availablePermits());
+    }
+
+    @Test
+    void releasesPermitWhenPoolThrows() throws Exception {
+        DataSource target = mock(DataSource.class);
+        when(target.getConnection()).thenThrow(new SQLTransientConnectionException("pool timeout"));
+        AdmissionControlledDataSource ds = new AdmissionControlledDataSource(target, 1, 1, 50);
+        assertThrows(SQLTransientConnectionException.class, ds::getConnection);
+        assertEquals(1, ds.availablePermits());
+    }
+}
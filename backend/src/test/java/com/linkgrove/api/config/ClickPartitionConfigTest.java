@@ -0,0 +1,100 @@
+package com.linkgrove.api.config;
+
+import com.linkgrove.api.event.LinkClickEvent;
+import com.linkgrove.api.worker.AnalyticsWorker;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ClickPartitionConfigTest {
+
+    @Test
+    void exhaustedBatchDeadLettersOnlyThePoisonClick() {
+        AnalyticsWorker worker = mock(AnalyticsWorker.class);
+        RabbitTemplate confirming = confirmingTemplate();
+        doThrow(new IllegalStateException("poison")).when(worker)
+                .processLinkClickBatch(argThat(events -> events.size() == 1 && events.get(0).getLinkId() == 2L));
+        ClickPartitionConfig config = new ClickPartitionConfig(worker, mock(ConnectionFactory.class), confirming);
+        Message good = message(1L);
+        Message poison = message(2L);
+        Message alsoGood = message(3L);
+
+        config.recover(List.of(good, poison, alsoGood), new IllegalStateException("poison"));
+
+        verify(worker, times(3)).processLinkClickBatch(argThat(events -> events.size() == 1));
+        verify(confirming).send(eq(RabbitMQConfig.LINK_CLICK_DLX), eq("failed.click"),
+                argThat((Message m) -> new String(m.getBody(), StandardCharsets.UTF_8).contains("\"linkId\":2")),
+                any(CorrelationData.class));
+        verify(confirming, times(1)).send(any(), any(), any(Message.class), any(CorrelationData.class));
+    }
+
+    @Test
+    void malformedMessagesAreDeadLetteredDuringRecovery() {
+        AnalyticsWorker worker = mock(AnalyticsWorker.class);
+        RabbitTemplate confirming = confirmingTemplate();
+        ClickPartitionConfig config = new ClickPartitionConfig(worker, mock(ConnectionFactory.class), confirming);
+
+        config.recover(List.of(malformed(), message(1L)), new IllegalStateException("boom"));
+
+        verify(worker).processLinkClickBatch(argThat(events -> events.size() == 1 && events.get(0).getLinkId() == 1L));
+        verify(confirming).send(eq(RabbitMQConfig.LINK_CLICK_DLX), eq("failed.click"),
+                argThat((Message m) -> new String(m.getBody(), StandardCharsets.UTF_8).equals("not json")), any(CorrelationData.class));
+    }
+
+    @Test
+    void malformedMessagesAreDeadLetteredAfterTheBatchCommits() {
+        AnalyticsWorker worker = mock(AnalyticsWorker.class);
+        RabbitTemplate confirming = confirmingTemplate();
+        ClickPartitionConfig config = new ClickPartitionConfig(worker, mock(ConnectionFactory.class), confirming);
+
+        config.onBatch(List.of(message(1L), malformed(), message(2L)));
+
+        var order = inOrder(worker, confirming);
+        order.verify(worker).processLinkClickBatch(argThat(events -> events.size() == 2));
+        order.verify(confirming).send(eq(RabbitMQConfig.LINK_CLICK_DLX), eq("failed.click"),
+                argThat((Message m) -> new String(m.getBody(), StandardCharsets.UTF_8).equals("not json")), any(CorrelationData.class));
+    }
+
+    @Test
+    void malformedMessagesAreNotDeadLetteredWhenTheBatchFails() {
+        AnalyticsWorker worker = mock(AnalyticsWorker.class);
+        RabbitTemplate confirming = confirmingTemplate();
+        doThrow(new IllegalStateException("db down")).when(worker).processLinkClickBatch(any());
+        ClickPartitionConfig config = new ClickPartitionConfig(worker, mock(ConnectionFactory.class), confirming);
+
+        assertThatThrownBy(() -> config.onBatch(List.of(message(1L), malformed()))).hasMessage("db down");
+
+        verifyNoInteractions(confirming);
+    }
+
+    private static RabbitTemplate confirmingTemplate() {
+        RabbitTemplate confirming = mock(RabbitTemplate.class);
+        doAnswer(inv -> {
+            CorrelationData correlation = inv.getArgument(3);
+            correlation.getFuture().complete(new CorrelationData.Confirm(true, null));
+            return null;
+        }).when(confirming).send(any(), any(), any(Message.class), any(CorrelationData.class));
+        return confirming;
+    }
+
+    private static Message malformed() {
+        return new Message("not json".getBytes(StandardCharsets.UTF_8), new MessageProperties());
+    }
+
+    private static Message message(long linkId) {
+        String json = "{\"linkId\":" + linkId + ",\"username\":\"alice\",\"clickedAt\":\"2026-03-01T10:00:00Z\"}";
+        return new Message(json.getBytes(StandardCharsets.UTF_8), new MessageProperties());
+    }
+}
@@ -0,0 +1,116 @@
+package com.linkgrove.api.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.linkgrove.api.dto.LinkAliasResolve;
+import com.linkgrove.api.exception.LinkNotFoundException;
+import com.linkgrove.api.exception.RateLimitExceededException;
+import com.linkgrove.api.service.LinkExistenceFilter;
+import com.linkgrove.api.service.LinkRedirectService;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class RedirectFastPathFilterTest {
+
+    private LinkRedirectService linkRedirectService;
+    private RateLimitingConfig rateLimitingConfig;
+    private LinkExistenceFilter linkExistenceFilter;
+    private RedirectFastPathFilter filter;
+    private FilterChain chain;
+
+    @BeforeEach
+    void setup() {
+        linkRedirectService = mock(LinkRedirectService.class);
+        rateLimitingConfig = mock(RateLimitingConfig.class);
+        linkExistenceFilter = mock(LinkExistenceFilter.class);
+        chain = mock(FilterChain.class);
+        filter = new RedirectFastPathFilter(linkRedirectService, rateLimitingConfig,
+                new ObjectMapper().registerModule(new JavaTimeModule()), linkExistenceFilter);
+    }
+
+    @Test
+    void redirectsByIdWithoutInvokingChain() throws Exception {
+        when(linkRedirectService.getRedirectUrl(42L)).thenReturn("https://example.com/x");
+        MockHttpServletRequest req = new MockHttpServletRequest("GET", "/r/42");
+        req.addHeader("X-Request-Id", "rid-1");
+        MockHttpServletResponse res = new MockHttpServletResponse();
+
+        filter.doFilter(req, res, chain);
+
+        assertEquals(302, res.getStatus());
+        assertEquals("https://example.com/x", res.getHeader("Location"));
+        assertEquals("public, max-age=300", res.getHeader("Cache-Control"));
+        assertEquals("rid-1", res.getHeader("X-Request-Id"));
+        assertEquals("*", res.getHeader("Access-Control-Allow-Origin"));
+        verify(linkRedirectService).publishClickEvent(eq(42L), any());
+        verifyNoInteractions(chain);
+    }
+
+    @Test
+    void redirectsByAlias() throws Exception {
+        when(linkRedirectService.getLinkByAlias("promo-1")).thenReturn(new LinkAliasResolve(7L, "https://e.com"));
+        MockHttpServletResponse res = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/r/a/promo-1"), res, chain);
+
+        assertEquals(302, res.getStatus());
+        assertEquals("https://e.com", res.getHeader("Location"));
+        verify(linkRedirectService).publishClickEvent(eq(7L), any());
+    }
+
+    @Test
+    void otherRedirectPathsFallThroughToMvc() throws Exception {
+        for (String uri : new String[]{"/r/42/qr.png", "/r/42/preview", "/r/a/x/qr.svg", "/r/abc"}) {
+            MockHttpServletRequest req = new MockHttpServletRequest("GET", uri);
+            MockHttpServletResponse res = new MockHttpServletResponse();
+            filter.doFilter(req, res, chain);
+            verify(chain).doFilter(req, res);
+        }
+        verifyNoInteractions(linkRedirectService);
+    }
+
+    @Test
+    void unknownLinkReturns404Json() throws Exception {
+        when(linkRedirectService.getRedirectUrl(9L)).thenThrow(new LinkNotFoundException(9L));
+        MockHttpServletResponse res = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/r/9"), res, chain);
+
+        assertEquals(404, res.getStatus());
+        assertTrue(res.getContentAsString().contains("Link Not Found"));
+        assertEquals("*", res.getHeader("Access-Control-Allow-Origin"));
+        verify(linkRedirectService, never()).publishClickEvent(any(), any());
+    }
+
+    @Test
+    void definitelyMissingIdSkipsLookup() throws Exception {
+        doThrow(new LinkNotFoundException(999L)).when(linkExistenceFilter).checkId(999L);
+        MockHttpServletResponse res = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/r/999"), res, chain);
+
+        assertEquals(404, res.getStatus());
+        verifyNoInteractions(linkRedirectService);
+    }
+
+    @Test
+    void rateLimitedRequestsGet429WithRetryAfter() throws Exception {
+        doThrow(new RateLimitExceededException("Too many requests", 10))
+                .when(rateLimitingConfig).enforce(any(), any());
+        MockHttpServletResponse res = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/r/1"), res, chain);
+
+        assertEquals(429, res.getStatus());
+        assertEquals("10", res.getHeader("Retry-After"));
+        verifyNoInteractions(linkRedirectService);
+    }
+}
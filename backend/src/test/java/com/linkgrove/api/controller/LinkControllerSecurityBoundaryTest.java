@@ -5,6 +5,7 @@ import com.linkgrove.api.config.JwtAuthenticationFilter;
 import com.linkgrove.api.config.RateLimitingConfig;
 import com.linkgrove.api.dto.CreateLinkRequest;
 import com.linkgrove.api.exception.GlobalExceptionHandler;
+import com.linkgrove.api.service.LinkExportService;
 import com.linkgrove.api.service.LinkService;
 import com.linkgrove.api.service.LinkVariantService;
 import org.junit.jupiter.api.Test;
@@ -37,6 +38,9 @@ class LinkControllerSecurityBoundaryTest {
     @MockitoBean
     LinkVariantService linkVariantService;
 
+    @MockitoBean
+    LinkExportService linkExportService;
+
     // Provide a mock so SecurityConfig can wire the filter without needing JwtUtil/UserRepository
     @MockitoBean
     JwtAuthenticationFilter jwtAuthenticationFilter;
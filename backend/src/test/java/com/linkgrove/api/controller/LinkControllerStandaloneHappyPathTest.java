@@ -5,6 +5,7 @@ import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.linkgrove.api.dto.CreateLinkRequest;
 import com.linkgrove.api.dto.LinkResponse;
 import com.linkgrove.api.exception.GlobalExceptionHandler;
+import com.linkgrove.api.service.LinkExportService;
 import com.linkgrove.api.service.LinkService;
 import com.linkgrove.api.service.LinkVariantService;
 import org.junit.jupiter.api.BeforeEach;
@@ -46,7 +47,7 @@ class LinkControllerStandaloneHappyPathTest {
  	void setup() {
  		linkService = Mockito.mock(LinkService.class);
  		linkVariantService = Mockito.mock(LinkVariantService.class);
- 		controller = new LinkController(linkService, linkVariantService);
+ 		controller = new LinkController(linkService, linkVariantService, Mockito.mock(LinkExportService.class));
  		objectMapper.registerModule(new JavaTimeModule());
  		mockMvc = MockMvcBuilders.standaloneSetup(controller)
  			.setControllerAdvice(new GlobalExceptionHandler())
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.linkgrove.api.dto.CreateLinkRequest;
 import com.linkgrove.api.dto.UpdateLinkRequest;
 import com.linkgrove.api.exception.GlobalExceptionHandler;
+import com.linkgrove.api.service.LinkExportService;
 import com.linkgrove.api.service.LinkService;
 import com.linkgrove.api.service.LinkVariantService;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
@@ -41,7 +42,7 @@ class LinkControllerStandaloneValidationTest {
 	void setup() {
 		linkService = Mockito.mock(LinkService.class);
 		linkVariantService = Mockito.mock(LinkVariantService.class);
-		controller = new LinkController(linkService, linkVariantService);
+		controller = new LinkController(linkService, linkVariantService, Mockito.mock(LinkExportService.class));
 		objectMapper.registerModule(new JavaTimeModule());
 		LocalValidatorFactoryBean validator = new LocalValidatorFactoryBean();
 		validator.afterPropertiesSet();
@@ -3,6 +3,7 @@ package com.linkgrove.api.controller;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.linkgrove.api.dto.CreateLinkRequest;
 import com.linkgrove.api.dto.UpdateLinkRequest;
+import com.linkgrove.api.service.LinkExportService;
 import com.linkgrove.api.service.LinkService;
 import com.linkgrove.api.service.LinkVariantService;
 import com.linkgrove.api.config.JwtAuthenticationFilter;
@@ -48,6 +49,9 @@ class LinkControllerValidationTest {
 	@MockBean
 	LinkVariantService linkVariantService;
 
+	@MockBean
+	LinkExportService linkExportService;
+
 	@MockBean
 	JwtAuthenticationFilter jwtAuthenticationFilter;
 
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.linkgrove.api.dto.CreateLinkRequest;
 import com.linkgrove.api.dto.LinkResponse;
 import com.linkgrove.api.exception.GlobalExceptionHandler;
+import com.linkgrove.api.service.LinkExportService;
 import com.linkgrove.api.service.LinkService;
 import com.linkgrove.api.service.LinkVariantService;
 import com.linkgrove.api.config.JwtAuthenticationFilter;
@@ -43,6 +44,9 @@ class LinkControllerWebMvcHappyPathTest {
     @MockitoBean
     LinkVariantService linkVariantService;
 
+    @MockitoBean
+    LinkExportService linkExportService;
+
     @MockitoBean
     JwtAuthenticationFilter jwtAuthenticationFilter;
 
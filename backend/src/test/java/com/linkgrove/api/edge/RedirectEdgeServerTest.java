@@ -0,0 +1,131 @@
+package com.linkgrove.api.edge;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.linkgrove.api.event.LinkClickEvent;
+import com.linkgrove.api.exception.LinkNotFoundException;
+import com.linkgrove.api.service.LinkExistenceFilter;
+import com.linkgrove.api.service.LinkRedirectService;
+import com.linkgrove.api.service.QrCodeService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RedirectEdgeServerTest {
+
+    private final LinkRedirectService linkRedirectService = mock(LinkRedirectService.class);
+    private final LinkExistenceFilter linkExistenceFilter = mock(LinkExistenceFilter.class);
+    private final QrCodeService qrCodeService = mock(QrCodeService.class);
+    @SuppressWarnings("unchecked")
+    private final ReactiveValueOperations<String, Object> cachedValues = mock(ReactiveValueOperations.class);
+    private final ReactiveRateLimiter rateLimiter = mock(ReactiveRateLimiter.class);
+    private RedirectEdgeServer edge;
+    private HttpClient client;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void start() {
+        edge = new RedirectEdgeServer(linkRedirectService, linkExistenceFilter, qrCodeService,
+                new ObjectMapper().registerModule(new JavaTimeModule()), mock(ReactiveRedisConnectionFactory.class), 100, 1);
+        ReactiveRedisTemplate<String, Object> cacheReader = mock(ReactiveRedisTemplate.class);
+        when(cacheReader.opsForValue()).thenReturn(cachedValues);
+        when(cachedValues.get(anyString())).thenReturn(Mono.empty());
+        when(rateLimiter.acquire(anyString(), anyString(), anyInt(), anyInt())).thenReturn(Mono.just(10L));
+        ReflectionTestUtils.setField(edge, "cacheReader", cacheReader);
+        ReflectionTestUtils.setField(edge, "rateLimiter", rateLimiter);
+        ReflectionTestUtils.setField(edge, "host", "127.0.0.1");
+        ReflectionTestUtils.setField(edge, "port", 0);
+        ReflectionTestUtils.setField(edge, "idleTimeoutSeconds", 5L);
+        ReflectionTestUtils.setField(edge, "qrWindowSeconds", 60);
+        ReflectionTestUtils.setField(edge, "qrMaxRequests", 60);
+        edge.start();
+        int port = ((DisposableServer) ReflectionTestUtils.getField(edge, "server")).port();
+        client = HttpClient.create().baseUrl("http://127.0.0.1:" + port).followRedirect(false);
+    }
+
+    @AfterEach
+    void stop() {
+        edge.stop();
+    }
+
+    @Test
+    void cachedLinkRedirectsAndPublishesTheClick() {
+        when(cachedValues.get("linkgrove:linkRedirects::42")).thenReturn(Mono.just("https://example.com/target"));
+        when(linkRedirectService.getLinkOwnerUsername(42L)).thenReturn("alice");
+
+        Response response = get("/r/42?utm_source=newsletter");
+
+        assertThat(response.status()).isEqualTo(302);
+        assertThat(response.location()).isEqualTo("https://example.com/target");
+        verify(linkRedirectService, timeout(2000)).publishClickEvent(argThat((LinkClickEvent e) ->
+                e.getLinkId() == 42L && "alice".equals(e.getUsername()) && "newsletter".equals(e.getUtmSource())));
+        verify(linkRedirectService, never()).getRedirectUrl(anyLong());
+    }
+
+    @Test
+    void cacheMissFallsBackToTheService() {
+        when(linkRedirectService.getRedirectUrl(7L)).thenReturn("https://example.com/seven");
+
+        Response response = get("/r/7");
+
+        assertThat(response.status()).isEqualTo(302);
+        assertThat(response.location()).isEqualTo("https://example.com/seven");
+    }
+
+    @Test
+    void unknownLinksAndPathsAreNotFound() {
+        doThrow(new LinkNotFoundException(9L)).when(linkExistenceFilter).checkId(9L);
+
+        assertThat(get("/r/9").status()).isEqualTo(404);
+        assertThat(get("/r/not-a-number").status()).isEqualTo(404);
+        assertThat(get("/elsewhere").status()).isEqualTo(404);
+        verify(linkRedirectService, never()).getRedirectUrl(anyLong());
+    }
+
+    @Test
+    void nonNumericQrSizeIsBadRequest() {
+        Response response = get("/r/42/qr.png?size=big");
+
+        assertThat(response.status()).isEqualTo(400);
+        assertThat(response.body()).contains("Invalid value for size");
+        verifyNoInteractions(qrCodeService, rateLimiter);
+    }
+
+    @Test
+    void nonNumericQrMarginIsBadRequest() {
+        assertThat(get("/r/a/promo/qr.svg?margin=wide").status()).isEqualTo(400);
+        verifyNoInteractions(qrCodeService);
+    }
+
+    @Test
+    void qrSizeIsClampedAndServed() {
+        when(qrCodeService.generatePng(anyString(), anyInt(), anyInt(), any(), any(), any(), any())).thenReturn(new byte[]{1, 2, 3});
+
+        Response response = get("/r/42/qr.png?size=5000&margin=2");
+
+        assertThat(response.status()).isEqualTo(200);
+        verify(qrCodeService).generatePng(endsWith("/r/42"), eq(1024), eq(2), isNull(), isNull(), isNull(), any());
+    }
+
+    private Response get(String uri) {
+        return client.get().uri(uri)
+                .responseSingle((res, body) -> body.asString().defaultIfEmpty("")
+                        .map(text -> new Response(res.status().code(), res.responseHeaders().get("Location"), text)))
+                .block(Duration.ofSeconds(10));
+    }
+
+    private record Response(int status, String location, String body) {}
+}
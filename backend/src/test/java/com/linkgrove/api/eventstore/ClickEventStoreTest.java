@@ -0,0 +1,110 @@
+package com.linkgrove.api.eventstore;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClickEventStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private static final long T0 = Instant.parse("2025-05-01T10:00:00Z").toEpochMilli();
+
+    @Test
+    void scansByTimeRangeAndLinkAcrossBlocks() {
+        ClickEventStore store = store();
+        for (int i = 0; i < 2000; i++) {
+            store.append(click(T0 + i * 1000L, i % 10, i % 3 == 0 ? "ref-" + i : null));
+        }
+        store.close();
+
+        List<StoredClick> all = new ArrayList<>();
+        assertThat(store.scan(Instant.ofEpochMilli(T0), Instant.ofEpochMilli(T0 + 2000_000L), null, all::add)).isEqualTo(2000);
+        assertThat(all.get(3).referrer()).isEqualTo("ref-3");
+        assertThat(all.get(3).variantId()).isNull();
+        assertThat(all.get(4).variantId()).isEqualTo(4L);
+        assertThat(all.get(4).userAgent()).isEqualTo("Mozilla/5.0 é");
+
+        List<StoredClick> link7 = new ArrayList<>();
+        store.scan(Instant.ofEpochMilli(T0 + 100_000), Instant.ofEpochMilli(T0 + 200_000), 7L, link7::add);
+        assertThat(link7).hasSize(10).allMatch(c -> c.linkId() == 7
+                && c.clickedAtMillis() >= T0 + 100_000 && c.clickedAtMillis() < T0 + 200_000);
+    }
+
+    @Test
+    void reopensSegmentsAndDropsATornTail() throws Exception {
+        ClickEventStore store = store();
+        for (int i = 0; i < 500; i++) store.append(click(T0 + i, 1, null));
+        store.close();
+
+        Path seg;
+        try (var files = Files.list(dir)) {
+            seg = files.filter(p -> p.toString().endsWith(Segment.SEG)).findFirst().orElseThrow();
+        }
+        Files.write(seg, new byte[]{0x4C, 0x47, 0x42, 0x4B, 0, 0, 0, 9}, StandardOpenOption.APPEND);
+        Files.delete(seg.resolveSibling(seg.getFileName().toString().replace(Segment.SEG, Segment.IDX)));
+
+        ClickEventStore reopened = store();
+        assertThat(reopened.scan(Instant.ofEpochMilli(T0), Instant.ofEpochMilli(T0 + 1000), 1L, c -> {})).isEqualTo(500);
+        reopened.append(click(T0 + 600, 1, null));
+        reopened.close();
+        assertThat(reopened.scan(Instant.ofEpochMilli(T0), Instant.ofEpochMilli(T0 + 1000), null, c -> {})).isEqualTo(501);
+    }
+
+    @Test
+    void storesClicksWithoutRawAddressesOrSessionIds() {
+        ClickEventStore store = store();
+        store.onClick(com.linkgrove.api.event.LinkClickEvent.builder()
+                .linkId(1L).username("alice").clickedAt(Instant.ofEpochMilli(T0))
+                .clientIp("203.0.113.7").sessionId("session-secret").userAgent("Mozilla/5.0").build(), "s:session-secret");
+        store.onClick(com.linkgrove.api.event.LinkClickEvent.builder()
+                .linkId(1L).username("alice").clickedAt(Instant.ofEpochMilli(T0 + 1))
+                .clientIp("2001:db8:85a3:8d3:1319:8a2e:370:7348").build(), null);
+        store.close();
+
+        List<StoredClick> stored = new ArrayList<>();
+        store.scan(Instant.ofEpochMilli(T0), Instant.ofEpochMilli(T0 + 10), null, stored::add);
+
+        assertThat(stored.get(0).clientIp()).isEqualTo("203.0.113.0");
+        assertThat(stored.get(0).visitor()).doesNotContain("session-secret");
+        assertThat(stored.get(0).visitorHash()).isEqualTo(com.linkgrove.api.util.HyperLogLog.hash("s:session-secret"));
+        assertThat(stored.get(0).toEvent().getSessionId()).isNull();
+        assertThat(stored.get(0).userAgent()).isEqualTo("Mozilla/5.0");
+        assertThat(stored.get(1).clientIp()).isEqualTo("2001:db8:85a3::");
+        assertThat(stored.get(1).visitorHash()).isNull();
+    }
+
+    @Test
+    void masksAddressesToTheirNetwork() {
+        assertThat(StoredClick.maskIp("10.1.2.3")).isEqualTo("10.1.2.0");
+        assertThat(StoredClick.maskIp("::ffff:198.51.100.20")).isEqualTo("198.51.100.0");
+        assertThat(StoredClick.maskIp("2001:DB8::1")).isEqualTo("2001:db8:0::");
+        assertThat(StoredClick.maskIp("203.0.113.7:51234")).isEqualTo("203.0.113.0");
+        assertThat(StoredClick.maskIp("[2001:db8:85a3::1]:443")).isEqualTo("2001:db8:85a3::");
+        assertThat(StoredClick.maskIp("010.1.2.3")).isNull();
+        assertThat(StoredClick.maskIp("fe80::1%eth0")).isNull();
+        assertThat(StoredClick.maskIp("unknown")).isNull();
+        assertThat(StoredClick.maskIp("300.1.2.3")).isNull();
+        assertThat(StoredClick.maskIp(null)).isNull();
+    }
+
+    private ClickEventStore store() {
+        ClickEventStore store = new ClickEventStore(true, dir.toString(), 4096, 0, 1 << 20, 90, false, 1);
+        store.init();
+        return store;
+    }
+
+    private static StoredClick click(long at, long linkId, String referrer) {
+        return new StoredClick(at, linkId, linkId == 4 ? 4L : null, "alice", "203.0.113.7",
+                "Mozilla/5.0 é", referrer, "s1", null, "newsletter", null, null, null, null);
+    }
+}
@@ -0,0 +1,126 @@
+package com.linkgrove.api.service;
+
+import com.linkgrove.api.eventstore.ClickEventStore;
+import com.linkgrove.api.eventstore.StoredClick;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AnalyticsBackfillServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private final GeoIpService geo = mock(GeoIpService.class);
+    private final ClickNormalizer normalizer = new ClickNormalizer(geo, new UserAgentClassifier(100), new ReferrerDomainResolver(true, 100));
+    private static final Instant DAY = Instant.parse("2025-05-01T00:00:00Z");
+
+    @Test
+    void foldsADayInParallelLikeTheWorker() {
+        when(geo.resolveCountryIso2("203.0.113.7")).thenReturn("DE");
+        ClickEventStore store = store();
+        for (int i = 0; i < 3000; i++) {
+            // Three visitors per link, alternating between a phone and a desktop browser
+            String ua = i % 2 == 0 ? "Mozilla/5.0 (iPhone)" : "Mozilla/5.0 (Windows NT 10.0)";
+            store.append(new StoredClick(DAY.toEpochMilli() + i * 1000L, i % 4, i % 4 == 0 ? 9L : null, "alice",
+                    i % 3 == 0 ? "203.0.113.7" : null, ua, "https://News.example.com/a", "v" + (i % 3), null,
+                    null, "email", null, null, null));
+        }
+        store.append(new StoredClick(DAY.plusSeconds(86_400).toEpochMilli(), 1, null, "alice", null, null, null, "x", null,
+                null, null, null, null, null));
+        store.close();
+
+        AnalyticsBackfillService.DayAggregates agg = store.reduce(DAY, DAY.plusSeconds(86_400), null,
+                AnalyticsBackfillService.DayAggregates::new, (a, c) -> a.add(c, normalizer),
+                AnalyticsBackfillService.DayAggregates::merge, new ForkJoinPool(4));
+
+        assertThat(agg.clicks).isEqualTo(3000);
+        var link = agg.rows.get(new AnalyticsBackfillService.Key(AnalyticsBackfillService.Dimension.LINK, "alice", 1, null));
+        assertThat(link.clicks).isEqualTo(750);
+        assertThat(link.visitors).hasSize(3);
+        assertThat(agg.rows.get(new AnalyticsBackfillService.Key(AnalyticsBackfillService.Dimension.REFERRER, "alice", 1, "example.com")).clicks).isEqualTo(750);
+        assertThat(agg.rows.get(new AnalyticsBackfillService.Key(AnalyticsBackfillService.Dimension.SOURCE, "alice", 1, "email")).clicks).isEqualTo(750);
+        assertThat(agg.rows.get(new AnalyticsBackfillService.Key(AnalyticsBackfillService.Dimension.VARIANT, "alice", 0, "9")).clicks).isEqualTo(750);
+        assertThat(agg.rows.get(new AnalyticsBackfillService.Key(AnalyticsBackfillService.Dimension.DEVICE, "alice", 0, "mobile")).clicks).isEqualTo(750);
+        assertThat(agg.rows.get(new AnalyticsBackfillService.Key(AnalyticsBackfillService.Dimension.OS, "alice", 1, "windows")).clicks).isEqualTo(750);
+        assertThat(agg.rows).doesNotContainKey(new AnalyticsBackfillService.Key(AnalyticsBackfillService.Dimension.BOT, "alice", 0, "other"));
+        assertThat(agg.rows.get(new AnalyticsBackfillService.Key(AnalyticsBackfillService.Dimension.COUNTRY, "alice", 0, "DE")).clicks).isEqualTo(250);
+    }
+
+    @Test
+    void countsHashedVisitorsAsTheWorkerDid() {
+        AnalyticsBackfillService.DayAggregates agg = new AnalyticsBackfillService.DayAggregates();
+        for (String ip : List.of("203.0.113.7", "203.0.113.8")) {
+            // Same session from two addresses in the same /24: one visitor
+            agg.add(StoredClick.from(com.linkgrove.api.event.LinkClickEvent.builder().linkId(1L).username("alice")
+                    .clickedAt(DAY).clientIp(ip).sessionId("abc").build(), "s:abc"), normalizer);
+        }
+
+        var link = agg.rows.get(new AnalyticsBackfillService.Key(AnalyticsBackfillService.Dimension.LINK, "alice", 1, null));
+        assertThat(link.clicks).isEqualTo(2);
+        assertThat(link.visitors).containsExactly(com.linkgrove.api.util.HyperLogLog.hash("s:abc"));
+    }
+
+    @Test
+    void skipsDaysTheStoreDoesNotFullyCover() {
+        ClickEventStore store = store();
+        store.append(new StoredClick(DAY.toEpochMilli(), 1, null, "alice", null, null, null, "s", null, null, null, null, null, null));
+        store.close();
+        JdbcTemplate jdbc = mock(JdbcTemplate.class);
+        when(jdbc.queryForObject(anyString(), eq(Long.class), any(Object[].class))).thenReturn(500L);
+        AnalyticsBackfillService service = new AnalyticsBackfillService(store, normalizer, jdbc, mock(AnalyticsRollupService.class),
+                mock(SealedDayAnalyticsCache.class), mock(StringRedisTemplate.class), mock(CacheManager.class),
+                mock(PlatformTransactionManager.class), 2, 0.99, 366);
+
+        long[] result = service.rebuildDay(LocalDate.of(2025, 5, 1), null, false);
+
+        assertThat(result).containsExactly(1, -1);
+        verify(jdbc, never()).update(anyString(), any(Object[].class));
+    }
+
+    @Test
+    void rebuiltDayClearsTheCachedAnalytics() {
+        ClickEventStore store = store();
+        store.append(new StoredClick(DAY.toEpochMilli(), 1, null, "alice", null, null, null, "s", null, null, null, null, null, null));
+        store.close();
+        JdbcTemplate jdbc = mock(JdbcTemplate.class);
+        when(jdbc.queryForObject(anyString(), eq(Long.class), any(Object[].class))).thenReturn(1L);
+        when(jdbc.batchUpdate(anyString(), anyList())).thenReturn(new int[]{1});
+        CacheManager caches = mock(CacheManager.class);
+        Cache referrers = mock(Cache.class);
+        Cache analytics = mock(Cache.class);
+        when(caches.getCache("analytics-referrers-v1")).thenReturn(referrers);
+        when(caches.getCache("analytics")).thenReturn(analytics);
+        AnalyticsBackfillService service = new AnalyticsBackfillService(store, normalizer, jdbc, mock(AnalyticsRollupService.class),
+                mock(SealedDayAnalyticsCache.class), mock(StringRedisTemplate.class), caches,
+                mock(PlatformTransactionManager.class), 2, 0.99, 366);
+
+        service.rebuildDay(LocalDate.of(2025, 5, 1), "alice", false);
+
+        verify(referrers).clear();
+        verify(analytics).clear();
+        verify(caches).getCache("analytics-variants-by-link-v1");
+        verify(caches).getCache("analytics-sources-v1");
+        verify(caches).getCache("analytics-sources-by-link-v1");
+    }
+
+    private ClickEventStore store() {
+        ClickEventStore store = new ClickEventStore(true, dir.toString(), 4096, 0, 1 << 20, 0, false, 1);
+        store.init();
+        return store;
+    }
+}
@@ -0,0 +1,62 @@
+package com.linkgrove.api.service;
+
+import com.linkgrove.api.service.ClickConsumerAutoscaler.Decision;
+import com.linkgrove.api.service.ClickConsumerAutoscaler.Settings;
+import com.linkgrove.api.service.ClickConsumerAutoscaler.Signals;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class ClickConsumerAutoscalerTest {
+
+    // min 2, max 16, pool 20 - reserve 5 => ceiling 15; target lag 5s; db 50ms; redis 20ms
+    private final ClickConsumerAutoscaler autoscaler = new ClickConsumerAutoscaler(
+            mock(RabbitListenerEndpointRegistry.class), mock(AmqpAdmin.class), mock(JdbcTemplate.class),
+            mock(StringRedisTemplate.class), true, 2, 16, 20, 5, 5, 50, 20, 5, 100);
+
+    @Test
+    void scalesUpOnLagAndStopsAtThePoolCeiling() {
+        Decision d = autoscaler.decide(new Signals(5_000, 200, 12, 3, 1), new Settings(4, 10));
+        assertThat(d.action()).isEqualTo("up");
+        assertThat(d.reason()).isEqualTo("lag");
+        assertThat(d.settings().consumers()).isEqualTo(6);
+
+        Decision capped = autoscaler.decide(new Signals(5_000, 200, 12, 3, 1), new Settings(15, 10));
+        assertThat(capped.settings().consumers()).isEqualTo(15);
+        assertThat(capped.reason()).isEqualTo("at_ceiling");
+    }
+
+    @Test
+    void scalesUpWhenTheBacklogWouldTakeTooLongToDrain() {
+        // Lag is still low, but 2,000 messages at 100/s is 20s of work
+        Decision d = autoscaler.decide(new Signals(2_000, 100, 1, 3, 1), new Settings(4, 10));
+        assertThat(d.action()).isEqualTo("up");
+        assertThat(d.reason()).isEqualTo("backlog");
+    }
+
+    @Test
+    void backsOffWhenPostgresOrRedisIsSlowEvenWithLag() {
+        Decision db = autoscaler.decide(new Signals(5_000, 200, 12, 80, 1), new Settings(8, 10));
+        assertThat(db.action()).isEqualTo("down");
+        assertThat(db.reason()).isEqualTo("db_slow");
+        assertThat(db.settings().consumers()).isEqualTo(6);
+
+        Decision redis = autoscaler.decide(new Signals(5_000, 200, 12, 3, 40), new Settings(2, 10));
+        assertThat(redis.action()).isEqualTo("hold");
+        assertThat(redis.reason()).isEqualTo("redis_slow");
+        assertThat(redis.settings().consumers()).isEqualTo(2);
+    }
+
+    @Test
+    void stepsDownWhenIdleWithSmallPrefetch() {
+        Decision d = autoscaler.decide(new Signals(0, 3, 0.2, 3, 1), new Settings(6, 40));
+        assertThat(d.action()).isEqualTo("down");
+        assertThat(d.reason()).isEqualTo("idle");
+        assertThat(d.settings()).isEqualTo(new Settings(5, 5));
+    }
+}
@@ -0,0 +1,142 @@
+package com.linkgrove.api.service;
+
+import com.linkgrove.api.config.ClickRouting;
+import com.linkgrove.api.config.RabbitMQConfig;
+import com.linkgrove.api.repository.LinkRepository;
+import com.linkgrove.api.service.ClickDlqReprocessor.Action;
+import com.linkgrove.api.service.ClickDlqReprocessor.Verdict;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.ChannelCallback;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ClickDlqReprocessorTest {
+
+    private final LinkRepository links = mock(LinkRepository.class);
+    private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+    private final RabbitTemplate confirming = mock(RabbitTemplate.class);
+    private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+    private final ClickDlqReprocessor reprocessor = new ClickDlqReprocessor(
+            rabbitTemplate, confirming, new ClickRouting("classic", false), links, redis, 10_000, 30, 3);
+
+    @Test
+    void classifiesEachMessageInTheBatch() {
+        when(links.findOwnerUsernames(anyCollection())).thenReturn(List.of(new Object[]{1L, "alice"}, new Object[]{2L, "bob"}));
+        String now = Instant.now().toString();
+
+        List<Verdict> verdicts = reprocessor.classify(List.of(
+                message("{\"linkId\":1,\"username\":\"alice\",\"clickedAt\":\"" + now + "\"}", 1),
+                message("{\"linkId\":2,\"username\":\"mallory\",\"clickedAt\":\"" + now + "\"}", 1),
+                message("{\"linkId\":1,\"username\":\"alice\"}", 1),
+                message("{\"linkId\":9,\"username\":\"alice\",\"clickedAt\":\"" + now + "\"}", 1),
+                message("{\"linkId\":1,\"username\":\"alice\",\"clickedAt\":\"2020-01-01T00:00:00Z\"}", 1),
+                message("{\"linkId\":1,\"username\":\"alice\",\"clickedAt\":\"" + now + "\"}", 3),
+                message("{\"username\":\"alice\"}", 1),
+                message("not json", 1)));
+
+        assertThat(verdicts).extracting(Verdict::reason).containsExactly(
+                "retryable", "owner_restored", "timestamp_restored", "link_missing", "too_old",
+                "too_many_deaths", "no_link_id", "malformed");
+        assertThat(verdicts).extracting(Verdict::action).containsExactly(
+                Action.REINJECT, Action.REPAIR, Action.REPAIR, Action.PARK, Action.PARK,
+                Action.PARK, Action.PARK, Action.PARK);
+        assertThat(new String(verdicts.get(1).body(), StandardCharsets.UTF_8)).contains("\"username\":\"bob\"");
+        assertThat(new String(verdicts.get(2).body(), StandardCharsets.UTF_8)).contains("\"clickedAt\"");
+    }
+
+    @Test
+    void countsOurOwnRepublishesAsDeaths() {
+        Message m = message("{}", 1);
+        m.getMessageProperties().incrementRetryCount();
+        m.getMessageProperties().incrementRetryCount();
+        assertThat(ClickDlqReprocessor.deaths(m)).isEqualTo(2);
+    }
+
+    @Test
+    void acksOnlyCopiesTheBrokerConfirmed() throws Exception {
+        Channel channel = dlqHolding(1L, 2);
+        AtomicInteger sends = new AtomicInteger();
+        doAnswer(inv -> {
+            CorrelationData correlation = inv.getArgument(3);
+            // The broker takes the first copy and refuses the second
+            correlation.getFuture().complete(new CorrelationData.Confirm(sends.incrementAndGet() == 1, "nack"));
+            return null;
+        }).when(confirming).send(any(), any(), any(Message.class), any(CorrelationData.class));
+
+        reprocessor.run("job", 10, 10, 1000, false);
+
+        verify(channel).basicAck(1, false);
+        verify(channel, never()).basicAck(eq(2L), anyBoolean());
+        verify(channel).basicNack(2, true, true);
+        verify(rabbitTemplate, never()).send(any(), any(), any(Message.class));
+    }
+
+    @Test
+    void reinjectsClicksThroughTheLinksPartition() throws Exception {
+        ClickDlqReprocessor partitioned = new ClickDlqReprocessor(
+                rabbitTemplate, confirming, new ClickRouting("classic", true), links, redis, 10_000, 30, 3);
+        Channel channel = dlqHolding(7L, 1);
+        doAnswer(inv -> {
+            ((CorrelationData) inv.getArgument(3)).getFuture().complete(new CorrelationData.Confirm(true, null));
+            return null;
+        }).when(confirming).send(any(), any(), any(Message.class), any(CorrelationData.class));
+
+        partitioned.run("job", 10, 10, 1000, false);
+
+        verify(confirming).send(eq(RabbitMQConfig.LINK_CLICK_PARTITION_EXCHANGE), eq("7"), any(Message.class), any(CorrelationData.class));
+        verify(channel).basicAck(1, false);
+    }
+
+    /**
+     * A DLQ holding {@code count} retryable clicks on {@code linkId}, owned by alice, read through a run's channel.
+     */
+    @SuppressWarnings("unchecked")
+    private Channel dlqHolding(long linkId, int count) throws Exception {
+        when(links.findOwnerUsernames(anyCollection())).thenReturn(List.<Object[]>of(new Object[]{linkId, "alice"}));
+        ValueOperations<String, String> values = mock(ValueOperations.class);
+        when(redis.opsForValue()).thenReturn(values);
+        when(values.get("linkgrove:clicks:dlq:lock")).thenReturn("job");
+        when(redis.opsForHash()).thenReturn(mock(HashOperations.class));
+        Channel channel = mock(Channel.class);
+        when(channel.isOpen()).thenReturn(true);
+        String click = "{\"linkId\":" + linkId + ",\"username\":\"alice\",\"clickedAt\":\"" + Instant.now() + "\"}";
+        GetResponse[] more = new GetResponse[count];
+        for (int i = 1; i < count; i++) more[i - 1] = delivery(i + 1, click);
+        when(channel.basicGet(RabbitMQConfig.LINK_CLICK_DLQ, false)).thenReturn(delivery(1, click), more);
+        when(rabbitTemplate.execute(any())).thenAnswer(inv -> ((ChannelCallback<?>) inv.getArgument(0)).doInRabbit(channel));
+        return channel;
+    }
+
+    private static GetResponse delivery(long tag, String body) {
+        return new GetResponse(new Envelope(tag, false, "", RabbitMQConfig.LINK_CLICK_DLQ),
+                new AMQP.BasicProperties.Builder().build(), body.getBytes(StandardCharsets.UTF_8), 0);
+    }
+
+    private static Message message(String body, long deathCount) {
+        MessageProperties props = new MessageProperties();
+        props.setHeader("x-death", List.of(Map.of("count", deathCount, "queue", "linkgrove.clicks.queue",
+                "reason", "rejected", "time", new Date())));
+        return MessageBuilder.withBody(body.getBytes(StandardCharsets.UTF_8)).andProperties(props).build();
+    }
+}
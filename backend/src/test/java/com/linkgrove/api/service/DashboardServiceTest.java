@@ -0,0 +1,80 @@
+package com.linkgrove.api.service;
+
+import com.linkgrove.api.model.User;
+import com.linkgrove.api.repository.LinkBotDailyAggregateRepository;
+import com.linkgrove.api.repository.LinkBrowserDailyAggregateRepository;
+import com.linkgrove.api.repository.LinkClickDailyAggregateRepository;
+import com.linkgrove.api.repository.LinkDeviceDailyAggregateRepository;
+import com.linkgrove.api.repository.LinkGeoDailyAggregateRepository;
+import com.linkgrove.api.repository.LinkOsDailyAggregateRepository;
+import com.linkgrove.api.repository.LinkReferrerDailyAggregateRepository;
+import com.linkgrove.api.repository.LinkRepository;
+import com.linkgrove.api.repository.LinkSourceDailyAggregateRepository;
+import com.linkgrove.api.repository.LinkVariantDailyAggregateRepository;
+import com.linkgrove.api.repository.UserClickDailyRollupRepository;
+import com.linkgrove.api.repository.UserDimensionDailyRollupRepository;
+import com.linkgrove.api.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+class DashboardServiceTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedPanelIsReportedWithoutFailingOthers() {
+        AnalyticsService analytics = mock(AnalyticsService.class);
+        UserRepository users = mock(UserRepository.class);
+        User alice = User.builder().username("alice").build();
+        when(users.findByUsername("alice")).thenReturn(Optional.of(alice));
+        when(analytics.getDashboardSummary(alice)).thenReturn(Map.of("totalClicks", 3L));
+        when(analytics.getTimeseriesData(alice, 30)).thenThrow(new RuntimeException("db down"));
+
+        DashboardService service = new DashboardService(analytics, users, Executors.newFixedThreadPool(2), 5_000);
+        Map<String, Object> res = service.load("alice",
+                EnumSet.of(DashboardService.Panel.SUMMARY, DashboardService.Panel.TIMESERIES), 30, null);
+
+        assertThat((Map<String, Object>) res.get("panels")).containsOnlyKeys("summary");
+        assertThat((Map<String, String>) res.get("errors")).containsEntry("timeseries", "db down");
+        verify(users, times(1)).findByUsername("alice");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void coldDashboardLooksUpTheUserOnce() {
+        UserRepository users = mock(UserRepository.class);
+        when(users.findByUsername("alice")).thenReturn(Optional.of(User.builder().id(1L).username("alice").build()));
+        AnalyticsService analytics = new AnalyticsService(mock(LinkRepository.class), users,
+                mock(LinkClickDailyAggregateRepository.class), mock(LinkReferrerDailyAggregateRepository.class),
+                mock(LinkDeviceDailyAggregateRepository.class), mock(LinkVariantDailyAggregateRepository.class),
+                mock(LinkGeoDailyAggregateRepository.class), mock(LinkSourceDailyAggregateRepository.class),
+                mock(LinkBrowserDailyAggregateRepository.class), mock(LinkOsDailyAggregateRepository.class),
+                mock(LinkBotDailyAggregateRepository.class), mock(UserClickDailyRollupRepository.class),
+                mock(UserDimensionDailyRollupRepository.class), mock(SealedDayAnalyticsCache.class),
+                mock(AnalyticsCubeService.class), mock(VisitorSketchService.class));
+
+        DashboardService service = new DashboardService(analytics, users, Executors.newFixedThreadPool(2), 5_000);
+        Map<String, Object> res = service.load("alice", EnumSet.allOf(DashboardService.Panel.class), 30, 5);
+
+        assertThat(res).doesNotContainKey("errors");
+        assertThat((Map<String, Object>) res.get("panels")).hasSize(DashboardService.Panel.values().length);
+        verify(users, times(1)).findByUsername("alice");
+    }
+
+    @Test
+    void parsesPanelKeys() {
+        assertThat(DashboardService.parsePanels(List.of("top-links", " Referrers ")))
+                .containsExactly(DashboardService.Panel.REFERRERS, DashboardService.Panel.TOP_LINKS);
+        assertThat(DashboardService.parsePanels(null)).hasSize(DashboardService.Panel.values().length);
+        assertThatThrownBy(() -> DashboardService.parsePanels(List.of("nope")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,79 @@
+package com.linkgrove.api.service;
+
+import com.linkgrove.api.dto.ExportJobRequest;
+import com.linkgrove.api.exception.RateLimitExceededException;
+import com.linkgrove.api.model.ExportJob;
+import com.linkgrove.api.repository.ExportJobRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ExportJobServiceTest {
+
+    private final ExportJobRepository repo = mock(ExportJobRepository.class);
+    private final ExportJobService service = new ExportJobService(repo, mock(JdbcTemplate.class),
+            mock(PlatformTransactionManager.class), Runnable::run, "target/exports-test", 2, 366, 24, 10, 500);
+
+    @Test
+    void rejectsSubmitOverPerUserLimit() {
+        when(repo.countByUsernameAndStatusIn(eq("alice"), anyCollection())).thenReturn(2L);
+
+        assertThatThrownBy(() -> service.submit("alice", request(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 3, 1))))
+                .isInstanceOf(RateLimitExceededException.class);
+        verify(repo, never()).save(any());
+    }
+
+    @Test
+    void validatesRangeAndDimensions() {
+        assertThatThrownBy(() -> service.submit("alice", request(LocalDate.of(2025, 3, 1), LocalDate.of(2025, 1, 1))))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.submit("alice", request(LocalDate.of(2020, 1, 1), LocalDate.of(2025, 1, 1))))
+                .hasMessageContaining("366 days");
+        assertThat(ExportJobService.parseDimensions(List.of("Variant", " clicks ", "referrer")))
+                .containsExactly("clicks", "referrer", "variant");
+        assertThat(ExportJobService.parseDimensions(null)).isEqualTo(ExportJobService.DIMENSIONS);
+        assertThatThrownBy(() -> ExportJobService.parseDimensions(List.of("city")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void writesCsvAndJsonLines() throws Exception {
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        try (ExportJobService.RowSink sink = service.open(ExportJob.Format.CSV, csv)) {
+            sink.row("clicks", LocalDate.of(2025, 1, 1), 7, null, 10, 8);
+            sink.row("referrer", LocalDate.of(2025, 1, 1), 7, "news, etc", 4, 3);
+        }
+        assertThat(csv.toString(StandardCharsets.UTF_8)).isEqualTo(
+                "dimension,day,linkId,value,clicks,uniqueVisitors\n" +
+                "clicks,2025-01-01,7,,10,8\n" +
+                "referrer,2025-01-01,7,\"news, etc\",4,3\n");
+
+        ByteArrayOutputStream jsonl = new ByteArrayOutputStream();
+        try (ExportJobService.RowSink sink = service.open(ExportJob.Format.JSONL, jsonl)) {
+            sink.row("clicks", LocalDate.of(2025, 1, 1), 7, null, 10, 8);
+            sink.row("device", LocalDate.of(2025, 1, 2), 7, "mobile", 4, 3);
+        }
+        assertThat(jsonl.toString(StandardCharsets.UTF_8)).isEqualTo(
+                "{\"dimension\":\"clicks\",\"day\":\"2025-01-01\",\"linkId\":7,\"clicks\":10,\"uniqueVisitors\":8}\n" +
+                "{\"dimension\":\"device\",\"day\":\"2025-01-02\",\"linkId\":7,\"value\":\"mobile\",\"clicks\":4,\"uniqueVisitors\":3}\n");
+    }
+
+    private static ExportJobRequest request(LocalDate from, LocalDate to) {
+        ExportJobRequest request = new ExportJobRequest();
+        request.setFrom(from);
+        request.setTo(to);
+        return request;
+    }
+}
@@ -0,0 +1,84 @@
+package com.linkgrove.api.service;
+
+import com.linkgrove.api.repository.LinkRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class LinkExistenceFilterTest {
+
+    private LinkRepository linkRepository;
+    private StringRedisTemplate redisTemplate;
+    private final AtomicReference<BitSet> remoteIds = new AtomicReference<>();
+    private LinkExistenceFilter filter;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() {
+        linkRepository = mock(LinkRepository.class);
+        redisTemplate = mock(StringRedisTemplate.class);
+        // Every GET in sync() sees the shared ids bitmap; writes are ignored
+        when(redisTemplate.execute(any(RedisCallback.class))).thenAnswer(inv ->
+                remoteIds.get() == null ? null : LinkExistenceFilter.toRedisBitmap(remoteIds.get()));
+        filter = new LinkExistenceFilter(linkRepository, redisTemplate, mock(RedisConnectionFactory.class));
+        ReflectionTestUtils.setField(filter, "enabled", true);
+        ReflectionTestUtils.setField(filter, "expectedAliases", 1000L);
+        ReflectionTestUtils.setField(filter, "falsePositiveRate", 0.01);
+    }
+
+    @Test
+    void idsMissingFromDatabaseAtRebuildAreRejected() {
+        when(linkRepository.findMaxId()).thenReturn(3L);
+        when(linkRepository.findAllIds()).thenReturn(List.of(1L, 3L));
+        when(linkRepository.findAllAliases()).thenReturn(List.of());
+
+        filter.rebuild();
+
+        assertThat(filter.isDefinitelyMissing(2L)).isTrue();
+        assertThat(filter.isDefinitelyMissing(3L)).isFalse();
+        assertThat(filter.isDefinitelyMissing(4L)).isFalse();
+    }
+
+    @Test
+    void remoteCreateSeenOutOfOrderDoesNotRejectEarlierRemoteCreate() {
+        when(linkRepository.findMaxId()).thenReturn(3L);
+        when(linkRepository.findAllIds()).thenReturn(List.of(1L, 2L, 3L));
+        when(linkRepository.findAllAliases()).thenReturn(List.of());
+        filter.rebuild();
+
+        // Another node committed 4 and 5, but only 5 has reached Redis so far
+        BitSet shared = new BitSet();
+        shared.set(1, 4);
+        shared.set(5);
+        remoteIds.set(shared);
+        filter.sync();
+
+        assertThat(filter.isDefinitelyMissing(5L)).isFalse();
+        assertThat(filter.isDefinitelyMissing(4L)).isFalse();
+    }
+
+    @Test
+    void newerIdsAreRuledOutAfterTheNextRebuild() {
+        when(linkRepository.findMaxId()).thenReturn(3L, 5L);
+        when(linkRepository.findAllIds()).thenReturn(List.of(1L, 2L, 3L), List.of(1L, 2L, 3L, 5L));
+        when(linkRepository.findAllAliases()).thenReturn(List.of());
+        filter.rebuild();
+        assertThat(filter.isDefinitelyMissing(4L)).isFalse();
+
+        filter.rebuild();
+
+        assertThat(filter.isDefinitelyMissing(4L)).isTrue();
+        assertThat(filter.isDefinitelyMissing(5L)).isFalse();
+    }
+}
@@ -25,6 +25,8 @@ class LinkServiceCoreTest {
     StringRedisTemplate redisTemplate;
     TagRepository tagRepository;
     QrPrewarmService qrPrewarmService;
+    LinkScheduleService linkScheduleService;
+    LinkExistenceFilter linkExistenceFilter;
     LinkService linkService;
 
     @BeforeEach
@@ -34,7 +36,9 @@ class LinkServiceCoreTest {
         redisTemplate = mock(StringRedisTemplate.class);
         tagRepository = mock(TagRepository.class);
         qrPrewarmService = mock(QrPrewarmService.class);
-        linkService = new LinkService(linkRepository, userRepository, redisTemplate, tagRepository, qrPrewarmService);
+        linkScheduleService = mock(LinkScheduleService.class);
+        linkExistenceFilter = mock(LinkExistenceFilter.class);
+        linkService = new LinkService(linkRepository, userRepository, redisTemplate, tagRepository, qrPrewarmService, linkScheduleService, linkExistenceFilter);
     }
 
     @Test
@@ -68,6 +72,7 @@ class LinkServiceCoreTest {
         assertEquals(10L, resp.getId());
 
         verify(qrPrewarmService, times(1)).onLinkCreatedOrUpdated(any(Link.class));
+        verify(linkScheduleService, times(1)).onLinkSaved(any(Link.class), isNull());
     }
 
     @Test
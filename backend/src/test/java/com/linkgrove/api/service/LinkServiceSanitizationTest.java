@@ -24,6 +24,8 @@ class LinkServiceSanitizationTest {
 	private StringRedisTemplate redisTemplate;
 	private TagRepository tagRepository;
 	private QrPrewarmService qrPrewarmService;
+	private LinkScheduleService linkScheduleService;
+	private LinkExistenceFilter linkExistenceFilter;
 	private LinkService linkService;
 
 	@BeforeEach
@@ -33,7 +35,9 @@ class LinkServiceSanitizationTest {
 		redisTemplate = mock(StringRedisTemplate.class);
 		tagRepository = mock(TagRepository.class);
 		qrPrewarmService = mock(QrPrewarmService.class);
-		linkService = new LinkService(linkRepository, userRepository, redisTemplate, tagRepository, qrPrewarmService);
+		linkScheduleService = mock(LinkScheduleService.class);
+		linkExistenceFilter = mock(LinkExistenceFilter.class);
+		linkService = new LinkService(linkRepository, userRepository, redisTemplate, tagRepository, qrPrewarmService, linkScheduleService, linkExistenceFilter);
 
 		User u = User.builder().id(1L).username("alice").build();
 		when(userRepository.findByUsername("alice")).thenReturn(Optional.of(u));
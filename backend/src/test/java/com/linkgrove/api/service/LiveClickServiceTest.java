@@ -0,0 +1,116 @@
+package com.linkgrove.api.service;
+
+import com.linkgrove.api.exception.RateLimitExceededException;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class LiveClickServiceTest {
+
+    @Test
+    void coalescesClicksIntoOneEventPerFlush() {
+        LiveClickService service = service(Runnable::run, 8);
+        RecordingEmitter alice = new RecordingEmitter();
+        RecordingEmitter bob = new RecordingEmitter();
+        service.subscribe("alice", alice);
+        service.subscribe("bob", bob);
+
+        service.count("alice", 7L);
+        service.count("alice", 7L);
+        service.count("alice", 7L);
+        service.count("alice", 9L);
+        service.flush();
+        service.flush();
+
+        assertThat(alice.events).hasSize(2);
+        assertThat(alice.events.get(0)).contains("event:ready");
+        assertThat(alice.events.get(1)).contains("event:clicks").contains("\"7\":3").contains("\"9\":1").contains("\"total\":4");
+        assertThat(bob.events).hasSize(1);
+    }
+
+    @Test
+    void closesSlowSubscribersAndCapsStreamsPerUser() {
+        // Tasks never run, so nothing is ever sent and the queue only fills
+        Executor stalled = task -> {};
+        LiveClickService service = service(stalled, 2);
+        RecordingEmitter slow = new RecordingEmitter();
+        service.subscribe("alice", slow);
+
+        service.count("alice", 7L);
+        service.flush();
+        assertThat(slow.completed).isFalse();
+        service.count("alice", 7L);
+        service.flush();
+        assertThat(slow.completed).isTrue();
+
+        service.subscribe("alice", new RecordingEmitter());
+        service.subscribe("alice", new RecordingEmitter());
+        assertThatThrownBy(() -> service.subscribe("alice", new RecordingEmitter()))
+                .isInstanceOf(RateLimitExceededException.class);
+    }
+
+    @Test
+    void concurrentSubscribesNeverExceedTheCap() throws Exception {
+        LiveClickService service = service(Runnable::run, 8);
+        int threads = 16;
+        java.util.concurrent.ExecutorService pool = java.util.concurrent.Executors.newFixedThreadPool(threads);
+        java.util.concurrent.CountDownLatch go = new java.util.concurrent.CountDownLatch(1);
+        java.util.concurrent.atomic.AtomicInteger accepted = new java.util.concurrent.atomic.AtomicInteger();
+        List<RecordingEmitter> emitters = new java.util.concurrent.CopyOnWriteArrayList<>();
+        List<java.util.concurrent.Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(pool.submit(() -> {
+                RecordingEmitter emitter = new RecordingEmitter();
+                go.await();
+                try {
+                    service.subscribe("alice", emitter);
+                    accepted.incrementAndGet();
+                    emitters.add(emitter);
+                } catch (RateLimitExceededException expected) {
+                    // over the cap
+                }
+                return null;
+            }));
+        }
+        go.countDown();
+        for (var f : futures) f.get();
+        pool.shutdown();
+
+        assertThat(accepted.get()).isEqualTo(2);
+        service.count("alice", 7L);
+        service.flush();
+        assertThat(emitters).allSatisfy(e -> assertThat(e.events).anySatisfy(ev -> assertThat(ev).contains("event:clicks")));
+    }
+
+    private static LiveClickService service(Executor executor, int bufferSize) {
+        return new LiveClickService(mock(StringRedisTemplate.class), mock(RedisConnectionFactory.class), executor,
+                true, bufferSize, 2, 60_000, 1000);
+    }
+
+    private static final class RecordingEmitter extends SseEmitter {
+        final List<String> events = new ArrayList<>();
+        boolean completed;
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            StringBuilder sb = new StringBuilder();
+            builder.build().forEach(d -> sb.append(d.getData()));
+            events.add(sb.toString());
+        }
+
+        @Override
+        public synchronized void complete() {
+            completed = true;
+            super.complete();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.linkgrove.api.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class RealtimeAnalyticsServiceTest {
+
+    private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+    private final RealtimeAnalyticsService service = new RealtimeAnalyticsService(redis, mock(JdbcTemplate.class), true, 2880, 2);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void minuteSeriesMapsRingCountsOldestFirst() {
+        when(redis.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(List.of(0L, 3L, 5L));
+
+        Map<String, Object> result = service.minuteSeries("alice", 7L, 3);
+
+        assertThat(result).containsEntry("totalClicks", 8L).containsEntry("linkId", 7L).containsEntry("minutes", 3);
+        List<Map<String, Object>> series = (List<Map<String, Object>>) result.get("series");
+        assertThat(series).extracting(p -> p.get("clicks")).containsExactly(0L, 3L, 5L);
+        Instant first = Instant.parse((String) series.get(0).get("minute"));
+        Instant last = Instant.parse((String) series.get(2).get("minute"));
+        assertThat(last.getEpochSecond() - first.getEpochSecond()).isEqualTo(120);
+        assertThat(last.getEpochSecond() % 60).isZero();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void recordSkipsClicksOutsideTheWindow() {
+        service.record("alice", 7L, Instant.now().minusSeconds(3 * 24 * 3600));
+        verify(redis, never()).execute(any(RedisScript.class), anyList(), any(Object[].class));
+
+        service.record("alice", 7L, Instant.now());
+        verify(redis).execute(any(RedisScript.class), anyList(), any(Object[].class));
+    }
+}
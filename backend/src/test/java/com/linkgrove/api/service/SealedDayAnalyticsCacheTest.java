@@ -0,0 +1,247 @@
+package com.linkgrove.api.service;
+
+import com.linkgrove.api.config.CacheConfig;
+import com.linkgrove.api.repository.DimensionTotals;
+import com.linkgrove.api.repository.UserClickDailyRollupRepository;
+import com.linkgrove.api.repository.UserDimensionDailyRollupRepository;
+import com.linkgrove.api.util.HyperLogLog;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisKeyCommands;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SealedDayAnalyticsCacheTest {
+
+    @Test
+    void dayIsSealedOnlyAfterGracePeriod() {
+        LocalDate day = LocalDate.of(2025, 3, 1);
+        Instant midnight = Instant.parse("2025-03-02T00:00:00Z");
+        Duration grace = Duration.ofHours(2);
+
+        assertThat(SealedDayAnalyticsCache.isSealed(day, midnight.minusSeconds(1), grace)).isFalse();
+        assertThat(SealedDayAnalyticsCache.isSealed(day, midnight.plus(Duration.ofMinutes(119)), grace)).isFalse();
+        assertThat(SealedDayAnalyticsCache.isSealed(day, midnight.plus(grace), grace)).isTrue();
+    }
+
+    @Test
+    void mergeSumsDaysAndFoldsTail() {
+        SealedDayAnalyticsCache.DaySlice d1 = new SealedDayAnalyticsCache.DaySlice(LocalDate.of(2025, 3, 1));
+        d1.add("referrer", "google.com", 5, 4);
+        d1.add("referrer", "t.co", 2, 2);
+        SealedDayAnalyticsCache.DaySlice d2 = new SealedDayAnalyticsCache.DaySlice(LocalDate.of(2025, 3, 2));
+        d2.add("referrer", "t.co", 4, 3);
+        d2.add("referrer", "bing.com", 1, 1);
+        d2.add("device", "mobile", 9, 9);
+
+        List<DimensionTotals> top = SealedDayAnalyticsCache.merge(List.of(d1, d2), "referrer", 1);
+
+        assertThat(top).extracting(DimensionTotals::getDimension).containsExactly("t.co", DimensionTotals.OTHER);
+        assertThat(top).extracting(DimensionTotals::getClicks).containsExactly(6L, 6L);
+        // Daily uniques of different values overlap, so the folded row has no summed count
+        assertThat(top).extracting(DimensionTotals::getUniqueVisitors).containsExactly(5L, null);
+        assertThat(top).extracting(DimensionTotals::getFolded).containsExactly(false, true);
+    }
+
+    @Test
+    void foldedRowStaysApartFromARealValueWithItsLabel() {
+        SealedDayAnalyticsCache.DaySlice d = new SealedDayAnalyticsCache.DaySlice(LocalDate.of(2025, 3, 1));
+        d.add("source", DimensionTotals.OTHER, 5, 4);
+        d.add("source", "newsletter", 2, 2);
+        d.add("source", "twitter", 1, 1);
+
+        List<DimensionTotals> top = SealedDayAnalyticsCache.merge(List.of(d), "source", 1);
+
+        assertThat(top).extracting(DimensionTotals::getDimension).containsExactly(DimensionTotals.OTHER, DimensionTotals.OTHER);
+        assertThat(top).extracting(DimensionTotals::getClicks).containsExactly(5L, 3L);
+        assertThat(top).extracting(DimensionTotals::getFolded).containsExactly(false, true);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void sealedDaysComeFromRedisAndOnlyOpenDaysHitDatabase() {
+        UserClickDailyRollupRepository clicks = mock(UserClickDailyRollupRepository.class);
+        UserDimensionDailyRollupRepository dims = mock(UserDimensionDailyRollupRepository.class);
+        RedisTemplate<String, Object> redis = mock(RedisTemplate.class);
+        ValueOperations<String, Object> ops = mock(ValueOperations.class);
+        when(redis.opsForValue()).thenReturn(ops);
+
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        LocalDate start = today.minusDays(5);
+        LocalDate end = today.minusDays(2);
+        when(ops.multiGet(anyList())).thenAnswer(inv -> {
+            List<String> keys = inv.getArgument(0);
+            List<Object> out = new ArrayList<>();
+            for (String k : keys) {
+                LocalDate d = LocalDate.parse(k.substring(k.lastIndexOf(':') + 1));
+                SealedDayAnalyticsCache.DaySlice s = new SealedDayAnalyticsCache.DaySlice(d);
+                s.setClicks(3);
+                out.add(s);
+            }
+            return out;
+        });
+
+        SealedDayAnalyticsCache cache = new SealedDayAnalyticsCache(clicks, dims, mock(VisitorSketchService.class), redis, 120, 400);
+        List<SealedDayAnalyticsCache.DaySlice> slices = cache.slices("alice", start, end);
+
+        assertThat(slices).hasSize(4).allMatch(s -> s.getClicks() == 3);
+        verifyNoInteractions(clicks, dims);
+
+        cache.slices("alice", today, today);
+        verify(clicks).findTotals("alice", today, today);
+        verify(dims).findByUsernameAndDayBetween("alice", today, today);
+        verify(redis, never()).executePipelined(any(org.springframework.data.redis.core.SessionCallback.class));
+    }
+
+    @Test
+    void lateClickDuringLoadUnsealsTheStaleSlice() {
+        LocalDate day = LocalDate.now(ZoneOffset.UTC).minusDays(10);
+        String sliceKey = SealedDayAnalyticsCache.key("alice", day);
+        FakeRedis fake = new FakeRedis();
+        SealedDayAnalyticsCache cache = new SealedDayAnalyticsCache(fake.clicks, fake.dims, mock(VisitorSketchService.class), fake.redis, 120, 400);
+        // The worker's late click commits after the reader loaded the rollups but before it sealed the slice
+        when(fake.clicks.findTotals("alice", day, day)).thenAnswer(inv -> {
+            cache.onClick("alice", day);
+            return List.of();
+        });
+
+        cache.slices("alice", day, day);
+
+        var order = inOrder(fake.redis);
+        order.verify(fake.redis).delete(List.of(sliceKey));
+        order.verify(fake.redis).executePipelined(any(org.springframework.data.redis.core.SessionCallback.class));
+        order.verify(fake.redis).delete(List.of(sliceKey));
+    }
+
+    @Test
+    void rebuildForEveryoneDuringLoadUnsealsTheStaleSlice() {
+        LocalDate day = LocalDate.now(ZoneOffset.UTC).minusDays(10);
+        FakeRedis fake = new FakeRedis();
+        SealedDayAnalyticsCache cache = new SealedDayAnalyticsCache(fake.clicks, fake.dims, mock(VisitorSketchService.class), fake.redis, 120, 400);
+        when(fake.clicks.findTotals("alice", day, day)).thenAnswer(inv -> {
+            fake.generations.merge(SealedDayAnalyticsCache.GLOBAL_GENERATION, 1L, Long::sum);
+            return List.of();
+        });
+
+        cache.slices("alice", day, day);
+
+        verify(fake.redis).delete(List.of(SealedDayAnalyticsCache.key("alice", day)));
+    }
+
+    @Test
+    void quietLoadStaysSealed() {
+        LocalDate day = LocalDate.now(ZoneOffset.UTC).minusDays(10);
+        FakeRedis fake = new FakeRedis();
+        SealedDayAnalyticsCache cache = new SealedDayAnalyticsCache(fake.clicks, fake.dims, mock(VisitorSketchService.class), fake.redis, 120, 400);
+
+        cache.slices("alice", day, day);
+
+        verify(fake.redis).executePipelined(any(org.springframework.data.redis.core.SessionCallback.class));
+        verify(fake.redis, never()).delete(anyCollection());
+    }
+
+    /** Mocks whose Redis keeps generation counters, so evictions and reads can interleave. */
+    @SuppressWarnings("unchecked")
+    private static class FakeRedis {
+        final UserClickDailyRollupRepository clicks = mock(UserClickDailyRollupRepository.class);
+        final UserDimensionDailyRollupRepository dims = mock(UserDimensionDailyRollupRepository.class);
+        final RedisTemplate<String, Object> redis = mock(RedisTemplate.class);
+        final java.util.Map<String, Long> generations = new java.util.concurrent.ConcurrentHashMap<>();
+
+        FakeRedis() {
+            ValueOperations<String, Object> ops = mock(ValueOperations.class);
+            when(redis.opsForValue()).thenReturn(ops);
+            when(ops.multiGet(anyList())).thenAnswer(inv -> {
+                List<Object> out = new ArrayList<>();
+                for (Object ignored : (List<?>) inv.getArgument(0)) out.add(null);
+                return out;
+            });
+            RedisConnection connection = mock(RedisConnection.class);
+            RedisStringCommands strings = mock(RedisStringCommands.class);
+            when(connection.stringCommands()).thenReturn(strings);
+            when(connection.keyCommands()).thenReturn(mock(RedisKeyCommands.class));
+            when(strings.mGet(any(byte[][].class))).thenAnswer(inv -> {
+                List<byte[]> out = new ArrayList<>();
+                for (Object k : inv.getArguments()) {
+                    Long g = generations.get(new String((byte[]) k, StandardCharsets.UTF_8));
+                    out.add(g == null ? null : g.toString().getBytes(StandardCharsets.UTF_8));
+                }
+                return out;
+            });
+            when(strings.incr(any(byte[].class))).thenAnswer(inv ->
+                    generations.merge(new String((byte[]) inv.getArgument(0), StandardCharsets.UTF_8), 1L, Long::sum));
+            when(redis.execute(any(RedisCallback.class))).thenAnswer(inv ->
+                    ((RedisCallback<Object>) inv.getArgument(0)).doInRedis(connection));
+            when(redis.executePipelined(any(RedisCallback.class))).thenAnswer(inv -> {
+                ((RedisCallback<Object>) inv.getArgument(0)).doInRedis(connection);
+                return List.of();
+            });
+        }
+    }
+
+    @Test
+    void sliceSurvivesCacheSerializer() {
+        SealedDayAnalyticsCache.DaySlice slice = new SealedDayAnalyticsCache.DaySlice(LocalDate.of(2025, 3, 1));
+        slice.setClicks(7);
+        slice.add("country", "DE", 7, 2);
+        HyperLogLog sketch = new HyperLogLog();
+        sketch.add(HyperLogLog.hash("v1"));
+        slice.setSketch(sketch.toBytes());
+        slice.getSketches().computeIfAbsent("country", k -> new java.util.HashMap<>()).put("DE", sketch.toBytes());
+
+        var serializer = CacheConfig.cacheValueSerializer();
+        Object back = serializer.deserialize(serializer.serialize(slice));
+
+        assertThat(back).isInstanceOf(SealedDayAnalyticsCache.DaySlice.class);
+        SealedDayAnalyticsCache.DaySlice copy = (SealedDayAnalyticsCache.DaySlice) back;
+        assertThat(copy.getDay()).isEqualTo(slice.getDay());
+        assertThat(copy.getDimensions().get("country").get("DE")).containsExactly(7L, 2L);
+        assertThat(copy.getSketch()).isEqualTo(slice.getSketch());
+        assertThat(copy.getSketches().get("country").get("DE")).isEqualTo(sketch.toBytes());
+    }
+
+    @Test
+    void uniquesMergeSketchesAndCountDaysWithoutOne() {
+        HyperLogLog first = new HyperLogLog();
+        first.add(HyperLogLog.hash("a"));
+        first.add(HyperLogLog.hash("b"));
+        HyperLogLog second = new HyperLogLog();
+        second.add(HyperLogLog.hash("b"));
+        SealedDayAnalyticsCache.DaySlice d1 = new SealedDayAnalyticsCache.DaySlice(LocalDate.of(2025, 3, 1));
+        d1.setUniqueVisitors(2);
+        d1.setSketch(first.toBytes());
+        d1.add("country", "DE", 2, 2);
+        d1.getSketches().computeIfAbsent("country", k -> new java.util.HashMap<>()).put("DE", first.toBytes());
+        SealedDayAnalyticsCache.DaySlice d2 = new SealedDayAnalyticsCache.DaySlice(LocalDate.of(2025, 3, 2));
+        d2.setUniqueVisitors(1);
+        d2.setSketch(second.toBytes());
+        d2.add("country", "DE", 1, 1);
+        d2.getSketches().computeIfAbsent("country", k -> new java.util.HashMap<>()).put("DE", second.toBytes());
+        // Counted before sketches existed
+        SealedDayAnalyticsCache.DaySlice legacy = new SealedDayAnalyticsCache.DaySlice(LocalDate.of(2025, 2, 28));
+        legacy.setUniqueVisitors(4);
+        legacy.add("country", "DE", 3, 3);
+        legacy.add("country", "FR", 1, 1);
+
+        List<SealedDayAnalyticsCache.DaySlice> slices = List.of(legacy, d1, d2);
+
+        assertThat(SealedDayAnalyticsCache.uniques(slices).estimate()).isEqualTo(6L);
+        var byValue = SealedDayAnalyticsCache.uniquesByValue(slices, "country");
+        assertThat(byValue.get("DE").estimate()).isEqualTo(5L);
+        assertThat(byValue.get("FR").estimate()).isEqualTo(1L);
+    }
+}
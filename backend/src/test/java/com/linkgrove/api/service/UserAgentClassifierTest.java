@@ -0,0 +1,95 @@
+package com.linkgrove.api.service;
+
+import com.linkgrove.api.service.UserAgentClassifier.Classification;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserAgentClassifierTest {
+
+    private static final List<String> USER_AGENTS = Arrays.asList(
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.0.0 Safari/537.36",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.0.0 Safari/537.36 Edg/124.0.2478.51",
+            "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.4 Safari/605.1.15",
+            "Mozilla/5.0 (X11; Ubuntu; Linux x86_64; rv:125.0) Gecko/20100101 Firefox/125.0",
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 17_4 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.4 Mobile/15E148 Safari/604.1",
+            "Mozilla/5.0 (iPad; CPU OS 17_4 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) CriOS/124.0.6367.88 Mobile/15E148 Safari/604.1",
+            "Mozilla/5.0 (Linux; Android 14; Pixel 8) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.6367.82 Mobile Safari/537.36",
+            "Mozilla/5.0 (Linux; Android 13; SM-X710) AppleWebKit/537.36 (KHTML, like Gecko) SamsungBrowser/24.0 Chrome/117.0.0.0 Safari/537.36",
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 17_4 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Mobile/15E148 Instagram 329.0.3.29.120",
+            "Mozilla/5.0 (X11; CrOS x86_64 14541.0.0) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.0.0 Safari/537.36",
+            "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)",
+            "facebookexternalhit/1.1 (+http://www.facebook.com/externalhit_uatext.php)",
+            "curl/8.5.0",
+            "Mozilla/5.0 (compatible; SomeCrawler/1.0)",
+            "Mozilla/5.0 (Windows NT 6.1; Trident/7.0; rv:11.0) like Gecko",
+            "Mozilla/5.0 (PlayStation 5 3.11) AppleWebKit/605.1.15 (KHTML, like Gecko)",
+            "",
+            null);
+
+    private final UserAgentClassifier classifier = new UserAgentClassifier(100);
+
+    @Test
+    void deviceClassMatchesTheOriginalSubstringRules() {
+        for (String ua : USER_AGENTS) {
+            assertThat(classifier.classify(ua).device()).as(String.valueOf(ua)).isEqualTo(legacyDevice(ua));
+        }
+    }
+
+    @Test
+    void classifiesBrowserOsAndBot() {
+        assertThat(classify(0)).isEqualTo(new Classification("desktop", "chrome", "windows", null));
+        assertThat(classify(1)).isEqualTo(new Classification("desktop", "edge", "windows", null));
+        assertThat(classify(2)).isEqualTo(new Classification("desktop", "safari", "macos", null));
+        assertThat(classify(3)).isEqualTo(new Classification("desktop", "firefox", "linux", null));
+        assertThat(classify(4)).isEqualTo(new Classification("mobile", "safari", "ios", null));
+        assertThat(classify(5)).isEqualTo(new Classification("tablet", "chrome", "ios", null));
+        assertThat(classify(6)).isEqualTo(new Classification("mobile", "chrome", "android", null));
+        assertThat(classify(7)).isEqualTo(new Classification("mobile", "samsung", "android", null));
+        assertThat(classify(8)).isEqualTo(new Classification("mobile", "instagram", "ios", null));
+        assertThat(classify(9)).isEqualTo(new Classification("other", "chrome", "chromeos", null));
+        assertThat(classify(10).bot()).isEqualTo("google");
+        assertThat(classify(11).bot()).isEqualTo("facebook");
+        assertThat(classify(12)).isEqualTo(new Classification("other", "other", "other", "http-client"));
+        assertThat(classify(13).bot()).isEqualTo("other");
+        assertThat(classify(14).browser()).isEqualTo("ie");
+        assertThat(classify(16)).isEqualTo(new Classification("other", "other", "other", null));
+        assertThat(classify(17).isBot()).isFalse();
+    }
+
+    @Test
+    void genericBotKeywordsMustEndAToken() {
+        assertThat(classifier.classify("Mozilla/5.0 (compatible; AhrefsBot/7.0; +http://ahrefs.com/robot/)").bot()).isEqualTo("other");
+        assertThat(classifier.classify("Mozilla/5.0 (compatible; bot)").bot()).isEqualTo("other");
+        assertThat(classifier.classify("Mozilla/5.0 (Linux; Android 9; CUBOT X19 Build/PPR1.180610.011) AppleWebKit/537.36 " +
+                "(KHTML, like Gecko) Chrome/124.0.6367.82 Mobile Safari/537.36"))
+                .isEqualTo(new Classification("mobile", "chrome", "android", null));
+        assertThat(classifier.classify("Mozilla/5.0 (Linux; Android 10; CUBOT_NOTE_7) AppleWebKit/537.36 " +
+                "(KHTML, like Gecko) Chrome/120.0.0.0 Mobile Safari/537.36").isBot()).isFalse();
+    }
+
+    @Test
+    void cachedAndUncachedAnswersAgree() {
+        for (String ua : USER_AGENTS) {
+            Classification first = classifier.classify(ua);
+            assertThat(classifier.classify(ua)).isSameAs(first);
+            assertThat(classifier.classifyUncached(ua)).isEqualTo(first);
+        }
+    }
+
+    private Classification classify(int i) {
+        return classifier.classify(USER_AGENTS.get(i));
+    }
+
+    private static String legacyDevice(String ua) {
+        if (ua == null) return "other";
+        String s = ua.toLowerCase();
+        if (s.contains("tablet") || s.contains("ipad")) return "tablet";
+        if (s.contains("mobi") || s.contains("iphone") || s.contains("android")) return "mobile";
+        if (s.contains("windows") || s.contains("macintosh") || s.contains("linux")) return "desktop";
+        return "other";
+    }
+}
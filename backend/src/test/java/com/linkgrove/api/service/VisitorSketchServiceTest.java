@@ -0,0 +1,92 @@
+package com.linkgrove.api.service;
+
+import com.linkgrove.api.repository.DimensionTotals;
+import com.linkgrove.api.util.HyperLogLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class VisitorSketchServiceTest {
+
+    private static final LocalDate DAY = LocalDate.of(2026, 3, 1);
+
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final VisitorSketchService service = new VisitorSketchService(jdbc, true);
+
+    @AfterEach
+    void clear() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.getSynchronizations().forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void foldedRowMergesTheSketchesOfEveryUnlistedValue() {
+        // "b" visited two folded values; a real value labelled like the folded row is estimated on its own
+        Map<String, VisitorSketchService.Merged> byValue = Map.of(
+                DimensionTotals.OTHER, merged(0, "a"),
+                "newsletter", merged(0, "b", "c"),
+                "twitter", merged(2, "b"));
+        List<DimensionTotals> rows = List.of(
+                new SealedDayAnalyticsCache.Row(null, DimensionTotals.OTHER, 5L, 1L),
+                SealedDayAnalyticsCache.Row.folded(3));
+
+        VisitorSketchService.Estimates estimates = VisitorSketchService.estimates(rows, byValue);
+
+        assertThat(estimates.of(rows.get(0))).isEqualTo(1L);
+        assertThat(estimates.of(rows.get(1))).isEqualTo(4L);
+        assertThat(VisitorSketchService.Estimates.NONE.of(rows.get(1))).isNull();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rowIsRewrittenOncePerTransaction() {
+        storedRow(null, 3L);
+        TransactionSynchronizationManager.initSynchronization();
+
+        service.add(VisitorSketchService.Table.USER, HyperLogLog.hash("a"), "alice", DAY);
+        service.add(VisitorSketchService.Table.USER, HyperLogLog.hash("b"), "alice", DAY);
+        service.add(VisitorSketchService.Table.USER, HyperLogLog.hash("c"), "alice", DAY);
+        verifyNoInteractions(jdbc);
+        TransactionSynchronizationManager.getSynchronizations().forEach(s -> s.beforeCommit(false));
+
+        verify(jdbc, times(1)).query(contains("FOR UPDATE"), any(RowMapper.class), eq("alice"), eq(DAY));
+        verify(jdbc, times(1)).update(startsWith("UPDATE user_click_daily_rollup SET uv_sketch"),
+                argThat((byte[] b) -> HyperLogLog.fromBytes(b).estimate() == 3), eq("alice"), eq(DAY));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rowCountedBeforeSketchesExistedIsLeftWithoutOne() {
+        storedRow(null, 40L);
+
+        service.add(VisitorSketchService.Table.USER, HyperLogLog.hash("late"), "alice", DAY);
+
+        verify(jdbc).query(contains("FOR UPDATE"), any(RowMapper.class), eq("alice"), eq(DAY));
+        verify(jdbc, never()).update(anyString(), any(Object[].class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void storedRow(byte[] sketch, long uniqueVisitors) {
+        when(jdbc.query(contains("FOR UPDATE"), any(RowMapper.class), any(Object[].class)))
+                .thenReturn(List.<Object[]>of(new Object[]{sketch, uniqueVisitors}));
+    }
+
+    private static VisitorSketchService.Merged merged(long unsketched, String... visitors) {
+        HyperLogLog sketch = new HyperLogLog();
+        for (String v : visitors) sketch.add(HyperLogLog.hash(v));
+        return new VisitorSketchService.Merged(sketch, unsketched);
+    }
+}
@@ -0,0 +1,57 @@
+package com.linkgrove.api.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    void lowerPriorityShareIsShedFirst() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100);
+        List<AdaptiveConcurrencyLimiter.Token> held = new ArrayList<>();
+        for (int i = 0; i < 6; i++) held.add(limiter.tryAcquire(1.0));
+
+        assertNull(limiter.tryAcquire(0.6), "public share (6 of 10) is full");
+        assertNotNull(limiter.tryAcquire(0.8));
+        assertNotNull(limiter.tryAcquire(1.0));
+        assertEquals(8, limiter.getInFlight());
+        held.forEach(AdaptiveConcurrencyLimiter.Token::onIgnore);
+        assertEquals(2, limiter.getInFlight());
+    }
+
+    @Test
+    void tokenReleasesOnlyOnce() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100);
+        AdaptiveConcurrencyLimiter.Token token = limiter.tryAcquire(1.0);
+        token.onSuccess();
+        token.onDropped();
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    void droppedRequestsBackOffToMinimum() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(100, 20, 1000);
+        for (int i = 0; i < 50; i++) limiter.tryAcquire(1.0).onDropped();
+        assertEquals(20, limiter.getLimit());
+    }
+
+    @Test
+    void growsWhileSaturatedAndLatencyFlat() {
+        // Every clock read is 1ms later, so each request in a round takes the same time
+        AtomicLong clock = new AtomicLong();
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 1000, () -> clock.addAndGet(1_000_000));
+        for (int round = 0; round < 50; round++) {
+            List<AdaptiveConcurrencyLimiter.Token> batch = new ArrayList<>();
+            AdaptiveConcurrencyLimiter.Token t;
+            while ((t = limiter.tryAcquire(1.0)) != null) batch.add(t);
+            batch.forEach(AdaptiveConcurrencyLimiter.Token::onSuccess);
+        }
+        assertTrue(limiter.getLimit() > 10, "limit should grow, was " + limiter.getLimit());
+    }
+}
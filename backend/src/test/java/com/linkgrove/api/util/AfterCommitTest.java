@@ -0,0 +1,42 @@
+package com.linkgrove.api.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AfterCommitTest {
+
+    @AfterEach
+    void clear() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void runsAtOnceOutsideATransaction() {
+        List<String> ran = new ArrayList<>();
+
+        AfterCommit.run(() -> ran.add("now"));
+
+        assertThat(ran).containsExactly("now");
+    }
+
+    @Test
+    void waitsForTheCommit() {
+        List<String> ran = new ArrayList<>();
+        TransactionSynchronizationManager.initSynchronization();
+
+        AfterCommit.run(() -> ran.add("committed"));
+        assertThat(ran).isEmpty();
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertThat(ran).containsExactly("committed");
+    }
+}
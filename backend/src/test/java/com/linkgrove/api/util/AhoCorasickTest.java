@@ -0,0 +1,36 @@
+package com.linkgrove.api.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AhoCorasickTest {
+
+    @Test
+    void findsOverlappingAndNestedKeywordsIgnoringCase() {
+        AhoCorasick matcher = new AhoCorasick(List.of("he", "she", "his", "hers", "bot"));
+
+        assertThat(matcher.match("uSHErs").stream().toArray()).containsExactly(0, 1, 3);
+        assertThat(matcher.match("Googlebot/2.1").stream().toArray()).containsExactly(4);
+        assertThat(matcher.match("ahishers").stream().toArray()).containsExactly(0, 1, 2, 3);
+        assertThat(matcher.match(null).isEmpty()).isTrue();
+    }
+
+    @Test
+    void nonAsciiCharactersBreakAMatch() {
+        AhoCorasick matcher = new AhoCorasick(List.of("linux"));
+
+        assertThat(matcher.match("X11; Linux x86_64").get(0)).isTrue();
+        assertThat(matcher.match("Linüx").isEmpty()).isTrue();
+        assertThat(matcher.match("üLINUXü").get(0)).isTrue();
+    }
+
+    @Test
+    void rejectsKeywordsItCannotMatch() {
+        assertThatThrownBy(() -> new AhoCorasick(List.of("ok", ""))).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new AhoCorasick(List.of("café"))).isInstanceOf(IllegalArgumentException.class);
+    }
+}
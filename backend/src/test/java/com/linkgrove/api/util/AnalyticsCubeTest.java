@@ -0,0 +1,69 @@
+package com.linkgrove.api.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnalyticsCubeTest {
+
+    private static final LocalDate D0 = LocalDate.of(2025, 1, 1);
+
+    private AnalyticsCube cube() {
+        return AnalyticsCube.builder(D0, 5)
+                .day(D0, 10, 8)
+                .day(D0.plusDays(2), 4, 4)
+                .value("referrer", D0, "google.com", 6, 5)
+                .value("referrer", D0, "t.co", 4, 3)
+                .value("referrer", D0.plusDays(2), "t.co", 3, 3)
+                .value("referrer", D0.plusDays(2), "bing.com", 1, 1)
+                .build();
+    }
+
+    @Test
+    void dailyTotalsByOffset() {
+        AnalyticsCube cube = cube();
+        assertEquals(D0.plusDays(4), cube.lastDay());
+        assertEquals(10, cube.clicks(D0));
+        assertEquals(0, cube.clicks(D0.plusDays(1)));
+        assertEquals(4, cube.uniqueVisitors(D0.plusDays(2)));
+    }
+
+    @Test
+    void topOrdersByClicksThenValueAndFoldsTail() {
+        List<AnalyticsCube.Total> all = cube().top("referrer", D0, D0.plusDays(4), null, Integer.MAX_VALUE);
+        assertEquals(List.of(
+                new AnalyticsCube.Total("t.co", 7, 6L),
+                new AnalyticsCube.Total("google.com", 6, 5L),
+                new AnalyticsCube.Total("bing.com", 1, 1L)), all);
+
+        List<AnalyticsCube.Total> top1 = cube().top("referrer", D0.plusDays(1), D0.plusDays(4), null, 1);
+        assertEquals(List.of(new AnalyticsCube.Total("t.co", 3, 3L), new AnalyticsCube.Total(null, 1, null)), top1);
+    }
+
+    @Test
+    void overlayAddsKnownAndNewValues() {
+        Map<String, long[]> today = Map.of("google.com", new long[]{1, 1}, "duckduckgo.com", new long[]{7, 2});
+        List<AnalyticsCube.Total> all = cube().top("referrer", D0, D0.plusDays(4), today, Integer.MAX_VALUE);
+        // Three-way tie on clicks: broken alphabetically across dictionary and overlay values
+        assertEquals(List.of(
+                new AnalyticsCube.Total("duckduckgo.com", 7, 2L),
+                new AnalyticsCube.Total("google.com", 7, 6L),
+                new AnalyticsCube.Total("t.co", 7, 6L),
+                new AnalyticsCube.Total("bing.com", 1, 1L)), all);
+
+        // Range entirely after the cube: only the overlay counts
+        List<AnalyticsCube.Total> open = cube().top("referrer", D0.plusDays(5), D0.plusDays(4), today, Integer.MAX_VALUE);
+        assertEquals(List.of(new AnalyticsCube.Total("duckduckgo.com", 7, 2L), new AnalyticsCube.Total("google.com", 1, 1L)), open);
+    }
+
+    @Test
+    void rankFallsBackWhenPackedKeysWouldOverflow() {
+        long[] clicks = {Long.MAX_VALUE / 2, 5, Long.MAX_VALUE / 2, 0};
+        int[] order = AnalyticsCube.rankByClicks(clicks, new int[]{0, 1, 2, 3});
+        assertArrayEquals(new int[]{0, 2, 1}, order);
+    }
+}
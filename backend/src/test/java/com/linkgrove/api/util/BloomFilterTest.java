@@ -0,0 +1,33 @@
+package com.linkgrove.api.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloomFilterTest {
+
+    @Test
+    void neverReportsAnInsertedKeyAsMissing() {
+        BloomFilter filter = BloomFilter.sized(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) filter.put("alias-" + i);
+        for (int i = 0; i < 10_000; i++) assertTrue(filter.mightContain("alias-" + i));
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTarget() {
+        BloomFilter filter = BloomFilter.sized(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) filter.put("alias-" + i);
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain("other-" + i)) falsePositives++;
+        }
+        assertTrue(falsePositives < 300, "false positives: " + falsePositives);
+    }
+
+    @Test
+    void indexesAreStableAcrossInstances() {
+        BloomFilter a = new BloomFilter(1 << 20, 7);
+        BloomFilter b = new BloomFilter(1 << 20, 7);
+        assertArrayEquals(a.indexes("promo"), b.indexes("promo"));
+    }
+}
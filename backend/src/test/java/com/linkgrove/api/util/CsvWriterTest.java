@@ -0,0 +1,53 @@
+package com.linkgrove.api.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvWriterTest {
+
+    @Test
+    void quotesOnlyWhenNeeded() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CsvWriter csv = new CsvWriter(out, 64)) {
+            csv.header("a", "b", "c");
+            csv.field("plain").field("x,y").field("say \"hi\"").endRow();
+            csv.field((String) null).field("line\nbreak").field(Boolean.TRUE).endRow();
+        }
+        assertEquals("a,b,c\nplain,\"x,y\",\"say \"\"hi\"\"\"\n,\"line\nbreak\",true\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void encodesUtf8AndNumbersAcrossBufferBoundaries() throws Exception {
+        String text = "café – 東京 😀 \uD800";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StringBuilder expected = new StringBuilder();
+        try (CsvWriter csv = new CsvWriter(out, 64)) {
+            for (int i = 0; i < 200; i++) {
+                long n = i % 2 == 0 ? Long.MAX_VALUE - i : -i * 1_000_003L;
+                csv.field(n).field(text).field(Long.MIN_VALUE).field(0).endRow();
+                expected.append(n).append(',').append(text).append(',').append(Long.MIN_VALUE).append(",0\n");
+            }
+            assertEquals(200, csv.rows());
+        }
+        assertArrayEquals(expected.toString().getBytes(StandardCharsets.UTF_8), out.toByteArray());
+    }
+
+    @Test
+    void gzipRoundTrip() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CsvWriter csv = CsvWriter.open(out, true)) {
+            csv.header("id", "title");
+            for (int i = 0; i < 5000; i++) csv.field(i).field("link " + i).endRow();
+        }
+        String csv = new String(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())).readAllBytes(), StandardCharsets.UTF_8);
+        assertTrue(csv.startsWith("id,title\n0,link 0\n"));
+        assertTrue(csv.endsWith("4999,link 4999\n"));
+        assertEquals(5001, csv.lines().count());
+    }
+}
@@ -0,0 +1,66 @@
+package com.linkgrove.api.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HierarchicalTimingWheelTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+
+    @Test
+    void firesAtTickRoundedDeadlineNeverEarly() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(1000, 6, 4, T0);
+        List<String> fired = new ArrayList<>();
+        wheel.schedule(T0 + 2500, "a", fired::add);
+
+        wheel.advance(T0 + 2999, fired::add);
+        assertTrue(fired.isEmpty());
+        wheel.advance(T0 + 3000, fired::add);
+        assertEquals(List.of("a"), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cascadesAcrossLevelsAndOverflow() {
+        HierarchicalTimingWheel<Long> wheel = new HierarchicalTimingWheel<>(1000, 2, 2, T0);
+        List<Long> fired = new ArrayList<>();
+        // 4 slots x 2 levels covers 16 ticks; 40s goes to overflow
+        long[] offsets = {1_000, 5_000, 15_000, 40_000};
+        for (long off : offsets) wheel.schedule(T0 + off, off, fired::add);
+
+        for (long now = T0; now <= T0 + 45_000; now += 1000) {
+            int before = fired.size();
+            wheel.advance(now, fired::add);
+            for (int i = before; i < fired.size(); i++) {
+                assertEquals(T0 + fired.get(i), now, "fired at wrong tick");
+            }
+        }
+        assertEquals(List.of(1_000L, 5_000L, 15_000L, 40_000L), fired);
+    }
+
+    @Test
+    void cancelledTimersDoNotFire() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(1000, 6, 4, T0);
+        List<String> fired = new ArrayList<>();
+        var t = wheel.schedule(T0 + 70_000, "gone", fired::add);
+        wheel.schedule(T0 + 70_000, "kept", fired::add);
+
+        assertTrue(wheel.cancel(t));
+        assertFalse(wheel.cancel(t));
+        wheel.advance(T0 + 120_000, fired::add);
+        assertEquals(List.of("kept"), fired);
+    }
+
+    @Test
+    void pastDeadlinesExpireImmediately() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(1000, 6, 4, T0);
+        List<String> fired = new ArrayList<>();
+        wheel.schedule(T0 - 5000, "late", fired::add);
+        assertEquals(List.of("late"), fired);
+        assertEquals(0, wheel.size());
+    }
+}
@@ -0,0 +1,54 @@
+package com.linkgrove.api.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HyperLogLogTest {
+
+    @Test
+    void smallSetsStayExactAndSparse() {
+        HyperLogLog hll = new HyperLogLog();
+        for (int i = 0; i < 100; i++) hll.add(HyperLogLog.hash("s:visitor-" + i));
+        assertFalse(hll.add(HyperLogLog.hash("s:visitor-7")), "re-adding a visitor changes nothing");
+        assertEquals(100, hll.estimate(), 1);
+        assertTrue(hll.toBytes().length <= 1 + 3 * 100);
+    }
+
+    @Test
+    void largeSetsWithinErrorAfterSwitchingToDense() {
+        HyperLogLog hll = new HyperLogLog();
+        for (int i = 0; i < 200_000; i++) hll.add(HyperLogLog.hash("i:10.0." + i + ":u:" + (i % 17)));
+        assertEquals(1 + HyperLogLog.M, hll.toBytes().length);
+        assertEquals(200_000, hll.estimate(), 200_000 * 0.05);
+    }
+
+    @Test
+    void mergingDailySketchesCountsReturningVisitorsOnce() {
+        // 30 days; 500 regulars come every day, plus 100 one-off visitors per day
+        HyperLogLog range = new HyperLogLog();
+        long summedDaily = 0;
+        for (int day = 0; day < 30; day++) {
+            HyperLogLog daily = new HyperLogLog();
+            for (int v = 0; v < 500; v++) daily.add(HyperLogLog.hash("s:regular-" + v));
+            for (int v = 0; v < 100; v++) daily.add(HyperLogLog.hash("s:once-" + day + "-" + v));
+            summedDaily += daily.estimate();
+            range.merge(HyperLogLog.fromBytes(daily.toBytes()));
+        }
+        assertTrue(summedDaily > 17_000);
+        assertEquals(3_500, range.estimate(), 3_500 * 0.05);
+    }
+
+    @Test
+    void serializationRoundTrips() {
+        HyperLogLog sparse = new HyperLogLog();
+        HyperLogLog dense = new HyperLogLog();
+        for (int i = 0; i < 50; i++) sparse.add(HyperLogLog.hash("a" + i));
+        for (int i = 0; i < 50_000; i++) dense.add(HyperLogLog.hash("b" + i));
+        assertArrayEquals(sparse.toBytes(), HyperLogLog.fromBytes(sparse.toBytes()).toBytes());
+        assertArrayEquals(dense.toBytes(), HyperLogLog.fromBytes(dense.toBytes()).toBytes());
+        assertTrue(HyperLogLog.fromBytes(null).isEmpty());
+        assertEquals(0, HyperLogLog.fromBytes(new byte[0]).estimate());
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[]{9, 1}));
+    }
+}
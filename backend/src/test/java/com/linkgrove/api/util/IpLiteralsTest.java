@@ -0,0 +1,38 @@
+package com.linkgrove.api.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IpLiteralsTest {
+
+    @Test
+    void parsesIpv4WithOptionalPort() throws Exception {
+        assertThat(IpLiterals.parse("203.0.113.7")).isEqualTo(InetAddress.getByName("203.0.113.7"));
+        assertThat(IpLiterals.parse(" 10.0.0.1:8443 ")).isEqualTo(InetAddress.getByName("10.0.0.1"));
+        assertThat(IpLiterals.toBytes("0.0.0.0")).hasSize(4);
+    }
+
+    @Test
+    void parsesIpv6FormsAndUnmapsIpv4() throws Exception {
+        assertThat(IpLiterals.parse("2001:db8::1")).isEqualTo(InetAddress.getByName("2001:db8::1"));
+        assertThat(IpLiterals.parse("[2001:db8::1]:443")).isEqualTo(InetAddress.getByName("2001:db8::1"));
+        assertThat(IpLiterals.parse("::")).isEqualTo(InetAddress.getByName("::"));
+        assertThat(IpLiterals.parse("fe80::")).isEqualTo(InetAddress.getByName("fe80::"));
+        assertThat(IpLiterals.parse("1:2:3:4:5:6:7:8")).isEqualTo(InetAddress.getByName("1:2:3:4:5:6:7:8"));
+        assertThat(IpLiterals.parse("64:ff9b::192.0.2.33")).isEqualTo(InetAddress.getByName("64:ff9b::c000:221"));
+        assertThat(IpLiterals.toBytes("::ffff:198.51.100.4")).containsExactly(198, 51, 100, 4);
+    }
+
+    @Test
+    void rejectsAnythingThatIsNotALiteral() {
+        for (String bad : new String[]{
+                null, "", "localhost", "example.com", "1.2.3", "1.2.3.4.5", "256.1.1.1", "01.2.3.4",
+                "1.2.3.4:99999", "1.2.3.4, 5.6.7.8", "1:2:3:4:5:6:7:8:9", "1::2::3", ":1", "1:", "12345::",
+                "fe80::1%eth0", "[::1", "::1]", "1.2.3.-4", "0x7f.0.0.1"}) {
+            assertThat(IpLiterals.toBytes(bad)).as(String.valueOf(bad)).isNull();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.linkgrove.api.util;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PublicSuffixListTest {
+
+    private static PublicSuffixList bundled;
+
+    @BeforeAll
+    static void loadBundledList() throws Exception {
+        try (InputStream in = PublicSuffixListTest.class.getClassLoader().getResourceAsStream("publicsuffix/public_suffix_list.dat")) {
+            bundled = PublicSuffixList.load(in);
+        }
+    }
+
+    @Test
+    void reducesHostsToTheirRegistrableDomain() {
+        assertThat(bundled.ruleCount()).isGreaterThan(5000);
+        assertThat(bundled.registrableDomain("m.facebook.com")).isEqualTo("facebook.com");
+        assertThat(bundled.registrableDomain("l.facebook.com")).isEqualTo("facebook.com");
+        assertThat(bundled.registrableDomain("facebook.com")).isEqualTo("facebook.com");
+        assertThat(bundled.registrableDomain("news.bbc.co.uk")).isEqualTo("bbc.co.uk");
+        assertThat(bundled.registrableDomain("alice.github.io")).isEqualTo("alice.github.io");
+        assertThat(bundled.registrableDomain("a.b.example.unknowntld")).isEqualTo("example.unknowntld");
+        assertThat(bundled.registrableDomain("www.xn--55qx5d.cn")).isEqualTo("www.xn--55qx5d.cn");
+        assertThat(bundled.registrableDomain("localhost")).isNull();
+        assertThat(bundled.registrableDomain("co.uk")).isNull();
+        assertThat(bundled.registrableDomain("github.io")).isNull();
+    }
+
+    @Test
+    void appliesWildcardAndExceptionRules() throws Exception {
+        PublicSuffixList list = PublicSuffixList.load(new ByteArrayInputStream((
+                "// comment\n\nck\n*.ck\n!www.ck\nuk\nco.uk\n").getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(list.registrableDomain("a.b.ck")).isEqualTo("a.b.ck");
+        assertThat(list.registrableDomain("x.a.b.ck")).isEqualTo("a.b.ck");
+        assertThat(list.registrableDomain("b.ck")).isNull();
+        assertThat(list.registrableDomain("www.ck")).isEqualTo("www.ck");
+        assertThat(list.registrableDomain("foo.www.ck")).isEqualTo("www.ck");
+        assertThat(list.registrableDomain("shop.example.co.uk")).isEqualTo("example.co.uk");
+    }
+}
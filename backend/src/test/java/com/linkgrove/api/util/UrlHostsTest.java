@@ -0,0 +1,37 @@
+package com.linkgrove.api.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UrlHostsTest {
+
+    @Test
+    void agreesWithUriOnWellFormedUrls() {
+        for (String url : new String[]{
+                "https://www.example.com/path?q=1#frag", "http://Example.COM", "https://user:pw@host.example.org:8443/x",
+                "https://example.com?x=1", "https://203.0.113.7:80/", "http://[2001:DB8::1]:8080/a",
+                "android-app://com.google.android.gm/", "//cdn.example.net/lib.js"}) {
+            assertThat(UrlHosts.host(url)).as(url).isEqualTo(URI.create(url).getHost().toLowerCase());
+        }
+    }
+
+    @Test
+    void returnsNullInsteadOfThrowing() {
+        for (String bad : new String[]{
+                null, "", "   ", "example.com/path", "not a url", "https://", "https:///path", "https://exa mple.com/",
+                "https://example.com:99x/", "https://ex..ample.com/", "https://.example.com/", "ht tp://example.com",
+                "https://exämple.com/", "https://[::1/", "1https://example.com"}) {
+            assertThat(UrlHosts.host(bad)).as(String.valueOf(bad)).isNull();
+        }
+    }
+
+    @Test
+    void dropsTheTrailingDotAndKnowsHttp() {
+        assertThat(UrlHosts.host("https://example.com./")).isEqualTo("example.com");
+        assertThat(UrlHosts.isHttp(" HTTPS://example.com")).isTrue();
+        assertThat(UrlHosts.isHttp("android-app://com.google.android.gm")).isFalse();
+    }
+}
@@ -0,0 +1,148 @@
+package com.linkgrove.api.worker;
+
+import com.linkgrove.api.event.LinkClickEvent;
+import com.linkgrove.api.repository.LinkClickDailyAggregateRepository;
+import com.linkgrove.api.repository.LinkRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.CacheManager;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AnalyticsWorkerBatchTest {
+
+    @Mock LinkRepository linkRepository;
+    @Mock LinkClickDailyAggregateRepository aggregateRepository;
+    @Mock com.linkgrove.api.repository.LinkReferrerDailyAggregateRepository referrerAggregateRepository;
+    @Mock com.linkgrove.api.repository.LinkDeviceDailyAggregateRepository deviceAggregateRepository;
+    @Mock org.springframework.data.redis.core.StringRedisTemplate redisTemplate;
+    @Mock com.linkgrove.api.service.WebhookService webhookService;
+    @Mock com.linkgrove.api.repository.LinkVariantDailyAggregateRepository variantAggregateRepository;
+    @Mock com.linkgrove.api.repository.LinkGeoDailyAggregateRepository geoAggregateRepository;
+    @Mock com.linkgrove.api.service.ClickNormalizer clickNormalizer;
+    @Mock com.linkgrove.api.repository.LinkSourceDailyAggregateRepository sourceAggregateRepository;
+    @Mock com.linkgrove.api.repository.LinkBrowserDailyAggregateRepository browserAggregateRepository;
+    @Mock com.linkgrove.api.repository.LinkOsDailyAggregateRepository osAggregateRepository;
+    @Mock com.linkgrove.api.repository.LinkBotDailyAggregateRepository botAggregateRepository;
+    @Mock com.linkgrove.api.repository.UserClickDailyRollupRepository clickRollupRepository;
+    @Mock com.linkgrove.api.repository.UserDimensionDailyRollupRepository dimensionRollupRepository;
+    @Mock com.linkgrove.api.service.SealedDayAnalyticsCache sealedDayCache;
+    @Mock com.linkgrove.api.service.VisitorSketchService visitorSketches;
+    @Mock com.linkgrove.api.service.RealtimeAnalyticsService realtimeAnalytics;
+    @Mock com.linkgrove.api.service.LiveClickService liveClicks;
+    @Mock com.linkgrove.api.eventstore.ClickEventStore clickStore;
+    @Mock CacheManager cacheManager;
+
+    @InjectMocks AnalyticsWorker worker;
+
+    @Test
+    void coalescesLinkCountsPerBatchAndSkipsMissingLinks() {
+        Instant at = Instant.parse("2026-03-01T10:00:00Z");
+        when(linkRepository.findExistingIds(anyCollection())).thenReturn(List.of(1L, 2L));
+        when(clickNormalizer.classifyUserAgent(any())).thenReturn(
+                new com.linkgrove.api.service.UserAgentClassifier.Classification("desktop", "firefox", "linux", null));
+
+        worker.processLinkClickBatch(List.of(
+                click(1L, at), click(1L, at), click(2L, at), click(1L, at),
+                click(3L, at),
+                click(null, at)));
+
+        verify(linkRepository).incrementClickCount(eq(1L), eq(3L), any());
+        verify(linkRepository).incrementClickCount(eq(2L), eq(1L), any());
+        verify(linkRepository, never()).incrementClickCount(eq(3L), anyLong(), any());
+        LocalDate day = at.atZone(ZoneOffset.UTC).toLocalDate();
+        verify(aggregateRepository).upsertAdd("alice", 1L, day, 3L, 0L);
+        verify(aggregateRepository).upsertAdd("alice", 2L, day, 1L, 0L);
+        verify(clickRollupRepository).upsertAdd("alice", day, 4L, 0L);
+        verify(deviceAggregateRepository).upsertAdd("alice", 1L, day, "desktop", 3L, 0L);
+        verify(dimensionRollupRepository).upsertAdd("alice", com.linkgrove.api.model.UserDimensionDailyRollup.DEVICE, day, "desktop", 4L, 0L);
+        verify(cacheManager).getCache("analytics");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void writesEachAggregateRowOncePerBatch() {
+        Instant at = Instant.parse("2026-03-01T10:00:00Z");
+        when(linkRepository.findExistingIds(anyCollection())).thenReturn(List.of(1L));
+        when(clickNormalizer.classifyUserAgent(any())).thenReturn(
+                new com.linkgrove.api.service.UserAgentClassifier.Classification("desktop", "firefox", "linux", null));
+        when(clickNormalizer.deriveVisitorId(any())).thenReturn("visitor-1", "visitor-1", "visitor-2");
+        org.springframework.data.redis.core.SetOperations<String, String> sets = org.mockito.Mockito.mock(org.springframework.data.redis.core.SetOperations.class);
+        when(redisTemplate.opsForSet()).thenReturn(sets);
+        when(sets.add(any(), eq("visitor-1"))).thenReturn(1L, 1L, 1L, 1L, 0L);
+        when(sets.add(any(), eq("visitor-2"))).thenReturn(1L);
+
+        worker.processLinkClickBatch(List.of(click(1L, at), click(1L, at), click(1L, at)));
+
+        LocalDate day = at.atZone(ZoneOffset.UTC).toLocalDate();
+        verify(aggregateRepository).upsertAdd("alice", 1L, day, 3L, 2L);
+        verify(clickRollupRepository).upsertAdd("alice", day, 3L, 2L);
+        verify(browserAggregateRepository).upsertAdd("alice", 1L, day, "firefox", 3L, 2L);
+        verify(osAggregateRepository).upsertAdd("alice", 1L, day, "linux", 3L, 2L);
+        verify(botAggregateRepository, never()).upsertAdd(any(), any(), any(), any(), anyLong(), anyLong());
+        verify(visitorSketches, times(2)).add(eq(com.linkgrove.api.service.VisitorSketchService.Table.LINK_BROWSER), anyLong(),
+                eq("alice"), eq(1L), eq(day), eq("firefox"));
+    }
+
+    @Test
+    void emptyBatchTouchesNothing() {
+        worker.processLinkClickBatch(List.of(click(null, Instant.now())));
+
+        verify(linkRepository, never()).findExistingIds(anyCollection());
+        verify(linkRepository, never()).incrementClickCount(any(), anyLong(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rolledBackBatchForgetsTheVisitorsItMarkedSeen() {
+        Instant at = Instant.parse("2026-03-01T10:00:00Z");
+        when(linkRepository.findExistingIds(anyCollection())).thenReturn(List.of(1L));
+        when(clickNormalizer.classifyUserAgent(any())).thenReturn(
+                new com.linkgrove.api.service.UserAgentClassifier.Classification("desktop", "firefox", "linux", null));
+        when(clickNormalizer.deriveVisitorId(any())).thenReturn("visitor-1");
+        org.springframework.data.redis.core.SetOperations<String, String> sets = org.mockito.Mockito.mock(org.springframework.data.redis.core.SetOperations.class);
+        when(redisTemplate.opsForSet()).thenReturn(sets);
+        when(sets.add(any(), any())).thenReturn(1L);
+
+        org.springframework.transaction.support.TransactionSynchronizationManager.initSynchronization();
+        try {
+            worker.processLinkClickBatch(List.of(click(1L, at)));
+            for (var sync : org.springframework.transaction.support.TransactionSynchronizationManager.getSynchronizations()) {
+                sync.afterCompletion(org.springframework.transaction.support.TransactionSynchronization.STATUS_ROLLED_BACK);
+            }
+        } finally {
+            org.springframework.transaction.support.TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        var callback = org.mockito.ArgumentCaptor.forClass(org.springframework.data.redis.core.RedisCallback.class);
+        verify(redisTemplate).executePipelined(callback.capture());
+        var connection = org.mockito.Mockito.mock(org.springframework.data.redis.connection.RedisConnection.class);
+        var setCommands = org.mockito.Mockito.mock(org.springframework.data.redis.connection.RedisSetCommands.class);
+        when(connection.setCommands()).thenReturn(setCommands);
+        callback.getValue().doInRedis(connection);
+        LocalDate day = at.atZone(ZoneOffset.UTC).toLocalDate();
+        // The link's, device's, browser's and OS's unique sets
+        verify(setCommands, times(4)).sRem(any(byte[].class), eq("visitor-1".getBytes(java.nio.charset.StandardCharsets.UTF_8)));
+        verify(setCommands).sRem(eq(("uv:alice:1:" + day).getBytes(java.nio.charset.StandardCharsets.UTF_8)), any(byte[].class));
+    }
+
+    private static LinkClickEvent click(Long linkId, Instant at) {
+        return LinkClickEvent.builder().linkId(linkId).username("alice").clickedAt(at).build();
+    }
+}
@@ -0,0 +1,191 @@
+package com.linkgrove.api.worker;
+
+import com.linkgrove.api.config.RabbitMQConfig;
+import com.linkgrove.api.event.LinkClickEvent;
+import com.linkgrove.api.service.ClickDlqReprocessor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ClickStreamConsumerTest {
+
+    private final AnalyticsWorker worker = mock(AnalyticsWorker.class);
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final RabbitTemplate parking = mock(RabbitTemplate.class);
+    private ClickStreamConsumer consumer;
+
+    @BeforeEach
+    void setUp() {
+        PlatformTransactionManager tx = mock(PlatformTransactionManager.class);
+        when(tx.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        consumer = new ClickStreamConsumer(mock(ConnectionFactory.class), worker, jdbc, tx,
+                mock(StringRedisTemplate.class), parking, 500, 3, 15000);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void skipsClicksAtOrBelowTheCommittedOffsetAndAdvancesIt() {
+        consumer.resumeFrom(11, 0);
+        // Another node committed up to 12 in the meantime
+        committed(12, 0);
+
+        consumer.onBatch(List.of(click(11, 1L), click(12, 2L), click(13, 3L), click(14, 4L)));
+
+        ArgumentCaptor<List<LinkClickEvent>> events = ArgumentCaptor.forClass(List.class);
+        verify(worker).processLinkClickBatch(events.capture());
+        assertThat(events.getValue()).extracting(LinkClickEvent::getLinkId).containsExactly(3L, 4L);
+        verify(jdbc).update(anyString(), eq(14L), eq(ClickStreamConsumer.CONSUMER));
+    }
+
+    @Test
+    void stopsAtAGapUntilRestarted() {
+        consumer.resumeFrom(9, 0);
+        committed(9, 0);
+        consumer.onBatch(List.of(click(10, 1L)));
+
+        consumer.onBatch(List.of(click(15, 2L)));
+        // Once a restart is pending, nothing more is processed
+        consumer.onBatch(List.of(click(11, 3L)));
+
+        verify(worker).processLinkClickBatch(List.of(event(1L)));
+        verify(worker, never()).processLinkClickBatch(List.of(event(2L)));
+        verify(worker, never()).processLinkClickBatch(List.of(event(3L)));
+    }
+
+    @Test
+    void abandonsTheBatchWhenAReplayBumpedTheEpoch() {
+        consumer.resumeFrom(9, 0);
+        committed(9, 1);
+
+        consumer.onBatch(List.of(click(10, 1L)));
+
+        verify(worker, never()).processLinkClickBatch(anyList());
+        verify(jdbc, never()).update(anyString(), any(), any());
+    }
+
+    @Test
+    void parksThePoisonClickOnceTheBatchKeepsFailing() {
+        consumer.resumeFrom(9, 0);
+        committed(9, 0);
+        doThrow(new IllegalStateException("bad click")).when(worker).processLinkClickBatch(List.of(event(2L), event(3L)));
+        doThrow(new IllegalStateException("bad click")).when(worker).processLinkClickBatch(List.of(event(2L)));
+        confirmParking();
+        List<Message> batch = List.of(click(10, 2L), click(11, 3L));
+
+        for (int attempt = 0; attempt < 3; attempt++) {
+            consumer.onBatch(batch);
+            consumer.resumeFrom(9, 0);
+        }
+        consumer.onBatch(batch);
+
+        ArgumentCaptor<Message> parked = ArgumentCaptor.forClass(Message.class);
+        verify(parking).send(eq(""), eq(RabbitMQConfig.LINK_CLICK_PARKING), parked.capture(), any(CorrelationData.class));
+        assertThat(parked.getValue().getMessageProperties().<Long>getHeader(ClickStreamConsumer.OFFSET_HEADER)).isEqualTo(10L);
+        verify(worker).processLinkClickBatch(List.of(event(3L)));
+        verify(jdbc).update(anyString(), eq(10L), eq(ClickStreamConsumer.CONSUMER));
+        verify(jdbc).update(anyString(), eq(11L), eq(ClickStreamConsumer.CONSUMER));
+    }
+
+    @Test
+    void parksMalformedClicksBeforeCommittingTheirOffset() {
+        consumer.resumeFrom(9, 0);
+        committed(9, 0);
+        confirmParking();
+        Message malformed = MessageBuilder.withBody("not json".getBytes(StandardCharsets.UTF_8))
+                .setHeader(ClickStreamConsumer.OFFSET_HEADER, 11L)
+                .build();
+
+        consumer.onBatch(List.of(click(10, 2L), malformed, click(12, 3L)));
+
+        ArgumentCaptor<Message> parked = ArgumentCaptor.forClass(Message.class);
+        verify(parking).send(eq(""), eq(RabbitMQConfig.LINK_CLICK_PARKING), parked.capture(), any(CorrelationData.class));
+        assertThat(parked.getValue().getMessageProperties().<Long>getHeader(ClickStreamConsumer.OFFSET_HEADER)).isEqualTo(11L);
+        assertThat(parked.getValue().getMessageProperties().<String>getHeader(ClickDlqReprocessor.REASON_HEADER)).startsWith("stream_malformed");
+        verify(worker).processLinkClickBatch(List.of(event(2L), event(3L)));
+        verify(jdbc).update(anyString(), eq(12L), eq(ClickStreamConsumer.CONSUMER));
+    }
+
+    @Test
+    void keepsTheOffsetWhenAMalformedClickCannotBeParked() {
+        consumer.resumeFrom(9, 0);
+        committed(9, 0);
+        doAnswer(inv -> {
+            CorrelationData correlation = inv.getArgument(3);
+            correlation.getFuture().complete(new CorrelationData.Confirm(false, "nack"));
+            return null;
+        }).when(parking).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+        Message malformed = MessageBuilder.withBody("not json".getBytes(StandardCharsets.UTF_8))
+                .setHeader(ClickStreamConsumer.OFFSET_HEADER, 10L)
+                .build();
+
+        consumer.onBatch(List.of(malformed));
+
+        verify(jdbc, never()).update(anyString(), any(), any());
+    }
+
+    @Test
+    void outagesNeverParkClicks() {
+        consumer.resumeFrom(9, 0);
+        committed(9, 0);
+        doThrow(new org.springframework.dao.DataAccessResourceFailureException("redis down")).when(worker).processLinkClickBatch(anyList());
+        List<Message> batch = List.of(click(10, 2L));
+
+        for (int attempt = 0; attempt < 5; attempt++) {
+            consumer.onBatch(batch);
+            consumer.resumeFrom(9, 0);
+        }
+
+        verify(parking, never()).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+        verify(jdbc, never()).update(anyString(), any(), any());
+    }
+
+    private void confirmParking() {
+        doAnswer(inv -> {
+            CorrelationData correlation = inv.getArgument(3);
+            correlation.getFuture().complete(new CorrelationData.Confirm(true, null));
+            return null;
+        }).when(parking).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+    }
+
+    private void committed(long offset, long epoch) {
+        when(jdbc.queryForMap(anyString(), eq(ClickStreamConsumer.CONSUMER)))
+                .thenReturn(Map.of("committed_offset", offset, "epoch", epoch));
+    }
+
+    private static Message click(long offset, long linkId) {
+        String json = "{\"linkId\":" + linkId + ",\"username\":\"alice\",\"clickedAt\":\"2026-03-01T10:00:00Z\"}";
+        return MessageBuilder.withBody(json.getBytes(StandardCharsets.UTF_8))
+                .setHeader(ClickStreamConsumer.OFFSET_HEADER, offset)
+                .build();
+    }
+
+    private static LinkClickEvent event(long linkId) {
+        return LinkClickEvent.builder().linkId(linkId).username("alice")
+                .clickedAt(java.time.Instant.parse("2026-03-01T10:00:00Z")).build();
+    }
+}
@@ -0,0 +1,64 @@
+import http from 'k6/http';
+import { check } from 'k6';
+
+// Side-by-side comparison of the MVC redirect path and the servlet fast path.
+// Run two backends against the same Redis/Postgres/RabbitMQ, one with
+// REDIRECT_FAST_PATH_ENABLED=true, and point MVC_URL / FAST_URL at them:
+//
+//   k6 run -e MVC_URL=http://localhost:8080 -e FAST_URL=http://localhost:8081 -e LINK_ID=1 perf/k6/redirect-compare.js
+//
+// The per-IP redirect limit (30 req / 10s) is keyed on X-Forwarded-For, so every
+// iteration sends a synthetic client address to measure the path rather than the limiter.
+
+const RATE = Number(__ENV.RATE || 500);
+const DURATION = __ENV.DURATION || '1m';
+
+function scenario(exec) {
+  return {
+    executor: 'constant-arrival-rate',
+    exec,
+    rate: RATE,
+    timeUnit: '1s',
+    duration: DURATION,
+    preAllocatedVUs: Number(__ENV.VUS || 50),
+    maxVUs: Number(__ENV.MAX_VUS || 200),
+  };
+}
+
+export const options = {
+  scenarios: {
+    mvc: scenario('mvc'),
+    fast: scenario('fast'),
+  },
+  thresholds: {
+    'http_req_duration{path:mvc}': ['p(95)<200'],
+    'http_req_duration{path:fast}': ['p(95)<200'],
+    'http_req_failed{path:mvc}': ['rate<0.01'],
+    'http_req_failed{path:fast}': ['rate<0.01'],
+  },
+};
+
+const LINK_ID = __ENV.LINK_ID || '1';
+const ALIAS = __ENV.ALIAS || '';
+const PATH = ALIAS ? `/r/a/${ALIAS}` : `/r/${LINK_ID}`;
+
+function hit(base, tag) {
+  const ip = `10.${__VU % 250}.${(__ITER >> 8) % 250}.${__ITER % 250}`;
+  const res = http.get(`${base}${PATH}`, {
+    redirects: 0,
+    headers: { 'X-Forwarded-For': ip },
+    tags: { path: tag },
+  });
+  check(res, {
+    '302 redirect': (r) => r.status === 302,
+    'has Location': (r) => !!r.headers['Location'],
+  });
+}
+
+export function mvc() {
+  hit(__ENV.MVC_URL || 'http://localhost:8080', 'mvc');
+}
+
+export function fast() {
+  hit(__ENV.FAST_URL || 'http://localhost:8081', 'fast');
+}